@@ -1,11 +1,18 @@
 package com.brenner.budgetmanager;
 
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Clock;
 
 @SpringBootApplication
+@EnableScheduling
 public class SavingsGoalsApplication extends SpringBootServletInitializer {
 
 	public static void main(String[] args) {
@@ -17,5 +24,17 @@ public class SavingsGoalsApplication extends SpringBootServletInitializer {
     {
         return application.sources(SavingsGoalsApplication.class);
     }
+	
+	/** Source of the current date for date dependent goal fields; replaced by a fixed clock in tests */
+	@Bean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
+	
+	/** Times the methods of beans annotated with {@code @Timed}, such as the business services */
+	@Bean
+	public TimedAspect timedAspect(MeterRegistry registry) {
+		return new TimedAspect(registry);
+	}
 
 }
@@ -0,0 +1,125 @@
+package com.brenner.budgetmanager.concurrency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Serializes in-process writers that change the same savings goals. Goals are mapped onto a fixed number of lock
+ * stripes by their unique identifier, so writers on different goals run in parallel and only writers that share a
+ * stripe wait for each other.
+ *
+ * All stripes a writer needs are acquired up front in ascending stripe order (for goal ids below the stripe count this
+ * is ascending goal id order), which makes transfers between the same goals in opposite directions deadlock free. Locks
+ * must be taken outside of the database transaction so they are held until it has committed. Nested calls may re-enter
+ * stripes already held but must not add new ones.
+ */
+@Component
+public class GoalLockManager {
+
+    private final ReentrantLock[] stripes;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+
+    private final AtomicLong contended = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    @Autowired
+    public GoalLockManager(@Value("${budgetmanager.locks.stripes:64}") int stripeCount) {
+        if (stripeCount < 1) {
+            throw new IllegalArgumentException("At least one lock stripe is required.");
+        }
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Runs the work while holding the locks for all of the given goals.
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T withGoalLocks(Collection<Integer> goalIds, Supplier<T> work) {
+
+        int[] stripeIndexes = goalIds.stream()
+                .filter(Objects::nonNull)
+                .mapToInt(this::stripeFor)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        int locked = 0;
+        try {
+            for (int stripeIndex : stripeIndexes) {
+                lock(this.stripes[stripeIndex]);
+                locked++;
+            }
+            return work.get();
+        }
+        finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                this.stripes[stripeIndexes[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the work while holding the locks for all of the given goals.
+     * @see #withGoalLocks(Collection, Supplier)
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     */
+    public void runWithGoalLocks(Collection<Integer> goalIds, Runnable work) {
+        withGoalLocks(goalIds, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private int stripeFor(Integer goalId) {
+        return Math.floorMod(goalId, this.stripes.length);
+    }
+
+    private void lock(ReentrantLock lock) {
+        this.acquisitions.incrementAndGet();
+        if (lock.tryLock()) {
+            return;
+        }
+
+        this.contended.incrementAndGet();
+        long start = System.nanoTime();
+        lock.lock();
+        this.waitNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    /** @return The number of stripe locks acquired */
+    public long getAcquisitionCount() {
+        return this.acquisitions.get();
+    }
+
+    /** @return The number of stripe acquisitions that had to wait for another writer */
+    public long getContendedCount() {
+        return this.contended.get();
+    }
+
+    /** @return The total time spent waiting for contended stripes, in nanoseconds */
+    public long getWaitNanos() {
+        return this.waitNanos.get();
+    }
+
+    /** @return The number of lock stripes */
+    public int getStripeCount() {
+        return this.stripes.length;
+    }
+}
@@ -0,0 +1,433 @@
+package com.brenner.budgetmanager.concurrency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent balance writes share one database transaction, so a burst of them pays for one commit instead of
+ * one each. Every write names the goals it changes and runs holding their in-process locks (see
+ * {@link GoalLockManager}), which callers must therefore not take themselves. Opt-in through
+ * {@code budgetmanager.group-commit.enabled}; otherwise, and for work submitted inside a transaction, the work goes
+ * straight to the {@link OptimisticRetryExecutor} under its goals' locks.
+ *
+ * The first writer to arrive leads: it waits up to {@code budgetmanager.group-commit.window-millis} from its arrival
+ * for others, or until {@code budgetmanager.group-commit.max-batch-size} have arrived, then runs the work of the group
+ * in arrival order in one transaction. Writers arriving meanwhile queue for the next group. No goal is locked while
+ * writers wait for a group; the locks of all goals of a group are taken only while it runs, so writers on the same
+ * goals do not wait out the window of a group that never forms, and writers on the same goals can share a group. The
+ * leader keeps running groups only until its own work is committed, then returns to its caller and hands the lead to
+ * the writer at the head of the queue, so a writer never runs more groups than are queued ahead of it. Every writer
+ * blocks until its own work is committed and gets its own result, so the methods behave like those of the retry
+ * executor.
+ *
+ * The leader runs other writers' work on its own thread, so while it leads, the EntityManager bound to its thread
+ * (by open-in-view) is set aside and every transaction gets an EntityManager of its own, closed when it ends. No
+ * writer's request session is used by another thread, and the entities returned are detached: work must return
+ * results that can be used without a session, for instance by reading the entities it refers to in the transaction.
+ *
+ * The persistence context is flushed after each writer's work, so a failure is pinned on the work that caused it. The
+ * group is then rolled back; the rest of the group runs again as a group, and the failed work runs in a transaction of
+ * its own, retried as the writer asked, so only that writer sees the error. Should the rest fail as well, or a failure
+ * happen at commit, each writer's work runs on its own. Work must therefore be safe to run again, as for
+ * {@link OptimisticRetryExecutor#executeWithRetry}.
+ */
+@Component
+@Slf4j
+public class GroupCommitCoordinator {
+
+    @Autowired
+    OptimisticRetryExecutor retryExecutor;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    GoalLockManager goalLockManager;
+
+    @Autowired
+    ObjectProvider<EntityManagerFactory> entityManagerFactories;
+
+    @Value("${budgetmanager.group-commit.enabled:false}")
+    boolean enabled;
+
+    @Value("${budgetmanager.group-commit.window-millis:2}")
+    long windowMillis;
+
+    @Value("${budgetmanager.group-commit.max-batch-size:50}")
+    int maxBatchSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    /** The factory whose EntityManager open-in-view binds to request threads, or null without JPA */
+    private EntityManagerFactory entityManagerFactory;
+
+    private final ReentrantLock queueLock = new ReentrantLock();
+
+    private final Condition groupFull = this.queueLock.newCondition();
+
+    /** Work waiting for a group, in arrival order; guarded by queueLock */
+    private final ArrayDeque<Operation<?>> queue = new ArrayDeque<>();
+
+    /** Whether a writer is leading; guarded by queueLock */
+    private boolean leading;
+
+    private final AtomicLong groups = new AtomicLong();
+
+    private final AtomicLong groupedOperations = new AtomicLong();
+
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+        this.entityManagerFactory = this.entityManagerFactories.getIfAvailable();
+    }
+
+    /**
+     * Runs the work in a group transaction without retrying.
+     * @see OptimisticRetryExecutor#execute(Supplier)
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T execute(Collection<Integer> goalIds, Supplier<T> work) {
+        return submit(goalIds, work, false);
+    }
+
+    /**
+     * Runs the work in a group transaction, retrying it on its own on an optimistic locking conflict.
+     * @see OptimisticRetryExecutor#executeWithRetry(Supplier)
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T executeWithRetry(Collection<Integer> goalIds, Supplier<T> work) {
+        return submit(goalIds, work, true);
+    }
+
+    /**
+     * Runs the work in a group transaction without retrying.
+     * @see #execute(Collection, Supplier)
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     */
+    public void run(Collection<Integer> goalIds, Runnable work) {
+        execute(goalIds, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the work in a group transaction, retrying it on its own on an optimistic locking conflict.
+     * @see #executeWithRetry(Collection, Supplier)
+     *
+     * @param goalIds The unique identifiers of the goals the work changes; null entries are ignored
+     * @param work The work to run
+     */
+    public void runWithRetry(Collection<Integer> goalIds, Runnable work) {
+        executeWithRetry(goalIds, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    private <T> T submit(Collection<Integer> goalIds, Supplier<T> work, boolean retry) {
+
+        if (!this.enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return this.goalLockManager.withGoalLocks(goalIds, () -> retry
+                    ? this.retryExecutor.executeWithRetry(work) : this.retryExecutor.execute(work));
+        }
+
+        Operation<T> operation = new Operation<>(goalIds, work, retry);
+        boolean leader;
+        this.queueLock.lock();
+        try {
+            this.queue.add(operation);
+            leader = !this.leading;
+            this.leading = true;
+            if (this.queue.size() >= this.maxBatchSize) {
+                this.groupFull.signal();
+            }
+        }
+        finally {
+            this.queueLock.unlock();
+        }
+
+        if (leader || operation.awaitTurn()) {
+            lead(operation);
+        }
+        return operation.result();
+    }
+
+    /**
+     * Runs groups, each holding the locks of its goals, until the leader's own work is done, then hands the lead on.
+     * The leader's EntityManager is set aside meanwhile.
+     */
+    private void lead(Operation<?> own) {
+
+        long deadline = own.arrivedAt + TimeUnit.MILLISECONDS.toNanos(this.windowMillis);
+        Object requestEntityManager = this.entityManagerFactory == null ? null
+                : TransactionSynchronizationManager.unbindResourceIfPossible(this.entityManagerFactory);
+        try {
+            while (!own.isDone()) {
+                List<Operation<?>> group = nextGroup(deadline);
+                this.goalLockManager.runWithGoalLocks(goalIds(group), () -> runGroup(group, true));
+            }
+        }
+        finally {
+            if (requestEntityManager != null) {
+                TransactionSynchronizationManager.bindResource(this.entityManagerFactory, requestEntityManager);
+            }
+            handOff();
+        }
+    }
+
+    private static Set<Integer> goalIds(List<Operation<?>> group) {
+
+        Set<Integer> goalIds = new LinkedHashSet<>();
+        group.forEach(operation -> goalIds.addAll(operation.goalIds));
+        return goalIds;
+    }
+
+    /**
+     * @return The work waiting once the window has passed or a group is full; the leader's own work is among it
+     */
+    private List<Operation<?>> nextGroup(long deadline) {
+
+        this.queueLock.lock();
+        try {
+            long remaining = deadline - System.nanoTime();
+            while (this.queue.size() < this.maxBatchSize && remaining > 0) {
+                try {
+                    remaining = this.groupFull.awaitNanos(remaining);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            List<Operation<?>> group = new ArrayList<>(Math.min(this.queue.size(), this.maxBatchSize));
+            while (!this.queue.isEmpty() && group.size() < this.maxBatchSize) {
+                group.add(this.queue.poll());
+            }
+            return group;
+        }
+        finally {
+            this.queueLock.unlock();
+        }
+    }
+
+    /**
+     * Makes the writer at the head of the queue the leader, or ends leading if none is waiting.
+     */
+    private void handOff() {
+
+        this.queueLock.lock();
+        try {
+            Operation<?> next = this.queue.peek();
+            if (next == null) {
+                this.leading = false;
+            }
+            else {
+                next.promote();
+            }
+        }
+        finally {
+            this.queueLock.unlock();
+        }
+    }
+
+    /**
+     * @param split Whether a failure pinned on one writer's work runs the rest as a group again
+     */
+    private void runGroup(List<Operation<?>> group, boolean split) {
+
+        if (group.size() == 1) {
+            group.get(0).runAlone();
+            return;
+        }
+
+        int[] running = {-1};
+        List<Object> results;
+        try {
+            results = this.transactionTemplate.execute(status -> {
+                List<Object> groupResults = new ArrayList<>(group.size());
+                for (int i = 0; i < group.size(); i++) {
+                    running[0] = i;
+                    groupResults.add(group.get(i).work.get());
+                    status.flush();
+                }
+                running[0] = -1;
+                return groupResults;
+            });
+        }
+        catch (RuntimeException | Error e) {
+            this.fallbacks.incrementAndGet();
+            if (split && running[0] >= 0) {
+                log.debug("The write at {} of a group of {} failed, running the rest as a group: {}", running[0],
+                        group.size(), e.getMessage());
+                List<Operation<?>> rest = new ArrayList<>(group);
+                Operation<?> failed = rest.remove(running[0]);
+                runGroup(rest, false);
+                failed.runAlone();
+            }
+            else {
+                log.debug("A group of {} writes failed, running them one at a time: {}", group.size(), e.getMessage());
+                group.forEach(Operation::runAlone);
+            }
+            return;
+        }
+
+        this.groups.incrementAndGet();
+        this.groupedOperations.addAndGet(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(results.get(i), null);
+        }
+    }
+
+    /** @return The number of groups of more than one write committed together */
+    public long getGroupCount() {
+        return this.groups.get();
+    }
+
+    /** @return The number of writes committed as part of a group */
+    public long getGroupedOperationCount() {
+        return this.groupedOperations.get();
+    }
+
+    /** @return The number of groups that failed and whose writes ran again, as a smaller group or one at a time */
+    public long getFallbackCount() {
+        return this.fallbacks.get();
+    }
+
+    /**
+     * A writer's work. The writer waits on its own condition until the work is done or it is made the leader; the
+     * state is guarded by queueLock.
+     */
+    private final class Operation<T> {
+
+        private final Collection<Integer> goalIds;
+
+        private final Supplier<T> work;
+
+        private final boolean retry;
+
+        private final long arrivedAt = System.nanoTime();
+
+        private final Condition turn = GroupCommitCoordinator.this.queueLock.newCondition();
+
+        private boolean done;
+
+        private boolean promoted;
+
+        private Object value;
+
+        private Throwable failure;
+
+        Operation(Collection<Integer> goalIds, Supplier<T> work, boolean retry) {
+            this.goalIds = goalIds;
+            this.work = work;
+            this.retry = retry;
+        }
+
+        void runAlone() {
+            try {
+                complete(this.retry
+                        ? GroupCommitCoordinator.this.retryExecutor.executeWithRetry(this.work)
+                        : GroupCommitCoordinator.this.retryExecutor.execute(this.work), null);
+            }
+            catch (RuntimeException | Error e) {
+                complete(null, e);
+            }
+        }
+
+        void complete(Object value, Throwable failure) {
+            GroupCommitCoordinator.this.queueLock.lock();
+            try {
+                this.value = value;
+                this.failure = failure;
+                this.done = true;
+                this.turn.signal();
+            }
+            finally {
+                GroupCommitCoordinator.this.queueLock.unlock();
+            }
+        }
+
+        /** Must be called holding queueLock */
+        void promote() {
+            this.promoted = true;
+            this.turn.signal();
+        }
+
+        boolean isDone() {
+            GroupCommitCoordinator.this.queueLock.lock();
+            try {
+                return this.done;
+            }
+            finally {
+                GroupCommitCoordinator.this.queueLock.unlock();
+            }
+        }
+
+        /**
+         * Waits, uninterruptibly since a promoted writer must lead, until the work is done or the writer leads.
+         *
+         * @return True if the writer was made the leader
+         */
+        boolean awaitTurn() {
+            GroupCommitCoordinator.this.queueLock.lock();
+            try {
+                while (!this.done && !this.promoted) {
+                    this.turn.awaitUninterruptibly();
+                }
+                return !this.done;
+            }
+            finally {
+                GroupCommitCoordinator.this.queueLock.unlock();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T result() {
+            GroupCommitCoordinator.this.queueLock.lock();
+            try {
+                if (this.failure instanceof RuntimeException) {
+                    throw (RuntimeException) this.failure;
+                }
+                if (this.failure instanceof Error) {
+                    throw (Error) this.failure;
+                }
+                return (T) this.value;
+            }
+            finally {
+                GroupCommitCoordinator.this.queueLock.unlock();
+            }
+        }
+    }
+}
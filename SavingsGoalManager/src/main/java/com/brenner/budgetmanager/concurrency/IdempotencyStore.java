@@ -0,0 +1,212 @@
+package com.brenner.budgetmanager.concurrency;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Makes writes safe to retry. A client that sends an {@code Idempotency-Key} header (or the hidden form token) with a
+ * write gets the response of the first request with that key again when it retries, without the write running a
+ * second time.
+ *
+ * Each key is remembered with a fingerprint of the request it came with and, once the write has succeeded, the
+ * response serialized as JSON. A key sent with a different request is a 400, and a key whose first request is still
+ * running is a 409. A failed write forgets its key so the retry runs again. Keys expire
+ * {@code budgetmanager.idempotency.ttl-minutes} after their write has succeeded and at most
+ * {@code budgetmanager.idempotency.max-entries} of them are kept, the oldest being dropped first. Keys whose first
+ * request is still running are kept apart and never dropped, so a full store cannot let a retry run the write while
+ * the first request still does.
+ *
+ * Keys live in memory, so they guard against retries reaching the same instance.
+ */
+@Component
+@Slf4j
+public class IdempotencyStore {
+
+    /** Request header carrying the client's idempotency key */
+    public static final String HEADER = "Idempotency-Key";
+
+    /** Form parameter carrying the idempotency token rendered into a form */
+    public static final String FORM_TOKEN = "idempotencyToken";
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    Clock clock;
+
+    @Value("${budgetmanager.idempotency.ttl-minutes:1440}")
+    long ttlMinutes;
+
+    @Value("${budgetmanager.idempotency.max-entries:10000}")
+    int maxEntries;
+
+    /**
+     * Keys of succeeded writes in the order they succeeded; with a single time to live counted from then, that is also
+     * expiry order. Guards inProgress as well.
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > IdempotencyStore.this.maxEntries;
+        }
+    };
+
+    /** Fingerprints of the requests still running, by key; bounded by the requests in flight */
+    private final Map<String, String> inProgress = new HashMap<>();
+
+    private final AtomicLong replays = new AtomicLong();
+
+    /**
+     * Runs a write once per key.
+     *
+     * @param key The client's idempotency key; the write simply runs when it is null or blank
+     * @param operation Names the write, so a key reused for another write is recognised
+     * @param request The request data the write is made from
+     * @param responseType Type to read a replayed response as
+     * @param work The write
+     * @return The response of the write, or of the first request with the key
+     */
+    public <T> T execute(String key, String operation, Object request, Class<T> responseType, Supplier<T> work) {
+
+        if (key == null || key.isBlank()) {
+            return work.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new InvalidRequestException("Idempotency keys must not be longer than " + MAX_KEY_LENGTH
+                    + " characters.");
+        }
+
+        String fingerprint = fingerprint(operation, request);
+        synchronized (this.entries) {
+            purgeExpired(this.clock.millis());
+
+            String running = this.inProgress.get(key);
+            if (running != null) {
+                checkFingerprint(key, running, fingerprint);
+                throw new ConflictException("The request with idempotency key " + key + " is still in progress.");
+            }
+
+            Entry existing = this.entries.get(key);
+            if (existing != null) {
+                checkFingerprint(key, existing.fingerprint, fingerprint);
+                this.replays.incrementAndGet();
+                log.debug("Replaying the response of {} for idempotency key {}", operation, key);
+                return read(existing.response, responseType);
+            }
+
+            this.inProgress.put(key, fingerprint);
+        }
+
+        T response;
+        try {
+            response = work.get();
+        }
+        catch (RuntimeException | Error e) {
+            forget(key);
+            throw e;
+        }
+
+        try {
+            byte[] serialized = this.objectMapper.writeValueAsBytes(response);
+            synchronized (this.entries) {
+                this.inProgress.remove(key);
+                this.entries.put(key, new Entry(fingerprint, serialized, this.clock.millis() + this.ttlMinutes * 60_000));
+            }
+        }
+        catch (JsonProcessingException e) {
+            log.warn("The response of " + operation + " cannot be kept for replay", e);
+            forget(key);
+        }
+        return response;
+    }
+
+    private static void checkFingerprint(String key, String kept, String fingerprint) {
+        if (!kept.equals(fingerprint)) {
+            throw new InvalidRequestException("Idempotency key " + key + " was used for a different request.");
+        }
+    }
+
+    private void forget(String key) {
+        synchronized (this.entries) {
+            this.inProgress.remove(key);
+        }
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Entry> oldest = this.entries.values().iterator();
+        while (oldest.hasNext() && oldest.next().expiresAt <= now) {
+            oldest.remove();
+        }
+    }
+
+    private String fingerprint(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(this.objectMapper.writeValueAsBytes(request));
+            return Base64.getEncoder().encodeToString(digest.digest());
+        }
+        catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("The request to " + operation + " cannot be fingerprinted", e);
+        }
+    }
+
+    private <T> T read(byte[] response, Class<T> responseType) {
+        try {
+            return this.objectMapper.readValue(response, responseType);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("A kept response cannot be read as " + responseType.getSimpleName(), e);
+        }
+    }
+
+    /** @return The number of requests answered with a kept response */
+    public long getReplayCount() {
+        return this.replays.get();
+    }
+
+    /** @return The number of keys currently kept, including those whose first request is still running */
+    public int size() {
+        synchronized (this.entries) {
+            return this.entries.size() + this.inProgress.size();
+        }
+    }
+
+    private static final class Entry {
+
+        private final String fingerprint;
+
+        /** The serialized response */
+        private final byte[] response;
+
+        private final long expiresAt;
+
+        Entry(String fingerprint, byte[] response, long expiresAt) {
+            this.fingerprint = fingerprint;
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
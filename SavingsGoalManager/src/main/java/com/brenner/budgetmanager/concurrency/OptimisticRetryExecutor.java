@@ -0,0 +1,154 @@
+package com.brenner.budgetmanager.concurrency;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.OptimisticLockException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs business-service writes in a transaction and retries them when they lose an optimistic locking race. Each retry
+ * starts a fresh transaction after a jittered exponential backoff; once the attempts are used up the conflict is
+ * reported to the caller as a {@link ConflictException} (HTTP 409).
+ *
+ * When a transaction is already active the work simply joins it, so only the outermost call retries.
+ */
+@Component
+@Slf4j
+public class OptimisticRetryExecutor {
+    
+    @Autowired
+    PlatformTransactionManager transactionManager;
+    
+    @Value("${budgetmanager.retry.max-attempts:3}")
+    int maxAttempts;
+    
+    @Value("${budgetmanager.retry.initial-backoff-millis:10}")
+    long initialBackoffMillis;
+    
+    @Value("${budgetmanager.retry.max-backoff-millis:200}")
+    long maxBackoffMillis;
+    
+    private TransactionTemplate transactionTemplate;
+    
+    private final AtomicLong conflicts = new AtomicLong();
+    
+    private final AtomicLong retries = new AtomicLong();
+    
+    private final AtomicLong exhausted = new AtomicLong();
+    
+    @PostConstruct
+    void init() {
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+    }
+    
+    /**
+     * Runs the work in a transaction, retrying it on an optimistic locking conflict. The work must re-read whatever
+     * state it depends on, otherwise every attempt fails the same way.
+     *
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T executeWithRetry(Supplier<T> work) {
+        return execute(work, this.maxAttempts);
+    }
+    
+    /**
+     * Runs the work in a single transaction without retrying. Used for writes of client-supplied state where a conflict
+     * means the client's copy is stale and must be reported rather than retried.
+     *
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T execute(Supplier<T> work) {
+        return execute(work, 1);
+    }
+    
+    /**
+     * Runs the work in a transaction, retrying it on an optimistic locking conflict.
+     * @see #executeWithRetry(Supplier)
+     *
+     * @param work The work to run
+     */
+    public void runWithRetry(Runnable work) {
+        executeWithRetry(() -> {
+            work.run();
+            return null;
+        });
+    }
+    
+    /**
+     * Runs the work in a single transaction without retrying.
+     * @see #execute(Supplier)
+     *
+     * @param work The work to run
+     */
+    public void run(Runnable work) {
+        execute(() -> {
+            work.run();
+            return null;
+        });
+    }
+    
+    private <T> T execute(Supplier<T> work, int attempts) {
+        
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return this.transactionTemplate.execute(status -> work.get());
+            }
+            catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                this.conflicts.incrementAndGet();
+                
+                if (attempt >= attempts) {
+                    this.exhausted.incrementAndGet();
+                    log.warn("Giving up after {} attempt(s) on conflicting update: {}", attempt, e.getMessage());
+                    throw new ConflictException("The data was changed by another request. Reload and try again.", e);
+                }
+                
+                this.retries.incrementAndGet();
+                log.debug("Optimistic locking conflict on attempt {}, retrying: {}", attempt, e.getMessage());
+                backoff(attempt);
+            }
+        }
+    }
+    
+    private void backoff(int attempt) {
+        long ceiling = Math.min(this.maxBackoffMillis, this.initialBackoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("Interrupted while waiting to retry a conflicting update.", e);
+        }
+    }
+    
+    /** @return The number of optimistic locking conflicts seen, including those that were retried successfully */
+    public long getConflictCount() {
+        return this.conflicts.get();
+    }
+    
+    /** @return The number of retries attempted */
+    public long getRetryCount() {
+        return this.retries.get();
+    }
+    
+    /** @return The number of writes that failed after using up all of their attempts */
+    public long getExhaustedCount() {
+        return this.exhausted.get();
+    }
+}
@@ -0,0 +1,80 @@
+package com.brenner.budgetmanager.concurrency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionOutcome;
+import org.springframework.boot.autoconfigure.condition.SpringBootCondition;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskSchedulerBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Opt-in execution mode ({@code budgetmanager.threads.virtual=true}) that runs the work of the application on virtual
+ * threads instead of fixed pools of platform threads:
+ * <ul>
+ *     <li>Tomcat handles every request on its own virtual thread instead of one of its 200 worker threads.</li>
+ *     <li>The application task executor, which runs asynchronous request processing such as the streamed exports and
+ *     any {@code @Async} method, starts a virtual thread per task.</li>
+ *     <li>Scheduled jobs are started on virtual threads.</li>
+ * </ul>
+ * Requests mostly wait for JDBC, so they are no longer limited by the number of threads but by the connection pool:
+ * {@code spring.datasource.hikari.maximum-pool-size} is the explicit limit on concurrent database work, and requests
+ * beyond it queue for a connection for up to {@code spring.datasource.hikari.connection-timeout}.
+ *
+ * On a JDK without virtual threads the mode is not applied and a warning is logged; Spring Boot's platform thread
+ * pools are used as without the setting.
+ */
+@Configuration(proxyBeanMethods = false)
+@Conditional(VirtualThreadConfiguration.VirtualThreadsEnabled.class)
+@Slf4j
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Handling requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newThreadPerTaskExecutor("http-virtual-"));
+    }
+
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("task-virtual-"));
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(TaskSchedulerBuilder builder) {
+        ThreadPoolTaskScheduler scheduler = builder.build();
+        scheduler.setThreadFactory(VirtualThreads.threadFactory("scheduling-virtual-"));
+        return scheduler;
+    }
+
+    /**
+     * Matches when the mode is switched on and the JDK supports it.
+     */
+    static class VirtualThreadsEnabled extends SpringBootCondition {
+
+        static final String PROPERTY = "budgetmanager.threads.virtual";
+
+        @Override
+        public ConditionOutcome getMatchOutcome(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            if (!context.getEnvironment().getProperty(PROPERTY, Boolean.class, false)) {
+                return ConditionOutcome.noMatch(PROPERTY + " is not set");
+            }
+            if (!VirtualThreads.isSupported()) {
+                log.warn("{} is set but Java {} has no virtual threads; using platform threads", PROPERTY,
+                        Runtime.version().feature());
+                return ConditionOutcome.noMatch("Java " + Runtime.version().feature() + " has no virtual threads");
+            }
+            return ConditionOutcome.match(PROPERTY + " is set and virtual threads are available");
+        }
+    }
+}
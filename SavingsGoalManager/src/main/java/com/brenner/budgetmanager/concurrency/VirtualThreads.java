@@ -0,0 +1,71 @@
+package com.brenner.budgetmanager.concurrency;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to virtual threads on JDKs that have them (Java 21, or 19 and 20 with preview features enabled) while the
+ * application is still built for Java 17. The JDK methods are looked up reflectively once; on a JDK without them
+ * {@link #isSupported()} is false and the application keeps its platform thread pools.
+ */
+public final class VirtualThreads {
+
+    private static final boolean SUPPORTED = probe();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return Whether the running JDK can create virtual threads
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * @param namePrefix Prefix of the thread names, followed by a counter
+     * @return A factory that creates a new virtual thread per call
+     * @throws IllegalStateException If the JDK has no virtual threads
+     */
+    public static ThreadFactory threadFactory(String namePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("Virtual threads are not available on Java "
+                    + Runtime.version().feature(), e instanceof InvocationTargetException ? e.getCause() : e);
+        }
+    }
+
+    /**
+     * @param namePrefix Prefix of the thread names, followed by a counter
+     * @return An executor that runs every task on a new virtual thread
+     * @throws IllegalStateException If the JDK has no virtual threads
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        ThreadFactory factory = threadFactory(namePrefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Thread per task executors are not available on Java "
+                    + Runtime.version().feature(), e);
+        }
+    }
+
+    private static boolean probe() {
+        try {
+            newThreadPerTaskExecutor("virtual-thread-probe-").shutdown();
+            return true;
+        }
+        catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.brenner.budgetmanager.deposit;
+
+/**
+ * Outcome of one entry of a bulk deposit upload. Entries are numbered from 0 in the order they were sent.
+ */
+public class BulkDepositResult {
+
+	/** Outcome of a single entry */
+	public enum Status { CREATED, REJECTED }
+
+	private final int index;
+
+	private final Status status;
+
+	private final Long depositId;
+
+	private final String error;
+
+	private BulkDepositResult(int index, Status status, Long depositId, String error) {
+		this.index = index;
+		this.status = status;
+		this.depositId = depositId;
+		this.error = error;
+	}
+
+	/**
+	 * @param index Position of the entry in the upload
+	 * @param depositId Unique identifier assigned to the new deposit
+	 * @return The result of an entry that was persisted
+	 */
+	public static BulkDepositResult created(int index, Long depositId) {
+		return new BulkDepositResult(index, Status.CREATED, depositId, null);
+	}
+
+	/**
+	 * @param index Position of the entry in the upload
+	 * @param error Why the entry was not persisted
+	 * @return The result of an entry that was not persisted
+	 */
+	public static BulkDepositResult rejected(int index, String error) {
+		return new BulkDepositResult(index, Status.REJECTED, null, error);
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Long getDepositId() {
+		return depositId;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public String toString() {
+		return "BulkDepositResult [index=" + index + ", status=" + status + ", depositId=" + depositId + ", error="
+				+ error + "]";
+	}
+}
@@ -3,6 +3,10 @@
  */
 package com.brenner.budgetmanager.deposit;
 
+import com.brenner.budgetmanager.persistence.PooledSequenceGenerator;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -20,7 +24,9 @@ import java.util.Date;
 public class Deposit {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "deposits_seq")
+	@GenericGenerator(name = "deposits_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "deposits_seq"))
 	private Long depositId;
 	
 	/** totale deposit amount */
@@ -32,6 +38,11 @@ public class Deposit {
 	
 	/** Flag to identify of the deposit has been allocated or not */
 	private boolean allocated;
+	
+	/** Optimistic locking version; existing rows start at 0 when the column is added */
+	@Version
+	@Column(columnDefinition = "bigint default 0 not null")
+	private Long version;
 
 	/** Default constructor. */
 	public Deposit() {}
@@ -83,6 +94,14 @@ public class Deposit {
 		this.allocated = allocated;
 	}
 	
+	public Long getVersion() {
+		return version;
+	}
+	
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -108,7 +127,7 @@ public class Deposit {
 	@Override
 	public String toString() {
 		return "Deposit [depositId=" + depositId + ", amount=" + amount + ", date=" + date + ", allocated=" + allocated
-				+ "]";
+				+ ", version=" + version + "]";
 	}
 
 }
@@ -1,10 +1,21 @@
 package com.brenner.budgetmanager.deposit;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
+import com.brenner.budgetmanager.util.JsonValueIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,14 +30,44 @@ public class DepositApi {
     @Autowired
     DepositBusinessService service;
     
+    @Autowired
+    JsonStreamWriter jsonStreamWriter;
+    
+    @Autowired
+    ObjectMapper objectMapper;
+    
+    @Autowired
+    IdempotencyStore idempotencyStore;
+    
+    @Autowired
+    DataVersions dataVersions;
+    
+    /** Media type of a newline delimited JSON (NDJSON) upload */
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+    
     /**
-     * API interface to retrieve all (inallocated) deposits. A full list of deposits is not exposed.
+     * API interface to retrieve all (inallocated) deposits. A full list of deposits is not exposed. The response carries
+     * an ETag and Last-Modified header; a request whose If-None-Match or If-Modified-Since header still matches gets a
+     * 304 without the deposits being read.
      *
+     * @param request The request with its conditional headers
      * @return The List<Deposit> that have not been allocated.
      */
     @GetMapping(path="/deposits")
-    public List<Deposit> getAllDeposits() {
-        return service.getUnallocatedDeposits();
+    public ResponseEntity<List<Deposit>> getAllDeposits(WebRequest request) {
+        return this.dataVersions.conditionalGet(request, DataVersions.Collection.DEPOSITS,
+                this.service::getUnallocatedDeposits);
+    }
+    
+    /**
+     * API interface to export all unallocated deposits. The JSON array is written while the deposits are read so memory
+     * use does not depend on the number of deposits.
+     *
+     * @return The streamed list of deposits that have not been allocated.
+     */
+    @GetMapping(path="/deposits/stream")
+    public ResponseEntity<StreamingResponseBody> streamDeposits() {
+        return this.jsonStreamWriter.stream(this.service::streamUnallocatedDeposits);
     }
     
     /**
@@ -47,19 +88,39 @@ public class DepositApi {
     }
     
     /**
-     * API interface to persist a new Deposit instance.
+     * API interface to persist a new Deposit instance. A retry sent with the same Idempotency-Key gets the deposit saved
+     * by the first request instead of a duplicate.
+     * @see IdempotencyStore
      *
+     * @param idempotencyKey Optional key identifying the request across retries
      * @param deposit Data object to persist
      * @return The persisted object including its unique identifier.
      */
     @PostMapping(path="/deposits")
-    public Deposit addNewDeposit(@RequestBody Deposit deposit) {
-        Deposit d = this.service.saveDeposit(deposit);
+    public Deposit addNewDeposit(@RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody Deposit deposit) {
+        Deposit d = this.idempotencyStore.execute(idempotencyKey, "POST /api/deposits", deposit, Deposit.class,
+                () -> this.service.saveDeposit(deposit));
         return d;
     }
     
     /**
-     * API interface to update a deposit instance. Returns a 404 if the instance cannot be found.
+     * API interface to persist many new deposits in one request. The body is a JSON array of deposits or an NDJSON
+     * stream with one deposit per line; either is read one deposit at a time while the deposits are saved. Deposits
+     * that cannot be read or are invalid are rejected individually, the others are saved in one transaction. A body
+     * that is not well formed JSON is a 400 and saves nothing.
+     *
+     * @param body The request body
+     * @return One result per deposit sent, in the order they were sent
+     */
+    @PostMapping(path="/deposits/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_NDJSON})
+    public List<BulkDepositResult> addNewDeposits(InputStream body) {
+        return this.service.saveDeposits(new JsonValueIterator<>(this.objectMapper, body, Deposit.class));
+    }
+    
+    /**
+     * API interface to update a deposit instance. The version the client read is required; returns a 400 without one,
+     * a 404 if the instance cannot be found and a 409 if it was changed since the supplied version.
      *
      * @param depositId Deposit instance unique identifier.
      * @param deposit The Deposit data to persist
@@ -68,10 +129,14 @@ public class DepositApi {
     @PutMapping(path="/deposits/{depositId}")
     public Deposit updateDeposit(@PathVariable(name="depositId", required = true) Long depositId, @RequestBody Deposit deposit) {
         
+        if (deposit.getVersion() == null) {
+            throw new InvalidRequestException("Deposit version is required to update deposit " + depositId + ".");
+        }
         Optional<Deposit> optDeposit = this.service.getDeposit(depositId);
         if (optDeposit.isEmpty()) {
             throw new NotFoundException("Deposit with id " + depositId + " was not found.");
         }
+        deposit.setDepositId(depositId);
         
         return this.service.saveDeposit(deposit);
     }
@@ -3,14 +3,25 @@
  */
 package com.brenner.budgetmanager.deposit;
 
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.JsonValueIterator.UnreadableItemException;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Service class to handle all "business" logic for managing deposits.
@@ -19,9 +30,12 @@ import java.util.Optional;
  *
  * Deposits can only be applied once.
  *
+ * Calls to the public methods are timed in the budgetmanager.service metric.
+ *
  * @author dbrenner
  */
 @Service
+@Timed("budgetmanager.service")
 @Slf4j
 public class DepositBusinessService {
 
@@ -29,8 +43,22 @@ public class DepositBusinessService {
 	@Autowired
 	DepositRepository depositRepo;
 	
+	@Autowired
+	OptimisticRetryExecutor retryExecutor;
+	
+	@Autowired
+	EntityManager entityManager;
+	
+	@Autowired
+	DataVersions dataVersions;
+	
+	/** Number of deposits sent to the database per JDBC batch by a bulk upload */
+	@Value("${budgetmanager.deposits.bulk-batch-size:50}")
+	int bulkBatchSize;
+	
 	/**
-	 * Saves the deposit to the repository.
+	 * Saves the deposit to the repository. A ConflictException is produced if an existing deposit was changed since it
+	 * was read.
 	 *
 	 * @param deposit Deposit data to save
 	 * @return The saved entity with unique identifier
@@ -43,7 +71,86 @@ public class DepositBusinessService {
 		
 		log.debug("Saving Deposit: " + deposit);
 		
-		return this.depositRepo.save(deposit);
+		return this.retryExecutor.execute(() -> {
+			this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+			return this.depositRepo.save(deposit);
+		});
+	}
+	
+	/**
+	 * Persists new deposits as they are read in a single transaction. Each deposit is validated on its own; a deposit
+	 * that is unreadable or invalid is reported and skipped without affecting the others. The inserts are sent in JDBC
+	 * batches of bulkBatchSize and the persistence context is cleared after each batch, so memory use does not depend
+	 * on the number of deposits.
+	 *
+	 * A failure of the database or of the request body itself rolls back every deposit of the upload.
+	 *
+	 * @param deposits The new deposits; reading one may produce an UnreadableItemException
+	 * @return One result per deposit read, in the order they were read
+	 */
+	@Transactional
+	public List<BulkDepositResult> saveDeposits(Iterator<Deposit> deposits) {
+		
+		if (deposits == null) {
+			throw new InvalidRequestException("Deposits are a required parameter.");
+		}
+		
+		this.entityManager.unwrap(Session.class).setJdbcBatchSize(this.bulkBatchSize);
+		this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+		
+		List<BulkDepositResult> results = new ArrayList<>();
+		int pending = 0;
+		for (int index = 0; deposits.hasNext(); index++) {
+			
+			Deposit deposit;
+			try {
+				deposit = deposits.next();
+			}
+			catch (UnreadableItemException e) {
+				results.add(BulkDepositResult.rejected(index, e.getMessage()));
+				continue;
+			}
+			
+			String error = validateNewDeposit(deposit);
+			if (error != null) {
+				results.add(BulkDepositResult.rejected(index, error));
+				continue;
+			}
+			
+			// the sequence assigns the id on persist, the insert itself waits for the batch
+			this.entityManager.persist(deposit);
+			results.add(BulkDepositResult.created(index, deposit.getDepositId()));
+			
+			if (++pending == this.bulkBatchSize) {
+				this.entityManager.flush();
+				this.entityManager.clear();
+				pending = 0;
+			}
+		}
+		this.entityManager.flush();
+		this.entityManager.clear();
+		
+		log.debug("Bulk saved {} deposits", results.stream()
+				.filter(result -> result.getStatus() == BulkDepositResult.Status.CREATED).count());
+		
+		return results;
+	}
+	
+	private String validateNewDeposit(Deposit deposit) {
+		
+		if (deposit == null) {
+			return "Deposit is required.";
+		}
+		if (deposit.getDepositId() != null || deposit.getVersion() != null) {
+			return "Deposit id and version must not be set on a new deposit.";
+		}
+		if (deposit.getAmount() == null || deposit.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+			return "Deposit amount must be greater than 0.";
+		}
+		if (deposit.getDate() == null) {
+			return "Deposit date is required.";
+		}
+		return null;
 	}
 	
 	/**
@@ -59,6 +166,18 @@ public class DepositBusinessService {
 		return this.depositRepo.findByAllocated(false);
 	}
 	
+	/**
+	 * Streams the deposits that have not been allocated towards goals without loading them into memory. The stream must
+	 * be consumed and closed inside a transaction.
+	 * @see com.brenner.budgetmanager.util.JsonStreamWriter
+	 *
+	 * @return A Stream of Deposit objects.
+	 */
+	public Stream<Deposit> streamUnallocatedDeposits() {
+		
+		return this.depositRepo.streamByAllocated(false);
+	}
+	
 	/**
 	 * Retrieves a single Deposit object based on the unique identifier.
 	 *
@@ -89,11 +208,14 @@ public class DepositBusinessService {
 		
 		log.debug("Getting Deposit for id: " + depositId);
 		
-		Optional<Deposit> optDeposit = this.depositRepo.findById(depositId);
-		
-		if (optDeposit.isPresent()) {
-			this.depositRepo.delete(optDeposit.get());
-		}
+		this.retryExecutor.runWithRetry(() -> {
+			Optional<Deposit> optDeposit = this.depositRepo.findById(depositId);
+			
+			if (optDeposit.isPresent()) {
+				this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+				this.depositRepo.delete(optDeposit.get());
+			}
+		});
 	}
 
 }
@@ -3,6 +3,7 @@
  */
 package com.brenner.budgetmanager.deposit;
 
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.exception.NotFoundException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -81,7 +82,7 @@ public class DepositController {
 	
 	/**
 	 * Method called after editing a deposit is complete. This will pass the changes to the business service for
-	 * processing. Returns a 404 if the deposit cannot be found.
+	 * processing. Returns a 400 if the form carries no version and a 404 if the deposit cannot be found.
 	 *
 	 * @param deposit The deposit object to persist
 	 * @return A redirect to the deposits list path
@@ -89,11 +90,13 @@ public class DepositController {
 	@RequestMapping("updateDeposit")
 	public String updateDeposit(@ModelAttribute Deposit deposit) {
 		
+		if (deposit.getVersion() == null) {
+			throw new InvalidRequestException("Deposit version is required to update deposit " + deposit.getDepositId() + ".");
+		}
 		Optional<Deposit> optionalDeposit = this.depositBusinessService.getDeposit(deposit.getDepositId());
 		if (optionalDeposit.isEmpty()) {
 			throw new NotFoundException("Deposit with id : " + deposit.getDepositId() + " does not exist.");
 		}
-		
 		this.depositBusinessService.saveDeposit(deposit);
 		
 		return "redirect:getUnallocatedDeposits";
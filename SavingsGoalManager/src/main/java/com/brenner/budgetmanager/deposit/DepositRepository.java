@@ -4,8 +4,18 @@
 package com.brenner.budgetmanager.deposit;
 
 import java.util.List;
+import java.util.stream.Stream;
 
+import javax.persistence.QueryHint;
+
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  *
@@ -15,5 +25,19 @@ import org.springframework.data.jpa.repository.JpaRepository;
 public interface DepositRepository extends JpaRepository<Deposit, Long> {
 	
 	List<Deposit> findByAllocated(boolean allocated);
+	
+	/**
+	 * Streams the deposits with the given allocation state over a database cursor. The stream must be consumed and
+	 * closed inside a transaction.
+	 *
+	 * @param allocated Whether to stream allocated or unallocated deposits
+	 * @return The stream of read-only deposits
+	 */
+	@QueryHints({
+			@QueryHint(name = HINT_FETCH_SIZE, value = JsonStreamWriter.FETCH_SIZE),
+			@QueryHint(name = HINT_READONLY, value = "true")
+	})
+	@Query("select d from Deposit d where d.allocated = :allocated order by d.depositId")
+	Stream<Deposit> streamByAllocated(@Param("allocated") boolean allocated);
 
 }
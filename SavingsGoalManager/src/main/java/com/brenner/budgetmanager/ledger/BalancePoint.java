@@ -0,0 +1,46 @@
+package com.brenner.budgetmanager.ledger;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * A goal's balance at the end of a day; one point of a balance history chart.
+ */
+public class BalancePoint {
+
+	private final LocalDate date;
+
+	private final BigDecimal balance;
+
+	public BalancePoint(LocalDate date, BigDecimal balance) {
+		this.date = date;
+		this.balance = balance;
+	}
+
+	public LocalDate getDate() {
+		return date;
+	}
+
+	public BigDecimal getBalance() {
+		return balance;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		BalancePoint that = (BalancePoint) o;
+		return Objects.equals(date, that.date) && Objects.equals(balance, that.balance);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(date, balance);
+	}
+
+	@Override
+	public String toString() {
+		return "BalancePoint [date=" + date + ", balance=" + balance + "]";
+	}
+}
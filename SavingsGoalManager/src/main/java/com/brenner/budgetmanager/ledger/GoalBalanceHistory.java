@@ -0,0 +1,104 @@
+package com.brenner.budgetmanager.ledger;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * The net change of a goal's balance on one day, in the JVM's time zone. A goal's balance at the end of a day is the
+ * sum of its rows up to that day plus its uncompacted ledger entries of those days. Rows are written by the compaction
+ * job together with the snapshots, so a change is counted in exactly one of the two places; changes committed late
+ * are added to the day they were made on.
+ */
+@Entity
+@Table(name = "goal_balance_history")
+@IdClass(GoalBalanceHistory.Key.class)
+public class GoalBalanceHistory {
+
+	@Id
+	private Integer savingsGoalId;
+
+	@Id
+	private LocalDate balanceDate;
+
+	@Column(nullable = false)
+	private BigDecimal delta;
+
+	public GoalBalanceHistory() {}
+
+	public GoalBalanceHistory(Integer savingsGoalId, LocalDate balanceDate, BigDecimal delta) {
+		this.savingsGoalId = savingsGoalId;
+		this.balanceDate = balanceDate;
+		this.delta = delta;
+	}
+
+	/**
+	 * @param total The sum of newly compacted entries of the day
+	 */
+	public void add(BigDecimal total) {
+		this.delta = this.delta.add(total);
+	}
+
+	public Integer getSavingsGoalId() {
+		return savingsGoalId;
+	}
+
+	public LocalDate getBalanceDate() {
+		return balanceDate;
+	}
+
+	public BigDecimal getDelta() {
+		return delta;
+	}
+
+	public Key getKey() {
+		return new Key(savingsGoalId, balanceDate);
+	}
+
+	@Override
+	public String toString() {
+		return "GoalBalanceHistory [savingsGoalId=" + savingsGoalId + ", balanceDate=" + balanceDate + ", delta=" + delta + "]";
+	}
+
+	/**
+	 * Identifier of a history row: the goal and the day.
+	 */
+	public static class Key implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Integer savingsGoalId;
+
+		private LocalDate balanceDate;
+
+		public Key() {}
+
+		public Key(Integer savingsGoalId, LocalDate balanceDate) {
+			this.savingsGoalId = savingsGoalId;
+			this.balanceDate = balanceDate;
+		}
+
+		public Integer getSavingsGoalId() {
+			return savingsGoalId;
+		}
+
+		public LocalDate getBalanceDate() {
+			return balanceDate;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key that = (Key) o;
+			return Objects.equals(savingsGoalId, that.savingsGoalId) && Objects.equals(balanceDate, that.balanceDate);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(savingsGoalId, balanceDate);
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package com.brenner.budgetmanager.ledger;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA interface to the daily goal balance history.
+ */
+public interface GoalBalanceHistoryRepository extends JpaRepository<GoalBalanceHistory, GoalBalanceHistory.Key> {
+
+	/**
+	 * Retrieves the days of a range on which a goal's balance changed.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param from First day of the range
+	 * @param to Last day of the range
+	 * @return The rows in day order
+	 */
+	@Query("select h from GoalBalanceHistory h where h.savingsGoalId = :savingsGoalId and h.balanceDate between :from and :to "
+			+ "order by h.balanceDate")
+	List<GoalBalanceHistory> findRange(@Param("savingsGoalId") Integer savingsGoalId, @Param("from") LocalDate from,
+			@Param("to") LocalDate to);
+
+	/**
+	 * Adds up the changes of a goal's balance before a day.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param day The first day not included
+	 * @return The sum; 0 if there were no changes
+	 */
+	@Query("select coalesce(sum(h.delta), 0) from GoalBalanceHistory h where h.savingsGoalId = :savingsGoalId "
+			+ "and h.balanceDate < :day")
+	BigDecimal sumBefore(@Param("savingsGoalId") Integer savingsGoalId, @Param("day") LocalDate day);
+
+	/**
+	 * Retrieves the rows of some goals on some days; used to find the rows a compaction batch adds to.
+	 *
+	 * @return The rows of any of the goals on any of the days
+	 */
+	List<GoalBalanceHistory> findAllBySavingsGoalIdInAndBalanceDateIn(Collection<Integer> savingsGoalIds,
+			Collection<LocalDate> days);
+
+}
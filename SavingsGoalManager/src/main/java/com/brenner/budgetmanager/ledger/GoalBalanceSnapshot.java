@@ -0,0 +1,68 @@
+package com.brenner.budgetmanager.ledger;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * A goal's balance up to the ledger entries marked as compacted. Only the compaction job (and the one-off seeding
+ * from the old balance column) writes snapshots, so recording a balance change never touches this row.
+ */
+@Entity
+@Table(name = "goal_balance_snapshots")
+public class GoalBalanceSnapshot {
+
+	@Id
+	private Integer savingsGoalId;
+
+	@Column(nullable = false)
+	private BigDecimal balance;
+
+	@Column(nullable = false)
+	private Date snapshotAt;
+
+	@Version
+	@Column(columnDefinition = "bigint default 0 not null")
+	private Long version;
+
+	public GoalBalanceSnapshot() {}
+
+	public GoalBalanceSnapshot(Integer savingsGoalId, BigDecimal balance, Date snapshotAt) {
+		this.savingsGoalId = savingsGoalId;
+		this.balance = balance;
+		this.snapshotAt = snapshotAt;
+	}
+
+	/**
+	 * Rolls the snapshot forward by the total of newly compacted entries.
+	 *
+	 * @param total The sum of the entries' deltas
+	 * @param now The time of the compaction
+	 */
+	public void add(BigDecimal total, Date now) {
+		this.balance = this.balance.add(total);
+		this.snapshotAt = now;
+	}
+
+	public Integer getSavingsGoalId() {
+		return savingsGoalId;
+	}
+
+	public BigDecimal getBalance() {
+		return balance;
+	}
+
+	public Date getSnapshotAt() {
+		return snapshotAt;
+	}
+
+	public Long getVersion() {
+		return version;
+	}
+
+	@Override
+	public String toString() {
+		return "GoalBalanceSnapshot [savingsGoalId=" + savingsGoalId + ", balance=" + balance + ", snapshotAt="
+				+ snapshotAt + ", version=" + version + "]";
+	}
+}
@@ -0,0 +1,70 @@
+package com.brenner.budgetmanager.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * Carries the balances of an existing database over to the goal ledger. Balances used to be kept in the
+ * current_balance column of savings_goals, which is no longer written; each goal that has a value there and no
+ * snapshot yet gets a snapshot of it. The step is idempotent and runs on each start, after Hibernate has created the
+ * snapshot table. The old column is left as it was.
+ *
+ * Snapshots written before the daily balance history existed are carried over to it as well: a goal without history
+ * rows gets one holding its whole snapshot balance on the day of the snapshot, so its history adds up to the snapshot.
+ *
+ * Only PostgreSQL databases are migrated; the embedded databases used elsewhere are created from scratch.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+@Slf4j
+public class GoalBalanceSnapshotMigration {
+
+    private static final String SEED_SNAPSHOTS_SQL =
+            "INSERT INTO goal_balance_snapshots (savings_goal_id, balance, snapshot_at, version) "
+            + "SELECT g.savings_goal_id, g.current_balance, now(), 0 FROM savings_goals g "
+            + "WHERE g.current_balance IS NOT NULL AND NOT EXISTS "
+            + "(SELECT 1 FROM goal_balance_snapshots s WHERE s.savings_goal_id = g.savings_goal_id)";
+
+    private static final String SEED_HISTORY_SQL =
+            "INSERT INTO goal_balance_history (savings_goal_id, balance_date, delta) "
+            + "SELECT s.savings_goal_id, CAST(s.snapshot_at AS date), s.balance FROM goal_balance_snapshots s "
+            + "WHERE s.balance <> 0 AND NOT EXISTS "
+            + "(SELECT 1 FROM goal_balance_history h WHERE h.savings_goal_id = s.savings_goal_id)";
+
+    @Autowired
+    DataSource dataSource;
+
+    @PostConstruct
+    void migrate() throws MetaDataAccessException {
+
+        String database = JdbcUtils.extractDatabaseMetaData(this.dataSource, DatabaseMetaData::getDatabaseProductName);
+        if (!"PostgreSQL".equals(database)) {
+            log.debug("Skipping goal balance migration on " + database);
+            return;
+        }
+
+        JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+        Boolean columnExists = jdbc.queryForObject("SELECT EXISTS (SELECT 1 FROM information_schema.columns "
+                + "WHERE table_name = 'savings_goals' AND column_name = 'current_balance')", Boolean.class);
+        if (Boolean.TRUE.equals(columnExists)) {
+            int seeded = jdbc.update(SEED_SNAPSHOTS_SQL);
+            if (seeded > 0) {
+                log.info("Seeded " + seeded + " goal balance snapshots from savings_goals.current_balance");
+            }
+        }
+
+        int seededHistory = jdbc.update(SEED_HISTORY_SQL);
+        if (seededHistory > 0) {
+            log.info("Seeded " + seededHistory + " goal balance history rows from goal_balance_snapshots");
+        }
+    }
+}
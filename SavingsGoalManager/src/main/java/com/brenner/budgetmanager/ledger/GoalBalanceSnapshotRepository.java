@@ -0,0 +1,9 @@
+package com.brenner.budgetmanager.ledger;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+/**
+ * JPA interface to the goal balance snapshots.
+ */
+public interface GoalBalanceSnapshotRepository extends JpaRepository<GoalBalanceSnapshot, Integer> {
+}
@@ -0,0 +1,113 @@
+package com.brenner.budgetmanager.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The source of truth for goal balances. A balance change is recorded by appending a {@link GoalLedgerEntry}; rows are
+ * never updated for it, so concurrent changes to the same goal do not wait for each other. A goal's balance is its
+ * {@link GoalBalanceSnapshot} plus the entries not compacted into it yet, which SavingsGoal reads with
+ * {@link #CURRENT_BALANCE_FORMULA} in the same statement as the goal. {@link GoalLedgerCompactionJob} rolls the
+ * snapshots forward so the entries to add stay few.
+ */
+@Service
+@Slf4j
+public class GoalLedger {
+
+	/**
+	 * SQL deriving the balance of the goal in the current row of savings_goals. Unqualified columns refer to that row,
+	 * as in a Hibernate formula.
+	 */
+	public static final String CURRENT_BALANCE_FORMULA = "(coalesce((select s.balance from goal_balance_snapshots s "
+			+ "where s.savings_goal_id = savings_goal_id), 0) + coalesce((select sum(e.delta) from goal_ledger e "
+			+ "where e.savings_goal_id = savings_goal_id and not e.compacted), 0))";
+
+	@Autowired
+	GoalLedgerRepository ledgerRepo;
+
+	@Autowired
+	GoalBalanceHistoryRepository historyRepo;
+
+	@Autowired
+	Clock clock;
+
+	/**
+	 * Records balance changes. The entries are flushed as one JDBC batch, so balances read afterwards in the same
+	 * transaction include them. Zero deltas are not recorded.
+	 *
+	 * @param deltas Amount to add (or subtract when negative) keyed by the goal's unique identifier
+	 * @param source What caused the changes
+	 */
+	@Transactional
+	public void append(Map<Integer, BigDecimal> deltas, GoalLedgerSource source) {
+
+		Date now = new Date(this.clock.millis());
+		List<GoalLedgerEntry> entries = new ArrayList<>(deltas.size());
+		deltas.forEach((savingsGoalId, delta) -> {
+			if (delta != null && delta.signum() != 0) {
+				entries.add(new GoalLedgerEntry(savingsGoalId, delta, source, now));
+			}
+		});
+
+		if (! entries.isEmpty()) {
+			log.debug("Appending {} goal ledger entries: {} {}", entries.size(), source, deltas);
+			this.ledgerRepo.saveAllAndFlush(entries);
+		}
+	}
+
+	/**
+	 * Retrieves a goal's balance at the end of each day of a range, from its {@link GoalBalanceHistory} and the entries
+	 * not compacted into it yet. Both are read from one database snapshot so a compaction committing in between is
+	 * counted neither twice nor not at all.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param from First day of the range
+	 * @param to Last day of the range, not before from
+	 * @return One point per day in day order
+	 */
+	@Transactional(readOnly = true, isolation = Isolation.REPEATABLE_READ)
+	public List<BalancePoint> getDailyBalances(Integer savingsGoalId, LocalDate from, LocalDate to) {
+
+		BigDecimal balance = this.historyRepo.sumBefore(savingsGoalId, from);
+		Map<LocalDate, BigDecimal> changes = new TreeMap<>();
+		for (GoalBalanceHistory day : this.historyRepo.findRange(savingsGoalId, from, to)) {
+			changes.merge(day.getBalanceDate(), day.getDelta(), BigDecimal::add);
+		}
+		for (GoalLedgerEntry entry : this.ledgerRepo.findUncompactedByGoal(savingsGoalId)) {
+			LocalDate day = dayOf(entry.getCreatedAt());
+			if (day.isBefore(from)) {
+				balance = balance.add(entry.getDelta());
+			}
+			else if (! day.isAfter(to)) {
+				changes.merge(day, entry.getDelta(), BigDecimal::add);
+			}
+		}
+
+		List<BalancePoint> points = new ArrayList<>();
+		for (LocalDate day = from; ! day.isAfter(to); day = day.plusDays(1)) {
+			balance = balance.add(changes.getOrDefault(day, BigDecimal.ZERO));
+			points.add(new BalancePoint(day, balance));
+		}
+		return points;
+	}
+
+	/**
+	 * @return The day, in the JVM's time zone, a ledger entry counts towards in the balance history
+	 */
+	static LocalDate dayOf(Date createdAt) {
+		return createdAt.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+	}
+}
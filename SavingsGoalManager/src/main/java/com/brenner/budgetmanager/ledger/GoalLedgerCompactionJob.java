@@ -0,0 +1,151 @@
+package com.brenner.budgetmanager.ledger;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Folds goal ledger entries into the goals' balance snapshots, at the times given by
+ * {@code budgetmanager.ledger.compaction.cron}, so a balance never has more than the entries since the last run to
+ * add up. The same entries are added to the {@link GoalBalanceHistory} rows of the days they were recorded on.
+ *
+ * The oldest uncompacted entries are taken in batches of {@code budgetmanager.ledger.compaction.batch-size}. Each batch
+ * is marked as compacted and added to the snapshots and the history in one transaction, so a balance read in a single
+ * statement sees either the old snapshot with the entries or the new snapshot without them. Entries committed meanwhile
+ * stay uncompacted for the next batch or run, whatever their ids.
+ *
+ * Runs never overlap; a batch that finds some of its entries already compacted (by another instance) is rolled back.
+ */
+@Component
+@Slf4j
+public class GoalLedgerCompactionJob {
+
+	@Autowired
+	GoalLedgerRepository ledgerRepo;
+
+	@Autowired
+	GoalBalanceSnapshotRepository snapshotRepo;
+
+	@Autowired
+	GoalBalanceHistoryRepository historyRepo;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	Clock clock;
+
+	@Value("${budgetmanager.ledger.compaction.batch-size:1000}")
+	int batchSize;
+
+	private final ReentrantLock running = new ReentrantLock();
+
+	/**
+	 * Scheduled entry point.
+	 */
+	@Scheduled(cron = "${budgetmanager.ledger.compaction.cron:0 */10 * * * *}")
+	public void scheduledCompaction() {
+		compact();
+	}
+
+	/**
+	 * Folds all entries that are uncompacted when the run starts, plus any committed while it runs.
+	 *
+	 * @return The number of entries compacted
+	 */
+	public int compact() {
+
+		this.running.lock();
+		try {
+			TransactionTemplate transaction = new TransactionTemplate(this.transactionManager);
+			int total = 0;
+			Integer compacted;
+			do {
+				compacted = transaction.execute(status -> compactBatch());
+				total += compacted == null ? 0 : compacted;
+			} while (compacted != null && compacted == this.batchSize);
+
+			if (total > 0) {
+				log.info("Compacted {} goal ledger entries", total);
+			}
+			return total;
+		}
+		finally {
+			this.running.unlock();
+		}
+	}
+
+	private int compactBatch() {
+
+		List<GoalLedgerEntry> entries = this.ledgerRepo.findUncompacted(PageRequest.of(0, this.batchSize));
+		if (entries.isEmpty()) {
+			return 0;
+		}
+
+		Map<Integer, BigDecimal> totals = new LinkedHashMap<>();
+		Map<GoalBalanceHistory.Key, BigDecimal> dayTotals = new LinkedHashMap<>();
+		List<Long> entryIds = new ArrayList<>(entries.size());
+		for (GoalLedgerEntry entry : entries) {
+			totals.merge(entry.getSavingsGoalId(), entry.getDelta(), BigDecimal::add);
+			dayTotals.merge(new GoalBalanceHistory.Key(entry.getSavingsGoalId(), GoalLedger.dayOf(entry.getCreatedAt())),
+					entry.getDelta(), BigDecimal::add);
+			entryIds.add(entry.getEntryId());
+		}
+
+		int marked = this.ledgerRepo.markCompacted(entryIds);
+		if (marked != entryIds.size()) {
+			throw new IllegalStateException("Goal ledger entries were compacted concurrently; " + marked + " of "
+					+ entryIds.size() + " could be marked.");
+		}
+
+		Date now = new Date(this.clock.millis());
+		Map<Integer, GoalBalanceSnapshot> snapshots = this.snapshotRepo.findAllById(totals.keySet()).stream()
+				.collect(Collectors.toMap(GoalBalanceSnapshot::getSavingsGoalId, Function.identity()));
+		List<GoalBalanceSnapshot> changed = new ArrayList<>(totals.size());
+		totals.forEach((savingsGoalId, total) -> {
+			GoalBalanceSnapshot snapshot = snapshots.computeIfAbsent(savingsGoalId,
+					id -> new GoalBalanceSnapshot(id, BigDecimal.ZERO, now));
+			snapshot.add(total, now);
+			changed.add(snapshot);
+		});
+		this.snapshotRepo.saveAll(changed);
+
+		Set<LocalDate> days = dayTotals.keySet().stream().map(GoalBalanceHistory.Key::getBalanceDate)
+				.collect(Collectors.toSet());
+		Map<GoalBalanceHistory.Key, GoalBalanceHistory> history = this.historyRepo
+				.findAllBySavingsGoalIdInAndBalanceDateIn(totals.keySet(), days).stream()
+				.collect(Collectors.toMap(GoalBalanceHistory::getKey, Function.identity()));
+		List<GoalBalanceHistory> changedDays = new ArrayList<>(dayTotals.size());
+		dayTotals.forEach((key, total) -> {
+			GoalBalanceHistory day = history.get(key);
+			if (day == null) {
+				day = new GoalBalanceHistory(key.getSavingsGoalId(), key.getBalanceDate(), total);
+			}
+			else {
+				day.add(total);
+			}
+			changedDays.add(day);
+		});
+		this.historyRepo.saveAll(changedDays);
+
+		return entries.size();
+	}
+}
@@ -0,0 +1,84 @@
+package com.brenner.budgetmanager.ledger;
+
+import com.brenner.budgetmanager.persistence.PooledSequenceGenerator;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * One change of a goal's balance. Entries are only ever inserted; the compaction job marks the ones it has folded into
+ * the goal's {@link GoalBalanceSnapshot} as compacted and changes nothing else.
+ *
+ * The goal is referenced by id only, so the history of a deleted goal is kept.
+ */
+@Entity
+@Table(name = "goal_ledger", indexes = {
+		@Index(name = "goal_ledger_goal_idx", columnList = "savingsGoalId, compacted"),
+		@Index(name = "goal_ledger_compacted_idx", columnList = "compacted, entryId")
+})
+public class GoalLedgerEntry {
+
+	@Id
+	@GeneratedValue(generator = "goal_ledger_seq")
+	@GenericGenerator(name = "goal_ledger_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "goal_ledger_seq"))
+	private Long entryId;
+
+	@Column(nullable = false)
+	private Integer savingsGoalId;
+
+	@Column(nullable = false)
+	private BigDecimal delta;
+
+	@Enumerated(EnumType.STRING)
+	@Column(nullable = false, length = 32)
+	private GoalLedgerSource source;
+
+	@Column(nullable = false)
+	private Date createdAt;
+
+	private boolean compacted;
+
+	public GoalLedgerEntry() {}
+
+	public GoalLedgerEntry(Integer savingsGoalId, BigDecimal delta, GoalLedgerSource source, Date createdAt) {
+		this.savingsGoalId = savingsGoalId;
+		this.delta = delta;
+		this.source = source;
+		this.createdAt = createdAt;
+	}
+
+	public Long getEntryId() {
+		return entryId;
+	}
+
+	public Integer getSavingsGoalId() {
+		return savingsGoalId;
+	}
+
+	public BigDecimal getDelta() {
+		return delta;
+	}
+
+	public GoalLedgerSource getSource() {
+		return source;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public boolean isCompacted() {
+		return compacted;
+	}
+
+	@Override
+	public String toString() {
+		return "GoalLedgerEntry [entryId=" + entryId + ", savingsGoalId=" + savingsGoalId + ", delta=" + delta
+				+ ", source=" + source + ", createdAt=" + createdAt + ", compacted=" + compacted + "]";
+	}
+}
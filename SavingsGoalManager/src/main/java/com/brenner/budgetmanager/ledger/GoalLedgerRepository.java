@@ -0,0 +1,46 @@
+package com.brenner.budgetmanager.ledger;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA interface to the goal ledger.
+ */
+public interface GoalLedgerRepository extends JpaRepository<GoalLedgerEntry, Long> {
+
+	/**
+	 * Retrieves the oldest entries that have not been folded into a snapshot yet.
+	 *
+	 * @param pageable The number of entries to retrieve
+	 * @return The entries in id order
+	 */
+	@Query("select e from GoalLedgerEntry e where e.compacted = false order by e.entryId")
+	List<GoalLedgerEntry> findUncompacted(Pageable pageable);
+
+	/**
+	 * Retrieves a goal's entries that have not been folded into its snapshot and history yet.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @return The entries in id order
+	 */
+	@Query("select e from GoalLedgerEntry e where e.savingsGoalId = :savingsGoalId and e.compacted = false "
+			+ "order by e.entryId")
+	List<GoalLedgerEntry> findUncompactedByGoal(@Param("savingsGoalId") Integer savingsGoalId);
+
+	/**
+	 * Marks entries as folded into their goals' snapshots.
+	 *
+	 * @param entryIds The entries' unique identifiers
+	 * @return The number of entries marked; less than requested if some were already compacted
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update GoalLedgerEntry e set e.compacted = true where e.entryId in :entryIds and e.compacted = false")
+	int markCompacted(@Param("entryIds") Collection<Long> entryIds);
+
+}
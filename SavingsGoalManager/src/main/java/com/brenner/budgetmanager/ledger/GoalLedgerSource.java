@@ -0,0 +1,19 @@
+package com.brenner.budgetmanager.ledger;
+
+/**
+ * What caused a change of a goal's balance.
+ */
+public enum GoalLedgerSource {
+
+	/** A deposit allocated towards the goal, or its unallocated remainder going to the default goal */
+	DEPOSIT_ALLOCATION,
+
+	/** A transaction moving an amount from one goal to another, or its reversal */
+	TRANSFER,
+
+	/** The balance of a deleted goal moving to the default goal */
+	GOAL_DELETION,
+
+	/** A balance set directly on the goal, including the opening balance of a new goal */
+	MANUAL_ADJUSTMENT
+}
@@ -0,0 +1,108 @@
+package com.brenner.budgetmanager.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prepares the id sequences of the entities before Hibernate starts. Ids used to come from IDENTITY columns, so an
+ * existing database has rows but no sequences. For each sequence this
+ * <ul>
+ *     <li>creates it if it does not exist,</li>
+ *     <li>sets its increment to the configured allocation size, which the pooled optimizer relies on, and</li>
+ *     <li>moves it past the ids already in the table, so the next block (nextval - increment, nextval] is unused.</li>
+ * </ul>
+ * Every step is idempotent and runs on each start, so changing the allocation size of a profile needs no manual step.
+ * Raising the increment of a pooled sequence never reuses ids, because blocks already handed out end at the current
+ * value of the sequence.
+ *
+ * Only PostgreSQL databases are migrated; the embedded databases used elsewhere are created from scratch.
+ */
+@Component
+@Slf4j
+public class IdSequenceMigration {
+
+    /** Sequences backing the entity ids with the table and id column they number */
+    static final List<IdSequence> SEQUENCES = Arrays.asList(
+            new IdSequence("savings_goals_seq", "savings_goals", "savings_goal_id"),
+            new IdSequence("deposits_seq", "deposits", "deposit_id"),
+            new IdSequence("transaction_seq", "transaction", "transaction_id"),
+            new IdSequence("goal_ledger_seq", "goal_ledger", "entry_id"));
+
+    @Autowired
+    DataSource dataSource;
+
+    @Value("${budgetmanager.id.allocation-size:" + PooledSequenceGenerator.DEFAULT_ALLOCATION_SIZE + "}")
+    int allocationSize;
+
+    @PostConstruct
+    void migrate() throws MetaDataAccessException {
+
+        String database = JdbcUtils.extractDatabaseMetaData(this.dataSource, DatabaseMetaData::getDatabaseProductName);
+        if (!"PostgreSQL".equals(database)) {
+            log.debug("Skipping id sequence migration on " + database);
+            return;
+        }
+
+        JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+        for (IdSequence sequence : SEQUENCES) {
+            migrate(jdbc, sequence);
+        }
+    }
+
+    private void migrate(JdbcTemplate jdbc, IdSequence sequence) {
+
+        jdbc.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence.name + " START WITH 1 INCREMENT BY " + this.allocationSize);
+        jdbc.execute("ALTER SEQUENCE " + sequence.name + " INCREMENT BY " + this.allocationSize);
+
+        Boolean tableExists = jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, sequence.table);
+        if (!Boolean.TRUE.equals(tableExists)) {
+            return;
+        }
+
+        Long maxId = jdbc.queryForObject("SELECT MAX(" + sequence.idColumn + ") FROM \"" + sequence.table + "\"", Long.class);
+        Long lastValue = jdbc.queryForObject("SELECT last_value FROM " + sequence.name, Long.class);
+        if (maxId != null && lastValue < maxId) {
+            jdbc.queryForObject("SELECT setval(?, ?)", Long.class, sequence.name, maxId);
+            log.info("Moved id sequence " + sequence.name + " from " + lastValue + " to " + maxId);
+        }
+    }
+
+    static final class IdSequence {
+
+        final String name;
+
+        final String table;
+
+        final String idColumn;
+
+        IdSequence(String name, String table, String idColumn) {
+            this.name = name;
+            this.table = table;
+            this.idColumn = idColumn;
+        }
+    }
+
+    /**
+     * Makes the entity manager factory, and with it Hibernate's schema handling and id generators, wait for the
+     * migration.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(IdSequenceMigration.class);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.brenner.budgetmanager.persistence;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.util.Properties;
+
+/**
+ * Sequence id generator using the pooled optimizer, so an entity takes a block of ids per sequence call and Hibernate
+ * can batch its inserts; an IDENTITY column would need one round trip per row and turns insert batching off.
+ *
+ * The block size is not fixed in the mapping but read from the Hibernate setting {@link #ALLOCATION_SIZE_SETTING}, so
+ * each profile can choose its own. The database sequence must increment by the same amount, which
+ * {@link IdSequenceMigration} ensures before Hibernate starts.
+ *
+ * Usage:
+ * <pre>
+ * &#64;GeneratedValue(generator = "deposits_seq")
+ * &#64;GenericGenerator(name = "deposits_seq", strategy = PooledSequenceGenerator.STRATEGY,
+ *         parameters = &#64;Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "deposits_seq"))
+ * </pre>
+ */
+public class PooledSequenceGenerator extends SequenceStyleGenerator {
+
+    /** Class name to use as the strategy of a GenericGenerator */
+    public static final String STRATEGY = "com.brenner.budgetmanager.persistence.PooledSequenceGenerator";
+
+    /** Hibernate setting holding the number of ids taken per sequence call */
+    public static final String ALLOCATION_SIZE_SETTING = "budgetmanager.id.allocation_size";
+
+    /** Block size used when the setting is missing */
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+
+        int allocationSize = serviceRegistry.getService(ConfigurationService.class)
+                .getSetting(ALLOCATION_SIZE_SETTING, value -> Integer.valueOf(value.toString()), DEFAULT_ALLOCATION_SIZE);
+        if (allocationSize < 1) {
+            throw new MappingException(ALLOCATION_SIZE_SETTING + " must be at least 1 but was " + allocationSize);
+        }
+
+        params.setProperty(INCREMENT_PARAM, String.valueOf(allocationSize));
+        params.setProperty(OPT_PARAM, StandardOptimizerDescriptor.POOLED.getExternalName());
+
+        super.configure(type, params, serviceRegistry);
+    }
+}
@@ -0,0 +1,25 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import java.math.BigDecimal;
+
+/**
+ * A manual change to a goal's balance: the amount to add, or to subtract when negative.
+ */
+public class BalanceAdjustment {
+
+    private BigDecimal amount;
+
+    public BalanceAdjustment() {}
+
+    public BalanceAdjustment(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+}
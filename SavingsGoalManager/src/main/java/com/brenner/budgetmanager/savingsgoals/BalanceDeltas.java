@@ -0,0 +1,88 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The balance changes a deposit allocation or a transaction makes: an amount per goal and, for allocations, the
+ * remainder that goes to the default goal. Only the arithmetic lives here, so the blocking and the reactive APIs apply
+ * the same rules; applying the changes is left to the caller.
+ * @see SavingsGoalsBusinessService#applyBalanceDeltas
+ */
+public class BalanceDeltas {
+
+	private final Map<Integer, BigDecimal> goalDeltas;
+
+	private final BigDecimal defaultGoalDelta;
+
+	private BalanceDeltas(Map<Integer, BigDecimal> goalDeltas, BigDecimal defaultGoalDelta) {
+		this.goalDeltas = Collections.unmodifiableMap(goalDeltas);
+		this.defaultGoalDelta = defaultGoalDelta;
+	}
+
+	/**
+	 * Allocates a deposit towards goals. Amounts for the same goal are added up and whatever is not allocated goes to
+	 * the default goal.
+	 *
+	 * @param depositAmount The total amount of the allocated deposits
+	 * @param savingsGoalIds The goals to allocate to
+	 * @param amounts The amount for each goal, in the same order as the goals
+	 * @return The goal deltas in the order the goals were first given and the default goal remainder
+	 */
+	public static BalanceDeltas forAllocation(BigDecimal depositAmount, List<Integer> savingsGoalIds, List<BigDecimal> amounts) {
+
+		BigDecimal remainingDeposit = depositAmount;
+		Map<Integer, BigDecimal> deltas = new LinkedHashMap<>();
+		for (int i=0; i<savingsGoalIds.size(); i++) {
+			BigDecimal amount = amounts.get(i);
+			deltas.merge(savingsGoalIds.get(i), amount, BigDecimal::add);
+			remainingDeposit = remainingDeposit.subtract(amount);
+		}
+
+		return new BalanceDeltas(deltas, remainingDeposit);
+	}
+
+	/**
+	 * Moves an amount between two goals. The from goal changes by the given delta and the to goal by the opposite
+	 * amount. A transaction without a to goal, or with the same goal on both sides, only changes the from goal. The
+	 * default goal is left untouched.
+	 *
+	 * @param fromGoalId The goal the transaction is from
+	 * @param toGoalId The goal the transaction is to, or null
+	 * @param fromGoalDelta The change to apply to the from goal; the negated amount applies a transaction, the amount
+	 *                      reverses it
+	 * @return The goal deltas
+	 */
+	public static BalanceDeltas forTransaction(Integer fromGoalId, Integer toGoalId, BigDecimal fromGoalDelta) {
+
+		Map<Integer, BigDecimal> deltas = new LinkedHashMap<>();
+		deltas.put(fromGoalId, fromGoalDelta);
+		if (toGoalId != null && ! toGoalId.equals(fromGoalId)) {
+			deltas.put(toGoalId, fromGoalDelta.negate());
+		}
+
+		return new BalanceDeltas(deltas, null);
+	}
+
+	/**
+	 * @return Amount to add (or subtract when negative) keyed by the goal's unique identifier
+	 */
+	public Map<Integer, BigDecimal> getGoalDeltas() {
+		return this.goalDeltas;
+	}
+
+	/**
+	 * @return Amount to add to the default goal, or null to leave it untouched
+	 */
+	public BigDecimal getDefaultGoalDelta() {
+		return this.defaultGoalDelta;
+	}
+
+	@Override
+	public String toString() {
+		return "BalanceDeltas [goalDeltas=" + this.goalDeltas + ", defaultGoalDelta=" + this.defaultGoalDelta + "]";
+	}
+}
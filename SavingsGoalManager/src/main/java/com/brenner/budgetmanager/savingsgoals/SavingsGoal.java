@@ -1,5 +1,12 @@
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.ledger.GoalLedger;
+import com.brenner.budgetmanager.persistence.PooledSequenceGenerator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
@@ -13,10 +20,13 @@ import java.util.Date;
  */
 @Entity
 @Table(name = "savings_goals")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class SavingsGoal {
 
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "savings_goals_seq")
+	@GenericGenerator(name = "savings_goals_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "savings_goals_seq"))
     private Integer savingsGoalId;
     
     private String goalName;
@@ -43,12 +53,19 @@ public class SavingsGoal {
     
     private BigDecimal initialBalance;
     
+    /** Derived from the goal ledger when the goal is read; changes are recorded with {@link GoalLedger#append} */
+    @Formula(GoalLedger.CURRENT_BALANCE_FORMULA)
     private BigDecimal currentBalance;
     
     private boolean isDefault;
     
     private String notes;
     
+    /** Optimistic locking version; existing rows start at 0 when the column is added */
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+    
     public SavingsGoal() {}
     
     public SavingsGoal(Integer savingsGoalId, String goalName, Date savingsStartDate, Date savingsEndDate,
@@ -174,6 +191,14 @@ public class SavingsGoal {
     public void setNotes(String notes) {
         this.notes = notes;
     }
+    
+    public Long getVersion() {
+        return version;
+    }
+    
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 
     public BigDecimal getInitialBalance() {
 		return initialBalance;
@@ -227,6 +252,6 @@ public class SavingsGoal {
 				+ ", monthsTillPayment=" + monthsTillPayment + ", weeksTillPayment=" + weeksTillPayment
 				+ ", daysTillPayment=" + daysTillPayment + ", savingsPerMonth=" + savingsPerMonth + ", savingsPerWeek="
 				+ savingsPerWeek + ", savingsPerDay=" + savingsPerDay + ", initialBalance=" + initialBalance
-				+ ", currentBalance=" + currentBalance + ", isDefault=" + isDefault + ", notes=" + notes + "]";
+				+ ", currentBalance=" + currentBalance + ", isDefault=" + isDefault + ", notes=" + notes + ", version=" + version + "]";
 	}
 }
@@ -0,0 +1,21 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import java.util.List;
+
+/**
+ * Repository fragment for writing back recalculated savings plans without loading the goals into the persistence
+ * context.
+ */
+public interface SavingsGoalPlanRepository {
+	
+	/**
+	 * Writes the periods till payment and the savings per period of each goal. A goal is only written if its version
+	 * is unchanged; the version is not incremented, because the plan is derived from the other fields and a client
+	 * holding the goal is not out of date. All of the changes are sent to the database as a single JDBC batch.
+	 *
+	 * @param goals The goals with their recalculated plans
+	 * @return The identifiers of any goals that were changed or deleted since they were read and were not written
+	 */
+	List<Integer> updateSavingsPlans(List<SavingsGoal> goals);
+
+}
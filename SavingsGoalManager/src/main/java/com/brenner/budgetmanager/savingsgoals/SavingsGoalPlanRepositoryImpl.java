@@ -0,0 +1,44 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC implementation of {@link SavingsGoalPlanRepository}.
+ */
+public class SavingsGoalPlanRepositoryImpl implements SavingsGoalPlanRepository {
+	
+	private static final String UPDATE_PLAN_SQL =
+			"update savings_goals set months_till_payment = ?, weeks_till_payment = ?, days_till_payment = ?, "
+					+ "savings_per_month = ?, savings_per_week = ?, savings_per_day = ? "
+					+ "where savings_goal_id = ? and version = ?";
+	
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+	
+	@Override
+	public List<Integer> updateSavingsPlans(List<SavingsGoal> goals) {
+		
+		List<Object[]> batchArgs = new ArrayList<>(goals.size());
+		for (SavingsGoal goal : goals) {
+			batchArgs.add(new Object[] {goal.getMonthsTillPayment(), goal.getWeeksTillPayment(),
+					goal.getDaysTillPayment(), goal.getSavingsPerMonth(), goal.getSavingsPerWeek(),
+					goal.getSavingsPerDay(), goal.getSavingsGoalId(), goal.getVersion()});
+		}
+		
+		int[] updateCounts = this.jdbcTemplate.batchUpdate(UPDATE_PLAN_SQL, batchArgs);
+		
+		List<Integer> skippedGoalIds = new ArrayList<>();
+		for (int i = 0; i < updateCounts.length; i++) {
+			if (updateCounts[i] == 0) {
+				skippedGoalIds.add(goals.get(i).getSavingsGoalId());
+			}
+		}
+		
+		return skippedGoalIds;
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import com.brenner.budgetmanager.util.DataVersions;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the persisted savings plans of running goals current. The plan is counted from today (see
+ * {@link SavingsPlanCalculator}), so it changes every day while the goal is not saved.
+ *
+ * Once a day, at the time given by {@code budgetmanager.refresh.cron}, the goals that have started are read and their
+ * plans recalculated in chunks of {@code budgetmanager.refresh.chunk-size} on {@code budgetmanager.refresh.parallelism}
+ * threads. Only goals whose plan actually changed are written back, one JDBC batch per chunk. A goal saved while the
+ * job runs keeps the plan calculated by the save.
+ *
+ * Runs never overlap; a run requested while another is in progress waits for it.
+ */
+@Component
+@Slf4j
+public class SavingsGoalRefreshJob {
+
+	@Autowired
+	SavingsGoalRepository savingsGoalRepo;
+
+	@Autowired
+	SavingsPlanCalculator savingsPlanCalculator;
+
+	@Autowired
+	SavingsGoalSnapshotCache goalCache;
+
+	@Autowired
+	DataVersions dataVersions;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	Clock clock;
+
+	@Value("${budgetmanager.refresh.chunk-size:500}")
+	int chunkSize;
+
+	@Value("${budgetmanager.refresh.parallelism:4}")
+	int parallelism;
+
+	private final ReentrantLock running = new ReentrantLock();
+
+	private volatile SavingsGoalRefreshReport lastReport;
+
+	/**
+	 * Scheduled entry point.
+	 */
+	@Scheduled(cron = "${budgetmanager.refresh.cron:0 5 0 * * *}")
+	public void scheduledRefresh() {
+		refresh();
+	}
+
+	/**
+	 * Recalculates the savings plans of all started goals and writes back the ones that changed.
+	 *
+	 * @return The report of the run
+	 */
+	public SavingsGoalRefreshReport refresh() {
+
+		this.running.lock();
+		try {
+			long startNanos = System.nanoTime();
+			long now = this.clock.millis();
+
+			List<SavingsGoal> candidates = this.savingsGoalRepo.findRefreshCandidates(new Date(now));
+
+			List<Future<int[]>> results = new ArrayList<>();
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.parallelism));
+			try {
+				for (int from = 0; from < candidates.size(); from += this.chunkSize) {
+					List<SavingsGoal> chunk = candidates.subList(from, Math.min(from + this.chunkSize, candidates.size()));
+					results.add(executor.submit(() -> refreshChunk(chunk, now)));
+				}
+
+				int changed = 0;
+				int skipped = 0;
+				for (Future<int[]> result : results) {
+					int[] counts = result.get();
+					changed += counts[0];
+					skipped += counts[1];
+				}
+
+				if (changed > 0) {
+					this.goalCache.invalidate();
+					this.dataVersions.changed(DataVersions.Collection.SAVINGS_GOALS);
+				}
+
+				SavingsGoalRefreshReport report = new SavingsGoalRefreshReport(new Date(now), candidates.size(), changed,
+						skipped, (System.nanoTime() - startNanos) / 1_000_000);
+				log.info("Savings goal refresh: {}", report);
+				this.lastReport = report;
+				return report;
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Savings goal refresh was interrupted", e);
+			}
+			catch (ExecutionException e) {
+				throw new IllegalStateException("Savings goal refresh failed", e.getCause());
+			}
+			finally {
+				executor.shutdownNow();
+			}
+		}
+		finally {
+			this.running.unlock();
+		}
+	}
+
+	/**
+	 * @return The changed goals written and the changed goals skipped because they were saved in the meantime
+	 */
+	private int[] refreshChunk(List<SavingsGoal> chunk, long now) {
+
+		List<SavingsGoal> changed = new ArrayList<>();
+		for (SavingsGoal goal : chunk) {
+			SavingsGoal refreshed = new SavingsGoal();
+			BeanUtils.copyProperties(goal, refreshed);
+			this.savingsPlanCalculator.applyTo(refreshed, now);
+			if (SavingsPlanCalculator.planChanged(goal, refreshed)) {
+				changed.add(refreshed);
+			}
+		}
+
+		if (changed.isEmpty()) {
+			return new int[] {0, 0};
+		}
+
+		List<Integer> skipped = new TransactionTemplate(this.transactionManager)
+				.execute(status -> this.savingsGoalRepo.updateSavingsPlans(changed));
+		int skippedCount = skipped == null ? 0 : skipped.size();
+		return new int[] {changed.size() - skippedCount, skippedCount};
+	}
+
+	/**
+	 * @return The report of the last completed run or null if there has been none
+	 */
+	public SavingsGoalRefreshReport getLastReport() {
+		return this.lastReport;
+	}
+}
@@ -0,0 +1,61 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import java.util.Date;
+
+/**
+ * Outcome of a run of the {@link SavingsGoalRefreshJob}.
+ */
+public class SavingsGoalRefreshReport {
+
+	private final Date asOf;
+
+	private final int goalsScanned;
+
+	private final int goalsChanged;
+
+	private final int goalsSkipped;
+
+	private final long durationMillis;
+
+	/**
+	 * @param asOf Time the plans were calculated for
+	 * @param goalsScanned Number of started goals whose plan was recalculated
+	 * @param goalsChanged Number of goals whose changed plan was written
+	 * @param goalsSkipped Number of goals with a changed plan that were saved during the run and not written
+	 * @param durationMillis Duration of the run
+	 */
+	public SavingsGoalRefreshReport(Date asOf, int goalsScanned, int goalsChanged, int goalsSkipped,
+			long durationMillis) {
+		this.asOf = asOf;
+		this.goalsScanned = goalsScanned;
+		this.goalsChanged = goalsChanged;
+		this.goalsSkipped = goalsSkipped;
+		this.durationMillis = durationMillis;
+	}
+
+	public Date getAsOf() {
+		return asOf;
+	}
+
+	public int getGoalsScanned() {
+		return goalsScanned;
+	}
+
+	public int getGoalsChanged() {
+		return goalsChanged;
+	}
+
+	public int getGoalsSkipped() {
+		return goalsSkipped;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "SavingsGoalRefreshReport [asOf=" + asOf + ", goalsScanned=" + goalsScanned + ", goalsChanged="
+				+ goalsChanged + ", goalsSkipped=" + goalsSkipped + ", durationMillis=" + durationMillis + "]";
+	}
+}
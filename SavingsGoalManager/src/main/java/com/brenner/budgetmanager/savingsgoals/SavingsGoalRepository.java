@@ -3,23 +3,113 @@
  */
 package com.brenner.budgetmanager.savingsgoals;
 
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
+
 /**
  *
  * @author dbrenner
  * 
  */
 @Repository
-public interface SavingsGoalRepository extends JpaRepository<SavingsGoal, Integer> {
+public interface SavingsGoalRepository extends JpaRepository<SavingsGoal, Integer>, SavingsGoalPlanRepository {
 	
 	Optional<SavingsGoal> findByIsDefault(boolean isDefault);
 	
 	List<SavingsGoal> findAllByIsDefaultFalse(Sort sort);
+	
+	/**
+	 * Retrieves a goal and locks its row until the end of the current transaction.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @return An Optional of the locked goal
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select g from SavingsGoal g where g.savingsGoalId = :savingsGoalId")
+	Optional<SavingsGoal> findByIdForUpdate(@Param("savingsGoalId") Integer savingsGoalId);
+	
+	/**
+	 * Retrieves goals together with their balance as derived from the goal ledger at the time of the query. The balance
+	 * is returned next to the goal because a goal already managed by the persistence context keeps the balance it was
+	 * first read with.
+	 *
+	 * @param savingsGoalIds The goals' unique identifiers
+	 * @return Pairs of goal and current balance; goals that do not exist are left out
+	 */
+	@Query("select g, g.currentBalance from SavingsGoal g where g.savingsGoalId in :savingsGoalIds")
+	List<Object[]> findAllWithCurrentBalanceById(@Param("savingsGoalIds") Collection<Integer> savingsGoalIds);
+	
+	/**
+	 * Retrieves goals with their current balance freshly derived from the goal ledger, including changes appended
+	 * earlier in the current transaction.
+	 *
+	 * @param savingsGoalIds The goals' unique identifiers
+	 * @return The goals; goals that do not exist are left out
+	 */
+	default List<SavingsGoal> findAllByIdWithCurrentBalance(Collection<Integer> savingsGoalIds) {
+		
+		List<SavingsGoal> goals = new ArrayList<>(savingsGoalIds.size());
+		for (Object[] row : findAllWithCurrentBalanceById(savingsGoalIds)) {
+			SavingsGoal goal = (SavingsGoal) row[0];
+			goal.setCurrentBalance((BigDecimal) row[1]);
+			goals.add(goal);
+		}
+		return goals;
+	}
+	
+	/**
+	 * Derives the current balance of a goal from the goal ledger.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @return The balance or null if the goal does not exist
+	 */
+	@Query("select g.currentBalance from SavingsGoal g where g.savingsGoalId = :savingsGoalId")
+	BigDecimal findCurrentBalance(@Param("savingsGoalId") Integer savingsGoalId);
+	
+	/**
+	 * Streams all goals sorted by name over a database cursor. The stream must be consumed and closed inside a
+	 * transaction.
+	 *
+	 * @return The stream of read-only goals
+	 */
+	@QueryHints({
+			@QueryHint(name = HINT_FETCH_SIZE, value = JsonStreamWriter.FETCH_SIZE),
+			@QueryHint(name = HINT_READONLY, value = "true")
+	})
+	@Query("select g from SavingsGoal g order by g.goalName")
+	Stream<SavingsGoal> streamAll();
+	
+	/**
+	 * Retrieves the goals whose savings plan depends on the current date: goals other than the default goal that have
+	 * started and have everything the plan is calculated from.
+	 *
+	 * @param now The current time
+	 * @return The read-only goals in id order
+	 */
+	@QueryHints(@QueryHint(name = HINT_READONLY, value = "true"))
+	@Query("select g from SavingsGoal g where g.isDefault = false and g.savingsStartDate <= :now "
+			+ "and g.savingsEndDate is not null and g.targetAmount is not null "
+			+ "order by g.savingsGoalId")
+	List<SavingsGoal> findRefreshCandidates(@Param("now") Date now);
 
 }
@@ -0,0 +1,168 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds an immutable, name-sorted snapshot of all savings goals so the goal lists and the default goal can be served
+ * without querying the database. The snapshot is replaced as a whole (copy-on-write) rather than changed in place.
+ *
+ * Any write to goals must call {@link #invalidate()}. Every invalidation starts a new generation; a snapshot loaded
+ * during an older generation is never served, so a reader racing a writer cannot reinstall stale goals. When called
+ * inside a transaction the invalidation is repeated after the transaction completes, because a reader may load the
+ * old, still committed state until then.
+ *
+ * The snapshot holds detached copies and hands out copies, so callers can change the goals they receive freely.
+ */
+@Component
+@Slf4j
+public class SavingsGoalSnapshotCache {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param loader Loads all goals sorted by goal name when there is no current snapshot
+     * @return Copies of all goals sorted by goal name
+     */
+    public List<SavingsGoal> getAllGoals(Supplier<List<SavingsGoal>> loader) {
+        return copies(current(loader).allGoals);
+    }
+
+    /**
+     * @param loader Loads all goals sorted by goal name when there is no current snapshot
+     * @return Copies of all goals except the default goal sorted by goal name
+     */
+    public List<SavingsGoal> getGoalsButDefault(Supplier<List<SavingsGoal>> loader) {
+        return copies(current(loader).goalsButDefault);
+    }
+
+    /**
+     * @param loader Loads all goals sorted by goal name when there is no current snapshot
+     * @return A copy of the default goal or Optional.empty() if there is none
+     */
+    public Optional<SavingsGoal> getDefaultGoal(Supplier<List<SavingsGoal>> loader) {
+        SavingsGoal defaultGoal = current(loader).defaultGoal;
+        return defaultGoal == null ? Optional.empty() : Optional.of(copy(defaultGoal));
+    }
+
+    /**
+     * Discards the current snapshot. Inside a transaction the snapshot is discarded again once the transaction has
+     * completed.
+     */
+    public void invalidate() {
+        discard();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    discard();
+                }
+            });
+        }
+    }
+
+    private void discard() {
+        this.invalidations.incrementAndGet();
+        this.generation.incrementAndGet();
+        this.snapshot.set(null);
+    }
+
+    private Snapshot current(Supplier<List<SavingsGoal>> loader) {
+
+        Snapshot current = this.snapshot.get();
+        if (current != null && current.generation == this.generation.get()) {
+            this.hits.incrementAndGet();
+            return current;
+        }
+
+        this.misses.incrementAndGet();
+        long loadGeneration = this.generation.get();
+        Snapshot loaded = new Snapshot(loadGeneration, loader.get());
+        log.debug("Loaded goal snapshot generation {} with {} goals", loadGeneration, loaded.allGoals.size());
+
+        if (loadGeneration == this.generation.get()) {
+            this.snapshot.compareAndSet(current, loaded);
+        }
+        return loaded;
+    }
+
+    private static List<SavingsGoal> copies(List<SavingsGoal> goals) {
+        List<SavingsGoal> copies = new ArrayList<>(goals.size());
+        for (SavingsGoal goal : goals) {
+            copies.add(copy(goal));
+        }
+        return copies;
+    }
+
+    private static SavingsGoal copy(SavingsGoal goal) {
+        SavingsGoal copy = new SavingsGoal();
+        BeanUtils.copyProperties(goal, copy);
+        return copy;
+    }
+
+    /** @return The number of reads served from the snapshot */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /** @return The number of reads that had to load the goals */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /** @return The number of times the snapshot was discarded */
+    public long getInvalidationCount() {
+        return this.invalidations.get();
+    }
+
+    private static final class Snapshot {
+
+        private final long generation;
+
+        private final List<SavingsGoal> allGoals;
+
+        private final List<SavingsGoal> goalsButDefault;
+
+        private final SavingsGoal defaultGoal;
+
+        Snapshot(long generation, List<SavingsGoal> sortedGoals) {
+            this.generation = generation;
+
+            List<SavingsGoal> allGoals = copies(sortedGoals);
+            List<SavingsGoal> goalsButDefault = new ArrayList<>(allGoals.size());
+            SavingsGoal defaultGoal = null;
+            for (SavingsGoal goal : allGoals) {
+                if (goal.isDefault()) {
+                    defaultGoal = goal;
+                }
+                else {
+                    goalsButDefault.add(goal);
+                }
+            }
+
+            this.allGoals = Collections.unmodifiableList(allGoals);
+            this.goalsButDefault = Collections.unmodifiableList(goalsButDefault);
+            this.defaultGoal = defaultGoal;
+        }
+    }
+}
@@ -3,12 +3,23 @@
  */
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.BalancePoint;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,30 +37,103 @@ public class SavingsGoalsApi {
 	@Autowired
 	SavingsGoalsBusinessService service;
 	
+	@Autowired
+	JsonStreamWriter jsonStreamWriter;
+	
+	@Autowired
+	SavingsGoalRefreshJob refreshJob;
+	
+	@Autowired
+	IdempotencyStore idempotencyStore;
+	
+	@Autowired
+	DataVersions dataVersions;
+	
 	/**
-	 * Access to the list of savings goals.
+	 * Access to the list of savings goals. The response carries an ETag and Last-Modified header; a request whose
+	 * If-None-Match or If-Modified-Since header still matches gets a 304 without the goals being read.
 	 *
+	 * @param request The request with its conditional headers
 	 * @return An unordered list of all savings goals.
 	 */
 	@GetMapping(path = "/savingsgoals")
-	public List<SavingsGoal> getAllSavingsGoals() {
-		List<SavingsGoal> goals = this.service.getAllSavingsGoals();
-		return goals;
+	public ResponseEntity<List<SavingsGoal>> getAllSavingsGoals(WebRequest request) {
+		return this.dataVersions.conditionalGet(request, DataVersions.Collection.SAVINGS_GOALS,
+				this.service::getAllSavingsGoals);
 	}
 	
 	/**
-	 * Access to retrieve the specific default goal. A 404 is generated if there is no default goal.
+	 * Access to export all savings goals sorted by name. The JSON array is written while the goals are read so memory
+	 * use does not depend on the number of goals.
 	 *
+	 * @return The streamed list of savings goals
+	 */
+	@GetMapping(path = "/savingsgoals/stream")
+	public ResponseEntity<StreamingResponseBody> streamSavingsGoals() {
+		return this.jsonStreamWriter.stream(this.service::streamAllSavingsGoals);
+	}
+	
+	/**
+	 * Access to retrieve the specific default goal. A 404 is generated if there is no default goal. Conditional
+	 * requests are answered as for the list of goals.
+	 *
+	 * @param request The request with its conditional headers
 	 * @return The goal marked as a default.
 	 */
 	@GetMapping(path="/savingsgoals/defaultgoal")
-	public SavingsGoal getDefaultGoal() {
-		Optional<SavingsGoal> optGoal = this.service.findDefaultGoal();
-		if (optGoal.isEmpty()) {
-			throw new NotFoundException("Default goal does not exist.");
+	public ResponseEntity<SavingsGoal> getDefaultGoal(WebRequest request) {
+		return this.dataVersions.conditionalGet(request, DataVersions.Collection.SAVINGS_GOALS, () -> {
+			Optional<SavingsGoal> optGoal = this.service.findDefaultGoal();
+			if (optGoal.isEmpty()) {
+				throw new NotFoundException("Default goal does not exist.");
+			}
+			
+			return optGoal.get();
+		});
+	}
+	
+	/**
+	 * Access to a goal's balance history for charting. A 404 is generated if the goal does not exist and a 400 if the
+	 * range or the number of points is invalid.
+	 *
+	 * @param id The goal's unique identifier
+	 * @param from First day (yyyy-MM-dd); defaults to the goal's savings start date
+	 * @param to Last day (yyyy-MM-dd); defaults to today
+	 * @param points The most points to return; longer ranges are downsampled
+	 * @return The balance at the end of each returned day, in day order
+	 */
+	@GetMapping(path="/savingsgoals/{id}/history")
+	public List<BalancePoint> getBalanceHistory(@PathVariable Integer id,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			@RequestParam(required = false) Integer points) {
+		return this.service.getBalanceHistory(id, from, to, points);
+	}
+	
+	/**
+	 * Access to the report of the last refresh of the savings plans. A 404 is generated if no refresh has run since the
+	 * application started.
+	 *
+	 * @return The report of the last refresh
+	 */
+	@GetMapping(path="/savingsgoals/refresh")
+	public SavingsGoalRefreshReport getLastRefresh() {
+		SavingsGoalRefreshReport report = this.refreshJob.getLastReport();
+		if (report == null) {
+			throw new NotFoundException("No savings goal refresh has run yet.");
 		}
 		
-		return optGoal.get();
+		return report;
+	}
+	
+	/**
+	 * Access to refresh the savings plans of all goals now instead of waiting for the daily refresh.
+	 *
+	 * @return The report of the refresh
+	 */
+	@PostMapping(path="/savingsgoals/refresh")
+	public SavingsGoalRefreshReport refreshSavingsPlans() {
+		return this.refreshJob.refresh();
 	}
 	
 	/**
@@ -68,17 +152,28 @@ public class SavingsGoalsApi {
 	}
 	
 	/**
-	 * Access to allocate amounts to goals associated with a specific deposit.
+	 * Access to allocate amounts to goals associated with a specific deposit. A retry sent with the same
+	 * Idempotency-Key succeeds without splitting the deposit again.
+	 * @see IdempotencyStore
 	 *
+	 * @param idempotencyKey Optional key identifying the request across retries
 	 * @param savingsGoalDepositAllocations The list of allocations
 	 */
 	@PutMapping(path="/savingsgoals/allocateDeposit")
-	public void allocateDepositToGoals(@RequestBody SavingsGoalDepositAllocation savingsGoalDepositAllocations) {
-		this.service.allocateDepositToGoals(savingsGoalDepositAllocations);
+	public void allocateDepositToGoals(
+			@RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+			@RequestBody SavingsGoalDepositAllocation savingsGoalDepositAllocations) {
+		this.idempotencyStore.execute(idempotencyKey, "PUT /api/savingsgoals/allocateDeposit",
+				savingsGoalDepositAllocations, Void.class, () -> {
+					this.service.allocateDepositToGoals(savingsGoalDepositAllocations);
+					return null;
+				});
 	}
 	
 	/**
-	 * Access to update a goal. If the goal to update doesn't exist a 404 will be generated.
+	 * Access to update a goal. The version the client read is required and a 400 will be generated without one. If the
+	 * goal to update doesn't exist a 404 will be generated, and if it has been changed since that version a 409. The
+	 * current balance is not updated; it is changed with an adjustment.
 	 *
 	 * @param id The goal's unique identifier
 	 * @param savingsGoal The goal data to persist
@@ -89,13 +184,18 @@ public class SavingsGoalsApi {
 		
 		log.debug("Call to update SavingsGoal: " + savingsGoal);
 		
+		if (savingsGoal.getVersion() == null) {
+			throw new InvalidRequestException("Savings goal version is required to update goal " + id + ".");
+		}
 		Optional<SavingsGoal> optionalSavingsGoal = this.service.getSavingsGoalById(id);
 		if (optionalSavingsGoal.isEmpty()) {
 			throw new NotFoundException("Savings goal with id " + id + " does not exist.");
 		}
 		
 		SavingsGoal sg = optionalSavingsGoal.get();
-		sg.setCurrentBalance(savingsGoal.getCurrentBalance());
+		if (! savingsGoal.getVersion().equals(sg.getVersion())) {
+			throw new ConflictException("Savings goal with id " + id + " was changed by another request.");
+		}
 		sg.setGoalName(savingsGoal.getGoalName());
 		sg.setInitialBalance(savingsGoal.getInitialBalance());
 		sg.setTargetAmount(savingsGoal.getTargetAmount());
@@ -104,6 +204,25 @@ public class SavingsGoalsApi {
 		return this.service.updateSavingsGoal(sg);
 	}
 	
+	/**
+	 * Access to add an amount to a goal's balance, or subtract it when negative. A 404 is generated if the goal doesn't
+	 * exist and a 400 if no amount is given. A retry sent with the same Idempotency-Key does not adjust the balance
+	 * again.
+	 * @see IdempotencyStore
+	 *
+	 * @param id The goal's unique identifier
+	 * @param idempotencyKey Optional key identifying the request across retries
+	 * @param adjustment The amount to add
+	 * @return The goal with its adjusted balance
+	 */
+	@PostMapping(path="/savingsgoals/{id}/adjustments")
+	public SavingsGoal adjustBalance(@PathVariable Integer id,
+			@RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+			@RequestBody BalanceAdjustment adjustment) {
+		return this.idempotencyStore.execute(idempotencyKey, "POST /api/savingsgoals/" + id + "/adjustments",
+				adjustment, SavingsGoal.class, () -> this.service.adjustBalance(id, adjustment.getAmount()));
+	}
+	
 	/**
 	 * Access to delete a specific goal. A 404 will be generated if the goal is not found.
 	 *
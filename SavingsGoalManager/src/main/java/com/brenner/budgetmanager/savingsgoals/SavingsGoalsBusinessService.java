@@ -1,26 +1,46 @@
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.GoalLockManager;
+import com.brenner.budgetmanager.concurrency.GroupCommitCoordinator;
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.deposit.Deposit;
 import com.brenner.budgetmanager.deposit.DepositRepository;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.BalancePoint;
+import com.brenner.budgetmanager.ledger.GoalLedger;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.LargestTriangleThreeBuckets;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
-import org.joda.time.DateTime;
-import org.joda.time.Days;
-import org.joda.time.Months;
-import org.joda.time.Weeks;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Class to abstract the data persistence routines and manage any business logic required.
+ *
+ * Calls to the public methods are timed in the budgetmanager.service metric.
  */
 @Service
+@Timed("budgetmanager.service")
 @Slf4j
 public class SavingsGoalsBusinessService {
 
@@ -29,19 +49,48 @@ public class SavingsGoalsBusinessService {
     
     @Autowired
     DepositRepository depositRepo;
+    
+    @Autowired
+    OptimisticRetryExecutor retryExecutor;
+    
+    @Autowired
+    GoalLockManager goalLockManager;
+    
+    @Autowired
+    GroupCommitCoordinator groupCommit;
+    
+    @Autowired
+    SavingsGoalSnapshotCache goalCache;
+    
+    @Autowired
+    DataVersions dataVersions;
+    
+    @Autowired
+    SavingsPlanCalculator savingsPlanCalculator;
+    
+    @Autowired
+    GoalLedger goalLedger;
+    
+    @Autowired
+    Clock clock;
+    
+    @Value("${budgetmanager.history.max-points:1000}")
+    int maxHistoryPoints;
 	
 	/**
-	 * Method to retrieve the goal that is flagged as default.
+	 * Method to retrieve the goal that is flagged as default. The goal is served from the goal snapshot.
+	 * @see SavingsGoalSnapshotCache
 	 *
 	 * @return An Optional<SavingsGoal> or Optional.empty() if there is no default goal.
 	 */
 	public Optional<SavingsGoal> findDefaultGoal() {
     	
-    	return this.savingsGoalRepo.findByIsDefault(true);
+    	return this.goalCache.getDefaultGoal(this::loadAllSavingsGoals);
     }
 	
 	/**
-	 * Handles calling persistance for a new goal. The goal is decorated before saving
+	 * Handles calling persistance for a new goal. The goal is decorated before saving. A non-zero current balance is
+	 * recorded in the goal ledger as the goal's opening balance.
 	 * @see #decorateSavingsGoal
 	 *
 	 * @param goal The goal data to persist
@@ -55,10 +104,19 @@ public class SavingsGoalsBusinessService {
         log.info("Entered saveSavingsGoal()");
         log.debug("Param: savingsGoal {}", goal);
         
-        goal = decorateSavingsGoal(goal);
-        log.debug("Decorated savingsGoal: {}", goal);
+        SavingsGoal decoratedGoal = decorateSavingsGoal(goal);
+        log.debug("Decorated savingsGoal: {}", decoratedGoal);
         
-        SavingsGoal savingsGoal = this.savingsGoalRepo.save(goal);
+        BigDecimal openingBalance = decoratedGoal.getCurrentBalance();
+        SavingsGoal savingsGoal = this.retryExecutor.execute(() -> {
+        	goalsChanged();
+        	SavingsGoal saved = this.savingsGoalRepo.save(decoratedGoal);
+        	if (openingBalance != null) {
+        		this.goalLedger.append(Collections.singletonMap(saved.getSavingsGoalId(), openingBalance),
+        				GoalLedgerSource.MANUAL_ADJUSTMENT);
+        	}
+        	return saved;
+        });
         log.debug("Saved goal: {}", savingsGoal);
         
         log.info("Exiting saveSavingsGoal()");
@@ -66,102 +124,233 @@ public class SavingsGoalsBusinessService {
     }
 	
 	/**
-	 * Handles updating a SavingsGoal. The goal is decorated before persistence.
+	 * Handles updating a SavingsGoal. The goal is decorated before persistence. If the goal was changed since the
+	 * supplied version was read a ConflictException is produced.
+	 *
+	 * The balance is not changed by an update, as allocations and transfers recorded in the goal ledger do not move the
+	 * goal's version; a supplied current balance is ignored and the goal is returned with the balance from the ledger.
+	 * The balance is changed with {@link #adjustBalance}.
 	 * @see #decorateSavingsGoal
 	 *
 	 * @param goal The goal data to persist
 	 * @return The object after persistence
 	 */
     public SavingsGoal updateSavingsGoal(SavingsGoal goal) {
+    	
+    	if (goal == null) {
+    		throw new InvalidRequestException("Goal must not be null.");
+    	}
         log.info("Entered updateSavingsGoal()");
         log.debug("Param: savingsGoal: {}", goal);
         
-        goal = this.decorateSavingsGoal(goal);
-        log.debug("Decorated savingsGoal: {}", goal);
-        
         log.info("Exiting updateSavingsGoal()");
         
-        return this.savingsGoalRepo.save(goal);
+        return this.goalLockManager.withGoalLocks(Collections.singleton(goal.getSavingsGoalId()),
+        		() -> this.retryExecutor.execute(() -> {
+        			goalsChanged();
+        			goal.setCurrentBalance(this.savingsGoalRepo.findCurrentBalance(goal.getSavingsGoalId()));
+        			SavingsGoal decoratedGoal = this.decorateSavingsGoal(goal);
+        			log.debug("Decorated savingsGoal: {}", decoratedGoal);
+        			
+        			SavingsGoal saved = this.savingsGoalRepo.save(decoratedGoal);
+        			saved.setCurrentBalance(decoratedGoal.getCurrentBalance());
+        			return saved;
+        		}));
     }
 	
+	/**
+	 * Adds an amount to a goal's balance, or subtracts it when negative, recording it in the goal ledger as a manual
+	 * adjustment. An amount rather than the new balance is taken, so allocations and transfers made since the client
+	 * read the balance are kept. A NotFoundException is produced if the goal does not exist.
+	 * @see #applyBalanceDeltas
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param amount The amount to add to the balance
+	 * @return The goal with its adjusted balance
+	 */
+	public SavingsGoal adjustBalance(Integer savingsGoalId, BigDecimal amount) {
+		
+		if (savingsGoalId == null || amount == null) {
+			throw new InvalidRequestException("Goal id and amount must be non-null.");
+		}
+		
+		return this.goalLockManager.withGoalLocks(Collections.singleton(savingsGoalId),
+				() -> this.retryExecutor.execute(() -> {
+					applyBalanceDeltas(Collections.singletonMap(savingsGoalId, amount), null,
+							GoalLedgerSource.MANUAL_ADJUSTMENT);
+					// the goal applyBalanceDeltas read and adjusted is still managed, so this does not read it again
+					return this.savingsGoalRepo.findById(savingsGoalId).get();
+				}));
+	}
+	
 	/**
 	 * Method to take a list of goal ids and a list of amounts and update their current balance. This is a fragile method and
 	 * assumes the lists members are in alignment.
 	 *
-	 * This method will retrieve each goal and update its current balance based on the allocated amount. After updates
-	 * are complete the deposit will be marked as allocated.
+	 * The allocations are appended to the goal ledger (see {@link #applyBalanceDeltas}) in one transaction,
+	 * which is retried if the deposit is changed concurrently. The deposit is marked as allocated in the same
+	 * transaction. The goals are locked in-process for the duration of the transaction; the default goal is not, as
+	 * its row is not written.
 	 *
 	 * @param depositId The deposit that allocations are derived from
 	 * @param savingGoalIds List of goal unique identifiers.
 	 * @param amountsToAllocate The amounts to allocate towards each goal.
 	 */
-    protected void allocateDepositToGoals(Long depositId, List<Integer> savingGoalIds, List<BigDecimal> amountsToAllocate) {
+    public void allocateDepositToGoals(Long depositId, List<Integer> savingGoalIds, List<BigDecimal> amountsToAllocate) {
     	
-    	Deposit deposit = this.depositRepo.findById(depositId).get();
-    	BigDecimal depositAmount = deposit.getAmount();
-    	BigDecimal remainingDeposit = depositAmount;
+    	this.groupCommit.runWithRetry(savingGoalIds, () -> allocate(depositId, savingGoalIds, amountsToAllocate));
+    }
+    
+    private void allocate(Long depositId, List<Integer> savingGoalIds, List<BigDecimal> amountsToAllocate) {
     	
-    	for (int i=0; i<savingGoalIds.size(); i++) {
-    		Integer goalId = savingGoalIds.get(i);
-    		SavingsGoal goal = this.savingsGoalRepo.findById(goalId).get();
-    		BigDecimal allocation = amountsToAllocate.get(i);
-    		goal.setCurrentBalance(goal.getCurrentBalance() == null ? allocation : goal.getCurrentBalance().add(allocation));
-    		updateSavingsGoal(goal);
-    		remainingDeposit = remainingDeposit.subtract(allocation);
-    	}
+    	Deposit deposit = this.depositRepo.findById(depositId).get();
+    	BalanceDeltas allocations = BalanceDeltas.forAllocation(deposit.getAmount(), savingGoalIds, amountsToAllocate);
     	
-    	log.debug("Remaining deposit: " + remainingDeposit);
-	
-		updateDefaultGoalBalance(remainingDeposit);
+    	log.debug("Remaining deposit: " + allocations.getDefaultGoalDelta());
     	
     	deposit.setAllocated(true);
     	this.depositRepo.save(deposit);
+    	this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+	
+		applyBalanceDeltas(allocations.getGoalDeltas(), allocations.getDefaultGoalDelta(),
+				GoalLedgerSource.DEPOSIT_ALLOCATION);
     }
 	
 	/**
 	 * Method to take a list of allocation objects
 	 *
-	 * 	 This method will retrieve each goal and update its current balance based on the allocated amount. After updates
-	 * 	 are complete the deposit will be marked as allocated.
+	 * 	 The allocations are appended to the goal ledger (see {@link #applyBalanceDeltas}) in one
+	 * 	 transaction, which is retried if a deposit is changed concurrently. The deposits are re-read by id and marked
+	 * 	 as allocated in the same transaction. The goals are locked in-process for the duration of the transaction; the
+	 * 	 default goal is not, as its row is not written.
 	 * @param savingsGoalDepositAllocation The list of goal ids and allocation amounts.
 	 */
-	protected void allocateDepositToGoals(SavingsGoalDepositAllocation savingsGoalDepositAllocation) {
+	public void allocateDepositToGoals(SavingsGoalDepositAllocation savingsGoalDepositAllocation) {
 		
-		List<Deposit> depositsInAllocation = savingsGoalDepositAllocation.getDeposits();
-		List<SavingsGoalAllocation> allocations = savingsGoalDepositAllocation.getSavingsGoalAllocations();
+		List<Integer> savingsGoalIds = savingsGoalDepositAllocation.getSavingsGoalAllocations().stream()
+				.map(SavingsGoalAllocation::getSavingsGoalId)
+				.collect(Collectors.toList());
+		
+		this.groupCommit.runWithRetry(savingsGoalIds, () -> allocate(savingsGoalDepositAllocation));
+	}
+	
+	private void allocate(SavingsGoalDepositAllocation savingsGoalDepositAllocation) {
+		
+		List<Long> depositIds = savingsGoalDepositAllocation.getDeposits().stream()
+				.map(Deposit::getDepositId)
+				.collect(Collectors.toList());
+		List<Deposit> depositsInAllocation = this.depositRepo.findAllById(depositIds);
 		
 		BigDecimal depositAmount = depositsInAllocation.stream()
 				.filter(i -> i.getAmount() != null)
 				.map(t -> t.getAmount())
 				.reduce(BigDecimal.ZERO, BigDecimal::add);
-		BigDecimal remainingDeposit = depositAmount;
+		List<SavingsGoalAllocation> goalAllocations = savingsGoalDepositAllocation.getSavingsGoalAllocations();
+		BalanceDeltas allocations = BalanceDeltas.forAllocation(depositAmount,
+				goalAllocations.stream().map(SavingsGoalAllocation::getSavingsGoalId).collect(Collectors.toList()),
+				goalAllocations.stream().map(SavingsGoalAllocation::getAllocationAmount).collect(Collectors.toList()));
+		
+		log.debug("Remaining deposit: " + allocations.getDefaultGoalDelta());
+		
+		depositsInAllocation.forEach(d -> d.setAllocated(true));
+		this.depositRepo.saveAll(depositsInAllocation);
+		this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+		
+		applyBalanceDeltas(allocations.getGoalDeltas(), allocations.getDefaultGoalDelta(),
+				GoalLedgerSource.DEPOSIT_ALLOCATION);
+	}
+	
+	/**
+	 * Discards the goal snapshot and moves the goals' data version on; every write to goals calls it.
+	 * @see SavingsGoalSnapshotCache
+	 * @see DataVersions
+	 */
+	private void goalsChanged() {
+		
+		this.goalCache.invalidate();
+		this.dataVersions.changed(DataVersions.Collection.SAVINGS_GOALS);
+	}
+	
+	/**
+	 * Records the deltas in the goal ledger. Nothing but the ledger entries is written for the balances, so concurrent
+	 * changes to the same goal neither lose each other nor wait on its row. The entries go out as one JDBC batch.
+	 * @see GoalLedger
+	 *
+	 * Derived fields depend on whether a goal has met its target, so the changed goals are read with their balance and
+	 * decorated; only goals whose derived fields actually changed are written.
+	 *
+	 * @param deltas Amount to add (or subtract when negative) keyed by the goal's unique identifier
+	 * @param defaultGoalDelta Amount to add to the default goal, or null to leave it untouched
+	 * @param source What caused the changes
+	 */
+	@Transactional
+	public void applyBalanceDeltas(Map<Integer, BigDecimal> deltas, BigDecimal defaultGoalDelta, GoalLedgerSource source) {
+		log.debug("Applying balance deltas: {}, default goal delta: {}, source: {}", deltas, defaultGoalDelta, source);
 		
-		for (SavingsGoalAllocation allocation : savingsGoalDepositAllocation.getSavingsGoalAllocations()) {
-			Integer goalId = allocation.getSavingsGoalId();
-			SavingsGoal goal = this.savingsGoalRepo.findById(goalId).get();
-			BigDecimal amount = allocation.getAllocationAmount();
-			goal.setCurrentBalance(goal.getCurrentBalance() == null ? amount : goal.getCurrentBalance().add(amount));
-			updateSavingsGoal(goal);
-			remainingDeposit = remainingDeposit.subtract(amount);
+		Map<Integer, BigDecimal> entries = new LinkedHashMap<>(deltas);
+		if (defaultGoalDelta != null && defaultGoalDelta.signum() != 0) {
+			Integer defaultGoalId = findDefaultGoal()
+					.map(SavingsGoal::getSavingsGoalId)
+					.orElseThrow(() -> new NotFoundException("A default goal could not be identified."));
+			entries.merge(defaultGoalId, defaultGoalDelta, BigDecimal::add);
 		}
+		goalsChanged();
 		
-		log.debug("Remaining deposit: " + remainingDeposit);
+		List<SavingsGoal> goals = deltas.isEmpty()
+				? Collections.emptyList() : this.savingsGoalRepo.findAllByIdWithCurrentBalance(deltas.keySet());
+		if (goals.size() < deltas.size()) {
+			List<Integer> missingGoalIds = new ArrayList<>(deltas.keySet());
+			goals.forEach(goal -> missingGoalIds.remove(goal.getSavingsGoalId()));
+			throw new NotFoundException("Savings goals with ids " + missingGoalIds + " do not exist.");
+		}
 		
-		updateDefaultGoalBalance(remainingDeposit);
+		this.goalLedger.append(entries, source);
 		
-		depositsInAllocation.forEach(d -> d.setAllocated(true));
-		this.depositRepo.saveAll(depositsInAllocation);
+		for (SavingsGoal goal : goals) {
+			goal.setCurrentBalance(goal.getCurrentBalance().add(deltas.get(goal.getSavingsGoalId())));
+			decorateSavingsGoal(goal);
+		}
+		this.savingsGoalRepo.saveAll(goals);
 	}
 	
 	/**
-	 * Any excess or shorfall in the allocation is assigned to the default goal.
+	 * Provides a reference to a goal that can be used to associate other entities with it without loading it.
 	 *
-	 * @param balanceChange Balance to assign to the default goal.
+	 * @param savingsGoalId The goal's unique identifier
+	 * @return A reference to the goal
 	 */
-	private void updateDefaultGoalBalance(BigDecimal balanceChange) {
-		SavingsGoal defaultGoal = this.savingsGoalRepo.findByIsDefault(true).get();
-		defaultGoal.setCurrentBalance(defaultGoal.getCurrentBalance() == null ? balanceChange : defaultGoal.getCurrentBalance().add(balanceChange));
-		updateSavingsGoal(defaultGoal);
+	public SavingsGoal getSavingsGoalReference(Integer savingsGoalId) {
+		
+		return this.savingsGoalRepo.getReferenceById(savingsGoalId);
+	}
+
+	/**
+	 * Reads goals into the current transaction's persistence context in one query, so references to them taken later in
+	 * the transaction are the initialized goals and can be used once it has ended.
+	 * @see #getSavingsGoalReference
+	 *
+	 * @param savingsGoalIds The goals' unique identifiers
+	 */
+	public void loadSavingsGoals(Collection<Integer> savingsGoalIds) {
+		
+		if (! savingsGoalIds.isEmpty()) {
+			this.savingsGoalRepo.findAllById(savingsGoalIds);
+		}
+	}
+
+	/**
+	 * Checks that goals exist without reading them from the database; the goals are looked up in the goal snapshot.
+	 * A NotFoundException is produced naming the goals that do not exist.
+	 *
+	 * @param savingsGoalIds The goals' unique identifiers
+	 */
+	public void requireSavingsGoals(Collection<Integer> savingsGoalIds) {
+
+		List<Integer> missingGoalIds = new ArrayList<>(savingsGoalIds);
+		getAllSavingsGoals().forEach(goal -> missingGoalIds.remove(goal.getSavingsGoalId()));
+		if (! missingGoalIds.isEmpty()) {
+			throw new NotFoundException("Savings goals with ids " + missingGoalIds + " do not exist.");
+		}
 	}
 	
 	/**
@@ -171,86 +360,73 @@ public class SavingsGoalsBusinessService {
 	 */
 	public void deleteSavingsGoal(Integer savingsGoalId) {
     	
-    	Optional<SavingsGoal> optSavingsGoal = this.savingsGoalRepo.findById(savingsGoalId);
-    	
-    	if (optSavingsGoal.isEmpty()) {
-    		throw new RuntimeException("Savings not found - can't delete.");
-    	}
-    	this.savingsGoalRepo.delete(optSavingsGoal.get());
+    	this.goalLockManager.runWithGoalLocks(Collections.singleton(savingsGoalId), () -> this.retryExecutor.runWithRetry(() -> {
+	    	Optional<SavingsGoal> optSavingsGoal = this.savingsGoalRepo.findById(savingsGoalId);
+	    	
+	    	if (optSavingsGoal.isEmpty()) {
+	    		throw new RuntimeException("Savings not found - can't delete.");
+	    	}
+	    	goalsChanged();
+	    	this.savingsGoalRepo.delete(optSavingsGoal.get());
+    	}));
     }
 	
 	/**
-	 * Method to complete derived fields like weeks till goal and dollars per month, etc.
+	 * Method to delete a specific goal after moving any positive balance it holds to the default goal. The goal's row is
+	 * locked before its balance is read so no concurrent edit can slip in before the delete; the goal is also locked
+	 * in-process, the default goal is not, as only ledger entries are written for it. A RuntimeException is produced if
+	 * the goal does not exist.
+	 *
+	 * @param savingsGoalId Goal unique identifier.
+	 */
+	public void releaseBalanceAndDeleteSavingsGoal(Integer savingsGoalId) {
+		
+		this.groupCommit.runWithRetry(Collections.singleton(savingsGoalId), () -> {
+			Optional<SavingsGoal> optSavingsGoal = this.savingsGoalRepo.findByIdForUpdate(savingsGoalId);
+			
+			if (optSavingsGoal.isEmpty()) {
+				throw new RuntimeException("Savings not found - can't delete.");
+			}
+			
+			BigDecimal currentBalance = this.savingsGoalRepo.findCurrentBalance(savingsGoalId);
+			if (currentBalance != null && currentBalance.signum() > 0) {
+				Integer defaultGoalId = findDefaultGoal()
+						.map(SavingsGoal::getSavingsGoalId)
+						.orElseThrow(() -> new NotFoundException("A default goal could not be identified."));
+				Map<Integer, BigDecimal> release = new LinkedHashMap<>();
+				release.put(savingsGoalId, currentBalance.negate());
+				release.merge(defaultGoalId, currentBalance, BigDecimal::add);
+				this.goalLedger.append(release, GoalLedgerSource.GOAL_DELETION);
+			}
+			
+			goalsChanged();
+			this.savingsGoalRepo.deleteById(savingsGoalId);
+		});
+	}
+	
+	/**
+	 * Method to complete derived fields like weeks till goal and dollars per month, etc. The fields are counted from
+	 * today and kept current by the daily {@link SavingsGoalRefreshJob}.
+	 * @see SavingsPlanCalculator
 	 *
 	 * @param goal The base goal
 	 * @return A completed entity graph.
 	 */
     public SavingsGoal decorateSavingsGoal(SavingsGoal goal) {
     	
-    	if (goal == null) {
-    		throw new InvalidRequestException("Goal must not be null.");
-    	}
-    	
-    	if (goal.isDefault() == false) {
-    		
-    		if (goal.getCurrentBalance() == null) {
-    			throw new InvalidRequestException("Goal must have a non-null current balance.");
-    		}
-    		
-	        DateTime startDate = new DateTime(goal.getSavingsStartDate().getTime());
-	        DateTime endDate = new DateTime(goal.getSavingsEndDate().getTime());
-	        
-	        BigDecimal targetAmount = goal.getTargetAmount();
-	        
-	        if (goal.getCurrentBalance().compareTo(targetAmount) >= 0) {
-	        	goal.setSavingsPerDay(BigDecimal.valueOf(0));
-	        	goal.setSavingsPerMonth(BigDecimal.valueOf(0));
-	        	goal.setSavingsPerWeek(BigDecimal.valueOf(0));
-	        }
-	        else {
-				BigDecimal initialBalance = goal.getInitialBalance() != null ? goal.getInitialBalance() : BigDecimal.valueOf(0);
-				BigDecimal targetBalance = targetAmount.subtract(initialBalance);
-		        
-		        Months months = Months.monthsBetween(startDate, endDate);
-		        log.debug("months between: {}", months.getMonths());
-		        goal.setMonthsTillPayment(months.getMonths());
-		        if (months.getMonths() > 0) {
-					BigDecimal savingsPerMonth = targetBalance.floatValue() > 0 ?
-							targetBalance.divide(BigDecimal.valueOf(months.getMonths()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0);
-		        	log.debug("savingsPerMonth: {}", savingsPerMonth);;
-		        	goal.setSavingsPerMonth(savingsPerMonth);
-		        }
-		        
-		        Weeks weeks = Weeks.weeksBetween(startDate, endDate);
-		        log.debug("Weeks between: {}", weeks.getWeeks());
-		        goal.setWeeksTillPayment(weeks.getWeeks());
-				BigDecimal savingsPerWeek = targetBalance.floatValue() > 0 ?
-						targetBalance.divide(BigDecimal.valueOf(weeks.getWeeks()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0);
-		        log.debug("savingsPerWeek: {}", savingsPerWeek);
-		        goal.setSavingsPerWeek(savingsPerWeek);
-		        
-		        Days days = Days.daysBetween(startDate, endDate);
-		        log.debug("days between: {}", days.getDays());
-		        goal.setDaysTillPayment(days.getDays());
-				BigDecimal savingsPerDay = targetBalance.floatValue() > 0 ?
-						targetBalance.divide(BigDecimal.valueOf(days.getDays()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0);
-		        log.debug("savingsPerDay: {}", savingsPerDay);
-		        goal.setSavingsPerDay(savingsPerDay);
-	        }
-    	}
-        
-        return goal;
+    	return this.savingsPlanCalculator.decorate(goal, this.clock.millis());
     }
 	
 	/**
-	 * Retrieves all of the savings goals except the default goal which needs special handling.
+	 * Retrieves all of the savings goals except the default goal which needs special handling. The goals are served from
+	 * the goal snapshot.
 	 *
 	 * @return The list of Savings Goals
 	 */
 	public List<SavingsGoal> getAllSavingsGoalsButDefault() {
         log.info("Entered getAllSavingsGoalsButDefault()");
         
-        List<SavingsGoal> goals = this.savingsGoalRepo.findAllByIsDefaultFalse(Sort.by(Sort.Direction.ASC, "goalName"));
+        List<SavingsGoal> goals = this.goalCache.getGoalsButDefault(this::loadAllSavingsGoals);
         log.debug("Returing {} savingsGoals", goals != null ? goals.size() : 0);
         
         log.info("Exiting getAllSavingsGoalsButDefault()");
@@ -277,12 +453,66 @@ public class SavingsGoalsBusinessService {
     }
 	
 	/**
-	 * Access to a list of all goals sorted by goal name.
+	 * Retrieves a goal's balance at the end of each day of a range, downsampled for charting when there are more days
+	 * than points requested. The first and last days are always included, as are the peaks and troughs the shape of the
+	 * chart depends on.
+	 * @see LargestTriangleThreeBuckets
+	 *
+	 * @param goalId The goal's unique identifier
+	 * @param from First day of the range; defaults to the goal's savings start date, or today if it has none
+	 * @param to Last day of the range; defaults to today
+	 * @param points The most points to return, from 3 to budgetmanager.history.max-points; defaults to the maximum
+	 * @return The points in day order
+	 */
+	public List<BalancePoint> getBalanceHistory(Integer goalId, LocalDate from, LocalDate to, Integer points) {
+		
+		SavingsGoal goal = getSavingsGoalById(goalId)
+				.orElseThrow(() -> new NotFoundException("Savings goal with id " + goalId + " does not exist."));
+		
+		int threshold = points == null ? this.maxHistoryPoints : points;
+		if (threshold < 3 || threshold > this.maxHistoryPoints) {
+			throw new InvalidRequestException("Points must be between 3 and " + this.maxHistoryPoints + ".");
+		}
+		
+		LocalDate end = to == null ? LocalDate.now(this.clock) : to;
+		LocalDate start = from;
+		if (start == null) {
+			start = goal.getSavingsStartDate() == null ? end
+					: goal.getSavingsStartDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+		}
+		if (start.isAfter(end)) {
+			throw new InvalidRequestException("The history must start on or before " + end + ".");
+		}
+		
+		List<BalancePoint> daily = this.goalLedger.getDailyBalances(goalId, start, end);
+		return LargestTriangleThreeBuckets.downsample(daily, threshold,
+				point -> point.getDate().toEpochDay(), point -> point.getBalance().doubleValue());
+	}
+	
+	/**
+	 * Access to a list of all goals sorted by goal name. The goals are served from the goal snapshot.
 	 *
 	 * @return The sorted list of goals
 	 */
 	public List<SavingsGoal> getAllSavingsGoals() {
     	
-    	return this.savingsGoalRepo.findAll(Sort.by(Sort.Direction.ASC, "goalName"));
+    	return this.goalCache.getAllGoals(this::loadAllSavingsGoals);
     }
+	
+	/**
+	 * Streams all goals sorted by goal name straight from the database. The stream must be consumed and closed inside a
+	 * transaction.
+	 * @see com.brenner.budgetmanager.util.JsonStreamWriter
+	 *
+	 * @return The stream of goals
+	 */
+	public Stream<SavingsGoal> streamAllSavingsGoals() {
+		
+		return this.savingsGoalRepo.streamAll();
+	}
+	
+	private List<SavingsGoal> loadAllSavingsGoals() {
+		
+		return this.savingsGoalRepo.findAll(Sort.by(Sort.Direction.ASC, "goalName"));
+	}
 }
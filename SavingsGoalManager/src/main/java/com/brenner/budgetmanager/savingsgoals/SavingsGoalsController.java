@@ -1,7 +1,9 @@
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
 import com.brenner.budgetmanager.deposit.Deposit;
 import com.brenner.budgetmanager.deposit.DepositBusinessService;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.exception.NotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,8 +15,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * MVC controller implementation to bridge the browser interface with the SavingsGoals business service.
@@ -30,9 +34,12 @@ public class SavingsGoalsController {
     @Autowired
     DepositBusinessService depositsService;
     
+    @Autowired
+    IdempotencyStore idempotencyStore;
+    
     /**
      * Entry point for allocating a deposit with a set of goals. This method also retrieved the default goal and will
-     * generate a 404 if it's not found.
+     * generate a 404 if it's not found. The form gets a fresh token so a resubmission allocates the deposit only once.
      *
      * @param depositId The deposit unique identifier
      * @param model The model to contain the data for the view
@@ -58,6 +65,7 @@ public class SavingsGoalsController {
     	model.addAttribute("deposit", optDeposit.get());
     	model.addAttribute("savingsGoals", goals);
     	model.addAttribute("unplannedGoal", unplannedGoal);
+    	model.addAttribute(IdempotencyStore.FORM_TOKEN, UUID.randomUUID().toString());
     	
     	return "savingsgoals/associateDepositWithGoals";
     }
@@ -68,17 +76,21 @@ public class SavingsGoalsController {
      * @param depositId The unique deposit the allocations are derived from.
      * @param savingsGoalIds The List of savings goal ids to allocate against
      * @param amountTowardsGoal The List of amounts to allocate
+     * @param idempotencyToken The token rendered into the form; a resubmission with it does not allocate again
      * @return A redirect to the list of deposits not yet allocated
      */
     @RequestMapping("allocateDeposit")
     public String allocatedDepositToGoals(
     		@RequestParam(name="depositId") Long depositId,
     		@RequestParam(name="savingsGoalId") List<Integer> savingsGoalIds,
-    		@RequestParam(name="amountTowardsGoal") List<BigDecimal> amountTowardsGoal) {
+    		@RequestParam(name="amountTowardsGoal") List<BigDecimal> amountTowardsGoal,
+    		@RequestParam(name=IdempotencyStore.FORM_TOKEN, required=false) String idempotencyToken) {
     	
-    	this.savingsGoalService.allocateDepositToGoals(depositId, savingsGoalIds, amountTowardsGoal);
-    	
-    	return "redirect:getUnallocatedDeposits";
+    	return this.idempotencyStore.execute(idempotencyToken, "allocateDeposit",
+    			Arrays.asList(depositId, savingsGoalIds, amountTowardsGoal), String.class, () -> {
+    		this.savingsGoalService.allocateDepositToGoals(depositId, savingsGoalIds, amountTowardsGoal);
+    		return "redirect:getUnallocatedDeposits";
+    	});
     }
     
     /**
@@ -125,7 +137,8 @@ public class SavingsGoalsController {
     }
     
     /**
-     * Entry point for the edit goal process
+     * Entry point for the edit goal process. The form gets a fresh token so a resubmission adjusts the balance only
+     * once.
      *
      * @param savingsGoalIdStr The goal's unique identifier
      * @param model The model for transmitted data to the view
@@ -143,31 +156,46 @@ public class SavingsGoalsController {
         
         SavingsGoal goal = optionalSavingsGoal.get();
         model.addAttribute("savingsGoal", goal);
+        model.addAttribute(IdempotencyStore.FORM_TOKEN, UUID.randomUUID().toString());
         
         return "savingsgoals/editSavingsGoal";
     }
     
     /**
-     * Method to persist changes to a goal. If the goal cannot be found then a 404 is returned.
+     * Method to persist changes to a goal. If the form carries no version then a 400 is returned, and if the goal
+     * cannot be found then a 404 is returned. The balance is not
+     * taken from the goal; a non-zero balance adjustment is added to it instead.
      *
      * @param savingsGoal The updated goal data
+     * @param balanceAdjustment Optional amount to add to the goal's balance
+     * @param idempotencyToken The token rendered into the form; a resubmission with it does not update again
      * @return A redirect to the start of the add goal process
      */
     @RequestMapping("updateSavingsGoal")
-    public String updateSavingsGoal(@ModelAttribute("savingsGoal") SavingsGoal savingsGoal) {
+    public String updateSavingsGoal(@ModelAttribute("savingsGoal") SavingsGoal savingsGoal,
+    		@RequestParam(name="balanceAdjustment", required=false) BigDecimal balanceAdjustment,
+    		@RequestParam(name=IdempotencyStore.FORM_TOKEN, required=false) String idempotencyToken) {
     
+        if (savingsGoal.getVersion() == null) {
+            throw new InvalidRequestException("Savings goal version is required to update goal " + savingsGoal.getSavingsGoalId() + ".");
+        }
         Optional<SavingsGoal> optionalSavingsGoal = this.savingsGoalService.getSavingsGoalById(savingsGoal.getSavingsGoalId());
         if (optionalSavingsGoal.isEmpty()) {
             throw new NotFoundException("Savings goal with id " + savingsGoal.getSavingsGoalId() + " does not exist.");
         }
-        
-        this.savingsGoalService.updateSavingsGoal(savingsGoal);
-        
-        return "redirect:startAddSavingsGoalWorkflow";
+        return this.idempotencyStore.execute(idempotencyToken, "updateSavingsGoal",
+        		Arrays.asList(savingsGoal, balanceAdjustment), String.class, () -> {
+        	this.savingsGoalService.updateSavingsGoal(savingsGoal);
+        	if (balanceAdjustment != null && balanceAdjustment.signum() != 0) {
+        		this.savingsGoalService.adjustBalance(savingsGoal.getSavingsGoalId(), balanceAdjustment);
+        	}
+        	return "redirect:startAddSavingsGoalWorkflow";
+        });
     }
     
     /**
-     * Entry ppint to delete a goal. If the goal to delete cannot be found then a 404 is returned.
+     * Entry ppint to delete a goal. Any positive balance is moved to the default goal. If the goal to delete cannot be
+     * found then a 404 is returned.
      *
      * @param savingsGoalId The goal's unique identifier.
      * @return A redirect to the start of the add goal process
@@ -185,15 +213,7 @@ public class SavingsGoalsController {
             throw new NotFoundException("A default savings goal could not be found.");
         }
     	
-    	SavingsGoal goal = optionalSavingsGoal.get();
-    	BigDecimal currentBalance = goal.getCurrentBalance();
-    	if (currentBalance.floatValue() > 0) {
-    		SavingsGoal defaultGoal = optDefaultGoal.get();
-    		defaultGoal.setCurrentBalance(defaultGoal.getCurrentBalance().add(currentBalance));
-    		this.savingsGoalService.updateSavingsGoal(defaultGoal);
-    	}
-    	
-    	this.savingsGoalService.deleteSavingsGoal(savingsGoalId);
+    	this.savingsGoalService.releaseBalanceAndDeleteSavingsGoal(savingsGoalId);
     	
     	return "redirect:startAddSavingsGoalWorkflow";
     }
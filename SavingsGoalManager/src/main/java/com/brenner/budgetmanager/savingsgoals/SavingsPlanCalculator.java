@@ -0,0 +1,202 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+
+/**
+ * Calculates the savings plan of a goal: the whole months, weeks and days left until its end date and the amount to
+ * save per month, week and day to reach the target. The time left is counted from the savings start date, or from the
+ * start of the current day once the goal has started, so the plan of a running goal changes from day to day.
+ *
+ * The periods are counted the way the Joda-Time {@code Months}, {@code Weeks} and {@code Days} periods this replaces
+ * did: on the local date and time of both instants in the calculator's time zone, counting only complete periods, and
+ * for months treating the last day of a shorter end month as a full month (Jan 31 to Feb 28 is one month). The
+ * divisors of the common period counts are created once.
+ *
+ * A goal that has less than one whole period left (or is past its end date) has to save the whole remaining amount
+ * in the current period.
+ */
+@Component
+public class SavingsPlanCalculator {
+
+    /** Divisors for period counts below this are cached; ten years of days fit */
+    static final int DIVISOR_CACHE_SIZE = 3_700;
+
+    private static final BigDecimal[] DIVISORS = new BigDecimal[DIVISOR_CACHE_SIZE];
+
+    static {
+        for (int i = 0; i < DIVISOR_CACHE_SIZE; i++) {
+            DIVISORS[i] = BigDecimal.valueOf(i);
+        }
+    }
+
+    private final ZoneId zone;
+
+    /** Calculates in the JVM's default time zone, the zone the dates of goals are created in. */
+    public SavingsPlanCalculator() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * @param zone Time zone whose local dates are counted
+     */
+    public SavingsPlanCalculator(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Validates a goal and sets its plan counted from today. The default goal has no plan and is only checked for null.
+     * This is the rule behind {@link SavingsGoalsBusinessService#decorateSavingsGoal}, kept here so every API applies
+     * the same one.
+     *
+     * @param goal The goal to complete
+     * @param now The current time in epoch milliseconds
+     * @return The goal
+     */
+    public SavingsGoal decorate(SavingsGoal goal, long now) {
+
+        if (goal == null) {
+            throw new InvalidRequestException("Goal must not be null.");
+        }
+
+        if (! goal.isDefault()) {
+
+            if (goal.getCurrentBalance() == null) {
+                throw new InvalidRequestException("Goal must have a non-null current balance.");
+            }
+
+            if (goal.getSavingsStartDate() == null || goal.getSavingsEndDate() == null || goal.getTargetAmount() == null) {
+                throw new InvalidRequestException("Goal must have a savings start date, end date and target amount.");
+            }
+
+            applyTo(goal, now);
+        }
+
+        return goal;
+    }
+
+    /**
+     * Sets the plan of a goal counted from its savings start date.
+     *
+     * @param goal The goal; its start date, end date, target amount and current balance must be set
+     * @see #applyTo(SavingsGoal, long)
+     */
+    public void applyTo(SavingsGoal goal) {
+        applyTo(goal, goal.getSavingsStartDate().getTime());
+    }
+
+    /**
+     * Sets the periods till payment and the savings per period of a goal that has not reached its target. A goal that
+     * has reached its target only gets zero savings per period.
+     *
+     * Counted from the start date, the amount to save is the target minus the initial balance. Counted from today,
+     * what has been saved since the start is no longer to be saved, so it is the target minus the current balance;
+     * a goal at its target saves nothing.
+     *
+     * @param goal The goal; its start date, end date, target amount and current balance must be set
+     * @param now The current time in epoch milliseconds; the plan is counted from the start of its day if the goal has
+     *            started by then
+     */
+    public void applyTo(SavingsGoal goal, long now) {
+
+        BigDecimal targetAmount = goal.getTargetAmount();
+        if (goal.getCurrentBalance().compareTo(targetAmount) >= 0) {
+            goal.setSavingsPerMonth(BigDecimal.ZERO);
+            goal.setSavingsPerWeek(BigDecimal.ZERO);
+            goal.setSavingsPerDay(BigDecimal.ZERO);
+            return;
+        }
+
+        LocalDateTime today = localDateTime(now).toLocalDate().atStartOfDay();
+        LocalDateTime savingsStart = localDateTime(goal.getSavingsStartDate().getTime());
+        LocalDateTime end = localDateTime(goal.getSavingsEndDate().getTime());
+
+        LocalDateTime start;
+        BigDecimal remaining;
+        if (today.isAfter(savingsStart)) {
+            start = today;
+            remaining = targetAmount.subtract(goal.getCurrentBalance());
+        }
+        else {
+            start = savingsStart;
+            remaining = goal.getInitialBalance() != null ? targetAmount.subtract(goal.getInitialBalance()) : targetAmount;
+        }
+
+        int months = monthsBetween(start, end);
+        int weeks = (int) ChronoUnit.WEEKS.between(start, end);
+        int days = (int) ChronoUnit.DAYS.between(start, end);
+
+        goal.setMonthsTillPayment(months);
+        goal.setWeeksTillPayment(weeks);
+        goal.setDaysTillPayment(days);
+        goal.setSavingsPerMonth(perPeriod(remaining, months));
+        goal.setSavingsPerWeek(perPeriod(remaining, weeks));
+        goal.setSavingsPerDay(perPeriod(remaining, days));
+    }
+
+    /**
+     * Tells whether a recalculation changed the plan of a goal, so unchanged plans need not be written.
+     *
+     * @param before The goal with its plan as read
+     * @param after The goal with its recalculated plan
+     * @return True if any period or savings per period differs
+     */
+    public static boolean planChanged(SavingsGoal before, SavingsGoal after) {
+        return !Objects.equals(before.getMonthsTillPayment(), after.getMonthsTillPayment())
+                || !Objects.equals(before.getWeeksTillPayment(), after.getWeeksTillPayment())
+                || !Objects.equals(before.getDaysTillPayment(), after.getDaysTillPayment())
+                || amountChanged(before.getSavingsPerMonth(), after.getSavingsPerMonth())
+                || amountChanged(before.getSavingsPerWeek(), after.getSavingsPerWeek())
+                || amountChanged(before.getSavingsPerDay(), after.getSavingsPerDay());
+    }
+
+    /** Compares by value, since the database returns amounts with a different scale than the calculation */
+    private static boolean amountChanged(BigDecimal before, BigDecimal after) {
+        return before == null ? after != null : after == null || before.compareTo(after) != 0;
+    }
+
+    private static BigDecimal perPeriod(BigDecimal remaining, int periods) {
+
+        if (remaining.signum() <= 0) {
+            return BigDecimal.ZERO;
+        }
+        return remaining.divide(divisor(Math.max(periods, 1)), 2, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal divisor(int periods) {
+        return periods < DIVISOR_CACHE_SIZE ? DIVISORS[periods] : BigDecimal.valueOf(periods);
+    }
+
+    private LocalDateTime localDateTime(long instant) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(instant), this.zone);
+    }
+
+    /**
+     * Counts the whole months between two local times: the months that can be added to the start without passing the
+     * end. Adding keeps the day of month, or takes the last day of a shorter month, so a month is complete once the
+     * same day of month and time of day is reached, or the last day of the end month if it is shorter.
+     * {@link ChronoUnit#MONTHS} compares the days of month of the dates instead, and moves the end back a day if its time
+     * of day is earlier, so it misses both month ends.
+     */
+    static int monthsBetween(LocalDateTime start, LocalDateTime end) {
+
+        if (end.isBefore(start)) {
+            return -monthsBetween(end, start);
+        }
+
+        long months = ChronoUnit.MONTHS.between(YearMonth.from(start), YearMonth.from(end));
+        if (start.plusMonths(months).isAfter(end)) {
+            months--;
+        }
+        return (int) months;
+    }
+}
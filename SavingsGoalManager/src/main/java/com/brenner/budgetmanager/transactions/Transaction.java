@@ -3,12 +3,17 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.persistence.PooledSequenceGenerator;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import javax.persistence.*;
 import java.math.BigDecimal;
 import java.util.Date;
+import java.util.Objects;
 
 /**
  *Entity object that represents a transaction. A transaction is the decrementing or transferring of funds from one
@@ -17,26 +22,43 @@ import java.util.Date;
  * 
  */
 @Entity
+@Table(indexes = {
+		@Index(name = "transaction_date_idx", columnList = "date, transactionId"),
+		@Index(name = "transaction_from_goal_date_idx", columnList = "from_goal_savings_goal_id, date, transactionId"),
+		@Index(name = "transaction_to_goal_date_idx", columnList = "to_goal_savings_goal_id, date, transactionId"),
+		@Index(name = "transaction_applied_idx", columnList = "applied, transactionId")
+})
 public class Transaction {
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = "transaction_seq")
+	@GenericGenerator(name = "transaction_seq", strategy = PooledSequenceGenerator.STRATEGY,
+			parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "transaction_seq"))
 	private Long transactionId;
 	
 	@DateTimeFormat(pattern = "yyyy-MM-dd")
 	private Date date;
 	
-	@ManyToOne
+	/** The join columns are named explicitly (as the default naming creates them) so the indexes can refer to them */
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "from_goal_savings_goal_id")
 	private SavingsGoal fromGoal;
 	
-	@ManyToOne
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "to_goal_savings_goal_id")
 	private SavingsGoal toGoal;
 	
 	private BigDecimal amount;
 	
 	private String notes;
 	
+	/** Whether the amount has been applied to the goals; false while a deferred transaction waits for the applier */
 	private boolean applied;
+	
+	/** Optimistic locking version; existing rows start at 0 when the column is added */
+	@Version
+	@Column(columnDefinition = "bigint default 0 not null")
+	private Long version;
 
 	/**
 	 * 
@@ -107,6 +129,21 @@ public class Transaction {
 		this.applied = applied;
 	}
 	
+	public Long getVersion() {
+		return version;
+	}
+	
+	public void setVersion(Long version) {
+		this.version = version;
+	}
+	
+	/**
+	 * Goals are compared and printed by id only; the id of a lazy goal is available without loading it.
+	 */
+	private static Integer goalId(SavingsGoal goal) {
+		return goal == null ? null : goal.getSavingsGoalId();
+	}
+	
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -118,8 +155,8 @@ public class Transaction {
 		if (transactionId != null ? !transactionId.equals(that.transactionId) : that.transactionId != null)
 			return false;
 		if (date != null ? !date.equals(that.date) : that.date != null) return false;
-		if (fromGoal != null ? !fromGoal.equals(that.fromGoal) : that.fromGoal != null) return false;
-		if (toGoal != null ? !toGoal.equals(that.toGoal) : that.toGoal != null) return false;
+		if (!Objects.equals(goalId(fromGoal), goalId(that.fromGoal))) return false;
+		if (!Objects.equals(goalId(toGoal), goalId(that.toGoal))) return false;
 		if (amount != null ? !amount.equals(that.amount) : that.amount != null) return false;
 		return notes != null ? notes.equals(that.notes) : that.notes == null;
 	}
@@ -128,8 +165,8 @@ public class Transaction {
 	public int hashCode() {
 		int result = transactionId != null ? transactionId.hashCode() : 0;
 		result = 31 * result + (date != null ? date.hashCode() : 0);
-		result = 31 * result + (fromGoal != null ? fromGoal.hashCode() : 0);
-		result = 31 * result + (toGoal != null ? toGoal.hashCode() : 0);
+		result = 31 * result + Objects.hashCode(goalId(fromGoal));
+		result = 31 * result + Objects.hashCode(goalId(toGoal));
 		result = 31 * result + (amount != null ? amount.hashCode() : 0);
 		result = 31 * result + (notes != null ? notes.hashCode() : 0);
 		result = 31 * result + (applied ? 1 : 0);
@@ -141,11 +178,12 @@ public class Transaction {
 		final StringBuilder sb = new StringBuilder("Transaction{");
 		sb.append("transactionId=").append(transactionId);
 		sb.append(", date=").append(date);
-		sb.append(", fromGoal=").append(fromGoal);
-		sb.append(", toGoal=").append(toGoal);
+		sb.append(", fromGoalId=").append(goalId(fromGoal));
+		sb.append(", toGoalId=").append(goalId(toGoal));
 		sb.append(", amount=").append(amount);
 		sb.append(", notes='").append(notes).append('\'');
 		sb.append(", applied=").append(applied);
+		sb.append(", version=").append(version);
 		sb.append('}');
 		return sb.toString();
 	}
@@ -0,0 +1,67 @@
+package com.brenner.budgetmanager.transactions;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.orm.jpa.EntityManagerFactoryDependsOnPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+
+/**
+ * Marks the transactions of an existing database as applied. Transactions used to be applied to their goals as they
+ * were saved while their applied column stayed false; the {@link TransactionApplier} would apply them a second time.
+ *
+ * The transaction_applied_idx index arrived together with the applier, so a transaction table without it has only
+ * ever been written by the old code and all its rows are applied. The step runs on each start before Hibernate, which
+ * then creates the index, so it changes rows only on the first start of an existing database.
+ *
+ * Only PostgreSQL databases are migrated; the embedded databases used elsewhere are created from scratch.
+ */
+@Component
+@Slf4j
+public class TransactionAppliedMigration {
+
+    private static final String MARK_APPLIED_SQL = "UPDATE transaction SET applied = true WHERE applied = false";
+
+    @Autowired
+    DataSource dataSource;
+
+    @PostConstruct
+    void migrate() throws MetaDataAccessException {
+
+        String database = JdbcUtils.extractDatabaseMetaData(this.dataSource, DatabaseMetaData::getDatabaseProductName);
+        if (!"PostgreSQL".equals(database)) {
+            log.debug("Skipping transaction applied migration on " + database);
+            return;
+        }
+
+        JdbcTemplate jdbc = new JdbcTemplate(this.dataSource);
+        Boolean tableExists = jdbc.queryForObject("SELECT to_regclass('transaction') IS NOT NULL", Boolean.class);
+        Boolean indexExists = jdbc.queryForObject("SELECT to_regclass('transaction_applied_idx') IS NOT NULL",
+                Boolean.class);
+        if (!Boolean.TRUE.equals(tableExists) || Boolean.TRUE.equals(indexExists)) {
+            return;
+        }
+
+        int marked = jdbc.update(MARK_APPLIED_SQL);
+        if (marked > 0) {
+            log.info("Marked " + marked + " existing transactions as applied");
+        }
+    }
+
+    /**
+     * Makes the entity manager factory, and with it Hibernate's schema handling, wait for the migration.
+     */
+    @Component
+    static class EntityManagerFactoryDependsOnMigration extends EntityManagerFactoryDependsOnPostProcessor {
+
+        EntityManagerFactoryDependsOnMigration() {
+            super(TransactionAppliedMigration.class);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.brenner.budgetmanager.transactions;
+
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Applies the transactions saved in deferred mode ({@code budgetmanager.transactions.deferred}) to their goals, at the
+ * times given by {@code budgetmanager.transactions.apply.cron}.
+ *
+ * Pending transactions are claimed in batches of {@code budgetmanager.transactions.apply.batch-size}, oldest first.
+ * The amounts of a batch are netted per goal, so each goal gets one ledger entry however many transactions of the
+ * batch touch it, and the batch is marked as applied in the same transaction. Claimed rows are locked with SKIP LOCKED,
+ * so other instances running the applier take other rows instead of waiting. A batch losing an optimistic locking race
+ * on a goal is retried.
+ *
+ * Runs never overlap; a run requested while another is in progress waits for it. The scheduled runs are skipped unless
+ * deferred mode is on, so instances that never defer do not poll the database; transactions left pending after the mode
+ * is turned off are applied by a requested run (POST /api/transactions/applier).
+ */
+@Component
+@Slf4j
+public class TransactionApplier {
+
+	@Autowired
+	TransactionRepository transactionRepo;
+
+	@Autowired
+	SavingsGoalsBusinessService savingsGoalService;
+
+	@Autowired
+	OptimisticRetryExecutor retryExecutor;
+
+	@Autowired
+	Clock clock;
+
+	@Value("${budgetmanager.transactions.apply.batch-size:500}")
+	int batchSize;
+
+	@Value("${budgetmanager.transactions.deferred:false}")
+	boolean deferred;
+
+	private final ReentrantLock running = new ReentrantLock();
+
+	private volatile Date lastRunAt;
+
+	private volatile int lastRunApplied;
+
+	private volatile long lastRunDurationMillis;
+
+	/**
+	 * Scheduled entry point; does nothing unless deferred mode is on.
+	 */
+	@Scheduled(cron = "${budgetmanager.transactions.apply.cron:* * * * * *}")
+	public void scheduledApply() {
+		if (this.deferred) {
+			applyPending();
+		}
+	}
+
+	/**
+	 * Applies all transactions that are pending when the run starts, plus any saved while it runs.
+	 *
+	 * @return The status after the run
+	 */
+	public TransactionApplierStatus applyPending() {
+
+		this.running.lock();
+		try {
+			long startNanos = System.nanoTime();
+			Date now = new Date(this.clock.millis());
+			int total = 0;
+			int applied;
+			do {
+				applied = this.retryExecutor.executeWithRetry(this::applyBatch);
+				total += applied;
+			} while (applied == this.batchSize);
+
+			if (total > 0) {
+				log.info("Applied {} deferred transactions", total);
+			}
+			this.lastRunAt = now;
+			this.lastRunApplied = total;
+			this.lastRunDurationMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			return getStatus();
+		}
+		finally {
+			this.running.unlock();
+		}
+	}
+
+	/**
+	 * @return How far behind the applier is and the outcome of its last run
+	 */
+	public TransactionApplierStatus getStatus() {
+		return new TransactionApplierStatus(this.transactionRepo.countPending(), this.lastRunAt, this.lastRunApplied,
+				this.lastRunDurationMillis);
+	}
+
+	private int applyBatch() {
+
+		List<Transaction> transactions = this.transactionRepo.claimPending(this.batchSize);
+		if (transactions.isEmpty()) {
+			return 0;
+		}
+
+		Map<Integer, BigDecimal> netDeltas = TransactionBusinessService.netDeltas(transactions);
+		log.debug("Applying {} deferred transactions with net deltas {}", transactions.size(), netDeltas);
+		this.savingsGoalService.applyBalanceDeltas(netDeltas, null, GoalLedgerSource.TRANSFER);
+
+		List<Long> transactionIds = new ArrayList<>(transactions.size());
+		transactions.forEach(transaction -> transactionIds.add(transaction.getTransactionId()));
+		int marked = this.transactionRepo.markApplied(transactionIds);
+		if (marked != transactionIds.size()) {
+			throw new IllegalStateException("Transactions were applied concurrently; " + marked + " of "
+					+ transactionIds.size() + " could be marked.");
+		}
+
+		return transactions.size();
+	}
+}
@@ -0,0 +1,52 @@
+package com.brenner.budgetmanager.transactions;
+
+import java.util.Date;
+
+/**
+ * How far behind the {@link TransactionApplier} is, and the outcome of its last run.
+ */
+public class TransactionApplierStatus {
+
+	private final long pending;
+
+	private final Date lastRunAt;
+
+	private final int lastRunApplied;
+
+	private final long lastRunDurationMillis;
+
+	/**
+	 * @param pending Number of transactions not applied to their goals yet
+	 * @param lastRunAt Start of the last run, or null if none has run since the application started
+	 * @param lastRunApplied Number of transactions the last run applied
+	 * @param lastRunDurationMillis Duration of the last run
+	 */
+	public TransactionApplierStatus(long pending, Date lastRunAt, int lastRunApplied, long lastRunDurationMillis) {
+		this.pending = pending;
+		this.lastRunAt = lastRunAt;
+		this.lastRunApplied = lastRunApplied;
+		this.lastRunDurationMillis = lastRunDurationMillis;
+	}
+
+	public long getPending() {
+		return pending;
+	}
+
+	public Date getLastRunAt() {
+		return lastRunAt;
+	}
+
+	public int getLastRunApplied() {
+		return lastRunApplied;
+	}
+
+	public long getLastRunDurationMillis() {
+		return lastRunDurationMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "TransactionApplierStatus [pending=" + pending + ", lastRunAt=" + lastRunAt + ", lastRunApplied="
+				+ lastRunApplied + ", lastRunDurationMillis=" + lastRunDurationMillis + "]";
+	}
+}
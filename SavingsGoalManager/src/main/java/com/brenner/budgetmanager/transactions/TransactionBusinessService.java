@@ -3,36 +3,84 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.GroupCommitCoordinator;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.savingsgoals.BalanceDeltas;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Sort;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
- * Business service that acts as a bridge between controllers and persistence
+ * Business service that acts as a bridge between controllers and persistence. Calls are timed in the
+ * budgetmanager.service metric.
  *
  * @author dbrenner
  * 
  */
 @Service
+@Timed("budgetmanager.service")
 @Slf4j
 public class TransactionBusinessService {
 	
+	/** Stands in for an open lower date bound so a single query shape serves all filter combinations */
+	private static final Date EARLIEST_DATE = Date.from(LocalDate.of(1, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+	
+	/** Stands in for an open upper date bound and for the position before the first page */
+	private static final Date LATEST_DATE = Date.from(LocalDate.of(9999, 12, 31).atStartOfDay(ZoneOffset.UTC).toInstant());
+	
 	@Autowired
 	TransactionRepository transactionRepo;
 	
 	@Autowired
 	SavingsGoalsBusinessService savingsGoalService;
 	
+	@Autowired
+	GroupCommitCoordinator groupCommit;
+	
+	@Value("${budgetmanager.transactions.page-size:50}")
+	int defaultPageSize;
+	
+	@Value("${budgetmanager.transactions.max-page-size:200}")
+	int maxPageSize;
+	
+	@Value("${budgetmanager.transactions.max-batch-size:1000}")
+	int maxBatchSize;
+	
+	@Value("${budgetmanager.transactions.deferred:false}")
+	boolean deferred;
+	
 	/**
-	 * Method to prepare a transaction for persistence.
+	 * Method to prepare a transaction for persistence. The goals' balance changes are appended to the goal ledger; any
+	 * balances on the goal objects supplied with the transaction are ignored. Both goals are locked in-process while the
+	 * transaction is applied. A ConflictException is produced if an existing transaction was changed since it was read.
+	 *
+	 * In deferred mode ({@code budgetmanager.transactions.deferred}) a new transaction is only inserted, as not
+	 * applied, and the {@link TransactionApplier} changes the goals' balances shortly after. An update of a transaction
+	 * the applier has not applied yet stays pending the same way, so it is applied in its turn; should the applier apply
+	 * it in the meantime, the update fails with a ConflictException, as its version is out of date.
 	 *
 	 * @param transaction The transaction to save
 	 * @return The object after persistence including the assigned unique identifier.
@@ -46,32 +94,143 @@ public class TransactionBusinessService {
 		
 		log.debug("Saving transaction: " + transaction);
 		
-		SavingsGoal fromGoal = transaction.getFromGoal();
-		log.debug("fromGoal: " + fromGoal);
+		boolean isNew = transaction.getTransactionId() == null;
+		if (this.deferred && (isNew || isPending(transaction.getTransactionId()))) {
+			return savePending(Collections.singletonList(transaction), isNew).get(0);
+		}
 		
-		SavingsGoal toGoal = transaction.getToGoal();
-		log.debug("toGoal: " + toGoal);
+		return this.groupCommit.execute(goalIds(transaction), () -> {
+			if (isNew) {
+				forgetAssignedId(transaction);
+			}
+			this.savingsGoalService.applyBalanceDeltas(balanceDeltas(transaction, transaction.getAmount().negate()), null,
+					GoalLedgerSource.TRANSFER);
+			
+			attachGoals(transaction);
+			transaction.setApplied(true);
+			return this.transactionRepo.save(transaction);
+		});
+	}
+	
+	/**
+	 * Saves many new transactions in one database transaction; either all of them are saved or none. The balance
+	 * changes are netted per goal first, so however many transactions move money between the same goals, each goal
+	 * gets one ledger entry and is read and decorated once. The transactions themselves go out as batched inserts. All
+	 * goals involved are locked in-process while the batch is applied. In deferred mode the transactions are only
+	 * inserted, as for {@link #saveTransaction}.
+	 *
+	 * @param transactions The new transactions; at most budgetmanager.transactions.max-batch-size
+	 * @return The transactions after persistence including their assigned unique identifiers, in the order given
+	 */
+	public List<Transaction> saveTransactions(List<Transaction> transactions) {
 		
-		BigDecimal amount = transaction.getAmount();
-		log.debug("amount: " + amount);
+		if (transactions == null || transactions.isEmpty()) {
+			throw new InvalidRequestException("A batch must contain at least one transaction.");
+		}
+		if (transactions.size() > this.maxBatchSize) {
+			throw new InvalidRequestException("A batch must not contain more than " + this.maxBatchSize + " transactions.");
+		}
 		
-		if (toGoal == null || toGoal.getSavingsGoalId().equals(fromGoal.getSavingsGoalId())) {
-			fromGoal.setCurrentBalance(fromGoal.getCurrentBalance().subtract(amount));
-			this.savingsGoalService.updateSavingsGoal(fromGoal);
+		List<Integer> lockedGoalIds = new ArrayList<>();
+		for (int i = 0; i < transactions.size(); i++) {
+			Transaction transaction = transactions.get(i);
+			if (transaction == null || transaction.getAmount() == null || transaction.getFromGoal() == null) {
+				throw new InvalidRequestException("Transaction " + i + " of the batch must have non-null properties "
+						+ "(amount, from goal).");
+			}
+			if (transaction.getTransactionId() != null) {
+				throw new InvalidRequestException("Transaction " + i + " of the batch must be new.");
+			}
+			lockedGoalIds.addAll(goalIds(transaction));
 		}
-		else {
-			fromGoal.setCurrentBalance(fromGoal.getCurrentBalance().subtract(amount));
-			toGoal.setCurrentBalance(toGoal.getCurrentBalance().add(amount));
-			this.savingsGoalService.updateSavingsGoal(fromGoal);
-			this.savingsGoalService.updateSavingsGoal(toGoal);
+		
+		if (this.deferred) {
+			return savePending(transactions, true);
 		}
 		
-		return this.transactionRepo.save(transaction);
+		Map<Integer, BigDecimal> netDeltas = netDeltas(transactions);
+		log.debug("Saving a batch of {} transactions with net deltas {}", transactions.size(), netDeltas);
+		
+		return this.groupCommit.execute(lockedGoalIds, () -> {
+			this.savingsGoalService.applyBalanceDeltas(netDeltas, null, GoalLedgerSource.TRANSFER);
+			
+			for (Transaction transaction : transactions) {
+				forgetAssignedId(transaction);
+				attachGoals(transaction);
+				transaction.setApplied(true);
+			}
+			return this.transactionRepo.saveAll(transactions);
+		});
+	}
+	
+	/**
+	 * Saves transactions as not applied. Nothing but the transaction rows is written, so no goal locks are needed; the
+	 * goals are checked against the goal snapshot. The goals are read in the transaction (in one query), so the
+	 * transactions returned refer to initialized goals rather than proxies that need the closed session.
+	 *
+	 * @param transactions The transactions
+	 * @param isNew Whether the transactions are new, rather than updates of pending transactions
+	 * @return The transactions after persistence
+	 */
+	private List<Transaction> savePending(List<Transaction> transactions, boolean isNew) {
+		
+		Set<Integer> goalIds = new LinkedHashSet<>();
+		transactions.forEach(transaction -> goalIds.addAll(goalIds(transaction)));
+		goalIds.remove(null);
+		this.savingsGoalService.requireSavingsGoals(goalIds);
+		
+		log.debug("Deferring {} transactions", transactions.size());
+		return this.groupCommit.execute(Collections.emptyList(), () -> {
+			this.savingsGoalService.loadSavingsGoals(goalIds);
+			for (Transaction transaction : transactions) {
+				if (isNew) {
+					forgetAssignedId(transaction);
+				}
+				attachGoals(transaction);
+				transaction.setApplied(false);
+			}
+			return this.transactionRepo.saveAll(transactions);
+		});
+	}
+	
+	/**
+	 * @param transactionId The transaction's unique identifier
+	 * @return True if the transaction is stored and waits for the applier
+	 */
+	private boolean isPending(Long transactionId) {
+		
+		return this.transactionRepo.findAppliedById(transactionId).map(applied -> ! applied).orElse(false);
+	}
+	
+	/**
+	 * Clears the id and version an earlier attempt assigned to a new transaction before it was rolled back, so the
+	 * transaction is inserted again when the work reruns (see {@link GroupCommitCoordinator}).
+	 *
+	 * @param transaction The new transaction
+	 */
+	private static void forgetAssignedId(Transaction transaction) {
+		
+		transaction.setTransactionId(null);
+		transaction.setVersion(null);
+	}
+	
+	/**
+	 * Replaces the goals supplied with a transaction by references, so only their ids are used.
+	 *
+	 * @param transaction The transaction
+	 */
+	private void attachGoals(Transaction transaction) {
+		
+		transaction.setFromGoal(this.savingsGoalService.getSavingsGoalReference(transaction.getFromGoal().getSavingsGoalId()));
+		if (transaction.getToGoal() != null) {
+			transaction.setToGoal(this.savingsGoalService.getSavingsGoalReference(transaction.getToGoal().getSavingsGoalId()));
+		}
 	}
 	
 	/**
 	 * Method to prepare a transaction for deletion. The values applied during the original transaction persistence are
-	 * reversed.
+	 * reversed while both goals are locked in-process; a transaction that has not been applied yet is simply deleted. A
+	 * ConflictException is produced if the transaction was changed, or applied, since it was read.
 	 *
 	 * @param transaction The object to delete
 	 */
@@ -81,39 +240,133 @@ public class TransactionBusinessService {
 			throw new InvalidRequestException("Transaction must have non-null properties (amount, from goal).");
 		}
 		
-		log.debug("Saving transaction: " + transaction);
+		log.debug("Deleting transaction: " + transaction);
 		
-		SavingsGoal fromGoal = transaction.getFromGoal();
-		log.debug("fromGoal: " + fromGoal);
+		if (! transaction.getApplied()) {
+			this.groupCommit.run(Collections.emptyList(), () -> this.transactionRepo.delete(transaction));
+			return;
+		}
+		
+		this.groupCommit.run(goalIds(transaction), () -> {
+			this.savingsGoalService.applyBalanceDeltas(balanceDeltas(transaction, transaction.getAmount()), null,
+					GoalLedgerSource.TRANSFER);
+			
+			this.transactionRepo.delete(transaction);
+		});
+	}
+	
+	/**
+	 * Collects the goals a transaction changes so they can be locked before the transaction is applied.
+	 *
+	 * @param transaction The transaction
+	 * @return The unique identifiers of the from goal and, when present, the to goal
+	 */
+	private List<Integer> goalIds(Transaction transaction) {
 		
 		SavingsGoal toGoal = transaction.getToGoal();
-		log.debug("toGoal: " + toGoal);
+		return Arrays.asList(transaction.getFromGoal().getSavingsGoalId(), toGoal == null ? null : toGoal.getSavingsGoalId());
+	}
+	
+	/**
+	 * Builds the balance changes for a transaction.
+	 * @see BalanceDeltas#forTransaction
+	 *
+	 * @param transaction The transaction to derive the changes from
+	 * @param fromGoalDelta The change to apply to the from goal
+	 * @return The balance changes keyed by goal unique identifier
+	 */
+	private Map<Integer, BigDecimal> balanceDeltas(Transaction transaction, BigDecimal fromGoalDelta) {
+		
+		Integer fromGoalId = transaction.getFromGoal().getSavingsGoalId();
+		log.debug("fromGoal: " + fromGoalId);
 		
-		BigDecimal amount = transaction.getAmount();
-		log.debug("amount: " + amount);
+		SavingsGoal toGoal = transaction.getToGoal();
+		Integer toGoalId = toGoal == null ? null : toGoal.getSavingsGoalId();
+		log.debug("toGoal: " + toGoalId);
 		
-		if (toGoal == null || toGoal.getSavingsGoalId().equals(fromGoal.getSavingsGoalId())) {
-			fromGoal.setCurrentBalance(fromGoal.getCurrentBalance().add(amount));
-			this.savingsGoalService.updateSavingsGoal(fromGoal);
+		return BalanceDeltas.forTransaction(fromGoalId, toGoalId, fromGoalDelta).getGoalDeltas();
+	}
+	
+	/**
+	 * Nets the balance changes of transactions per goal.
+	 *
+	 * @param transactions The transactions to apply
+	 * @return The sum of the transactions' changes keyed by goal unique identifier
+	 */
+	static Map<Integer, BigDecimal> netDeltas(Collection<Transaction> transactions) {
+		
+		Map<Integer, BigDecimal> netDeltas = new LinkedHashMap<>();
+		for (Transaction transaction : transactions) {
+			SavingsGoal toGoal = transaction.getToGoal();
+			BalanceDeltas.forTransaction(transaction.getFromGoal().getSavingsGoalId(),
+					toGoal == null ? null : toGoal.getSavingsGoalId(), transaction.getAmount().negate()).getGoalDeltas()
+					.forEach((goalId, delta) -> netDeltas.merge(goalId, delta, BigDecimal::add));
+		}
+		return netDeltas;
+	}
+	
+	/**
+	 * Method to retrieve summaries of all transactions, sorted by date, descending. The summaries are read with one
+	 * query that does not load the goals.
+	 *
+	 * @return A sorted list of transaction summaries
+	 */
+	public List<TransactionSummary> getAllTransactionSummaries() {
+		
+		return this.transactionRepo.findAllSummaries();
+	}
+	
+	/**
+	 * Retrieves one page of transaction summaries, newest first, ordered by date and then transaction id. Each page is read with
+	 * a keyset query that starts at the cursor, so the cost of a page does not depend on how deep into the history it
+	 * is. Transactions without a date are not listed.
+	 *
+	 * @param after Cursor of the last transaction of the previous page, or null for the first page
+	 * @param from Earliest transaction date, inclusive; null for no lower bound
+	 * @param to Latest transaction date, inclusive; null for no upper bound
+	 * @param savingsGoalId Only list transactions from or to this goal; null for all goals
+	 * @param pageSize Requested number of transactions; null for the default. Larger sizes are capped.
+	 * @return The page and the cursor of the next page
+	 */
+	public TransactionPage getTransactionPage(TransactionCursor after, Date from, Date to, Integer savingsGoalId,
+			Integer pageSize) {
+		
+		int size = pageSize == null ? this.defaultPageSize : pageSize;
+		if (size < 1) {
+			throw new InvalidRequestException("Page size must be at least 1.");
 		}
-		else {
-			fromGoal.setCurrentBalance(fromGoal.getCurrentBalance().add(amount));
-			toGoal.setCurrentBalance(toGoal.getCurrentBalance().subtract(amount));
-			this.savingsGoalService.updateSavingsGoal(fromGoal);
-			this.savingsGoalService.updateSavingsGoal(toGoal);
+		size = Math.min(size, this.maxPageSize);
+		
+		Date fromDate = from == null ? EARLIEST_DATE : from;
+		Date toDate = to == null ? LATEST_DATE : Date.from(to.toInstant().plus(1, ChronoUnit.DAYS));
+		Date cursorDate = after == null ? LATEST_DATE : after.getDate();
+		Long cursorId = after == null ? Long.MAX_VALUE : after.getTransactionId();
+		log.debug("Getting {} transactions after {} between {} and {} for goal {}", size, after, from, to, savingsGoalId);
+		
+		// one extra row tells whether another page follows
+		PageRequest limit = PageRequest.of(0, size + 1);
+		List<TransactionSummary> transactions = savingsGoalId == null
+				? this.transactionRepo.findPageAfter(fromDate, toDate, cursorDate, cursorId, limit)
+				: this.transactionRepo.findGoalPageAfter(savingsGoalId, fromDate, toDate, cursorDate, cursorId, limit);
+		
+		if (transactions.size() <= size) {
+			return new TransactionPage(transactions, null);
 		}
 		
-		this.transactionRepo.delete(transaction);
+		List<TransactionSummary> page = transactions.subList(0, size);
+		return new TransactionPage(page, TransactionCursor.of(page.get(size - 1)));
 	}
 	
 	/**
-	 * Method to retrieve the list of transactions, sorted by date, descending
+	 * Streams summaries of all transactions, newest first, without loading them into memory. The stream must be
+	 * consumed and closed inside a transaction.
+	 * @see com.brenner.budgetmanager.util.JsonStreamWriter
 	 *
-	 * @return A sorted list of transactions
+	 * @return The stream of transaction summaries
 	 */
-	public List<Transaction> getAllTransactions() {
+	public Stream<TransactionSummary> streamAllTransactions() {
 		
-		return this.transactionRepo.findAll(Sort.by(Sort.Direction.DESC, "date"));
+		return this.transactionRepo.streamAllSummaries();
 	}
 	
 	/**
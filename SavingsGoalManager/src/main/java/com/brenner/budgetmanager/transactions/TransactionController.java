@@ -3,6 +3,7 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
 import com.brenner.budgetmanager.exception.NotFoundException;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -14,6 +15,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Controller for transactions in the MVC pattern.
@@ -26,8 +28,12 @@ public class TransactionController {
 	@Autowired
 	TransactionBusinessService transactionService;
 	
+	@Autowired
+	IdempotencyStore idempotencyStore;
+	
 	/**
-	 * Entry point to manage transactions. Puts a list of savings goals and transacations into the model
+	 * Entry point to manage transactions. Puts a list of savings goals and transacations into the model, and a fresh
+	 * token the form sends back so a resubmitted form adds the transaction only once.
 	 *
 	 * @param model Object containing the response data
 	 * @param transaction An empty Transaction object used to map the form fields
@@ -39,8 +45,9 @@ public class TransactionController {
 		List<SavingsGoal> allSavingsGoals = this.transactionService.getAllSavingsGoals();
 		model.addAttribute("savingsGoals", allSavingsGoals);
 		
-		List<Transaction> allTransactions = this.transactionService.getAllTransactions();
+		List<TransactionSummary> allTransactions = this.transactionService.getAllTransactionSummaries();
 		model.addAttribute("transactions", allTransactions);
+		model.addAttribute(IdempotencyStore.FORM_TOKEN, UUID.randomUUID().toString());
 		
 		return "transaction/addTransaction";
 	}
@@ -50,14 +57,17 @@ public class TransactionController {
 	 *
 	 * @param model The container for model data
 	 * @param transaction The transaction to persist
+	 * @param idempotencyToken The token rendered into the form; a resubmission with it does not save again
 	 * @return A redirect to the manage transaction path
 	 */
 	@RequestMapping(path="/addTransaction")
-	public String addTransaction(Model model, @ModelAttribute("transaction") Transaction transaction) {
-		
-		this.transactionService.saveTransaction(transaction);
+	public String addTransaction(Model model, @ModelAttribute("transaction") Transaction transaction,
+			@RequestParam(name=IdempotencyStore.FORM_TOKEN, required=false) String idempotencyToken) {
 		
-		return "redirect:manageTransactions";
+		return this.idempotencyStore.execute(idempotencyToken, "addTransaction", transaction, String.class, () -> {
+			this.transactionService.saveTransaction(transaction);
+			return "redirect:manageTransactions";
+		});
 	}
 	
 	/**
@@ -0,0 +1,69 @@
+package com.brenner.budgetmanager.transactions;
+
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+
+import java.util.Date;
+
+/**
+ * Position in the transaction history, ordered by date and then transaction id, both descending. A page that starts
+ * after a cursor only contains transactions that sort strictly after it, so paging is stable while new transactions
+ * are added.
+ *
+ * The text form is {@code <epoch millis>_<transaction id>}.
+ */
+public class TransactionCursor {
+
+	private final Date date;
+
+	private final Long transactionId;
+
+	public TransactionCursor(Date date, Long transactionId) {
+		this.date = date;
+		this.transactionId = transactionId;
+	}
+
+	/**
+	 * Builds the cursor positioned at a transaction.
+	 *
+	 * @param transaction The last transaction of a page
+	 * @return The cursor for the next page
+	 */
+	public static TransactionCursor of(TransactionSummary transaction) {
+		return new TransactionCursor(transaction.getDate(), transaction.getTransactionId());
+	}
+
+	/**
+	 * Parses the text form of a cursor. An InvalidRequestException is produced if the text is not a cursor.
+	 *
+	 * @param cursor The text form
+	 * @return The cursor
+	 */
+	public static TransactionCursor parse(String cursor) {
+
+		int separator = cursor.indexOf('_');
+		if (separator < 1) {
+			throw new InvalidRequestException("Invalid transaction cursor: " + cursor);
+		}
+
+		try {
+			return new TransactionCursor(new Date(Long.parseLong(cursor.substring(0, separator))),
+					Long.valueOf(cursor.substring(separator + 1)));
+		}
+		catch (NumberFormatException e) {
+			throw new InvalidRequestException("Invalid transaction cursor: " + cursor, e);
+		}
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public Long getTransactionId() {
+		return transactionId;
+	}
+
+	@Override
+	public String toString() {
+		return date.getTime() + "_" + transactionId;
+	}
+}
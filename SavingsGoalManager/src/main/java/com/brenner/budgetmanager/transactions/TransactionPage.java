@@ -0,0 +1,29 @@
+package com.brenner.budgetmanager.transactions;
+
+import java.util.List;
+
+/**
+ * One page of the transaction history together with the cursor for the page that follows it.
+ */
+public class TransactionPage {
+
+	private final List<TransactionSummary> transactions;
+
+	private final TransactionCursor nextCursor;
+
+	public TransactionPage(List<TransactionSummary> transactions, TransactionCursor nextCursor) {
+		this.transactions = transactions;
+		this.nextCursor = nextCursor;
+	}
+
+	public List<TransactionSummary> getTransactions() {
+		return transactions;
+	}
+
+	/**
+	 * @return The cursor for the next page, or null if this is the last page
+	 */
+	public TransactionCursor getNextCursor() {
+		return nextCursor;
+	}
+}
@@ -3,9 +3,25 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import com.brenner.budgetmanager.util.JsonStreamWriter;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 /**
  *
  * @author dbrenner
@@ -13,5 +29,104 @@ import org.springframework.stereotype.Repository;
  */
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
+	
+	/** Selects transactions as {@link TransactionSummary} rows; the goals contribute only their ids and names */
+	String SUMMARY_SELECT = "select new com.brenner.budgetmanager.transactions.TransactionSummary("
+			+ "t.transactionId, t.date, t.amount, t.notes, t.applied, "
+			+ "fromGoal.savingsGoalId, fromGoal.goalName, toGoal.savingsGoalId, toGoal.goalName) "
+			+ "from Transaction t left join t.fromGoal fromGoal left join t.toGoal toGoal ";
+	
+	/**
+	 * Retrieves all transactions as summaries, newest first.
+	 *
+	 * @return The list of transaction summaries
+	 */
+	@Query(SUMMARY_SELECT + "order by t.date desc, t.transactionId desc")
+	List<TransactionSummary> findAllSummaries();
+
+	/**
+	 * Retrieves a page of transaction summaries dated in [from, to) that sort after the cursor, newest first.
+	 *
+	 * @param from Earliest date, inclusive
+	 * @param to Latest date, exclusive
+	 * @param cursorDate Date of the cursor transaction
+	 * @param cursorId Unique identifier of the cursor transaction
+	 * @param pageable Limits the page size
+	 * @return The page of transaction summaries
+	 */
+	@Query(SUMMARY_SELECT
+			+ "where t.date >= :from and t.date < :to "
+			+ "and t.date <= :cursorDate and (t.date < :cursorDate or t.transactionId < :cursorId) "
+			+ "order by t.date desc, t.transactionId desc")
+	List<TransactionSummary> findPageAfter(@Param("from") Date from, @Param("to") Date to,
+			@Param("cursorDate") Date cursorDate, @Param("cursorId") Long cursorId, Pageable pageable);
+
+	/**
+	 * Retrieves a page of summaries of the transactions from or to a goal dated in [from, to) that sort after the
+	 * cursor, newest first.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param from Earliest date, inclusive
+	 * @param to Latest date, exclusive
+	 * @param cursorDate Date of the cursor transaction
+	 * @param cursorId Unique identifier of the cursor transaction
+	 * @param pageable Limits the page size
+	 * @return The page of transaction summaries
+	 */
+	@Query(SUMMARY_SELECT
+			+ "where (t.fromGoal.savingsGoalId = :savingsGoalId or t.toGoal.savingsGoalId = :savingsGoalId) "
+			+ "and t.date >= :from and t.date < :to "
+			+ "and t.date <= :cursorDate and (t.date < :cursorDate or t.transactionId < :cursorId) "
+			+ "order by t.date desc, t.transactionId desc")
+	List<TransactionSummary> findGoalPageAfter(@Param("savingsGoalId") Integer savingsGoalId, @Param("from") Date from,
+			@Param("to") Date to, @Param("cursorDate") Date cursorDate, @Param("cursorId") Long cursorId,
+			Pageable pageable);
+	
+	/**
+	 * Streams summaries of all transactions, newest first, over a database cursor. The stream must be consumed and
+	 * closed inside a transaction.
+	 *
+	 * @return The stream of transaction summaries
+	 */
+	@QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = JsonStreamWriter.FETCH_SIZE))
+	@Query(SUMMARY_SELECT + "order by t.date desc, t.transactionId desc")
+	Stream<TransactionSummary> streamAllSummaries();
+	
+	/**
+	 * Claims the oldest transactions not applied to their goals yet. The rows are locked until the end of the
+	 * transaction; rows another transaction has locked are skipped rather than waited for, so concurrent appliers take
+	 * different rows.
+	 *
+	 * @param limit The most transactions to claim
+	 * @return The claimed transactions in id order
+	 */
+	@Query(value = "select * from transaction t where t.applied = false order by t.transaction_id limit :limit "
+			+ "for update skip locked", nativeQuery = true)
+	List<Transaction> claimPending(@Param("limit") int limit);
+	
+	/**
+	 * Marks transactions as applied to their goals. The version is incremented, so a client holding an older copy of a
+	 * transaction cannot overwrite or delete it as unapplied.
+	 *
+	 * @param transactionIds The transactions' unique identifiers
+	 * @return The number of transactions marked; less than requested if some were already applied
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("update Transaction t set t.applied = true, t.version = t.version + 1 "
+			+ "where t.transactionId in :transactionIds and t.applied = false")
+	int markApplied(@Param("transactionIds") Collection<Long> transactionIds);
+	
+	/**
+	 * @param transactionId The transaction's unique identifier
+	 * @return Whether the transaction is applied to its goals, or empty if it does not exist
+	 */
+	@Query("select t.applied from Transaction t where t.transactionId = :transactionId")
+	Optional<Boolean> findAppliedById(@Param("transactionId") Long transactionId);
+	
+	/**
+	 * @return The number of transactions not applied to their goals yet
+	 */
+	@Query("select count(t) from Transaction t where t.applied = false")
+	long countPending();
 
 }
@@ -0,0 +1,91 @@
+package com.brenner.budgetmanager.transactions;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Read-only view of a transaction for listings. It carries only the id and name of each goal, so a listing is read
+ * with one query and without loading the goals.
+ */
+public class TransactionSummary {
+
+	private final Long transactionId;
+
+	private final Date date;
+
+	private final BigDecimal amount;
+
+	private final String notes;
+
+	private final boolean applied;
+
+	private final Integer fromGoalId;
+
+	private final String fromGoalName;
+
+	private final Integer toGoalId;
+
+	private final String toGoalName;
+
+	public TransactionSummary(Long transactionId, Date date, BigDecimal amount, String notes, boolean applied,
+			Integer fromGoalId, String fromGoalName, Integer toGoalId, String toGoalName) {
+		this.transactionId = transactionId;
+		this.date = date;
+		this.amount = amount;
+		this.notes = notes;
+		this.applied = applied;
+		this.fromGoalId = fromGoalId;
+		this.fromGoalName = fromGoalName;
+		this.toGoalId = toGoalId;
+		this.toGoalName = toGoalName;
+	}
+
+	public Long getTransactionId() {
+		return transactionId;
+	}
+
+	public Date getDate() {
+		return date;
+	}
+
+	public BigDecimal getAmount() {
+		return amount;
+	}
+
+	public String getNotes() {
+		return notes;
+	}
+
+	public boolean getApplied() {
+		return applied;
+	}
+
+	public Integer getFromGoalId() {
+		return fromGoalId;
+	}
+
+	public String getFromGoalName() {
+		return fromGoalName;
+	}
+
+	public Integer getToGoalId() {
+		return toGoalId;
+	}
+
+	public String getToGoalName() {
+		return toGoalName;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder("TransactionSummary{");
+		sb.append("transactionId=").append(transactionId);
+		sb.append(", date=").append(date);
+		sb.append(", amount=").append(amount);
+		sb.append(", fromGoalId=").append(fromGoalId);
+		sb.append(", toGoalId=").append(toGoalId);
+		sb.append(", applied=").append(applied);
+		sb.append('}');
+		return sb.toString();
+	}
+}
@@ -1,10 +1,18 @@
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,20 +23,82 @@ import java.util.Optional;
 @RequestMapping(path = "/api")
 @Slf4j
 public class TransactionsApi {
+    
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     @Autowired
     TransactionBusinessService service;
     
+    @Autowired
+    JsonStreamWriter jsonStreamWriter;
+    
+    @Autowired
+    IdempotencyStore idempotencyStore;
+
+    @Autowired
+    TransactionApplier transactionApplier;
+    
     /**
-     * Access point to retrieve all transactions
+     * Access point to retrieve transaction summaries one page at a time, newest first. When more transactions follow, the cursor
+     * for the next page is returned in the X-Next-Cursor header and is passed back as the cursor parameter.
      *
-     * @return The list of transactions
+     * @param cursor Cursor returned with the previous page; omitted for the first page
+     * @param size Number of transactions per page, capped by the server
+     * @param from Earliest transaction date (yyyy-MM-dd), inclusive
+     * @param to Latest transaction date (yyyy-MM-dd), inclusive
+     * @param goalId Only return transactions from or to this goal
+     * @return The page of transaction summaries
      */
     @GetMapping(path = "/transactions")
-    public List<Transaction> getAllTransactions() {
-        return this.service.getAllTransactions();
+    public ResponseEntity<List<TransactionSummary>> getTransactions(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", required = false) Integer size,
+            @RequestParam(name = "from", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date from,
+            @RequestParam(name = "to", required = false) @DateTimeFormat(pattern = "yyyy-MM-dd") Date to,
+            @RequestParam(name = "goalId", required = false) Integer goalId) {
+        
+        TransactionCursor after = cursor == null || cursor.isBlank() ? null : TransactionCursor.parse(cursor);
+        TransactionPage page = this.service.getTransactionPage(after, from, to, goalId, size);
+        
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getTransactions());
     }
     
+    /**
+     * Access point to export summaries of all transactions, newest first. The JSON array is written while the transactions are read
+     * so memory use does not depend on the number of transactions.
+     *
+     * @return The streamed list of transaction summaries
+     */
+    @GetMapping(path = "/transactions/stream")
+    public ResponseEntity<StreamingResponseBody> streamTransactions() {
+        return this.jsonStreamWriter.stream(this.service::streamAllTransactions);
+    }
+
+    /**
+     * Access point to see how many transactions saved in deferred mode are not applied to their goals yet.
+     *
+     * @return The status of the transaction applier
+     */
+    @GetMapping(path = "/transactions/applier")
+    public TransactionApplierStatus getApplierStatus() {
+        return this.transactionApplier.getStatus();
+    }
+
+    /**
+     * Access point to apply the pending transactions now instead of waiting for the next scheduled run. Goal balances
+     * read after the response include every transaction saved before the request.
+     *
+     * @return The status of the transaction applier after the run
+     */
+    @PostMapping(path = "/transactions/applier")
+    public TransactionApplierStatus applyPendingTransactions() {
+        return this.transactionApplier.applyPending();
+    }
+
     /**
      * Access point to retrieve a single transaction. If the transaction is not found a 404 is emitted.
      *
@@ -46,20 +116,47 @@ public class TransactionsApi {
     }
     
     /**
-     * Access point to save a new transaction.
+     * Access point to save a new transaction. A retry sent with the same Idempotency-Key gets the transaction saved by
+     * the first request instead of transferring the amount again.
+     * @see IdempotencyStore
      *
+     * @param idempotencyKey Optional key identifying the request across retries
      * @param transaction Transaction data to save
      * @return The transaction returned from the business layer
      */
     @PostMapping(path="/transactions")
-    public Transaction saveNewTransaction(@RequestBody Transaction transaction) {
+    public Transaction saveNewTransaction(
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody Transaction transaction) {
         
-        Transaction newTransaction = this.service.saveTransaction(transaction);
+        Transaction newTransaction = this.idempotencyStore.execute(idempotencyKey, "POST /api/transactions", transaction,
+                Transaction.class, () -> this.service.saveTransaction(transaction));
         return newTransaction;
     }
     
     /**
-     * Access point to update a transaction. A 404 will be emitted if the transaction doesn't already exist.
+     * Access point to save many new transactions at once. Either all of them are saved or, when any is invalid or
+     * refers to a goal that does not exist, none. A retry sent with the same Idempotency-Key gets the transactions saved
+     * by the first request.
+     * @see TransactionBusinessService#saveTransactions
+     *
+     * @param idempotencyKey Optional key identifying the request across retries
+     * @param transactions The transactions to save
+     * @return The saved transactions in the order sent
+     */
+    @PostMapping(path="/transactions/batch")
+    public List<Transaction> saveNewTransactions(
+            @RequestHeader(name = IdempotencyStore.HEADER, required = false) String idempotencyKey,
+            @RequestBody List<Transaction> transactions) {
+        
+        return Arrays.asList(this.idempotencyStore.execute(idempotencyKey, "POST /api/transactions/batch", transactions,
+                Transaction[].class, () -> this.service.saveTransactions(transactions).toArray(new Transaction[0])));
+    }
+    
+    /**
+     * Access point to update a transaction. The version the client read is required, so a client that did not read
+     * the transaction cannot overwrite it; a 400 is emitted without one. A 404 will be emitted if the transaction
+     * doesn't already exist and a 409 if it was changed since the supplied version.
      *
      * @param transactionId Unique identifier for the transaction
      * @param transaction The data to update
@@ -68,11 +165,14 @@ public class TransactionsApi {
     @PutMapping(path="/transactions/{id}")
     public Transaction updateTransaction(@PathVariable(name="id")Long transactionId, @RequestBody Transaction transaction) {
         
+        if (transaction.getVersion() == null) {
+            throw new InvalidRequestException("Transaction version is required to update transaction " + transactionId + ".");
+        }
         Optional<Transaction> optionalTransaction = this.service.getTransaction(transactionId);
         if (optionalTransaction.isEmpty()) {
             throw new NotFoundException("Transaction with id " + transactionId + " does not exist.");
         }
-        Transaction existingTransaction = optionalTransaction.get();
+        transaction.setTransactionId(transactionId);
         
         return this.service.saveTransaction(transaction);
     }
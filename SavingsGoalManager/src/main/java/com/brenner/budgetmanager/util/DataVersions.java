@@ -0,0 +1,131 @@
+package com.brenner.budgetmanager.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.WebRequest;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a version per collection of data the API serves, so a client polling a collection can be told it has not
+ * changed without the collection being read. Every business service write to a collection must call
+ * {@link #changed}; the version then moves on and the time of the change becomes the collection's last modification.
+ * When called inside a transaction the version moves on again after the transaction completes, because a reader may
+ * still read the old, committed data under the new version until then.
+ *
+ * {@link #conditionalGet} turns the version into a strong ETag and Last-Modified header. The version is read before the
+ * data, so a response can carry an older version than its data but never a newer one.
+ *
+ * Versions live in memory and start over on each start; the ETags include the start time so they never repeat. Writes
+ * made by other instances or applications sharing the database are not seen.
+ */
+@Component
+public class DataVersions {
+
+    /** The collections that are versioned */
+    public enum Collection {
+
+        SAVINGS_GOALS("savingsgoals"),
+
+        DEPOSITS("deposits");
+
+        private final String tag;
+
+        Collection(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    @Autowired
+    Clock clock;
+
+    private final Map<Collection, AtomicReference<Version>> versions = new EnumMap<>(Collection.class);
+
+    private long startedAt;
+
+    @PostConstruct
+    void init() {
+        this.startedAt = this.clock.millis();
+        for (Collection collection : Collection.values()) {
+            this.versions.put(collection, new AtomicReference<>(new Version(0, wholeSeconds(this.startedAt))));
+        }
+    }
+
+    /**
+     * Moves the version of a collection on. Inside a transaction it is moved on again once the transaction has
+     * completed.
+     *
+     * @param collection The collection that was written
+     */
+    public void changed(Collection collection) {
+        advance(collection);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    advance(collection);
+                }
+            });
+        }
+    }
+
+    private void advance(Collection collection) {
+        long now = wholeSeconds(this.clock.millis());
+        this.versions.get(collection).updateAndGet(version -> new Version(version.number + 1, now));
+    }
+
+    /** Last-Modified and If-Modified-Since carry whole seconds, so the modification times are kept in them */
+    private static long wholeSeconds(long millis) {
+        return millis - Math.floorMod(millis, 1000L);
+    }
+
+    /**
+     * @param collection The collection
+     * @return The current version of the collection
+     */
+    public long getVersion(Collection collection) {
+        return this.versions.get(collection).get().number;
+    }
+
+    /**
+     * Answers a GET of a collection. If the request's If-None-Match (or, without it, If-Modified-Since) header matches
+     * the current version, a 304 is returned without calling the body supplier.
+     *
+     * @param request The request with its conditional headers
+     * @param collection The collection the response is made from
+     * @param body Reads the response body
+     * @return A 304 or a 200 with the body; the ETag and Last-Modified headers are written to the response by the
+     *         request's check
+     */
+    public <T> ResponseEntity<T> conditionalGet(WebRequest request, Collection collection, Supplier<T> body) {
+
+        Version version = this.versions.get(collection).get();
+        String eTag = "\"" + collection.tag + "-" + this.startedAt + "-" + version.number + "\"";
+        if (request.checkNotModified(eTag, version.modifiedAt)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+        return ResponseEntity.ok(body.get());
+    }
+
+    private static final class Version {
+
+        private final long number;
+
+        private final long modifiedAt;
+
+        Version(long number, long modifiedAt) {
+            this.number = number;
+            this.modifiedAt = modifiedAt;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.brenner.budgetmanager.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Writes query results to the response as a JSON array while they are read, so neither the result list nor the JSON
+ * document is ever held in memory. The stream is opened and consumed in a read-only transaction on the async request
+ * thread; repository methods backing it should return a {@code Stream} with a {@link #FETCH_SIZE} fetch size hint so
+ * the database cursor only holds that many rows at a time. Entities are detached once written so the persistence
+ * context does not grow with the result.
+ */
+@Component
+@Slf4j
+public class JsonStreamWriter {
+
+    /** Fetch size for streaming queries; the response is flushed at the same interval */
+    public static final String FETCH_SIZE = "500";
+
+    private static final int FLUSH_INTERVAL = Integer.parseInt(FETCH_SIZE);
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManager entityManager;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void init() {
+        this.readOnlyTransaction = new TransactionTemplate(this.transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    /**
+     * Builds a response that streams the rows as a JSON array.
+     *
+     * @param rows Opens the stream of rows; called inside the read-only transaction
+     * @return The streaming response
+     */
+    public <T> ResponseEntity<StreamingResponseBody> stream(Supplier<Stream<T>> rows) {
+
+        StreamingResponseBody body = out -> this.readOnlyTransaction.executeWithoutResult(status -> write(rows, out));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private <T> void write(Supplier<Stream<T>> rows, OutputStream out) {
+
+        try (Stream<T> stream = rows.get();
+             JsonGenerator generator = this.objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+            long count = 0;
+            generator.writeStartArray();
+            for (Iterator<T> iterator = stream.iterator(); iterator.hasNext(); ) {
+                T row = iterator.next();
+                generator.writeObject(row);
+                if (row.getClass().isAnnotationPresent(Entity.class)) {
+                    this.entityManager.detach(row);
+                }
+
+                // the first flush gets the first bytes out, later ones bound the buffered output
+                if (count++ % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+
+            log.debug("Streamed {} rows", count);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
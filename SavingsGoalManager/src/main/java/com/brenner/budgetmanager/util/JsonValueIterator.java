@@ -0,0 +1,138 @@
+package com.brenner.budgetmanager.util;
+
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads objects one at a time from a request body that is either a JSON array or an NDJSON stream (one JSON object
+ * per line), so a large upload is never held in memory as a whole.
+ *
+ * Each object is read as a tree before it is bound to the target type. An object that is well formed but cannot be
+ * bound (e.g. a malformed date) produces an {@link UnreadableItemException} from {@link #next()} and iteration can
+ * continue with the following object. A body that is not well formed JSON produces an InvalidRequestException and
+ * ends the iteration.
+ */
+public class JsonValueIterator<T> implements Iterator<T> {
+
+    private final ObjectMapper objectMapper;
+
+    private final JsonParser parser;
+
+    private final Class<T> type;
+
+    private boolean array;
+
+    private boolean started;
+
+    private JsonToken nextToken;
+
+    /**
+     * @param objectMapper Reads and binds the objects
+     * @param body JSON array or NDJSON request body; the caller remains responsible for closing it
+     * @param type Type each object is bound to
+     */
+    public JsonValueIterator(ObjectMapper objectMapper, InputStream body, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+        try {
+            this.parser = objectMapper.getFactory().createParser(body);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    }
+
+    @Override
+    public boolean hasNext() {
+
+        if (this.nextToken == null) {
+            this.nextToken = advance();
+        }
+        return this.nextToken == JsonToken.START_OBJECT;
+    }
+
+    @Override
+    public T next() {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        this.nextToken = null;
+
+        ObjectNode item = readItem();
+        try {
+            return this.objectMapper.treeToValue(item, this.type);
+        }
+        catch (JsonProcessingException e) {
+            throw new UnreadableItemException(e.getOriginalMessage(), e);
+        }
+    }
+
+    private JsonToken advance() {
+
+        JsonToken token = nextToken();
+        if (!this.started) {
+            this.started = true;
+            if (token == JsonToken.START_ARRAY) {
+                this.array = true;
+                token = nextToken();
+            }
+        }
+
+        if (token == null || (this.array && token == JsonToken.END_ARRAY)) {
+            return JsonToken.NOT_AVAILABLE;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new InvalidRequestException("Expected a JSON object but found " + token + " at "
+                    + this.parser.getCurrentLocation());
+        }
+        return token;
+    }
+
+    private JsonToken nextToken() {
+        try {
+            return this.parser.nextToken();
+        }
+        catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Malformed JSON: " + e.getOriginalMessage(), e);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ObjectNode readItem() {
+        try {
+            return this.objectMapper.readTree(this.parser);
+        }
+        catch (JsonProcessingException e) {
+            throw new InvalidRequestException("Malformed JSON: " + e.getOriginalMessage(), e);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * A single well formed object that could not be bound to the target type. The remaining objects can still be read.
+     */
+    public static class UnreadableItemException extends InvalidRequestException {
+
+        private static final long serialVersionUID = -2203856472460713528L;
+
+        public UnreadableItemException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
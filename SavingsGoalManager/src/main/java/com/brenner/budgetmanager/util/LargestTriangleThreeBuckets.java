@@ -0,0 +1,85 @@
+package com.brenner.budgetmanager.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Downsamples a series for charting with the Largest-Triangle-Three-Buckets algorithm (Steinarsson, 2013). The first
+ * and last points are kept; the points between are split into equally sized buckets and from each bucket the point
+ * forming the largest triangle with the point kept from the previous bucket and the average of the next bucket is
+ * kept. Peaks and troughs survive, which evenly spaced sampling would miss, in a single pass over the series.
+ */
+public final class LargestTriangleThreeBuckets {
+
+    private LargestTriangleThreeBuckets() {}
+
+    /**
+     * @param series The points ordered by x
+     * @param threshold The most points to return; at least 3
+     * @param x The x coordinate of a point
+     * @param y The y coordinate of a point
+     * @param <T> Type of the points
+     * @return The series itself if it has no more than threshold points, otherwise threshold of its points in order
+     */
+    public static <T> List<T> downsample(List<T> series, int threshold, ToDoubleFunction<T> x, ToDoubleFunction<T> y) {
+
+        if (threshold < 3) {
+            throw new IllegalArgumentException("The threshold must be at least 3 but was " + threshold);
+        }
+        int size = series.size();
+        if (size <= threshold) {
+            return series;
+        }
+
+        List<T> sampled = new ArrayList<>(threshold);
+        sampled.add(series.get(0));
+
+        int buckets = threshold - 2;
+        int previous = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+
+            int nextStart = bucketStart(bucket + 1, size, buckets);
+            int nextEnd = bucket + 1 < buckets ? bucketStart(bucket + 2, size, buckets) : size;
+            double averageX = 0;
+            double averageY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageX += x.applyAsDouble(series.get(i));
+                averageY += y.applyAsDouble(series.get(i));
+            }
+            int nextCount = nextEnd - nextStart;
+            averageX /= nextCount;
+            averageY /= nextCount;
+
+            double previousX = x.applyAsDouble(series.get(previous));
+            double previousY = y.applyAsDouble(series.get(previous));
+            int start = bucketStart(bucket, size, buckets);
+            int end = nextStart;
+            double maxArea = -1;
+            int selected = start;
+            for (int i = start; i < end; i++) {
+                double pointX = x.applyAsDouble(series.get(i));
+                double pointY = y.applyAsDouble(series.get(i));
+                double area = Math.abs((previousX - averageX) * (pointY - previousY)
+                        - (previousX - pointX) * (averageY - previousY));
+                if (area > maxArea) {
+                    maxArea = area;
+                    selected = i;
+                }
+            }
+
+            sampled.add(series.get(selected));
+            previous = selected;
+        }
+
+        sampled.add(series.get(size - 1));
+        return sampled;
+    }
+
+    /**
+     * @return Index of the first point of a bucket; the points between the first and the last are split evenly
+     */
+    private static int bucketStart(int bucket, int size, int buckets) {
+        return 1 + (int) ((long) bucket * (size - 2) / buckets);
+    }
+}
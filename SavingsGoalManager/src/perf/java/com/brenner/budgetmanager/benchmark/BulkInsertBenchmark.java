@@ -0,0 +1,106 @@
+package com.brenner.budgetmanager.benchmark;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.deposit.DepositBusinessService;
+import com.brenner.budgetmanager.deposit.DepositRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures inserting a block of new deposits in one transaction, before and after the move from IDENTITY columns to
+ * pooled sequences:
+ * <ul>
+ *     <li>{@code allocationSize=1, batchSize=1} is the old behaviour: every row costs its own id round trip and its
+ *     own insert statement, as an IDENTITY insert does.</li>
+ *     <li>{@code allocationSize=50, batchSize=50} is the new default: one sequence call per 50 ids and the inserts sent
+ *     in JDBC batches of 50.</li>
+ * </ul>
+ * The mixed combinations show how much each half contributes. Besides the latency, the number of JDBC statements
+ * prepared per inserted row is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkInsertBenchmark {
+
+    @Param({"1", "50"})
+    int allocationSize;
+
+    @Param({"1", "50"})
+    int batchSize;
+
+    @Param({"500"})
+    int rows;
+
+    ConfigurableApplicationContext context;
+
+    DepositBusinessService service;
+
+    DepositRepository depositRepo;
+
+    Statistics statistics;
+
+    List<Deposit> deposits;
+
+    long inserted;
+
+    long prepared;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run("--budgetmanager.id.allocation-size=" + this.allocationSize,
+                        "--budgetmanager.deposits.bulk-batch-size=" + this.batchSize,
+                        "--spring.jpa.properties.hibernate.jdbc.batch_size=" + this.batchSize);
+
+        this.service = this.context.getBean(DepositBusinessService.class);
+        this.depositRepo = this.context.getBean(DepositRepository.class);
+        this.statistics = this.context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Setup(Level.Invocation)
+    public void createDeposits() {
+        this.deposits = new ArrayList<>(this.rows);
+        for (int i = 0; i < this.rows; i++) {
+            this.deposits.add(new Deposit(null, BigDecimal.valueOf(100 + i), new Date(), false));
+        }
+        this.statistics.clear();
+    }
+
+    @Benchmark
+    public void insertDeposits() {
+        this.service.saveDeposits(this.deposits.iterator());
+    }
+
+    @TearDown(Level.Invocation)
+    public void recordStatements() {
+        this.inserted += this.rows;
+        this.prepared += this.statistics.getPrepareStatementCount();
+        this.depositRepo.deleteAllInBatch();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        System.out.printf("%nallocationSize=%d batchSize=%d: %.3f JDBC statements prepared per row (%d rows)%n",
+                this.allocationSize, this.batchSize, (double) this.prepared / this.inserted, this.inserted);
+        this.context.close();
+    }
+}
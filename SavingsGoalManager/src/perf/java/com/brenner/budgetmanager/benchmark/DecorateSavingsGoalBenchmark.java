@@ -0,0 +1,76 @@
+package com.brenner.budgetmanager.benchmark;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decorating a list of goals through SavingsGoalsBusinessService, as listing the goals does. The goals are
+ * spread over past, running and future date ranges with a fixed seed, so every run decorates the same goals.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecorateSavingsGoalBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int goalCount;
+
+    ConfigurableApplicationContext context;
+
+    SavingsGoalsBusinessService service;
+
+    List<SavingsGoal> goals;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        this.service = this.context.getBean(SavingsGoalsBusinessService.class);
+
+        Random random = new Random(this.goalCount);
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate today = LocalDate.now();
+        this.goals = new ArrayList<>(this.goalCount);
+        for (int i = 0; i < this.goalCount; i++) {
+            LocalDate start = today.plusDays(random.nextInt(730) - 365);
+            LocalDate end = start.plusDays(30 + random.nextInt(1_800));
+            this.goals.add(new SavingsGoal(i + 1, "Goal " + i, Date.from(start.atStartOfDay(zone).toInstant()),
+                    Date.from(end.atStartOfDay(zone).toInstant()), BigDecimal.valueOf(100 + random.nextInt(100_000)),
+                    BigDecimal.valueOf(random.nextInt(100)), BigDecimal.valueOf(random.nextInt(500)), false));
+        }
+    }
+
+    @Benchmark
+    public void decorateSavingsGoals(Blackhole blackhole) {
+        for (SavingsGoal goal : this.goals) {
+            blackhole.consume(this.service.decorateSavingsGoal(goal));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        this.context.close();
+    }
+}
@@ -0,0 +1,146 @@
+package com.brenner.budgetmanager.benchmark;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.deposit.DepositRepository;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalDepositAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures allocating deposits across a growing number of goals against an embedded database, through both variants
+ * of {@code allocateDepositToGoals}: a single deposit by id with parallel lists of goal ids and amounts, and a
+ * {@link SavingsGoalDepositAllocation} of {@code depositCount} deposits. Besides the latency reported by JMH, the number
+ * of JDBC statements and transactions per allocation is printed at the end of each trial so the effect of the number of
+ * goals on round trips is visible next to the timings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DepositAllocationBenchmark {
+    
+    @Param({"1", "10", "40", "100"})
+    int goalCount;
+    
+    /** Deposits in the allocation object; the allocation by id always allocates the first one */
+    @Param({"1", "5"})
+    int depositCount;
+    
+    ConfigurableApplicationContext context;
+    
+    SavingsGoalsBusinessService service;
+    
+    DepositRepository depositRepo;
+    
+    Statistics statistics;
+    
+    List<Integer> goalIds;
+    
+    List<BigDecimal> amounts;
+    
+    List<SavingsGoalAllocation> goalAllocations;
+    
+    List<Deposit> deposits;
+    
+    Long depositId;
+    
+    long allocations;
+    
+    long statements;
+    
+    long transactions;
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run();
+        
+        this.service = this.context.getBean(SavingsGoalsBusinessService.class);
+        this.depositRepo = this.context.getBean(DepositRepository.class);
+        this.statistics = this.context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        
+        SavingsGoalRepository goalRepo = this.context.getBean(SavingsGoalRepository.class);
+        Date start = toDate(LocalDate.now());
+        Date end = toDate(LocalDate.now().plusYears(1));
+        goalRepo.save(new SavingsGoal(null, "Unplanned", start, end, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, true));
+        
+        List<SavingsGoal> goals = new ArrayList<>(this.goalCount);
+        for (int i = 0; i < this.goalCount; i++) {
+            goals.add(new SavingsGoal(null, "Goal " + i, start, end, BigDecimal.valueOf(1_000_000), BigDecimal.ZERO,
+                    BigDecimal.ZERO, false));
+        }
+        
+        this.goalIds = new ArrayList<>(this.goalCount);
+        this.amounts = new ArrayList<>(this.goalCount);
+        this.goalAllocations = new ArrayList<>(this.goalCount);
+        for (SavingsGoal goal : goalRepo.saveAll(goals)) {
+            this.goalIds.add(goal.getSavingsGoalId());
+            this.amounts.add(BigDecimal.ONE);
+            this.goalAllocations.add(new SavingsGoalAllocation(goal.getSavingsGoalId(), BigDecimal.ONE));
+        }
+    }
+    
+    @Setup(Level.Invocation)
+    public void createDeposits() {
+        List<Deposit> deposits = new ArrayList<>(this.depositCount);
+        for (int i = 0; i < this.depositCount; i++) {
+            deposits.add(new Deposit(null, BigDecimal.valueOf(this.goalCount + 10L), new Date(), false));
+        }
+        this.deposits = this.depositRepo.saveAll(deposits);
+        this.depositId = this.deposits.get(0).getDepositId();
+        this.statistics.clear();
+    }
+    
+    @Benchmark
+    public void allocateDepositToGoals() {
+        this.service.allocateDepositToGoals(this.depositId, this.goalIds, this.amounts);
+    }
+    
+    @Benchmark
+    public void allocateDepositsToGoals() {
+        this.service.allocateDepositToGoals(new SavingsGoalDepositAllocation(this.deposits, this.goalAllocations));
+    }
+    
+    @TearDown(Level.Invocation)
+    public void recordStatements() {
+        this.allocations++;
+        this.statements += this.statistics.getPrepareStatementCount();
+        this.transactions += this.statistics.getTransactionCount();
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        System.out.printf("%ngoals=%d deposits=%d: %.1f JDBC statements and %.1f transactions per allocation%n",
+                this.goalCount, this.depositCount,
+                (double) this.statements / this.allocations,
+                (double) this.transactions / this.allocations);
+        this.context.close();
+    }
+    
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,105 @@
+package com.brenner.budgetmanager.benchmark;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.transactions.Transaction;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing lists of goals and transactions as JSON with the ObjectMapper the application configures for its
+ * APIs. The output goes to a reused buffer so only the serialization is measured; the size of the last document is
+ * printed at the end of each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int size;
+
+    ConfigurableApplicationContext context;
+
+    ObjectMapper objectMapper;
+
+    List<SavingsGoal> goals;
+
+    List<Transaction> transactions;
+
+    ByteArrayOutputStream buffer;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        this.objectMapper = this.context.getBean(ObjectMapper.class);
+
+        ZoneId zone = ZoneId.systemDefault();
+        Date start = Date.from(LocalDate.of(2022, 1, 1).atStartOfDay(zone).toInstant());
+        Date end = Date.from(LocalDate.of(2023, 1, 1).atStartOfDay(zone).toInstant());
+        this.goals = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            SavingsGoal goal = new SavingsGoal(i + 1, "Goal " + i, start, end, BigDecimal.valueOf(10_000, 2),
+                    BigDecimal.valueOf(i, 2), BigDecimal.valueOf(i * 7L, 2), false);
+            goal.setMonthsTillPayment(12);
+            goal.setWeeksTillPayment(52);
+            goal.setDaysTillPayment(365);
+            goal.setSavingsPerMonth(BigDecimal.valueOf(833, 2));
+            goal.setSavingsPerWeek(BigDecimal.valueOf(192, 2));
+            goal.setSavingsPerDay(BigDecimal.valueOf(27, 2));
+            goal.setVersion(1L);
+            this.goals.add(goal);
+        }
+
+        this.transactions = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++) {
+            Transaction transaction = new Transaction((long) i + 1, start, this.goals.get(i),
+                    this.goals.get((i + 1) % this.size), BigDecimal.valueOf(1_250 + i, 2));
+            transaction.setVersion(1L);
+            this.transactions.add(transaction);
+        }
+
+        this.buffer = new ByteArrayOutputStream(this.size * 512);
+    }
+
+    @Benchmark
+    public int writeSavingsGoals() throws IOException {
+        this.buffer.reset();
+        this.objectMapper.writeValue(this.buffer, this.goals);
+        return this.buffer.size();
+    }
+
+    @Benchmark
+    public int writeTransactions() throws IOException {
+        this.buffer.reset();
+        this.objectMapper.writeValue(this.buffer, this.transactions);
+        return this.buffer.size();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        System.out.printf("%nsize=%d: %d bytes of JSON%n", this.size, this.buffer.size());
+        this.context.close();
+    }
+}
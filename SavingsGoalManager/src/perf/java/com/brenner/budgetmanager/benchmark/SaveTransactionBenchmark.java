@@ -0,0 +1,124 @@
+package com.brenner.budgetmanager.benchmark;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
+import com.brenner.budgetmanager.transactions.Transaction;
+import com.brenner.budgetmanager.transactions.TransactionBusinessService;
+import com.brenner.budgetmanager.transactions.TransactionRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures saving a transfer between two goals against an embedded database that already holds {@code goalCount}
+ * goals and {@code transactionCount} transactions. The transfers rotate over the goals so consecutive saves do not
+ * always change the same rows. The JDBC statements per saved transaction are printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveTransactionBenchmark {
+
+    @Param({"2", "100"})
+    int goalCount;
+
+    @Param({"0", "10000"})
+    int transactionCount;
+
+    ConfigurableApplicationContext context;
+
+    TransactionBusinessService service;
+
+    Statistics statistics;
+
+    List<Integer> goalIds;
+
+    Transaction transaction;
+
+    long saved;
+
+    long statements;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        this.context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .web(WebApplicationType.NONE)
+                .run();
+
+        this.service = this.context.getBean(TransactionBusinessService.class);
+        this.statistics = this.context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        SavingsGoalRepository goalRepo = this.context.getBean(SavingsGoalRepository.class);
+        ZoneId zone = ZoneId.systemDefault();
+        Date start = Date.from(LocalDate.now().atStartOfDay(zone).toInstant());
+        Date end = Date.from(LocalDate.now().plusYears(1).atStartOfDay(zone).toInstant());
+        goalRepo.save(new SavingsGoal(null, "Unplanned", start, end, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, true));
+
+        List<SavingsGoal> goals = new ArrayList<>(this.goalCount);
+        for (int i = 0; i < this.goalCount; i++) {
+            goals.add(new SavingsGoal(null, "Goal " + i, start, end, BigDecimal.valueOf(1_000_000),
+                    BigDecimal.ZERO, BigDecimal.valueOf(1_000_000), false));
+        }
+        goals = goalRepo.saveAll(goals);
+        this.goalIds = new ArrayList<>(this.goalCount);
+        goals.forEach(goal -> this.goalIds.add(goal.getSavingsGoalId()));
+
+        List<Transaction> history = new ArrayList<>(this.transactionCount);
+        for (int i = 0; i < this.transactionCount; i++) {
+            history.add(new Transaction(null, start, goals.get(i % this.goalCount),
+                    goals.get((i + 1) % this.goalCount), BigDecimal.ONE));
+        }
+        this.context.getBean(TransactionRepository.class).saveAll(history);
+    }
+
+    @Setup(Level.Invocation)
+    public void createTransaction() {
+        int from = (int) (this.saved % this.goalCount);
+        this.transaction = new Transaction(null, new Date(), goalWithId(this.goalIds.get(from)),
+                goalWithId(this.goalIds.get((from + 1) % this.goalCount)), BigDecimal.ONE);
+        this.statistics.clear();
+    }
+
+    @Benchmark
+    public Transaction saveTransaction() {
+        return this.service.saveTransaction(this.transaction);
+    }
+
+    @TearDown(Level.Invocation)
+    public void recordStatements() {
+        this.saved++;
+        this.statements += this.statistics.getPrepareStatementCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        System.out.printf("%ngoals=%d transactions=%d: %.1f JDBC statements per saved transaction%n",
+                this.goalCount, this.transactionCount, (double) this.statements / this.saved);
+        this.context.close();
+    }
+
+    /** A goal as posted by a client: only the id is set */
+    private static SavingsGoal goalWithId(Integer savingsGoalId) {
+        SavingsGoal goal = new SavingsGoal();
+        goal.setSavingsGoalId(savingsGoalId);
+        return goal;
+    }
+}
@@ -0,0 +1,130 @@
+package com.brenner.budgetmanager.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the latencies of the requests of a load test per endpoint in HDR histograms, recorded in microseconds
+ * with three significant digits, and writes them as a report.
+ *
+ * The report is a fixed-width table with one line per endpoint in alphabetical order and no timestamps, so the reports
+ * of two builds can be compared with a plain diff. The complete percentile distributions are written next to it, in
+ * the HdrHistogram text format, for plotting.
+ */
+public class LatencyReport {
+
+    /** Longest latency that is recorded exactly; longer ones are counted with this value */
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentSkipListMap<>();
+
+    private volatile boolean recording;
+
+    private static class Endpoint {
+
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+
+        final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * Starts or stops keeping what is recorded; nothing is kept during the warm-up.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * @param endpoint Method and path template of the request, e.g. {@code GET /api/savingsgoals}
+     * @param micros Time from when the request should have been sent until the response was read
+     */
+    public void recordSuccess(String endpoint, long micros) {
+        if (this.recording) {
+            endpoint(endpoint).latencies.recordValue(Math.min(micros, HIGHEST_MICROS));
+        }
+    }
+
+    /**
+     * Counts a request that failed or was not answered with a 2xx status; its latency is not recorded.
+     */
+    public void recordError(String endpoint) {
+        if (this.recording) {
+            endpoint(endpoint).errors.increment();
+        }
+    }
+
+    private Endpoint endpoint(String endpoint) {
+        return this.endpoints.computeIfAbsent(endpoint, e -> new Endpoint());
+    }
+
+    /**
+     * Writes the report to the file and standard out, and the percentile distributions to the same file name with
+     * {@code .hgrm} appended.
+     *
+     * @param settings The settings of the run, printed as the first line
+     * @param seconds Length of the recording period the throughput is calculated for
+     * @param file The report file
+     */
+    public void write(LoadTestSettings settings, double seconds, Path file) throws IOException {
+
+        String report = format(settings, seconds);
+        System.out.println();
+        System.out.print(report);
+
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+        Files.writeString(file, report, StandardCharsets.UTF_8);
+
+        try (PrintStream distributions = new PrintStream(Files.newOutputStream(Path.of(file + ".hgrm")), false,
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Endpoint> endpoint : this.endpoints.entrySet()) {
+                distributions.println("# " + endpoint.getKey());
+                endpoint.getValue().latencies.outputPercentileDistribution(distributions, 1000.0);
+                distributions.println();
+            }
+        }
+    }
+
+    String format(LoadTestSettings settings, double seconds) {
+
+        StringBuilder report = new StringBuilder();
+        report.append("# ").append(settings).append('\n');
+        report.append(String.format(Locale.ROOT, "%-40s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        Histogram total = new Histogram(HIGHEST_MICROS, 3);
+        long totalErrors = 0;
+        for (Map.Entry<String, Endpoint> endpoint : this.endpoints.entrySet()) {
+            Histogram latencies = endpoint.getValue().latencies.copy();
+            long errors = endpoint.getValue().errors.sum();
+            total.add(latencies);
+            totalErrors += errors;
+            line(report, endpoint.getKey(), latencies, errors, seconds);
+        }
+        line(report, "TOTAL", total, totalErrors, seconds);
+        return report.toString();
+    }
+
+    private static void line(StringBuilder report, String name, Histogram latencies, long errors, double seconds) {
+        report.append(String.format(Locale.ROOT, "%-40s %9d %7d %9.1f %9.3f %9.3f %9.3f %9.3f%n", name,
+                latencies.getTotalCount(), errors, (latencies.getTotalCount() + errors) / seconds,
+                millis(latencies, 50.0), millis(latencies, 99.0), millis(latencies, 99.9),
+                latencies.getMaxValue() / 1000.0));
+    }
+
+    private static double millis(Histogram latencies, double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
@@ -0,0 +1,338 @@
+package com.brenner.budgetmanager.loadtest;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.loadtest.LoadTestSettings.Operation;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Boots the application on a random port and puts load on SavingsGoalsApi, DepositApi and TransactionsApi from
+ * concurrent virtual users, each of which repeatedly picks an operation from the configured mix:
+ * <ul>
+ *     <li>reads: the goal list, the default goal, the first page of transactions or a recent deposit</li>
+ *     <li>allocations: a new deposit, then allocated to three random goals</li>
+ *     <li>transfers: a new transaction between two random goals</li>
+ * </ul>
+ * Run with {@code mvn -P benchmark test-compile exec:exec@loadtest -Dloadtest.args="--loadtest.users=100"}. By default
+ * the application uses the embedded database of the benchmark profile; {@code --spring.datasource.url=...} (with the
+ * matching username, password and dialect) runs it against a local server instead. See {@link LoadTestSettings} for
+ * the other settings.
+ *
+ * {@code --loadtest.thread-modes=platform,virtual} runs the same load once per execution mode (see
+ * VirtualThreadConfiguration), each against a freshly started application, and writes one report per mode with the
+ * mode appended to the file name, e.g. {@code loadtest-report-platform.txt} and {@code loadtest-report-virtual.txt}.
+ *
+ * With {@code loadtest.rate} set, each user sends its requests on a fixed schedule and latencies are measured from when
+ * the request was due, so a slow response is charged to the requests that queued behind it rather than hidden by them.
+ * Without it, every user sends its next request as soon as it has an answer.
+ */
+public class LoadTestHarness {
+
+    private static final Pattern DEPOSIT_ID = Pattern.compile("\"depositId\"\\s*:\\s*(\\d+)");
+
+    private final LoadTestSettings settings;
+
+    private final String baseUrl;
+
+    private final List<Integer> goalIds;
+
+    private final HttpClient client;
+
+    private final LatencyReport report = new LatencyReport();
+
+    /** Most recently created deposit, read by the deposit lookups */
+    private volatile long lastDepositId;
+
+    private volatile long stopAt;
+
+    public LoadTestHarness(LoadTestSettings settings, String baseUrl, List<Integer> goalIds) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+        this.goalIds = goalIds;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newFixedThreadPool(Math.max(2, settings.getUsers() / 4)))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        SimpleCommandLinePropertySource arguments = new SimpleCommandLinePropertySource(args);
+        String threadModes = arguments.getProperty("loadtest.thread-modes");
+        try {
+            if (threadModes == null) {
+                runApplication(args);
+            }
+            else {
+                String report = arguments.containsProperty("loadtest.report")
+                        ? arguments.getProperty("loadtest.report") : "target/loadtest-report.txt";
+                for (String mode : threadModes.split(",")) {
+                    mode = mode.trim();
+                    if (!mode.equals("platform") && !mode.equals("virtual")) {
+                        throw new IllegalArgumentException("loadtest.thread-modes may only list platform and virtual");
+                    }
+                    List<String> modeArgs = new ArrayList<>(Arrays.asList(args));
+                    modeArgs.removeIf(arg -> arg.startsWith("--loadtest.report=")
+                            || arg.startsWith("--budgetmanager.threads.virtual="));
+                    modeArgs.add("--budgetmanager.threads.virtual=" + mode.equals("virtual"));
+                    modeArgs.add("--loadtest.report=" + withSuffix(report, mode));
+                    runApplication(modeArgs.toArray(new String[0]));
+                }
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Boots the application, runs the load test against it and stops it again.
+     */
+    private static void runApplication(String[] args) throws Exception {
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SavingsGoalsApplication.class)
+                .profiles("benchmark")
+                .properties("server.port=0")
+                .run(args);
+        try {
+            LoadTestSettings settings = new LoadTestSettings(context.getEnvironment());
+            String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+            List<Integer> goalIds = createGoals(context.getBean(SavingsGoalRepository.class), settings.getGoals());
+
+            new LoadTestHarness(settings, baseUrl, goalIds).run();
+        }
+        finally {
+            context.close();
+        }
+    }
+
+    /** @return The file name with {@code -suffix} before its extension */
+    private static String withSuffix(String file, String suffix) {
+        int extension = file.lastIndexOf('.');
+        return extension > file.lastIndexOf('/') ? file.substring(0, extension) + "-" + suffix + file.substring(extension)
+                : file + "-" + suffix;
+    }
+
+    /**
+     * Creates the default goal if there is none and the goals the users allocate to and transfer between.
+     *
+     * @return The unique identifiers of the goals
+     */
+    static List<Integer> createGoals(SavingsGoalRepository goalRepo, int count) {
+
+        ZoneId zone = ZoneId.systemDefault();
+        Date start = Date.from(LocalDate.now().atStartOfDay(zone).toInstant());
+        Date end = Date.from(LocalDate.now().plusYears(1).atStartOfDay(zone).toInstant());
+        if (goalRepo.findByIsDefault(true).isEmpty()) {
+            goalRepo.save(new SavingsGoal(null, "Unplanned", start, end, BigDecimal.ZERO, BigDecimal.ZERO,
+                    BigDecimal.ZERO, true));
+        }
+
+        List<SavingsGoal> goals = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            goals.add(new SavingsGoal(null, "Load test goal " + i, start, end, BigDecimal.valueOf(10_000_000),
+                    BigDecimal.ZERO, BigDecimal.valueOf(1_000_000), false));
+        }
+        List<Integer> goalIds = new ArrayList<>(count);
+        goalRepo.saveAll(goals).forEach(goal -> goalIds.add(goal.getSavingsGoalId()));
+        return goalIds;
+    }
+
+    /**
+     * Runs the warm-up and the measured period and writes the report.
+     */
+    public void run() throws InterruptedException, IOException {
+
+        System.out.println("Load test: " + this.settings);
+
+        long startNanos = System.nanoTime();
+        long recordFrom = startNanos + TimeUnit.SECONDS.toNanos(this.settings.getWarmupSeconds());
+        this.stopAt = recordFrom + TimeUnit.SECONDS.toNanos(this.settings.getDurationSeconds());
+
+        ExecutorService users = Executors.newFixedThreadPool(this.settings.getUsers());
+        for (int i = 0; i < this.settings.getUsers(); i++) {
+            long offsetNanos = this.settings.getRate() == 0 ? 0 : intervalNanos() * i / this.settings.getUsers();
+            users.execute(() -> runUser(startNanos + offsetNanos));
+        }
+
+        LockSupport.parkNanos(recordFrom - System.nanoTime());
+        this.report.setRecording(true);
+        LockSupport.parkNanos(this.stopAt - System.nanoTime());
+        this.report.setRecording(false);
+        long recordedNanos = System.nanoTime() - recordFrom;
+
+        users.shutdown();
+        users.awaitTermination(1, TimeUnit.MINUTES);
+
+        this.report.write(this.settings, recordedNanos / 1e9, Path.of(this.settings.getReport()));
+    }
+
+    /** @return Time between the operations of one user at the configured rate */
+    private long intervalNanos() {
+        return TimeUnit.SECONDS.toNanos(this.settings.getUsers()) / this.settings.getRate();
+    }
+
+    private void runUser(long firstNanos) {
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long dueNanos = firstNanos;
+        while (dueNanos < this.stopAt) {
+            if (this.settings.getRate() > 0) {
+                LockSupport.parkNanos(dueNanos - System.nanoTime());
+            }
+            else {
+                dueNanos = System.nanoTime();
+            }
+
+            switch (this.settings.pick(random.nextInt(this.settings.getTotalWeight()))) {
+                case READS:
+                    read(random, dueNanos);
+                    break;
+                case ALLOCATIONS:
+                    allocate(random, dueNanos);
+                    break;
+                case TRANSFERS:
+                    transfer(random, dueNanos);
+                    break;
+            }
+
+            if (this.settings.getRate() > 0) {
+                dueNanos += intervalNanos();
+            }
+            else {
+                dueNanos = System.nanoTime();
+            }
+        }
+    }
+
+    private void read(ThreadLocalRandom random, long dueNanos) {
+        switch (random.nextInt(4)) {
+            case 0:
+                send("GET /api/savingsgoals", get("/api/savingsgoals"), dueNanos);
+                break;
+            case 1:
+                send("GET /api/savingsgoals/defaultgoal", get("/api/savingsgoals/defaultgoal"), dueNanos);
+                break;
+            case 2:
+                send("GET /api/transactions", get("/api/transactions"), dueNanos);
+                break;
+            default:
+                long depositId = this.lastDepositId;
+                if (depositId == 0) {
+                    send("GET /api/savingsgoals", get("/api/savingsgoals"), dueNanos);
+                }
+                else {
+                    send("GET /api/deposits/{depositId}", get("/api/deposits/" + depositId), dueNanos);
+                }
+        }
+    }
+
+    private void allocate(ThreadLocalRandom random, long dueNanos) {
+
+        String deposit = send("POST /api/deposits",
+                post("/api/deposits", "{\"amount\":10.00,\"date\":" + System.currentTimeMillis() + ",\"allocated\":false}"),
+                dueNanos);
+        Matcher depositId = deposit == null ? null : DEPOSIT_ID.matcher(deposit);
+        if (depositId == null || !depositId.find()) {
+            return;
+        }
+        this.lastDepositId = Long.parseLong(depositId.group(1));
+
+        StringBuilder allocations = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            allocations.append(i == 0 ? "" : ",").append("{\"savingsGoalId\":").append(randomGoal(random))
+                    .append(",\"allocationAmount\":1.00}");
+        }
+        send("PUT /api/savingsgoals/allocateDeposit", HttpRequest.newBuilder(uri("/api/savingsgoals/allocateDeposit"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"deposits\":[{\"depositId\":" + depositId.group(1)
+                        + "}],\"savingsGoalAllocations\":[" + allocations + "]}"))
+                .build(), System.nanoTime());
+    }
+
+    private void transfer(ThreadLocalRandom random, long dueNanos) {
+
+        int from = randomGoal(random);
+        int to = randomGoal(random);
+        while (to == from) {
+            to = randomGoal(random);
+        }
+        send("POST /api/transactions", post("/api/transactions", "{\"date\":" + System.currentTimeMillis()
+                + ",\"fromGoal\":{\"savingsGoalId\":" + from + "},\"toGoal\":{\"savingsGoalId\":" + to
+                + "},\"amount\":1.00}"), dueNanos);
+    }
+
+    private int randomGoal(ThreadLocalRandom random) {
+        return this.goalIds.get(random.nextInt(this.goalIds.size()));
+    }
+
+    /**
+     * Sends the request and records its latency from the due time, or an error.
+     *
+     * @return The response body of a successful request, null otherwise
+     */
+    private String send(String endpoint, HttpRequest request, long dueNanos) {
+        try {
+            HttpResponse<String> response = this.client.send(request, HttpResponse.BodyHandlers.ofString());
+            long micros = (System.nanoTime() - dueNanos) / 1_000;
+            if (response.statusCode() / 100 != 2) {
+                this.report.recordError(endpoint);
+                return null;
+            }
+            this.report.recordSuccess(endpoint, micros);
+            return response.body();
+        }
+        catch (IOException e) {
+            this.report.recordError(endpoint);
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(uri(path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(this.baseUrl + path);
+    }
+}
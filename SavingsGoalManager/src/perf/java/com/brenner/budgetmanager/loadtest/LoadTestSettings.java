@@ -0,0 +1,146 @@
+package com.brenner.budgetmanager.loadtest;
+
+import com.brenner.budgetmanager.concurrency.VirtualThreads;
+import org.springframework.core.env.Environment;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from the {@code loadtest.*} properties of the application's environment so they
+ * can be given as command line arguments ({@code --loadtest.users=200}) like any other Spring property.
+ */
+public class LoadTestSettings {
+
+    /** The kinds of work a virtual user does */
+    public enum Operation {
+        /** One of the list and lookup requests */
+        READS,
+        /** A new deposit allocated across goals */
+        ALLOCATIONS,
+        /** A transfer between two goals */
+        TRANSFERS
+    }
+
+    private final int users;
+
+    private final int warmupSeconds;
+
+    private final int durationSeconds;
+
+    private final int rate;
+
+    private final int goals;
+
+    private final Map<Operation, Integer> mix;
+
+    private final String report;
+
+    private final String threads;
+
+    private final int connections;
+
+    public LoadTestSettings(Environment environment) {
+        this.users = environment.getProperty("loadtest.users", Integer.class, 50);
+        this.warmupSeconds = environment.getProperty("loadtest.warmup", Integer.class, 10);
+        this.durationSeconds = environment.getProperty("loadtest.duration", Integer.class, 60);
+        this.rate = environment.getProperty("loadtest.rate", Integer.class, 0);
+        this.goals = environment.getProperty("loadtest.goals", Integer.class, 20);
+        this.mix = parseMix(environment.getProperty("loadtest.mix", "reads=70,allocations=20,transfers=10"));
+        this.report = environment.getProperty("loadtest.report", "target/loadtest-report.txt");
+        this.threads = environment.getProperty("budgetmanager.threads.virtual", Boolean.class, false)
+                && VirtualThreads.isSupported() ? "virtual" : "platform";
+        this.connections = environment.getProperty("spring.datasource.hikari.maximum-pool-size", Integer.class, 10);
+
+        if (this.users < 1 || this.durationSeconds < 1 || this.warmupSeconds < 0 || this.rate < 0 || this.goals < 3) {
+            throw new IllegalArgumentException("loadtest.users and loadtest.duration must be positive, "
+                    + "loadtest.warmup and loadtest.rate must not be negative and loadtest.goals must be at least 3.");
+        }
+    }
+
+    /**
+     * @param mix Comma separated weights such as {@code reads=70,allocations=20,transfers=10}; missing operations get 0
+     */
+    static Map<Operation, Integer> parseMix(String mix) {
+
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            weights.put(operation, 0);
+        }
+        int total = 0;
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid loadtest.mix entry: " + entry);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Invalid loadtest.mix weight: " + entry);
+            }
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), weight);
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("loadtest.mix must give at least one operation a weight.");
+        }
+        return weights;
+    }
+
+    /**
+     * @param roll A number from 0 (inclusive) to {@link #getTotalWeight()} (exclusive)
+     * @return The operation the number falls on
+     */
+    public Operation pick(int roll) {
+        for (Map.Entry<Operation, Integer> weight : this.mix.entrySet()) {
+            roll -= weight.getValue();
+            if (roll < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalArgumentException("Roll is beyond the total weight");
+    }
+
+    public int getTotalWeight() {
+        return this.mix.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /** @return Number of concurrent virtual users */
+    public int getUsers() {
+        return this.users;
+    }
+
+    /** @return Seconds the load runs before latencies are recorded */
+    public int getWarmupSeconds() {
+        return this.warmupSeconds;
+    }
+
+    /** @return Seconds latencies are recorded for */
+    public int getDurationSeconds() {
+        return this.durationSeconds;
+    }
+
+    /** @return Operations per second over all users, or 0 for as fast as the users get answers */
+    public int getRate() {
+        return this.rate;
+    }
+
+    /** @return Number of goals created before the run */
+    public int getGoals() {
+        return this.goals;
+    }
+
+    /** @return File the report is written to */
+    public String getReport() {
+        return this.report;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder mix = new StringBuilder();
+        this.mix.forEach((operation, weight) -> mix.append(mix.length() == 0 ? "" : ",")
+                .append(operation.name().toLowerCase()).append('=').append(weight));
+        return "users=" + this.users + " warmup=" + this.warmupSeconds + "s duration=" + this.durationSeconds
+                + "s rate=" + (this.rate == 0 ? "unthrottled" : this.rate + "/s") + " goals=" + this.goals
+                + " mix=" + mix + " threads=" + this.threads + " connections=" + this.connections;
+    }
+}
@@ -0,0 +1,98 @@
+package com.brenner.budgetmanager;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.deposit.DepositBusinessService;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Starts the whole application, JPA included, against the embedded database, so a mapping Hibernate cannot build the
+ * schema from fails here, and runs the writes whose correctness depends on the database end to end.
+ */
+@SpringBootTest(classes = SavingsGoalsApplication.class)
+@ActiveProfiles("integration")
+@AutoConfigureMockMvc
+public class SavingsGoalsApplicationTests {
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	SavingsGoalsBusinessService goalService;
+
+	@Autowired
+	DepositBusinessService depositService;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@Autowired
+	ObjectMapper mapper;
+
+	@Test
+	public void testContextLoadsWithIndexes_Success() throws Exception {
+
+		List<String> indexes = this.jdbcTemplate.queryForList(
+				"select lower(index_name) from information_schema.indexes where lower(table_name) = 'transaction'",
+				String.class);
+
+		assertTrue(indexes.containsAll(List.of("transaction_date_idx", "transaction_from_goal_date_idx",
+				"transaction_to_goal_date_idx", "transaction_applied_idx")), indexes.toString());
+	}
+
+	@Test
+	public void testUpdateGoalKeepsAllocationSinceRead_Success() throws Exception {
+
+		if (this.goalService.findDefaultGoal().isEmpty()) {
+			this.goalService.addSavingsGoal(new SavingsGoal(null, "Unplanned", date(0), date(365), BigDecimal.ZERO,
+					BigDecimal.ZERO, BigDecimal.ZERO, true));
+		}
+		// starts in the future, so the allocation does not change the plan or the goal's version
+		Integer goalId = this.goalService.addSavingsGoal(new SavingsGoal(null, "Car", date(30), date(395),
+				BigDecimal.valueOf(1000), BigDecimal.ZERO, BigDecimal.ZERO, false)).getSavingsGoalId();
+
+		SavingsGoal read = this.goalService.getSavingsGoalById(goalId).get();
+
+		Deposit deposit = this.depositService.saveDeposit(new Deposit(null, BigDecimal.valueOf(50), new Date(), false));
+		this.goalService.allocateDepositToGoals(deposit.getDepositId(), Collections.singletonList(goalId),
+				Collections.singletonList(BigDecimal.valueOf(50)));
+
+		read.setGoalName("New car");
+		this.mockMvc.perform(MockMvcRequestBuilders
+						.put("/api/savingsgoals/" + goalId)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(this.mapper.writeValueAsString(read)))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.goalName", is("New car")))
+				.andExpect(jsonPath("$.currentBalance", is(50.0)));
+
+		assertEquals(0, BigDecimal.valueOf(50).compareTo(
+				this.goalService.getSavingsGoalById(goalId).get().getCurrentBalance()));
+	}
+
+	private static Date date(int daysFromToday) {
+		return Date.from(LocalDate.now().plusDays(daysFromToday).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
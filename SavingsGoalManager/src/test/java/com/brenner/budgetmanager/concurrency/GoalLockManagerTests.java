@@ -0,0 +1,158 @@
+package com.brenner.budgetmanager.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GoalLockManagerTests {
+
+    private static final int THREADS = 8;
+
+    private static final int OPERATIONS_PER_THREAD = 50;
+
+    private static final long WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Test
+    public void testDisjointGoalsRunInParallel_Success() throws Exception {
+
+        GoalLockManager lockManager = new GoalLockManager(64);
+        CountDownLatch bothInside = new CountDownLatch(2);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int goalId = 1; goalId <= 2; goalId++) {
+                List<Integer> goalIds = Arrays.asList(goalId);
+                results.add(pool.submit(() -> lockManager.withGoalLocks(goalIds, () -> {
+                    bothInside.countDown();
+                    try {
+                        return bothInside.await(5, TimeUnit.SECONDS);
+                    }
+                    catch (InterruptedException e) {
+                        return false;
+                    }
+                })));
+            }
+
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(0, lockManager.getContendedCount());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOppositeTransfersDoNotDeadlock_Success() throws Exception {
+
+        GoalLockManager lockManager = new GoalLockManager(64);
+        CyclicBarrier start = new CyclicBarrier(2);
+        int[] balances = new int[3];
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> forward = pool.submit(() -> transfer(lockManager, start, balances, 1, 2));
+            Future<?> backward = pool.submit(() -> transfer(lockManager, start, balances, 2, 1));
+
+            forward.get(30, TimeUnit.SECONDS);
+            backward.get(30, TimeUnit.SECONDS);
+
+            assertEquals(0, balances[1]);
+            assertEquals(0, balances[2]);
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedStripeIsLockedOnce_Success() throws Exception {
+
+        GoalLockManager lockManager = new GoalLockManager(4);
+
+        String result = lockManager.withGoalLocks(Arrays.asList(1, 5, null, 1), () -> "done");
+
+        assertEquals("done", result);
+        assertEquals(1, lockManager.getAcquisitionCount());
+    }
+
+    @Test
+    public void testStripedThroughputBeatsGlobalLock_Success() throws Exception {
+
+        GoalLockManager globalLock = new GoalLockManager(1);
+        GoalLockManager stripedLocks = new GoalLockManager(64);
+
+        long globalNanos = runDisjointWriters(globalLock);
+        long stripedNanos = runDisjointWriters(stripedLocks);
+
+        double operations = THREADS * OPERATIONS_PER_THREAD;
+        System.out.printf("Global lock: %.0f ops/s, contended %d; striped locks: %.0f ops/s, contended %d%n",
+                operations / globalNanos * 1e9, globalLock.getContendedCount(),
+                operations / stripedNanos * 1e9, stripedLocks.getContendedCount());
+
+        assertTrue(globalLock.getContendedCount() > 0);
+        assertEquals(0, stripedLocks.getContendedCount());
+        assertTrue(stripedNanos * 2 < globalNanos,
+                "Striped locks took " + stripedNanos + "ns, global lock took " + globalNanos + "ns");
+    }
+
+    private static void transfer(GoalLockManager lockManager, CyclicBarrier start, int[] balances, int from, int to) {
+        try {
+            start.await();
+        }
+        catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            lockManager.runWithGoalLocks(Arrays.asList(from, to), () -> {
+                synchronized (balances) {
+                    balances[from]--;
+                    balances[to]++;
+                }
+            });
+        }
+    }
+
+    /**
+     * Each writer changes its own goal, so only the lock manager decides whether they run in parallel.
+     */
+    private static long runDisjointWriters(GoalLockManager lockManager) throws Exception {
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CyclicBarrier start = new CyclicBarrier(THREADS + 1);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int goalId = 1; goalId <= THREADS; goalId++) {
+                List<Integer> goalIds = Arrays.asList(goalId);
+                writers.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                        lockManager.runWithGoalLocks(goalIds, () -> LockSupport.parkNanos(WORK_NANOS));
+                    }
+                    return null;
+                }));
+            }
+
+            start.await();
+            long startNanos = System.nanoTime();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            return System.nanoTime() - startNanos;
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+}
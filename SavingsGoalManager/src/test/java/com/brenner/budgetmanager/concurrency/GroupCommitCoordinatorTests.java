@@ -0,0 +1,224 @@
+package com.brenner.budgetmanager.concurrency;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {
+        GroupCommitCoordinator.class,
+        GoalLockManager.class,
+        OptimisticRetryExecutor.class
+}, properties = {
+        "budgetmanager.group-commit.enabled=true",
+        "budgetmanager.group-commit.window-millis=1000",
+        "budgetmanager.group-commit.max-batch-size=3"
+})
+public class GroupCommitCoordinatorTests {
+
+    private static final List<Integer> GOAL = List.of(1);
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @MockBean
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    GroupCommitCoordinator coordinator;
+
+    ExecutorService writers;
+
+    @BeforeEach
+    public void startWriters() {
+        this.writers = Executors.newFixedThreadPool(4);
+        Mockito.when(this.transactionManager.getTransaction(ArgumentMatchers.any()))
+                .thenAnswer(invocation -> new SimpleTransactionStatus());
+    }
+
+    @AfterEach
+    public void stopWriters() {
+        this.writers.shutdownNow();
+    }
+
+    @Test
+    public void testExecuteCommitsGroupOnce_Success() throws Exception {
+
+        long groups = this.coordinator.getGroupCount();
+
+        List<Future<Integer>> results = submitAll(() -> 1, () -> 2, () -> 3);
+
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1, results.get(i).get());
+        }
+        assertEquals(groups + 1, this.coordinator.getGroupCount());
+        Mockito.verify(this.transactionManager, Mockito.times(1)).getTransaction(ArgumentMatchers.any());
+        Mockito.verify(this.transactionManager, Mockito.times(1)).commit(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testExecuteFailedWorkRunsAlone_Failure() throws Exception {
+
+        long groups = this.coordinator.getGroupCount();
+        long fallbacks = this.coordinator.getFallbackCount();
+
+        List<Future<Integer>> results = submitAll(() -> 1, () -> {
+            throw new IllegalStateException("write failed");
+        }, () -> 3);
+
+        List<Integer> succeeded = new ArrayList<>();
+        int failed = 0;
+        for (Future<Integer> result : results) {
+            try {
+                succeeded.add(result.get());
+            }
+            catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                failed++;
+            }
+        }
+        assertEquals(1, failed);
+        assertEquals(List.of(1, 3), succeeded);
+        assertEquals(fallbacks + 1, this.coordinator.getFallbackCount());
+        assertEquals(groups + 1, this.coordinator.getGroupCount());
+        // the failed group, the rest of it as a group, and the failed work on its own
+        Mockito.verify(this.transactionManager, Mockito.times(3)).getTransaction(ArgumentMatchers.any());
+    }
+
+    @Test
+    public void testLeaderReturnsAfterOwnGroup_Success() throws Exception {
+
+        CountDownLatch groupStarted = new CountDownLatch(1);
+        CountDownLatch releaseGroup = new CountDownLatch(1);
+        List<Future<Integer>> results = submitAll(() -> blockFirst(groupStarted, releaseGroup, 1),
+                () -> blockFirst(groupStarted, releaseGroup, 2), () -> blockFirst(groupStarted, releaseGroup, 3));
+        assertTrue(groupStarted.await(5, TimeUnit.SECONDS));
+
+        // arrives while the first group runs, so it waits for the next one
+        CountDownLatch lateStarted = new CountDownLatch(1);
+        CountDownLatch releaseLate = new CountDownLatch(1);
+        Thread[] lateWriter = new Thread[1];
+        Thread[] lateRunner = new Thread[1];
+        Future<Integer> late = this.writers.submit(() -> {
+            lateWriter[0] = Thread.currentThread();
+            return this.coordinator.execute(GOAL, () -> {
+                lateRunner[0] = Thread.currentThread();
+                lateStarted.countDown();
+                await(releaseLate);
+                return 4;
+            });
+        });
+
+        releaseGroup.countDown();
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i + 1, results.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        // the leader of the first group has returned; the late writer leads itself
+        assertTrue(lateStarted.await(5, TimeUnit.SECONDS));
+        assertFalse(late.isDone());
+        releaseLate.countDown();
+        assertEquals(4, late.get(5, TimeUnit.SECONDS));
+        assertSame(lateWriter[0], lateRunner[0]);
+    }
+
+    @Test
+    public void testGroupRunsWithoutWritersEntityManager_Success() throws Exception {
+
+        long groups = this.coordinator.getGroupCount();
+
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(this.writers.submit(() -> {
+                Object requestEntityManager = new Object();
+                TransactionSynchronizationManager.bindResource(this.entityManagerFactory, requestEntityManager);
+                try {
+                    boolean isolated = this.coordinator.execute(GOAL,
+                            () -> !TransactionSynchronizationManager.hasResource(this.entityManagerFactory));
+                    assertSame(requestEntityManager, TransactionSynchronizationManager.getResource(this.entityManagerFactory));
+                    return isolated;
+                }
+                finally {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(this.entityManagerFactory);
+                }
+            }));
+        }
+
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(groups + 1, this.coordinator.getGroupCount());
+    }
+
+    @Test
+    public void testExecuteDisabledRunsAlone_Success() throws Exception {
+
+        long groups = this.coordinator.getGroupCount();
+
+        this.coordinator.enabled = false;
+        try {
+            assertEquals("done", this.coordinator.execute(GOAL, () -> "done"));
+        }
+        finally {
+            this.coordinator.enabled = true;
+        }
+
+        assertEquals(groups, this.coordinator.getGroupCount());
+        Mockito.verify(this.transactionManager, Mockito.times(1)).getTransaction(ArgumentMatchers.any());
+    }
+
+    /**
+     * The first work of a group to run signals that the group has started and blocks until it is released.
+     */
+    private static Integer blockFirst(CountDownLatch started, CountDownLatch release, int result) {
+        if (started.getCount() > 0) {
+            started.countDown();
+            await(release);
+        }
+        return result;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Submits each work from a writer thread of its own; the group fills up and runs once all have arrived. All work
+     * changes the same goal, so the group only forms if its lock is not held while waiting.
+     */
+    @SafeVarargs
+    private List<Future<Integer>> submitAll(Supplier<Integer>... works) {
+
+        List<Future<Integer>> results = new ArrayList<>();
+        for (Supplier<Integer> work : works) {
+            results.add(this.writers.submit(() -> this.coordinator.execute(GOAL, work)));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,138 @@
+package com.brenner.budgetmanager.concurrency;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {
+        IdempotencyStore.class,
+        ObjectMapper.class
+}, properties = {
+        "budgetmanager.idempotency.ttl-minutes=1",
+        "budgetmanager.idempotency.max-entries=2"
+})
+public class IdempotencyStoreTests {
+
+    @MockBean
+    Clock clock;
+
+    @Autowired
+    IdempotencyStore store;
+
+    AtomicInteger writes = new AtomicInteger();
+
+    @BeforeEach
+    public void fixClock() {
+        Mockito.when(this.clock.millis()).thenReturn(0L);
+    }
+
+    @Test
+    public void testExecuteReplaysResponse_Success() throws Exception {
+
+        long replays = this.store.getReplayCount();
+
+        List<?> first = this.store.execute("replay", "write", List.of(1), List.class,
+                () -> List.of(this.writes.incrementAndGet()));
+        List<?> second = this.store.execute("replay", "write", List.of(1), List.class,
+                () -> List.of(this.writes.incrementAndGet()));
+
+        assertEquals(List.of(1), first);
+        assertEquals(first, second);
+        assertEquals(1, this.writes.get());
+        assertEquals(replays + 1, this.store.getReplayCount());
+    }
+
+    @Test
+    public void testExecuteWithoutKey_Success() throws Exception {
+
+        this.store.execute(null, "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+        this.store.execute(" ", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+
+        assertEquals(2, this.writes.get());
+    }
+
+    @Test
+    public void testExecuteKeyUsedForDifferentRequest_Failure() throws Exception {
+
+        this.store.execute("different", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+
+        assertThrows(InvalidRequestException.class, () -> this.store.execute("different", "write", List.of(2),
+                Integer.class, this.writes::incrementAndGet));
+        assertThrows(InvalidRequestException.class, () -> this.store.execute("different", "other write", List.of(1),
+                Integer.class, this.writes::incrementAndGet));
+        assertEquals(1, this.writes.get());
+    }
+
+    @Test
+    public void testExecuteKeyInProgress_Failure() throws Exception {
+
+        Exception e = assertThrows(ConflictException.class, () -> this.store.execute("in-progress", "write", List.of(1),
+                Integer.class, () -> this.store.execute("in-progress", "write", List.of(1), Integer.class,
+                        this.writes::incrementAndGet)));
+
+        assertEquals("The request with idempotency key in-progress is still in progress.", e.getMessage());
+        assertEquals(0, this.writes.get());
+    }
+
+    @Test
+    public void testExecuteFailedWriteRunsAgain_Success() throws Exception {
+
+        assertThrows(IllegalStateException.class, () -> this.store.execute("failed", "write", List.of(1), Integer.class,
+                () -> {
+                    throw new IllegalStateException("write failed");
+                }));
+
+        assertEquals(1, this.store.execute("failed", "write", List.of(1), Integer.class, this.writes::incrementAndGet));
+    }
+
+    @Test
+    public void testExecuteExpiredKeyRunsAgain_Success() throws Exception {
+
+        this.store.execute("expired", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+        Mockito.when(this.clock.millis()).thenReturn(60_000L);
+        this.store.execute("expired", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+
+        assertEquals(2, this.writes.get());
+    }
+
+    @Test
+    public void testExecuteKeepsMostRecentKeys_Success() throws Exception {
+
+        this.store.execute("oldest", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+        this.store.execute("older", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+        this.store.execute("newest", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+        this.store.execute("oldest", "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+
+        assertEquals(4, this.writes.get());
+        assertEquals(2, this.store.size());
+    }
+
+    @Test
+    public void testExecuteKeepsKeyInProgressWhenFull_Success() throws Exception {
+
+        Integer first = this.store.execute("in-flight", "write", List.of(1), Integer.class, () -> {
+            for (String key : List.of("first", "second", "third")) {
+                this.store.execute(key, "write", List.of(1), Integer.class, this.writes::incrementAndGet);
+            }
+            assertThrows(ConflictException.class, () -> this.store.execute("in-flight", "write", List.of(1),
+                    Integer.class, this.writes::incrementAndGet));
+            return this.writes.incrementAndGet();
+        });
+
+        assertEquals(first, this.store.execute("in-flight", "write", List.of(1), Integer.class,
+                this.writes::incrementAndGet));
+        assertEquals(4, this.writes.get());
+    }
+}
@@ -0,0 +1,77 @@
+package com.brenner.budgetmanager.concurrency;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {
+        OptimisticRetryExecutor.class
+}, properties = {
+        "budgetmanager.retry.max-attempts=3",
+        "budgetmanager.retry.initial-backoff-millis=1",
+        "budgetmanager.retry.max-backoff-millis=2"
+})
+public class OptimisticRetryExecutorTests {
+
+    @MockBean
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    OptimisticRetryExecutor executor;
+
+    @Test
+    public void testExecuteWithRetry_Success() throws Exception {
+
+        long conflicts = this.executor.getConflictCount();
+        long retries = this.executor.getRetryCount();
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = this.executor.executeWithRetry(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException("SavingsGoal", 1);
+            }
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertEquals(3, attempts.get());
+        assertEquals(conflicts + 2, this.executor.getConflictCount());
+        assertEquals(retries + 2, this.executor.getRetryCount());
+    }
+
+    @Test
+    public void testExecuteWithRetryExhausted_Failure() throws Exception {
+
+        long exhausted = this.executor.getExhaustedCount();
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConflictException.class, () -> this.executor.runWithRetry(() -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("SavingsGoal", 1);
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(exhausted + 1, this.executor.getExhaustedCount());
+    }
+
+    @Test
+    public void testExecuteDoesNotRetry_Failure() throws Exception {
+
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ConflictException.class, () -> this.executor.run(() -> {
+            attempts.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException("Deposit", 1L);
+        }));
+
+        assertEquals(1, attempts.get());
+    }
+}
@@ -1,5 +1,10 @@
 package com.brenner.budgetmanager.deposit;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.FixedClockConfiguration;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
+import com.brenner.budgetmanager.util.JsonValueIterator.UnreadableItemException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -9,28 +14,50 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
+import javax.persistence.EntityManager;
+
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(classes = {
         DepositBusinessService.class,
         DepositApi.class,
-        ObjectMapper.class
+        IdempotencyStore.class,
+        ObjectMapper.class,
+        JsonStreamWriter.class,
+        DataVersions.class,
+        FixedClockConfiguration.class
 })
 @AutoConfigureMockMvc
 @EnableWebMvc
 public class DepositApiTests {
+    
+    @MockBean
+    PlatformTransactionManager transactionManager;
+    
+    @MockBean
+    EntityManager entityManager;
+    
     @Autowired
     MockMvc mockMvc;
     
@@ -40,6 +67,9 @@ public class DepositApiTests {
     @Autowired
     private ObjectMapper objectMapper;
     
+    @Autowired
+    DataVersions dataVersions;
+    
     Deposit d1 = new Deposit(1L, BigDecimal.valueOf(100.5), new Date(), false);
     Deposit d2 = new Deposit(2L, BigDecimal.valueOf(200.5), new Date(), false);
     Deposit d3 = new Deposit(3L, BigDecimal.valueOf(300.5), new Date(), false);
@@ -58,6 +88,31 @@ public class DepositApiTests {
                 .andExpect(jsonPath("$[1].depositId", is(2)));
     }
     
+    @Test
+    public void testGetAllDepositsNotModified_Success() throws Exception {
+        Mockito.when(this.depositService.getUnallocatedDeposits()).thenReturn(Arrays.asList(d1, d2, d3));
+        
+        String eTag = this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/deposits"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/deposits")
+                    .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().exists("Last-Modified"));
+        Mockito.verify(this.depositService, Mockito.times(1)).getUnallocatedDeposits();
+        
+        this.dataVersions.changed(DataVersions.Collection.DEPOSITS);
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/deposits")
+                    .header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+    
     @Test
     public void testGetDepositById_Success() throws Exception {
         
@@ -98,6 +153,7 @@ public class DepositApiTests {
     
     @Test
     public void testUpdateDeposit_Success() throws Exception {
+        d1.setVersion(1L);
         Mockito.when(this.depositService.getDeposit(d1.getDepositId())).thenReturn(Optional.of(d1));
         Mockito.when(this.depositService.saveDeposit(d1)).thenReturn(d1);
         
@@ -112,6 +168,7 @@ public class DepositApiTests {
     
     @Test
     public void testUpdateDepositNotFound_Fail() throws Exception {
+        d1.setVersion(1L);
         Mockito.when(this.depositService.getDeposit(Mockito.anyLong())).thenReturn(Optional.empty());
     
         this.mockMvc.perform(MockMvcRequestBuilders
@@ -121,6 +178,36 @@ public class DepositApiTests {
                 .andExpect(status().isNotFound());
     }
     
+    @Test
+    public void testUpdateDepositWithoutVersion_Fail() throws Exception {
+        Mockito.when(this.depositService.getDeposit(d1.getDepositId())).thenReturn(Optional.of(d1));
+    
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/deposits/" + d1.getDepositId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(d1)))
+                .andExpect(status().isBadRequest());
+        
+        Mockito.verify(this.depositService, Mockito.never()).saveDeposit(Mockito.any());
+    }
+    
+    @Test
+    public void testUpdateDepositIdFromPath_Success() throws Exception {
+        Deposit body = new Deposit(null, BigDecimal.valueOf(100.5), new Date(), false);
+        body.setVersion(1L);
+        Mockito.when(this.depositService.getDeposit(d1.getDepositId())).thenReturn(Optional.of(d1));
+        Mockito.when(this.depositService.saveDeposit(Mockito.any())).thenReturn(d1);
+    
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/deposits/" + d1.getDepositId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(body)))
+                .andExpect(status().isOk());
+        
+        Mockito.verify(this.depositService).saveDeposit(
+                Mockito.argThat(deposit -> d1.getDepositId().equals(deposit.getDepositId())));
+    }
+    
     @Test
     public void testDeleteDeposit_Success() throws Exception {
         Mockito.when(this.depositService.getDeposit(d3.getDepositId())).thenReturn(Optional.of(d3));
@@ -138,4 +225,77 @@ public class DepositApiTests {
                         .delete("/api/deposits/" + d3.getDepositId()))
                 .andExpect(status().isNotFound());
     }
+    
+    @Test
+    public void testStreamDeposits_Success() throws Exception {
+        Mockito.when(this.depositService.streamUnallocatedDeposits()).thenReturn(Stream.of(d1, d2, d3));
+        
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/deposits/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[1].depositId", is(2)));
+        Mockito.verify(this.entityManager, Mockito.times(3)).detach(Mockito.any());
+    }
+    
+    @Test
+    public void testAddNewDepositsJsonArray_Success() throws Exception {
+        Mockito.when(this.depositService.saveDeposits(Mockito.any())).thenAnswer(invocation -> readAll(invocation.getArgument(0)));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/deposits/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"amount\": 100.5, \"date\": \"2022-06-01\"}, {\"amount\": \"lots\"},"
+                                + " {\"amount\": 200, \"date\": \"2022-06-15\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].status", is("REJECTED")))
+                .andExpect(jsonPath("$[2].index", is(2)))
+                .andExpect(jsonPath("$[2].depositId", is(2)));
+    }
+    
+    @Test
+    public void testAddNewDepositsNdjson_Success() throws Exception {
+        Mockito.when(this.depositService.saveDeposits(Mockito.any())).thenAnswer(invocation -> readAll(invocation.getArgument(0)));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/deposits/bulk")
+                        .contentType("application/x-ndjson")
+                        .content("{\"amount\": 100.5, \"date\": \"2022-06-01\"}\n{\"amount\": 200, \"date\": \"2022-06-15\"}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[*].status", everyItem(is("CREATED"))));
+    }
+    
+    @Test
+    public void testAddNewDepositsMalformed_Fail() throws Exception {
+        Mockito.when(this.depositService.saveDeposits(Mockito.any())).thenAnswer(invocation -> readAll(invocation.getArgument(0)));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/deposits/bulk")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"amount\": 100.5, \"date\": \"2022-06-01\"}, {\"amount\": "))
+                .andExpect(status().isBadRequest());
+    }
+    
+    /** Reads the deposits the way the service does, numbering the readable ones as their ids */
+    private static List<BulkDepositResult> readAll(Iterator<Deposit> deposits) {
+        List<BulkDepositResult> results = new ArrayList<>();
+        long nextId = 1;
+        for (int index = 0; deposits.hasNext(); index++) {
+            try {
+                deposits.next();
+                results.add(BulkDepositResult.created(index, nextId++));
+            }
+            catch (UnreadableItemException e) {
+                results.add(BulkDepositResult.rejected(index, e.getMessage()));
+            }
+        }
+        return results;
+    }
 }
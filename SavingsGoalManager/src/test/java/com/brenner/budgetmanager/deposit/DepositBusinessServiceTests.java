@@ -3,14 +3,19 @@
  */
 package com.brenner.budgetmanager.deposit;
 
-
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.JsonValueIterator.UnreadableItemException;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import javax.persistence.EntityManager;
 import java.math.BigDecimal;
 import java.util.*;
 
@@ -23,13 +28,23 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 @SpringBootTest(classes = {
 		DepositBusinessService.class,
-		DepositRepository.class
+		DepositRepository.class,
+		OptimisticRetryExecutor.class
 })
 public class DepositBusinessServiceTests {
 
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
 	@MockBean
 	DepositRepository depositRepo;
 	
+	@MockBean
+	EntityManager entityManager;
+	
+	@MockBean
+	DataVersions dataVersions;
+	
 	@Autowired
 	DepositBusinessService service;
 	
@@ -81,4 +96,86 @@ public class DepositBusinessServiceTests {
 		assertEquals("Deposit id is required.", e.getMessage());
 		
 	}
+	
+	@Test
+	public void testSaveDeposits_Success() throws Exception {
+		Session session = Mockito.mock(Session.class);
+		Mockito.when(this.entityManager.unwrap(Session.class)).thenReturn(session);
+		long[] nextId = {100};
+		Mockito.doAnswer(invocation -> {
+			invocation.<Deposit>getArgument(0).setDepositId(nextId[0]++);
+			return null;
+		}).when(this.entityManager).persist(Mockito.any(Deposit.class));
+		
+		Iterator<Deposit> deposits = Arrays.asList(
+				new Deposit(null, BigDecimal.valueOf(10), new Date(), false),
+				new Deposit(null, BigDecimal.valueOf(-5), new Date(), false),
+				new Deposit(null, BigDecimal.valueOf(20), new Date(), false),
+				new Deposit(null, BigDecimal.valueOf(30), null, false),
+				null,
+				new Deposit(null, BigDecimal.valueOf(40), new Date(), false)).iterator();
+		Iterator<Deposit> withUnreadable = new Iterator<Deposit>() {
+			boolean unreadableSent;
+			@Override
+			public boolean hasNext() {
+				return !unreadableSent || deposits.hasNext();
+			}
+			@Override
+			public Deposit next() {
+				if (!unreadableSent) {
+					unreadableSent = true;
+					throw new UnreadableItemException("Cannot parse date", null);
+				}
+				return deposits.next();
+			}
+		};
+		
+		int batchSize = this.service.bulkBatchSize;
+		this.service.bulkBatchSize = 2;
+		List<BulkDepositResult> results;
+		try {
+			results = this.service.saveDeposits(withUnreadable);
+		}
+		finally {
+			this.service.bulkBatchSize = batchSize;
+		}
+		
+		assertEquals(7, results.size());
+		assertEquals(BulkDepositResult.Status.REJECTED, results.get(0).getStatus());
+		assertEquals("Cannot parse date", results.get(0).getError());
+		assertEquals(BulkDepositResult.Status.CREATED, results.get(1).getStatus());
+		assertEquals(100L, results.get(1).getDepositId());
+		assertEquals("Deposit amount must be greater than 0.", results.get(2).getError());
+		assertEquals(101L, results.get(3).getDepositId());
+		assertEquals("Deposit date is required.", results.get(4).getError());
+		assertEquals("Deposit is required.", results.get(5).getError());
+		assertEquals(6, results.get(6).getIndex());
+		assertEquals(102L, results.get(6).getDepositId());
+		
+		Mockito.verify(session).setJdbcBatchSize(2);
+		Mockito.verify(this.entityManager, Mockito.times(3)).persist(Mockito.any(Deposit.class));
+		// one full batch and the remainder
+		Mockito.verify(this.entityManager, Mockito.times(2)).flush();
+		Mockito.verify(this.entityManager, Mockito.times(2)).clear();
+	}
+	
+	@Test
+	public void testSaveDepositsExistingId_Fail() throws Exception {
+		Mockito.when(this.entityManager.unwrap(Session.class)).thenReturn(Mockito.mock(Session.class));
+		
+		List<BulkDepositResult> results = this.service.saveDeposits(Collections.singletonList(this.d1).iterator());
+		
+		assertEquals(1, results.size());
+		assertEquals(BulkDepositResult.Status.REJECTED, results.get(0).getStatus());
+		assertEquals("Deposit id and version must not be set on a new deposit.", results.get(0).getError());
+		Mockito.verify(this.entityManager, Mockito.never()).persist(Mockito.any());
+	}
+	
+	@Test
+	public void testSaveDepositsNull_Fail() throws Exception {
+		
+		Exception e = assertThrows(InvalidRequestException.class, () -> this.service.saveDeposits(null));
+		
+		assertEquals("Deposits are a required parameter.", e.getMessage());
+	}
 }
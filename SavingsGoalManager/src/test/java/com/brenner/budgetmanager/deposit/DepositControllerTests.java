@@ -74,6 +74,7 @@ public class DepositControllerTests {
 	@Test
 	public void testUpdateDeposit_Success() throws Exception {
 		
+		d2.setVersion(1L);
 		Mockito.when(this.depositBusinessService.getDeposit(d2.getDepositId())).thenReturn(Optional.of(d2));
 		Mockito.when(this.depositBusinessService.saveDeposit(d2)).thenReturn(d2);
 		
@@ -86,6 +87,20 @@ public class DepositControllerTests {
 			.andDo(MockMvcResultHandlers.print());
 	}
 	
+	@Test
+	public void testUpdateDepositWithoutVersion_Fail() throws Exception {
+		
+		Mockito.when(this.depositBusinessService.getDeposit(d2.getDepositId())).thenReturn(Optional.of(d2));
+		
+		this.mockMvc.perform(MockMvcRequestBuilders
+				.post("/updateDeposit")
+				.contentType("application/x-www-form-urlencoded")
+				.flashAttr("deposit", d2))
+			.andExpect(status().isBadRequest());
+		
+		Mockito.verify(this.depositBusinessService, Mockito.never()).saveDeposit(Mockito.any());
+	}
+	
 	@Test
 	public void testBeginEditDeposit_Success() throws Exception {
 		
@@ -0,0 +1,96 @@
+package com.brenner.budgetmanager.deposit;
+
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.util.DataVersions;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.aop.AopAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks that calls to the business service are timed, with the failed calls tagged by their exception.
+ */
+@SpringBootTest(classes = {
+		DepositBusinessService.class,
+		OptimisticRetryExecutor.class,
+		DepositServiceMetricsTests.Metrics.class
+})
+@ImportAutoConfiguration(AopAutoConfiguration.class)
+public class DepositServiceMetricsTests {
+
+	/** Not annotated, so the benchmark profile, whose contexts scan the test classes, does not pick it up */
+	static class Metrics {
+
+		@Bean
+		MeterRegistry meterRegistry() {
+			return new SimpleMeterRegistry();
+		}
+
+		@Bean
+		TimedAspect timedAspect(MeterRegistry registry) {
+			return new TimedAspect(registry);
+		}
+	}
+
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	DepositRepository depositRepo;
+
+	@MockBean
+	EntityManager entityManager;
+	
+	@MockBean
+	DataVersions dataVersions;
+
+	@Autowired
+	DepositBusinessService service;
+
+	@Autowired
+	MeterRegistry registry;
+
+	@Test
+	public void testServiceCallTimed_Success() throws Exception {
+
+		Mockito.when(this.depositRepo.findById(1L))
+				.thenReturn(Optional.of(new Deposit(1L, BigDecimal.TEN, new Date(), false)));
+
+		this.service.getDeposit(1L);
+
+		assertEquals(1, serviceCalls("getDeposit", "none"));
+	}
+
+	@Test
+	public void testServiceCallTimed_Fail() throws Exception {
+
+		assertThrows(InvalidRequestException.class, () -> this.service.saveDeposit(null));
+
+		assertEquals(1, serviceCalls("saveDeposit", InvalidRequestException.class.getSimpleName()));
+	}
+
+	private long serviceCalls(String method, String exception) {
+		return this.registry.get("budgetmanager.service")
+				.tag("class", DepositBusinessService.class.getName())
+				.tag("method", method)
+				.tag("exception", exception)
+				.timer()
+				.count();
+	}
+}
@@ -0,0 +1,145 @@
+package com.brenner.budgetmanager.ledger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = GoalLedgerCompactionJob.class)
+@TestPropertySource(properties = "budgetmanager.ledger.compaction.batch-size=3")
+public class GoalLedgerCompactionJobTests {
+
+	@MockBean
+	GoalLedgerRepository ledgerRepo;
+
+	@MockBean
+	GoalBalanceSnapshotRepository snapshotRepo;
+
+	@MockBean
+	GoalBalanceHistoryRepository historyRepo;
+
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
+	@Autowired
+	GoalLedgerCompactionJob compactionJob;
+
+	long now = 1_655_251_200_000L;
+
+	@BeforeEach
+	public void fixClock() {
+		Mockito.when(this.clock.millis()).thenReturn(this.now);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCompact_Success() throws Exception {
+
+		GoalBalanceSnapshot existing = new GoalBalanceSnapshot(1, BigDecimal.valueOf(100), new Date(0));
+		Mockito.when(this.ledgerRepo.findUncompacted(ArgumentMatchers.any(Pageable.class)))
+				.thenReturn(List.of(entry(1L, 1, "10"), entry(2L, 2, "5"), entry(3L, 1, "-2.50")))
+				.thenReturn(List.of(entry(4L, 2, "1")))
+				.thenReturn(Collections.emptyList());
+		Mockito.when(this.ledgerRepo.markCompacted(ArgumentMatchers.anyCollection()))
+				.thenAnswer(invocation -> invocation.getArgument(0, List.class).size());
+		Mockito.when(this.snapshotRepo.findAllById(ArgumentMatchers.anyIterable()))
+				.thenReturn(List.of(existing))
+				.thenReturn(Collections.emptyList());
+
+		int compacted = this.compactionJob.compact();
+
+		assertEquals(4, compacted);
+		Mockito.verify(this.ledgerRepo).markCompacted(List.of(1L, 2L, 3L));
+		Mockito.verify(this.ledgerRepo).markCompacted(List.of(4L));
+		Mockito.verify(this.ledgerRepo, Mockito.times(2)).findUncompacted(ArgumentMatchers.any(Pageable.class));
+
+		ArgumentCaptor<Iterable<GoalBalanceSnapshot>> saved = ArgumentCaptor.forClass(Iterable.class);
+		Mockito.verify(this.snapshotRepo, Mockito.times(2)).saveAll(saved.capture());
+		Map<Integer, GoalBalanceSnapshot> firstBatch = StreamSupport.stream(saved.getAllValues().get(0).spliterator(), false)
+				.collect(Collectors.toMap(GoalBalanceSnapshot::getSavingsGoalId, Function.identity()));
+		assertSame(existing, firstBatch.get(1));
+		assertEquals(0, new BigDecimal("107.50").compareTo(firstBatch.get(1).getBalance()));
+		assertEquals(new Date(this.now), firstBatch.get(1).getSnapshotAt());
+		assertEquals(0, BigDecimal.valueOf(5).compareTo(firstBatch.get(2).getBalance()));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testCompactAddsToDailyHistory_Success() throws Exception {
+
+		LocalDate today = GoalLedger.dayOf(new Date(this.now));
+		GoalBalanceHistory existing = new GoalBalanceHistory(1, today, BigDecimal.valueOf(20));
+		Mockito.when(this.ledgerRepo.findUncompacted(ArgumentMatchers.any(Pageable.class)))
+				.thenReturn(List.of(entry(1L, 1, "10"), entry(2L, 2, "5")))
+				.thenReturn(Collections.emptyList());
+		Mockito.when(this.ledgerRepo.markCompacted(ArgumentMatchers.anyCollection()))
+				.thenAnswer(invocation -> invocation.getArgument(0, List.class).size());
+		Mockito.when(this.historyRepo.findAllBySavingsGoalIdInAndBalanceDateIn(ArgumentMatchers.anyCollection(),
+				ArgumentMatchers.anyCollection())).thenReturn(List.of(existing));
+
+		this.compactionJob.compact();
+
+		ArgumentCaptor<Iterable<GoalBalanceHistory>> saved = ArgumentCaptor.forClass(Iterable.class);
+		Mockito.verify(this.historyRepo).saveAll(saved.capture());
+		Map<Integer, GoalBalanceHistory> days = StreamSupport.stream(saved.getValue().spliterator(), false)
+				.collect(Collectors.toMap(GoalBalanceHistory::getSavingsGoalId, Function.identity()));
+		assertSame(existing, days.get(1));
+		assertEquals(0, BigDecimal.valueOf(30).compareTo(days.get(1).getDelta()));
+		assertEquals(today, days.get(2).getBalanceDate());
+		assertEquals(0, BigDecimal.valueOf(5).compareTo(days.get(2).getDelta()));
+	}
+
+	@Test
+	public void testCompactNothingUncompacted_Success() throws Exception {
+
+		Mockito.when(this.ledgerRepo.findUncompacted(ArgumentMatchers.any(Pageable.class)))
+				.thenReturn(Collections.emptyList());
+
+		assertEquals(0, this.compactionJob.compact());
+		Mockito.verify(this.ledgerRepo, Mockito.never()).markCompacted(ArgumentMatchers.anyCollection());
+		Mockito.verify(this.snapshotRepo, Mockito.never()).saveAll(ArgumentMatchers.anyIterable());
+	}
+
+	@Test
+	public void testCompactEntriesCompactedConcurrently_Fail() throws Exception {
+
+		Mockito.when(this.ledgerRepo.findUncompacted(ArgumentMatchers.any(Pageable.class)))
+				.thenReturn(List.of(entry(1L, 1, "10"), entry(2L, 2, "5")));
+		Mockito.when(this.ledgerRepo.markCompacted(ArgumentMatchers.anyCollection())).thenReturn(1);
+
+		assertThrows(IllegalStateException.class, () -> this.compactionJob.compact());
+		Mockito.verify(this.snapshotRepo, Mockito.never()).saveAll(ArgumentMatchers.anyIterable());
+		Mockito.verify(this.historyRepo, Mockito.never()).saveAll(ArgumentMatchers.anyIterable());
+	}
+
+	private GoalLedgerEntry entry(Long entryId, Integer savingsGoalId, String delta) {
+		GoalLedgerEntry entry = new GoalLedgerEntry(savingsGoalId, new BigDecimal(delta), GoalLedgerSource.TRANSFER,
+				new Date(this.now));
+		ReflectionTestUtils.setField(entry, "entryId", entryId);
+		return entry;
+	}
+}
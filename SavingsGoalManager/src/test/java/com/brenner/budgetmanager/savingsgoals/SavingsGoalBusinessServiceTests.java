@@ -3,21 +3,35 @@
  */
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.GoalLockManager;
+import com.brenner.budgetmanager.concurrency.GroupCommitCoordinator;
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.deposit.Deposit;
 import com.brenner.budgetmanager.deposit.DepositRepository;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.BalancePoint;
+import com.brenner.budgetmanager.ledger.GoalLedger;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.util.DataVersions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.data.domain.Sort;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,16 +44,31 @@ import static org.junit.jupiter.api.Assertions.*;
 @SpringBootTest(classes = {
 		SavingsGoalsBusinessService.class,
 		SavingsGoalRepository.class,
-		DepositRepository.class
+		DepositRepository.class,
+		OptimisticRetryExecutor.class,
+		GroupCommitCoordinator.class,
+		GoalLockManager.class,
+		SavingsGoalSnapshotCache.class,
+		SavingsPlanCalculator.class,
+		DataVersions.class
 })
 public class SavingsGoalBusinessServiceTests {
 
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
 	@MockBean
 	SavingsGoalRepository repo;
 	
 	@MockBean
 	DepositRepository depositRepo;
 	
+	@MockBean
+	GoalLedger goalLedger;
+	
 	@Autowired
 	SavingsGoalsBusinessService service;
 	
@@ -56,11 +85,28 @@ public class SavingsGoalBusinessServiceTests {
 	Deposit d2 = new Deposit(2L, BigDecimal.valueOf(50), new Date(), false);
 	Deposit d3 = new Deposit(3L, BigDecimal.valueOf(5500.75), new Date(), true);
 	
+	@Autowired
+	SavingsGoalSnapshotCache goalCache;
+	
+	@BeforeEach
+	public void clearGoalCache() {
+		this.goalCache.invalidate();
+	}
+	
+	/** Plans are counted from the start dates of the test goals, as all of them start after this date */
+	@BeforeEach
+	public void fixClock() {
+		Instant now = convertStringToDate("1/1/2000").toInstant();
+		Mockito.when(this.clock.millis()).thenReturn(now.toEpochMilli());
+		Mockito.when(this.clock.instant()).thenReturn(now);
+		Mockito.when(this.clock.getZone()).thenReturn(ZoneId.systemDefault());
+	}
 	
 	@Test
 	public void testFindDefaultGoal_Success() throws Exception {
 		
-		Mockito.when(this.repo.findByIsDefault(true)).thenReturn(Optional.of(this.sg3));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg3, this.sg2));
 		
 		SavingsGoal defaultGoal = this.service.findDefaultGoal().get();
 		
@@ -69,6 +115,33 @@ public class SavingsGoalBusinessServiceTests {
 		assertTrue(defaultGoal.isDefault());
 	}
 	
+	@Test
+	public void testGoalSnapshotServesReadsUntilWrite_Success() throws Exception {
+		
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg3, this.sg2));
+		long misses = this.goalCache.getMissCount();
+		long hits = this.goalCache.getHitCount();
+		
+		assertEquals(3, this.service.getAllSavingsGoals().size());
+		assertEquals(Arrays.asList(this.sg1, this.sg2), this.service.getAllSavingsGoalsButDefault());
+		assertEquals(this.sg3, this.service.findDefaultGoal().get());
+		
+		Mockito.verify(this.repo, Mockito.times(1)).findAll(Sort.by(Sort.Direction.ASC, "goalName"));
+		assertEquals(misses + 1, this.goalCache.getMissCount());
+		assertEquals(hits + 2, this.goalCache.getHitCount());
+		
+		this.service.getAllSavingsGoals().get(0).setGoalName("Changed by caller");
+		assertEquals(this.sg1.getGoalName(), this.service.getAllSavingsGoals().get(0).getGoalName());
+		
+		Mockito.when(this.repo.findCurrentBalance(this.sg1.getSavingsGoalId())).thenReturn(BigDecimal.valueOf(10));
+		Mockito.when(this.repo.save(Mockito.any(SavingsGoal.class))).thenReturn(this.sg1);
+		this.service.updateSavingsGoal(this.sg1);
+		this.service.getAllSavingsGoals();
+		
+		Mockito.verify(this.repo, Mockito.times(2)).findAll(Sort.by(Sort.Direction.ASC, "goalName"));
+	}
+	
 	@Test
 	public void testSaveGoal_Success() throws Exception {
 		
@@ -80,6 +153,17 @@ public class SavingsGoalBusinessServiceTests {
 		assertEquals(this.sg1, savedGoal);
 	}
 	
+	@Test
+	public void testAddGoalRecordsOpeningBalance_Success() throws Exception {
+		
+		Mockito.when(this.repo.save(this.sg1)).thenReturn(this.sg1);
+		
+		this.service.addSavingsGoal(this.sg1);
+		
+		Mockito.verify(this.goalLedger).append(Map.of(this.sg1.getSavingsGoalId(), BigDecimal.valueOf(10)),
+				GoalLedgerSource.MANUAL_ADJUSTMENT);
+	}
+	
 	@Test
 	public void testSaveNullGoal_Failure() throws Exception {
 		
@@ -93,6 +177,7 @@ public class SavingsGoalBusinessServiceTests {
 	@Test
 	public void testUpdateGoal_Success() throws Exception {
 		
+		Mockito.when(this.repo.findCurrentBalance(this.sg2.getSavingsGoalId())).thenReturn(BigDecimal.valueOf(0));
 		Mockito.when(this.repo.save(this.sg2)).thenReturn(this.sg2);
 		
 		SavingsGoal goal = this.service.updateSavingsGoal(this.sg2);
@@ -111,14 +196,61 @@ public class SavingsGoalBusinessServiceTests {
 		
 	}
 	
+	@Test
+	public void testUpdateGoalStaleBalanceIgnored_Success() throws Exception {
+		
+		Mockito.when(this.repo.findCurrentBalance(this.sg1.getSavingsGoalId())).thenReturn(BigDecimal.valueOf(4));
+		Mockito.when(this.repo.save(this.sg1)).thenReturn(this.sg1);
+		
+		SavingsGoal goal = this.service.updateSavingsGoal(this.sg1);
+		
+		assertEquals(BigDecimal.valueOf(4), goal.getCurrentBalance());
+		Mockito.verify(this.goalLedger, Mockito.never()).append(Mockito.anyMap(), Mockito.any());
+	}
+	
+	@Test
+	public void testAdjustBalance_Success() throws Exception {
+		
+		Mockito.when(this.repo.findAllByIdWithCurrentBalance(Collections.singleton(this.sg1.getSavingsGoalId())))
+				.thenReturn(Collections.singletonList(this.sg1));
+		Mockito.when(this.repo.findById(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		
+		SavingsGoal goal = this.service.adjustBalance(this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-4));
+		
+		assertEquals(BigDecimal.valueOf(6), goal.getCurrentBalance());
+		Mockito.verify(this.goalLedger).append(Map.of(this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-4)),
+				GoalLedgerSource.MANUAL_ADJUSTMENT);
+	}
+	
+	@Test
+	public void testAdjustBalanceNullAmount_Failure() throws Exception {
+		
+		Exception e = assertThrows(InvalidRequestException.class, () -> {
+			this.service.adjustBalance(this.sg1.getSavingsGoalId(), null);
+		});
+		
+		assertEquals("Goal id and amount must be non-null.", e.getMessage());
+		Mockito.verify(this.goalLedger, Mockito.never()).append(Mockito.anyMap(), Mockito.any());
+	}
+	
+	@Test
+	public void testUpdateGoalUnchangedBalance_Success() throws Exception {
+		
+		Mockito.when(this.repo.findCurrentBalance(this.sg1.getSavingsGoalId())).thenReturn(new BigDecimal("10.00"));
+		Mockito.when(this.repo.save(this.sg1)).thenReturn(this.sg1);
+		
+		this.service.updateSavingsGoal(this.sg1);
+		
+		Mockito.verify(this.goalLedger, Mockito.never()).append(Mockito.anyMap(), Mockito.any());
+	}
+	
 	@Test
 	public void testUpdateGoalMetTarget_Success() throws Exception {
 		
 		SavingsGoal testGoal = new SavingsGoal();
 		BeanUtils.copyProperties(this.sg1, testGoal);
 		
-		testGoal.setCurrentBalance(testGoal.getTargetAmount());
-		
+		Mockito.when(this.repo.findCurrentBalance(testGoal.getSavingsGoalId())).thenReturn(testGoal.getTargetAmount());
 		Mockito.when(this.repo.save(testGoal)).thenReturn(testGoal);
 		
 		SavingsGoal goal = this.service.updateSavingsGoal(testGoal);
@@ -160,8 +292,8 @@ public class SavingsGoalBusinessServiceTests {
 	@Test
 	public void testGetAllGoalsButDefault_Success() throws Exception {
 		
-		List<SavingsGoal> goals = new ArrayList<>(Arrays.asList(this.sg1, this.sg2));
-		Mockito.when(this.repo.findAllByIsDefaultFalse(Sort.by(Sort.Direction.ASC, "goalName"))).thenReturn(goals);
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2, this.sg3));
 		
 		List<SavingsGoal> allGoals = this.service.getAllSavingsGoalsButDefault();
 		
@@ -191,20 +323,171 @@ public class SavingsGoalBusinessServiceTests {
 		assertEquals("Goal id must be non-null.", e.getMessage());
 	}
 	
+	@Test
+	public void testGetBalanceHistoryDownsampled_Success() throws Exception {
+		
+		LocalDate from = LocalDate.of(2022, 6, 1);
+		List<BalancePoint> daily = new ArrayList<>();
+		for (int day = 0; day < 30; day++) {
+			daily.add(new BalancePoint(from.plusDays(day), BigDecimal.valueOf(day == 10 ? 500 : day)));
+		}
+		Mockito.when(this.repo.findById(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		Mockito.when(this.goalLedger.getDailyBalances(this.sg1.getSavingsGoalId(), from, from.plusDays(29)))
+				.thenReturn(daily);
+		
+		List<BalancePoint> history = this.service.getBalanceHistory(this.sg1.getSavingsGoalId(), from, from.plusDays(29), 5);
+		
+		assertEquals(5, history.size());
+		assertEquals(daily.get(0), history.get(0));
+		assertEquals(daily.get(29), history.get(4));
+		assertTrue(history.contains(daily.get(10)));
+	}
+	
+	@Test
+	public void testGetBalanceHistoryUntilToday_Success() throws Exception {
+		
+		LocalDate from = LocalDate.of(1999, 12, 1);
+		Mockito.when(this.repo.findById(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		
+		this.service.getBalanceHistory(this.sg1.getSavingsGoalId(), from, null, null);
+		
+		Mockito.verify(this.goalLedger).getDailyBalances(this.sg1.getSavingsGoalId(), from, LocalDate.of(2000, 1, 1));
+	}
+	
+	@Test
+	public void testGetBalanceHistoryTooManyPoints_Failure() throws Exception {
+		
+		Mockito.when(this.repo.findById(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		
+		Exception e = assertThrows(InvalidRequestException.class, () -> {
+			this.service.getBalanceHistory(this.sg1.getSavingsGoalId(), null, null, 1001);
+		});
+		
+		assertEquals("Points must be between 3 and 1000.", e.getMessage());
+		Mockito.verifyNoInteractions(this.goalLedger);
+	}
+	
+	@Test
+	public void testGetBalanceHistoryStartAfterEnd_Failure() throws Exception {
+		
+		Mockito.when(this.repo.findById(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		
+		assertThrows(InvalidRequestException.class, () -> {
+			this.service.getBalanceHistory(this.sg1.getSavingsGoalId(), LocalDate.of(2022, 6, 30),
+					LocalDate.of(2022, 6, 1), null);
+		});
+	}
+	
+	@Test
+	public void testGetBalanceHistoryMissingGoal_Failure() throws Exception {
+		
+		Mockito.when(this.repo.findById(42)).thenReturn(Optional.empty());
+		
+		assertThrows(NotFoundException.class, () -> {
+			this.service.getBalanceHistory(42, null, null, null);
+		});
+	}
+	
 	@Test
 	public void testAllocateToGoals_Success() throws Exception {
 		
 		Mockito.when(this.depositRepo.findById(2L)).thenReturn(Optional.of(this.d2));
-		Mockito.when(this.repo.findById(1)).thenReturn(Optional.of(this.sg1));
-		Mockito.when(this.repo.findById(2)).thenReturn(Optional.of(this.sg2));
-		Mockito.when(this.repo.findByIsDefault(true)).thenReturn(Optional.of(this.sg3));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg3, this.sg2));
+		Mockito.when(this.repo.findAllByIdWithCurrentBalance(Mockito.anyCollection()))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2));
 		
 		this.service.allocateDepositToGoals(
 				this.d2.getDepositId(), 
 				Arrays.asList(this.sg1.getSavingsGoalId(), this.sg2.getSavingsGoalId()), 
 				Arrays.asList(BigDecimal.valueOf(100), BigDecimal.valueOf(50.55)));
 		
+		Map<Integer, BigDecimal> expectedEntries = Map.of(
+				this.sg1.getSavingsGoalId(), BigDecimal.valueOf(100),
+				this.sg2.getSavingsGoalId(), BigDecimal.valueOf(50.55),
+				this.sg3.getSavingsGoalId(), BigDecimal.valueOf(50).subtract(BigDecimal.valueOf(150.55)));
+		Mockito.verify(this.goalLedger).append(expectedEntries, GoalLedgerSource.DEPOSIT_ALLOCATION);
+		assertEquals(BigDecimal.valueOf(110), this.sg1.getCurrentBalance());
+		assertEquals(BigDecimal.valueOf(50.55), this.sg2.getCurrentBalance());
+		assertTrue(this.d2.getAllocated());
+	}
+	
+	@Test
+	public void testAllocateToManyGoalsUsesConstantStatements_Success() throws Exception {
+		
+		List<SavingsGoal> goals = new ArrayList<>();
+		List<Integer> goalIds = new ArrayList<>();
+		List<BigDecimal> amounts = new ArrayList<>();
+		for (int i = 10; i < 50; i++) {
+			goals.add(new SavingsGoal(i, "Goal " + i, convertStringToDate("9/1/2022"), convertStringToDate("9/1/2023"),
+					BigDecimal.valueOf(500), BigDecimal.valueOf(0), BigDecimal.valueOf(1), false));
+			goalIds.add(i);
+			amounts.add(BigDecimal.ONE);
+		}
+		
+		Mockito.when(this.depositRepo.findById(1L)).thenReturn(Optional.of(this.d1));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName"))).thenReturn(Arrays.asList(this.sg3));
+		Mockito.when(this.repo.findAllByIdWithCurrentBalance(Mockito.anyCollection())).thenReturn(goals);
+		
+		this.service.allocateDepositToGoals(this.d1.getDepositId(), goalIds, amounts);
+		
+		Mockito.verify(this.goalLedger, Mockito.times(1)).append(Mockito.anyMap(), Mockito.any());
+		Mockito.verify(this.repo, Mockito.times(1)).findAllByIdWithCurrentBalance(Mockito.anyCollection());
+		Mockito.verify(this.repo, Mockito.times(1)).saveAll(Mockito.anyIterable());
+		Mockito.verify(this.repo, Mockito.never()).findById(Mockito.anyInt());
+		Mockito.verify(this.repo, Mockito.never()).save(Mockito.any(SavingsGoal.class));
+	}
+	
+	@Test
+	public void testAllocateToMissingGoal_Failure() throws Exception {
+		
+		Mockito.when(this.depositRepo.findById(2L)).thenReturn(Optional.of(this.d2));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName"))).thenReturn(Arrays.asList(this.sg3));
+		Mockito.when(this.repo.findAllByIdWithCurrentBalance(Mockito.anyCollection()))
+				.thenReturn(Arrays.asList(this.sg1));
+		
+		Exception e = assertThrows(NotFoundException.class, () -> {
+			this.service.allocateDepositToGoals(
+					this.d2.getDepositId(),
+					Arrays.asList(this.sg1.getSavingsGoalId(), 99),
+					Arrays.asList(BigDecimal.valueOf(10), BigDecimal.valueOf(20)));
+		});
+		
+		assertEquals("Savings goals with ids [99] do not exist.", e.getMessage());
+		Mockito.verify(this.goalLedger, Mockito.never()).append(Mockito.anyMap(), Mockito.any());
+	}
+	
+	@Test
+	public void testAllocateWithoutDefaultGoal_Failure() throws Exception {
+		
+		Mockito.when(this.depositRepo.findById(2L)).thenReturn(Optional.of(this.d2));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2));
+		
+		Exception e = assertThrows(NotFoundException.class, () -> {
+			this.service.allocateDepositToGoals(
+					this.d2.getDepositId(),
+					Arrays.asList(this.sg1.getSavingsGoalId()),
+					Arrays.asList(BigDecimal.valueOf(10)));
+		});
+		
+		assertEquals("A default goal could not be identified.", e.getMessage());
+	}
+	
+	@Test
+	public void testReleaseBalanceAndDeleteGoal_Success() throws Exception {
+		
+		Mockito.when(this.repo.findByIdForUpdate(this.sg1.getSavingsGoalId())).thenReturn(Optional.of(this.sg1));
+		Mockito.when(this.repo.findCurrentBalance(this.sg1.getSavingsGoalId())).thenReturn(BigDecimal.valueOf(10));
+		Mockito.when(this.repo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg3));
+		
+		this.service.releaseBalanceAndDeleteSavingsGoal(this.sg1.getSavingsGoalId());
 		
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-10),
+				this.sg3.getSavingsGoalId(), BigDecimal.valueOf(10)), GoalLedgerSource.GOAL_DELETION);
+		Mockito.verify(this.repo).deleteById(this.sg1.getSavingsGoalId());
 	}
 			
 			
@@ -0,0 +1,119 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import com.brenner.budgetmanager.util.DataVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {
+		SavingsGoalRefreshJob.class,
+		SavingsPlanCalculator.class,
+		DataVersions.class
+})
+public class SavingsGoalRefreshJobTests {
+
+	@MockBean
+	SavingsGoalRepository repo;
+
+	@MockBean
+	SavingsGoalSnapshotCache goalCache;
+
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
+	@Autowired
+	SavingsGoalRefreshJob refreshJob;
+
+	@Autowired
+	SavingsPlanCalculator calculator;
+
+	private static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("MM/dd/yyyy");
+
+	long now = convertStringToDate("6/15/2022").getTime();
+
+	SavingsGoal stale;
+
+	SavingsGoal current;
+
+	/** One goal whose plan was last calculated on its start date and one calculated today */
+	@BeforeEach
+	public void createGoals() {
+		Mockito.when(this.clock.millis()).thenReturn(this.now);
+
+		this.stale = new SavingsGoal(1, "Stale", convertStringToDate("1/1/2022"), convertStringToDate("12/31/2022"),
+				BigDecimal.valueOf(1000), BigDecimal.valueOf(0), BigDecimal.valueOf(10), false);
+		this.calculator.applyTo(this.stale);
+		this.stale.setVersion(3L);
+
+		this.current = new SavingsGoal(2, "Current", convertStringToDate("2/1/2022"), convertStringToDate("3/1/2023"),
+				BigDecimal.valueOf(500), BigDecimal.valueOf(0), BigDecimal.valueOf(0), false);
+		this.calculator.applyTo(this.current, this.now);
+		this.current.setVersion(1L);
+
+		Mockito.when(this.repo.findRefreshCandidates(new Date(this.now))).thenReturn(List.of(this.stale, this.current));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRefresh_Success() throws Exception {
+
+		Mockito.when(this.repo.updateSavingsPlans(ArgumentMatchers.anyList())).thenReturn(Collections.emptyList());
+
+		SavingsGoalRefreshReport report = this.refreshJob.refresh();
+
+		ArgumentCaptor<List<SavingsGoal>> updated = ArgumentCaptor.forClass(List.class);
+		Mockito.verify(this.repo).updateSavingsPlans(updated.capture());
+		assertEquals(1, updated.getValue().size());
+		SavingsGoal refreshed = updated.getValue().get(0);
+		assertEquals(1, refreshed.getSavingsGoalId());
+		assertEquals(3L, refreshed.getVersion());
+		assertTrue(refreshed.getDaysTillPayment() < this.stale.getDaysTillPayment());
+
+		assertEquals(2, report.getGoalsScanned());
+		assertEquals(1, report.getGoalsChanged());
+		assertEquals(0, report.getGoalsSkipped());
+		assertSame(report, this.refreshJob.getLastReport());
+		Mockito.verify(this.goalCache).invalidate();
+	}
+
+	@Test
+	public void testRefreshGoalSavedMeanwhile_Fail() throws Exception {
+
+		Mockito.when(this.repo.updateSavingsPlans(ArgumentMatchers.anyList())).thenReturn(List.of(1));
+
+		SavingsGoalRefreshReport report = this.refreshJob.refresh();
+
+		assertEquals(2, report.getGoalsScanned());
+		assertEquals(0, report.getGoalsChanged());
+		assertEquals(1, report.getGoalsSkipped());
+		Mockito.verify(this.goalCache, Mockito.never()).invalidate();
+	}
+
+	private static Date convertStringToDate(String dateString) {
+		try {
+			return DATE_FORMATTER.parse(dateString);
+		}
+		catch (ParseException pe) {
+			throw new RuntimeException(pe);
+		}
+	}
+}
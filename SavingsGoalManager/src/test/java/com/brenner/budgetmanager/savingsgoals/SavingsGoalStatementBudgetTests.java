@@ -0,0 +1,147 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.deposit.DepositBusinessService;
+import com.brenner.budgetmanager.sql.SqlStatementCounter;
+import com.brenner.budgetmanager.sql.SqlStatementCounterConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static com.brenner.budgetmanager.sql.SqlStatementCounter.Kind.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the goal service and API against the embedded database and holds them to statement budgets that do not grow
+ * with the number of goals involved.
+ */
+@SpringBootTest(classes = SavingsGoalsApplication.class)
+@ActiveProfiles("integration")
+@Import(SqlStatementCounterConfiguration.class)
+@AutoConfigureMockMvc
+public class SavingsGoalStatementBudgetTests {
+
+	/** The goal snapshot for the default goal, the deposits and the changed goals with their balances */
+	private static final int ALLOCATION_SELECTS = 3;
+
+	/**
+	 * The deposits and the changed plans (one batch each); the balances are not updated. The goals are created one
+	 * short of their targets, so the allocation reaches them and every plan changes.
+	 */
+	private static final int ALLOCATION_UPDATES = 2;
+
+	/** The goal ledger entries of all goals and the default goal (one batch) */
+	private static final int ALLOCATION_INSERTS = 1;
+
+	/** The ledger entry ids, taken from the sequence in blocks of 50 */
+	private static final int ALLOCATION_SEQUENCE_CALLS = 2;
+
+	@Autowired
+	SavingsGoalsBusinessService service;
+
+	@Autowired
+	DepositBusinessService depositService;
+
+	@Autowired
+	SqlStatementCounter statements;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	@BeforeEach
+	public void createDefaultGoal() {
+		if (this.service.findDefaultGoal().isEmpty()) {
+			this.service.addSavingsGoal(new SavingsGoal(null, "Unplanned", date(0), date(365), BigDecimal.ZERO,
+					BigDecimal.ZERO, BigDecimal.ZERO, true));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 10, 40})
+	public void testAllocateDepositByIdWithinBudget_Success(int goalCount) throws Exception {
+
+		List<Integer> goalIds = createGoals(goalCount, BigDecimal.ONE);
+		Deposit deposit = createDeposit(goalCount);
+
+		this.statements.reset();
+		this.service.allocateDepositToGoals(deposit.getDepositId(), goalIds,
+				Collections.nCopies(goalCount, BigDecimal.ONE));
+
+		this.statements.assertAtMost(SELECT, ALLOCATION_SELECTS);
+		this.statements.assertAtMost(UPDATE, ALLOCATION_UPDATES);
+		this.statements.assertAtMost(INSERT, ALLOCATION_INSERTS);
+		this.statements.assertAtMost(DELETE, 0);
+		this.statements.assertAtMost(OTHER, ALLOCATION_SEQUENCE_CALLS);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = {1, 10, 40})
+	public void testAllocateDepositsWithinBudget_Success(int goalCount) throws Exception {
+
+		List<Integer> goalIds = createGoals(goalCount, BigDecimal.ONE);
+		List<Deposit> deposits = List.of(createDeposit(goalCount), createDeposit(goalCount));
+		List<SavingsGoalAllocation> allocations = new ArrayList<>();
+		goalIds.forEach(goalId -> allocations.add(new SavingsGoalAllocation(goalId, BigDecimal.ONE)));
+
+		this.statements.reset();
+		this.service.allocateDepositToGoals(new SavingsGoalDepositAllocation(deposits, allocations));
+
+		this.statements.assertAtMost(SELECT, ALLOCATION_SELECTS);
+		this.statements.assertAtMost(UPDATE, ALLOCATION_UPDATES);
+		this.statements.assertAtMost(INSERT, ALLOCATION_INSERTS);
+		this.statements.assertAtMost(DELETE, 0);
+		this.statements.assertAtMost(OTHER, ALLOCATION_SEQUENCE_CALLS);
+	}
+
+	@Test
+	public void testListGoalsWithinBudget_Success() throws Exception {
+
+		createGoals(25, BigDecimal.valueOf(100_000));
+
+		this.statements.reset();
+		this.mockMvc.perform(MockMvcRequestBuilders.get("/api/savingsgoals"))
+				.andExpect(status().isOk());
+
+		this.statements.assertAtMost(SELECT, 1);
+
+		this.statements.reset();
+		this.mockMvc.perform(MockMvcRequestBuilders.get("/api/savingsgoals"))
+				.andExpect(status().isOk());
+
+		this.statements.assertAtMost(SELECT, 0);
+	}
+
+	private List<Integer> createGoals(int count, BigDecimal targetAmount) {
+		List<Integer> goalIds = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			goalIds.add(this.service.addSavingsGoal(new SavingsGoal(null, "Goal " + i, date(0), date(365),
+					targetAmount, BigDecimal.ZERO, BigDecimal.ZERO, false)).getSavingsGoalId());
+		}
+		return goalIds;
+	}
+
+	private Deposit createDeposit(int goalCount) {
+		return this.depositService.saveDeposit(new Deposit(null, BigDecimal.valueOf(goalCount + 10L), new Date(), false));
+	}
+
+	private static Date date(int daysFromToday) {
+		return Date.from(LocalDate.now().plusDays(daysFromToday).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
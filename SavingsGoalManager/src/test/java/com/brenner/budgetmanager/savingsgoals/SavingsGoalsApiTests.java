@@ -1,5 +1,11 @@
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.ledger.BalancePoint;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.brenner.budgetmanager.util.FixedClockConfiguration;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -9,37 +15,66 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
+import javax.persistence.EntityManager;
+
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest (classes = {
         SavingsGoalsBusinessService.class,
         SavingsGoalsApi.class,
-        ObjectMapper.class
+        IdempotencyStore.class,
+        ObjectMapper.class,
+        JsonStreamWriter.class,
+        DataVersions.class,
+        FixedClockConfiguration.class
 })
 @AutoConfigureMockMvc
 @EnableWebMvc
 public class SavingsGoalsApiTests {
     
+    @MockBean
+    PlatformTransactionManager transactionManager;
+    
+    @MockBean
+    EntityManager entityManager;
+    
     @Autowired
     MockMvc mockMvc;
     
     @MockBean
     SavingsGoalsBusinessService service;
     
+    @MockBean
+    SavingsGoalRefreshJob refreshJob;
+    
     @Autowired
     ObjectMapper mapper;
     
+    @Autowired
+    DataVersions dataVersions;
+    
     SavingsGoal sg1 = new SavingsGoal(1, "Goal 1", new Date(), new Date(),
             BigDecimal.valueOf(100), BigDecimal.valueOf(50), BigDecimal.valueOf(25), false);
     SavingsGoal sg2 = new SavingsGoal(2, "Goal 2", new Date(), new Date(),
@@ -64,6 +99,40 @@ public class SavingsGoalsApiTests {
                 .andExpect(jsonPath("$[0].savingsGoalId", is(sg1.getSavingsGoalId())));
     }
     
+    @Test
+    public void testGetAllSavingsGoalsNotModified_Success() throws Exception {
+        Mockito.when(this.service.getAllSavingsGoals()).thenReturn(Arrays.asList(sg1, sg2, sg3));
+        
+        String eTag = this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals"))
+                .andExpect(status().isOk())
+                .andExpect(header().dateValue("Last-Modified", FixedClockConfiguration.NOW.toEpochMilli() / 1000 * 1000))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals")
+                    .header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(content().string(""));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals")
+                    .header("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                            FixedClockConfiguration.NOW.atZone(ZoneOffset.UTC))))
+                .andExpect(status().isNotModified());
+        Mockito.verify(this.service, Mockito.times(1)).getAllSavingsGoals();
+        
+        this.dataVersions.changed(DataVersions.Collection.SAVINGS_GOALS);
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals")
+                    .header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(eTag)))
+                .andExpect(jsonPath("$", hasSize(3)));
+    }
+    
     @Test
     public void testGetDefaultGoal_Success() throws Exception {
         Mockito.when(this.service.findDefaultGoal()).thenReturn(Optional.of(defaultGoal));
@@ -99,6 +168,7 @@ public class SavingsGoalsApiTests {
     
     @Test
     public void testUpdateSavingsGoal_Success() throws Exception {
+        sg3.setVersion(1L);
         Mockito.when(this.service.getSavingsGoalById(sg3.getSavingsGoalId())).thenReturn(Optional.of(sg3));
         Mockito.when(this.service.updateSavingsGoal(sg3)).thenReturn(sg3);
         
@@ -111,8 +181,23 @@ public class SavingsGoalsApiTests {
                 .andExpect(jsonPath("$.goalName", is(sg3.getGoalName())));
     }
     
+    @Test
+    public void testAdjustBalance_Success() throws Exception {
+        Mockito.when(this.service.adjustBalance(sg3.getSavingsGoalId(), BigDecimal.valueOf(-20))).thenReturn(sg3);
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/savingsgoals/" + sg3.getSavingsGoalId() + "/adjustments")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(new BalanceAdjustment(BigDecimal.valueOf(-20)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.savingsGoalId", is(sg3.getSavingsGoalId())));
+        
+        Mockito.verify(this.service).adjustBalance(sg3.getSavingsGoalId(), BigDecimal.valueOf(-20));
+    }
+    
     @Test
     public void testUpdateSavingsGoalNotFound_Fail() throws Exception {
+        sg3.setVersion(1L);
         Mockito.when(this.service.getSavingsGoalById(sg3.getSavingsGoalId())).thenReturn(Optional.empty());
     
         this.mockMvc.perform(MockMvcRequestBuilders
@@ -122,6 +207,19 @@ public class SavingsGoalsApiTests {
                 .andExpect(status().isNotFound());
     }
     
+    @Test
+    public void testUpdateSavingsGoalWithoutVersion_Fail() throws Exception {
+        Mockito.when(this.service.getSavingsGoalById(sg3.getSavingsGoalId())).thenReturn(Optional.of(sg3));
+    
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/savingsgoals/" + sg3.getSavingsGoalId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(sg3)))
+                .andExpect(status().isBadRequest());
+        
+        Mockito.verify(this.service, Mockito.never()).updateSavingsGoal(Mockito.any());
+    }
+    
     @Test
     public void testDeleteSavingsGoal_Success() throws Exception {
         Mockito.when(this.service.getSavingsGoalById(sg2.getSavingsGoalId())).thenReturn(Optional.of(sg2));
@@ -139,4 +237,70 @@ public class SavingsGoalsApiTests {
                         .delete("/api/savingsgoals/" + sg2.getSavingsGoalId()))
                 .andExpect(status().isNotFound());
     }
+    
+    @Test
+    public void testStreamSavingsGoals_Success() throws Exception {
+        Mockito.when(this.service.streamAllSavingsGoals()).thenReturn(Stream.of(sg1, sg2, sg3));
+        
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[0].savingsGoalId", is(sg1.getSavingsGoalId())));
+        Mockito.verify(this.entityManager, Mockito.times(3)).detach(Mockito.any());
+    }
+    
+    @Test
+    public void testGetBalanceHistory_Success() throws Exception {
+        LocalDate from = LocalDate.of(2022, 6, 1);
+        LocalDate to = LocalDate.of(2022, 6, 30);
+        Mockito.when(this.service.getBalanceHistory(sg1.getSavingsGoalId(), from, to, 10)).thenReturn(List.of(
+                new BalancePoint(from, BigDecimal.valueOf(25)), new BalancePoint(to, BigDecimal.valueOf(40))));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals/" + sg1.getSavingsGoalId() + "/history")
+                    .param("from", "2022-06-01")
+                    .param("to", "2022-06-30")
+                    .param("points", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].balance", is(40)));
+    }
+    
+    @Test
+    public void testGetBalanceHistoryInvalidRange_Fail() throws Exception {
+        Mockito.when(this.service.getBalanceHistory(Mockito.eq(sg1.getSavingsGoalId()), Mockito.any(), Mockito.any(),
+                Mockito.any())).thenThrow(new InvalidRequestException("The history must start on or before 2022-06-01."));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals/" + sg1.getSavingsGoalId() + "/history")
+                    .param("from", "2022-06-30")
+                    .param("to", "2022-06-01"))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    public void testRefreshSavingsPlans_Success() throws Exception {
+        Mockito.when(this.refreshJob.refresh()).thenReturn(new SavingsGoalRefreshReport(new Date(), 3, 2, 1, 15));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .post("/api/savingsgoals/refresh"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.goalsScanned", is(3)))
+                .andExpect(jsonPath("$.goalsChanged", is(2)))
+                .andExpect(jsonPath("$.goalsSkipped", is(1)));
+    }
+    
+    @Test
+    public void testGetLastRefreshNone_Fail() throws Exception {
+        Mockito.when(this.refreshJob.getLastReport()).thenReturn(null);
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/savingsgoals/refresh"))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -3,23 +3,34 @@
  */
 package com.brenner.budgetmanager.savingsgoals;
 
+import com.brenner.budgetmanager.concurrency.GoalLockManager;
+import com.brenner.budgetmanager.concurrency.GroupCommitCoordinator;
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.deposit.Deposit;
 import com.brenner.budgetmanager.deposit.DepositBusinessService;
 import com.brenner.budgetmanager.deposit.DepositRepository;
+import com.brenner.budgetmanager.ledger.GoalLedger;
+import com.brenner.budgetmanager.util.DataVersions;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultHandlers;
 
+import javax.persistence.EntityManager;
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Clock;
 import java.util.*;
 
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -32,19 +43,39 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest(classes = {
 		SavingsGoalsBusinessService.class,
 		SavingsGoalsController.class,
+		IdempotencyStore.class,
 		SavingsGoalRepository.class,
 		DepositRepository.class,
-		DepositBusinessService.class
+		DepositBusinessService.class,
+		OptimisticRetryExecutor.class,
+		GroupCommitCoordinator.class,
+		GoalLockManager.class,
+		SavingsGoalSnapshotCache.class,
+		SavingsPlanCalculator.class,
+		DataVersions.class,
+		ObjectMapper.class
 })
 @AutoConfigureMockMvc
 public class SavingsGoalsControllerTests {
 
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
 	@MockBean
 	SavingsGoalRepository savingsGoalRepo;
 	
 	@MockBean
 	DepositRepository depositRepo;
 	
+	@MockBean
+	EntityManager entityManager;
+	
+	@MockBean
+	GoalLedger goalLedger;
+	
 	@Autowired
 	MockMvc mockMvc;
 	
@@ -61,6 +92,19 @@ public class SavingsGoalsControllerTests {
 	Deposit d2 = new Deposit(2L, BigDecimal.valueOf(50), new Date(), false);
 	Deposit d3 = new Deposit(3L, BigDecimal.valueOf(5500.75), new Date(), true);
 	
+	@Autowired
+	SavingsGoalSnapshotCache goalCache;
+	
+	@BeforeEach
+	public void clearGoalCache() {
+		this.goalCache.invalidate();
+	}
+	
+	/** Plans are counted from the start dates of the test goals, as all of them start after this date */
+	@BeforeEach
+	public void fixClock() {
+		Mockito.when(this.clock.millis()).thenReturn(convertStringToDate("1/1/2000").getTime());
+	}
 	
 	@Test
 	public void testListGoalsAndDeposits_Success() throws Exception {
@@ -68,8 +112,8 @@ public class SavingsGoalsControllerTests {
 		List<SavingsGoal> goals = new ArrayList<>(Arrays.asList(this.sg1, this.sg2));
 		
 		Mockito.when(this.depositRepo.findById(1L)).thenReturn(Optional.of(this.d1));
-		Mockito.when(this.savingsGoalRepo.findAllByIsDefaultFalse(Sort.by(Sort.Direction.ASC, "goalName"))).thenReturn(goals);
-		Mockito.when(this.savingsGoalRepo.findByIsDefault(true)).thenReturn(Optional.of(this.sg3));
+		Mockito.when(this.savingsGoalRepo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2, this.sg3));
 		
 		this.mockMvc.perform(MockMvcRequestBuilders
 				.get("/listGoalsAndDeposit")
@@ -88,9 +132,10 @@ public class SavingsGoalsControllerTests {
 	public void testAllocateDepositToGoals_Success() throws Exception {
 		
 		Mockito.when(this.depositRepo.findById(2L)).thenReturn(Optional.of(this.d2));
-		Mockito.when(this.savingsGoalRepo.findById(1)).thenReturn(Optional.of(this.sg1));
-		Mockito.when(this.savingsGoalRepo.findById(2)).thenReturn(Optional.of(this.sg2));
-		Mockito.when(this.savingsGoalRepo.findByIsDefault(true)).thenReturn(Optional.of(this.sg3));
+		Mockito.when(this.savingsGoalRepo.findAll(Sort.by(Sort.Direction.ASC, "goalName")))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2, this.sg3));
+		Mockito.when(this.savingsGoalRepo.findAllByIdWithCurrentBalance(Mockito.anyCollection()))
+				.thenReturn(Arrays.asList(this.sg1, this.sg2));
 		
 		
 		this.mockMvc.perform(MockMvcRequestBuilders
@@ -0,0 +1,210 @@
+package com.brenner.budgetmanager.savingsgoals;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.Months;
+import org.joda.time.Weeks;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the calculator against the Joda-Time based calculation it replaced on random goals. The Joda calculation
+ * divided by zero for goals shorter than a week or a day, returned negative savings for goals past their end date and
+ * left the savings per month unchanged for goals shorter than a month, so the savings are only compared for the
+ * periods it counted at least one of.
+ */
+public class SavingsPlanCalculatorTests {
+
+	private static final String[] ZONES = {"UTC", "America/New_York", "Europe/Berlin", "Asia/Kolkata", "Australia/Lord_Howe"};
+
+	private static final int SAMPLES_PER_ZONE = 20_000;
+
+	@Test
+	public void testMatchesJodaCalculation_Success() throws Exception {
+
+		Random random = new Random(20220901L);
+
+		for (String zoneName : ZONES) {
+			ZoneId zone = ZoneId.of(zoneName);
+			SavingsPlanCalculator calculator = new SavingsPlanCalculator(zone);
+
+			for (int i = 0; i < SAMPLES_PER_ZONE; i++) {
+				SavingsGoal goal = randomGoal(random, zone);
+				SavingsGoal expected = copy(goal);
+				jodaPlan(expected, DateTimeZone.forID(zoneName));
+
+				calculator.applyTo(goal);
+
+				String context = zoneName + " " + goal.getSavingsStartDate() + " - " + goal.getSavingsEndDate() + " "
+						+ goal.getTargetAmount() + "/" + goal.getInitialBalance();
+				assertEquals(expected.getMonthsTillPayment(), goal.getMonthsTillPayment(), context);
+				assertEquals(expected.getWeeksTillPayment(), goal.getWeeksTillPayment(), context);
+				assertEquals(expected.getDaysTillPayment(), goal.getDaysTillPayment(), context);
+				if (expected.getMonthsTillPayment() > 0) {
+					assertEquals(expected.getSavingsPerMonth(), goal.getSavingsPerMonth(), context);
+				}
+				if (expected.getWeeksTillPayment() > 0) {
+					assertEquals(expected.getSavingsPerWeek(), goal.getSavingsPerWeek(), context);
+				}
+				if (expected.getDaysTillPayment() > 0) {
+					assertEquals(expected.getSavingsPerDay(), goal.getSavingsPerDay(), context);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testMonthEnds_Success() throws Exception {
+
+		assertEquals(1, months("2021-01-31", "2021-02-28"));
+		assertEquals(0, months("2021-01-31", "2021-02-27"));
+		assertEquals(1, months("2020-01-31", "2020-02-29"));
+		assertEquals(0, months("2020-01-30", "2020-02-28"));
+		assertEquals(12, months("2020-02-29", "2021-02-28"));
+		assertEquals(-1, months("2021-02-28", "2021-01-31"));
+	}
+
+	@Test
+	public void testGoalShorterThanAWeek_Success() throws Exception {
+
+		SavingsGoal goal = goal("2022-06-01", "2022-06-04", BigDecimal.valueOf(100), BigDecimal.ZERO);
+
+		new SavingsPlanCalculator(ZoneId.of("UTC")).applyTo(goal);
+
+		assertEquals(0, goal.getMonthsTillPayment());
+		assertEquals(0, goal.getWeeksTillPayment());
+		assertEquals(3, goal.getDaysTillPayment());
+		assertEquals(new BigDecimal("100.00"), goal.getSavingsPerMonth());
+		assertEquals(new BigDecimal("100.00"), goal.getSavingsPerWeek());
+		assertEquals(new BigDecimal("33.33"), goal.getSavingsPerDay());
+	}
+
+	@Test
+	public void testGoalPastEndDate_Success() throws Exception {
+
+		SavingsGoal goal = goal("2022-06-01", "2022-06-01", BigDecimal.valueOf(100), BigDecimal.valueOf(40));
+
+		new SavingsPlanCalculator(ZoneId.of("UTC")).applyTo(goal);
+
+		assertEquals(0, goal.getDaysTillPayment());
+		assertEquals(new BigDecimal("60.00"), goal.getSavingsPerDay());
+	}
+
+	@Test
+	public void testPlanCountsFromToday_Success() throws Exception {
+
+		SavingsGoal goal = goal("2022-01-01", "2022-12-31", BigDecimal.valueOf(3650), BigDecimal.ZERO);
+		long now = LocalDate.parse("2022-12-21").atTime(15, 30).atZone(ZoneId.of("UTC")).toInstant().toEpochMilli();
+
+		new SavingsPlanCalculator(ZoneId.of("UTC")).applyTo(goal, now);
+
+		assertEquals(10, goal.getDaysTillPayment());
+		assertEquals(1, goal.getWeeksTillPayment());
+		assertEquals(0, goal.getMonthsTillPayment());
+		assertEquals(new BigDecimal("365.00"), goal.getSavingsPerDay());
+
+		// half way through, half of the target has been saved: the other half is spread over the months left
+		goal = goal("2022-01-01", "2023-01-01", BigDecimal.valueOf(1200), BigDecimal.ZERO);
+		goal.setCurrentBalance(BigDecimal.valueOf(600));
+		now = LocalDate.parse("2022-07-01").atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
+
+		new SavingsPlanCalculator(ZoneId.of("UTC")).applyTo(goal, now);
+
+		assertEquals(6, goal.getMonthsTillPayment());
+		assertEquals(new BigDecimal("100.00"), goal.getSavingsPerMonth());
+	}
+
+	@Test
+	public void testPlanBeforeStartCountsFromStart_Success() throws Exception {
+
+		SavingsGoal goal = goal("2022-01-01", "2022-12-31", BigDecimal.valueOf(3640), BigDecimal.ZERO);
+		long now = LocalDate.parse("2021-06-01").atStartOfDay(ZoneId.of("UTC")).toInstant().toEpochMilli();
+
+		new SavingsPlanCalculator(ZoneId.of("UTC")).applyTo(goal, now);
+
+		assertEquals(364, goal.getDaysTillPayment());
+		assertEquals(new BigDecimal("10.00"), goal.getSavingsPerDay());
+	}
+
+	private static int months(String start, String end) {
+		return SavingsPlanCalculator.monthsBetween(LocalDate.parse(start).atStartOfDay(),
+				LocalDate.parse(end).atStartOfDay());
+	}
+
+	private static SavingsGoal goal(String start, String end, BigDecimal target, BigDecimal initial) {
+		ZoneId utc = ZoneId.of("UTC");
+		return new SavingsGoal(1, "Goal", Date.from(LocalDate.parse(start).atStartOfDay(utc).toInstant()),
+				Date.from(LocalDate.parse(end).atStartOfDay(utc).toInstant()), target, initial, BigDecimal.ZERO, false);
+	}
+
+	/**
+	 * Mostly goals from midnight to midnight as created by the forms, some with a time of day, some ending before they
+	 * start and a few with no amount left to save.
+	 */
+	private static SavingsGoal randomGoal(Random random, ZoneId zone) {
+
+		LocalDate start = LocalDate.of(2000, 1, 1).plusDays(random.nextInt(16_000));
+		LocalDate end = start.plusDays(random.nextInt(20) == 0 ? -random.nextInt(60) : 7 + random.nextInt(3_000));
+		long startMillis = start.atStartOfDay(zone).toInstant().toEpochMilli();
+		long endMillis = end.atStartOfDay(zone).toInstant().toEpochMilli();
+		if (random.nextInt(5) == 0) {
+			startMillis += random.nextInt(86_400_000);
+			endMillis += random.nextInt(86_400_000);
+		}
+
+		BigDecimal target = BigDecimal.valueOf(1 + random.nextInt(10_000_000), 2);
+		BigDecimal initial = random.nextInt(10) == 0 ? null : BigDecimal.valueOf(random.nextInt(2_000_000), 2);
+		return new SavingsGoal(1, "Goal", new Date(startMillis), new Date(endMillis), target, initial,
+				BigDecimal.ZERO, false);
+	}
+
+	private static SavingsGoal copy(SavingsGoal goal) {
+		return new SavingsGoal(goal.getSavingsGoalId(), goal.getGoalName(), goal.getSavingsStartDate(),
+				goal.getSavingsEndDate(), goal.getTargetAmount(), goal.getInitialBalance(), goal.getCurrentBalance(),
+				goal.isDefault());
+	}
+
+	/**
+	 * The calculation of SavingsGoalsBusinessService.decorateSavingsGoal before the calculator was introduced, skipping
+	 * the divisions it could not do
+	 */
+	private static void jodaPlan(SavingsGoal goal, DateTimeZone zone) {
+
+		DateTime startDate = new DateTime(goal.getSavingsStartDate().getTime(), zone);
+		DateTime endDate = new DateTime(goal.getSavingsEndDate().getTime(), zone);
+
+		BigDecimal targetAmount = goal.getTargetAmount();
+		BigDecimal initialBalance = goal.getInitialBalance() != null ? goal.getInitialBalance() : BigDecimal.valueOf(0);
+		BigDecimal targetBalance = targetAmount.subtract(initialBalance);
+
+		Months months = Months.monthsBetween(startDate, endDate);
+		goal.setMonthsTillPayment(months.getMonths());
+		if (months.getMonths() > 0) {
+			goal.setSavingsPerMonth(targetBalance.floatValue() > 0 ?
+					targetBalance.divide(BigDecimal.valueOf(months.getMonths()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0));
+		}
+
+		Weeks weeks = Weeks.weeksBetween(startDate, endDate);
+		goal.setWeeksTillPayment(weeks.getWeeks());
+		if (weeks.getWeeks() > 0) {
+			goal.setSavingsPerWeek(targetBalance.floatValue() > 0 ?
+					targetBalance.divide(BigDecimal.valueOf(weeks.getWeeks()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0));
+		}
+
+		Days days = Days.daysBetween(startDate, endDate);
+		goal.setDaysTillPayment(days.getDays());
+		if (days.getDays() > 0) {
+			goal.setSavingsPerDay(targetBalance.floatValue() > 0 ?
+					targetBalance.divide(BigDecimal.valueOf(days.getDays()), 2, RoundingMode.HALF_UP) : BigDecimal.valueOf(0));
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.brenner.budgetmanager.sql;
+
+import org.opentest4j.AssertionFailedError;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the SQL statements sent through a DataSource by kind, so tests can hold the code they run to a statement
+ * budget. A statement is counted each time it is executed; a JDBC batch counts once, as it is one round trip however
+ * many rows it carries. The SQL of the counted statements is kept so a failed budget shows what was sent.
+ *
+ * Wrap the application's DataSource with {@link #wrap(DataSource)} (see {@link SqlStatementCounterConfiguration}),
+ * call {@link #reset()} before the code under test and {@link #assertAtMost} after it.
+ */
+public class SqlStatementCounter {
+
+    public enum Kind {
+        SELECT, INSERT, UPDATE, DELETE, OTHER
+    }
+
+    private final Map<Kind, AtomicLong> counts = new EnumMap<>(Kind.class);
+
+    private final List<String> statements = new ArrayList<>();
+
+    public SqlStatementCounter() {
+        for (Kind kind : Kind.values()) {
+            this.counts.put(kind, new AtomicLong());
+        }
+    }
+
+    /**
+     * @return A DataSource whose connections report the statements they execute to this counter
+     */
+    public DataSource wrap(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+
+            @Override
+            public Connection getConnection() throws SQLException {
+                return countingConnection(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return countingConnection(super.getConnection(username, password));
+            }
+        };
+    }
+
+    /**
+     * Starts counting from zero.
+     */
+    public void reset() {
+        this.counts.values().forEach(count -> count.set(0));
+        synchronized (this.statements) {
+            this.statements.clear();
+        }
+    }
+
+    /**
+     * @return Number of statements of the kind executed since the last reset
+     */
+    public long count(Kind kind) {
+        return this.counts.get(kind).get();
+    }
+
+    /**
+     * @return Number of statements executed since the last reset
+     */
+    public long total() {
+        return this.counts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    /**
+     * Fails the test if more statements of the kind were executed since the last reset than the budget allows.
+     *
+     * @param kind The kind of statement
+     * @param budget The most statements of the kind the code under test may execute
+     */
+    public void assertAtMost(Kind kind, long budget) {
+        long count = count(kind);
+        if (count > budget) {
+            throw new AssertionFailedError(kind + " budget of " + budget + " exceeded with " + count + ": " + this,
+                    budget, count);
+        }
+    }
+
+    /**
+     * @return The counts and the statements executed since the last reset, one per line
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        this.counts.forEach((kind, count) -> summary.append(kind).append('=').append(count.get()).append(' '));
+        synchronized (this.statements) {
+            this.statements.forEach(sql -> summary.append("\n  ").append(sql));
+        }
+        return summary.toString();
+    }
+
+    void record(String sql) {
+        this.counts.get(kindOf(sql)).incrementAndGet();
+        synchronized (this.statements) {
+            this.statements.add(sql.replaceAll("\\s+", " ").trim());
+        }
+    }
+
+    /**
+     * @return The kind of the statement by its first keyword, skipping the comments Hibernate puts in front
+     */
+    static Kind kindOf(String sql) {
+        String statement = sql.trim();
+        while (statement.startsWith("/*") && statement.contains("*/")) {
+            statement = statement.substring(statement.indexOf("*/") + 2).trim();
+        }
+        String keyword = statement.split("[\\s(]", 2)[0].toUpperCase(Locale.ROOT);
+        switch (keyword) {
+            case "SELECT":
+            case "WITH":
+                return Kind.SELECT;
+            case "INSERT":
+                return Kind.INSERT;
+            case "UPDATE":
+                return Kind.UPDATE;
+            case "DELETE":
+                return Kind.DELETE;
+            default:
+                return Kind.OTHER;
+        }
+    }
+
+    private Connection countingConnection(Connection connection) {
+        return proxy(Connection.class, connection, (method, args, result) -> {
+            if (result instanceof CallableStatement) {
+                return countingStatement(CallableStatement.class, (CallableStatement) result, (String) args[0]);
+            }
+            if (result instanceof PreparedStatement) {
+                return countingStatement(PreparedStatement.class, (PreparedStatement) result, (String) args[0]);
+            }
+            if (result instanceof Statement) {
+                return countingStatement(Statement.class, (Statement) result, null);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * @param preparedSql The SQL of a prepared statement, or null for a plain statement that gets its SQL on execution
+     */
+    private <S extends Statement> S countingStatement(Class<S> type, S statement, String preparedSql) {
+        String[] batchSql = {preparedSql};
+        return proxy(type, statement, (method, args, result) -> {
+            String name = method.getName();
+            if (name.equals("addBatch") && args != null && args.length == 1 && args[0] instanceof String) {
+                batchSql[0] = (String) args[0];
+            }
+            else if (name.startsWith("execute")) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : batchSql[0];
+                if (sql != null) {
+                    record(sql);
+                }
+            }
+            return result;
+        });
+    }
+
+    @FunctionalInterface
+    private interface AfterCall {
+        Object apply(Method method, Object[] args, Object result) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, T target, AfterCall afterCall) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            try {
+                return afterCall.apply(method, args, method.invoke(target, args));
+            }
+            catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+}
@@ -0,0 +1,32 @@
+package com.brenner.budgetmanager.sql;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+
+/**
+ * Routes the application's DataSource through a {@link SqlStatementCounter}. Import it into an integration test and
+ * autowire the counter. It is deliberately not annotated, so the benchmark profile, whose contexts scan the test
+ * classes, does not count the statements of the code it measures.
+ */
+public class SqlStatementCounterConfiguration {
+
+    private static final SqlStatementCounter COUNTER = new SqlStatementCounter();
+
+    @Bean
+    public SqlStatementCounter sqlStatementCounter() {
+        return COUNTER;
+    }
+
+    /** Static so the DataSource is wrapped however early it is created */
+    @Bean
+    public static BeanPostProcessor statementCountingDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource ? COUNTER.wrap((DataSource) bean) : bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,133 @@
+package com.brenner.budgetmanager.transactions;
+
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(classes = {
+		TransactionApplier.class,
+		OptimisticRetryExecutor.class
+})
+@TestPropertySource(properties = "budgetmanager.transactions.apply.batch-size=2")
+public class TransactionApplierTests {
+
+	@MockBean
+	TransactionRepository transactionRepo;
+
+	@MockBean
+	SavingsGoalsBusinessService savingsGoalService;
+
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
+	@Autowired
+	TransactionApplier applier;
+
+	SavingsGoal sg1 = new SavingsGoal(1, "Goal One", new Date(), new Date(), BigDecimal.valueOf(100),
+			BigDecimal.valueOf(0), BigDecimal.valueOf(10), false);
+	SavingsGoal sg2 = new SavingsGoal(2, "Goal Two", new Date(), new Date(), BigDecimal.valueOf(500),
+			BigDecimal.valueOf(0), BigDecimal.valueOf(0), false);
+
+	@BeforeEach
+	public void fixClock() {
+		Mockito.when(this.clock.millis()).thenReturn(1_655_251_200_000L);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testApplyPending_Success() throws Exception {
+
+		Mockito.when(this.transactionRepo.claimPending(2))
+				.thenReturn(List.of(transaction(1L, this.sg1, this.sg2, "100"), transaction(2L, this.sg2, this.sg1, "40")))
+				.thenReturn(List.of(transaction(3L, this.sg1, null, "5")))
+				.thenReturn(Collections.emptyList());
+		Mockito.when(this.transactionRepo.markApplied(ArgumentMatchers.anyCollection()))
+				.thenAnswer(invocation -> invocation.getArgument(0, List.class).size());
+
+		TransactionApplierStatus status = this.applier.applyPending();
+
+		assertEquals(3, status.getLastRunApplied());
+		assertEquals(new Date(1_655_251_200_000L), status.getLastRunAt());
+		Mockito.verify(this.transactionRepo, Mockito.times(2)).claimPending(2);
+		Mockito.verify(this.savingsGoalService).applyBalanceDeltas(Map.of(1, BigDecimal.valueOf(-60),
+				2, BigDecimal.valueOf(60)), null, GoalLedgerSource.TRANSFER);
+		Mockito.verify(this.savingsGoalService).applyBalanceDeltas(Map.of(1, BigDecimal.valueOf(-5)), null,
+				GoalLedgerSource.TRANSFER);
+		Mockito.verify(this.transactionRepo).markApplied(List.of(1L, 2L));
+		Mockito.verify(this.transactionRepo).markApplied(List.of(3L));
+	}
+
+	@Test
+	public void testApplyPendingNothingPending_Success() throws Exception {
+
+		Mockito.when(this.transactionRepo.claimPending(2)).thenReturn(Collections.emptyList());
+		Mockito.when(this.transactionRepo.countPending()).thenReturn(0L);
+
+		TransactionApplierStatus status = this.applier.applyPending();
+
+		assertEquals(0, status.getLastRunApplied());
+		assertEquals(0, status.getPending());
+		Mockito.verifyNoInteractions(this.savingsGoalService);
+		Mockito.verify(this.transactionRepo, Mockito.never()).markApplied(ArgumentMatchers.anyCollection());
+	}
+
+	@Test
+	public void testApplyPendingAppliedConcurrently_Failure() throws Exception {
+
+		Mockito.when(this.transactionRepo.claimPending(2))
+				.thenReturn(List.of(transaction(1L, this.sg1, this.sg2, "100"), transaction(2L, this.sg2, null, "1")));
+		Mockito.when(this.transactionRepo.markApplied(ArgumentMatchers.anyCollection())).thenReturn(1);
+
+		assertThrows(IllegalStateException.class, () -> this.applier.applyPending());
+	}
+
+	@Test
+	public void testScheduledApplyNotDeferred_Success() throws Exception {
+
+		this.applier.scheduledApply();
+
+		Mockito.verifyNoInteractions(this.transactionRepo, this.savingsGoalService);
+	}
+
+	@Test
+	public void testScheduledApplyDeferred_Success() throws Exception {
+
+		Mockito.when(this.transactionRepo.claimPending(2)).thenReturn(Collections.emptyList());
+
+		this.applier.deferred = true;
+		try {
+			this.applier.scheduledApply();
+		}
+		finally {
+			this.applier.deferred = false;
+		}
+
+		Mockito.verify(this.transactionRepo).claimPending(2);
+	}
+
+	private static Transaction transaction(Long transactionId, SavingsGoal fromGoal, SavingsGoal toGoal, String amount) {
+		return new Transaction(transactionId, new Date(), fromGoal, toGoal, new BigDecimal(amount));
+	}
+}
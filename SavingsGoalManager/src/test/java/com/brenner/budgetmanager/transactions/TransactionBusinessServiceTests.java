@@ -3,22 +3,44 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.GoalLockManager;
+import com.brenner.budgetmanager.concurrency.GroupCommitCoordinator;
+import com.brenner.budgetmanager.concurrency.OptimisticRetryExecutor;
 import com.brenner.budgetmanager.deposit.DepositRepository;
 import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.GoalLedger;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalSnapshotCache;
+import com.brenner.budgetmanager.savingsgoals.SavingsPlanCalculator;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import com.brenner.budgetmanager.util.DataVersions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -32,10 +54,22 @@ import static org.junit.jupiter.api.Assertions.*;
 		SavingsGoalRepository.class,
 		SavingsGoalsBusinessService.class,
 		TransactionBusinessService.class,
-		DepositRepository.class
+		DepositRepository.class,
+		OptimisticRetryExecutor.class,
+		GroupCommitCoordinator.class,
+		GoalLockManager.class,
+		SavingsGoalSnapshotCache.class,
+		SavingsPlanCalculator.class,
+		DataVersions.class
 })
 public class TransactionBusinessServiceTests {
 
+	@MockBean
+	PlatformTransactionManager transactionManager;
+
+	@MockBean
+	Clock clock;
+
 	@MockBean
 	TransactionRepository repo;
 	
@@ -44,6 +78,9 @@ public class TransactionBusinessServiceTests {
 
 	@MockBean
     SavingsGoalRepository savingsGoalRepo;
+	
+	@MockBean
+	GoalLedger goalLedger;
     
     @Autowired
     SavingsGoalsBusinessService savingsGoalsService;
@@ -62,15 +99,35 @@ public class TransactionBusinessServiceTests {
 	
 	private static final SimpleDateFormat DATE_FORMATTER = new SimpleDateFormat("MM/dd/yyyy");
 	
+	/** Plans are counted from the start dates of the test goals, as all of them start after this date */
+	@BeforeEach
+	public void fixClock() {
+		Mockito.when(this.clock.millis()).thenReturn(convertStringToDate("1/1/2000").getTime());
+	}
+	
+	/** The goals are read with their balance as copies, as from the database */
+	@BeforeEach
+	public void stubGoalsWithBalance() {
+		Mockito.when(this.savingsGoalRepo.findAllByIdWithCurrentBalance(Mockito.anyCollection())).thenAnswer(invocation -> {
+			Collection<Integer> ids = invocation.getArgument(0);
+			return Arrays.asList(this.sg1, this.sg2).stream()
+					.filter(goal -> ids.contains(goal.getSavingsGoalId()))
+					.map(goal -> {
+						SavingsGoal copy = new SavingsGoal();
+						BeanUtils.copyProperties(goal, copy);
+						return copy;
+					})
+					.collect(Collectors.toList());
+		});
+	}
+	
 	@Test
 	public void testSaveTransactionToAndFromGoals_Success() throws Exception {
 		
 		SavingsGoal fromGoal = new SavingsGoal();
 		BeanUtils.copyProperties(this.sg1, fromGoal);
-		this.savingsGoalsService.decorateSavingsGoal(fromGoal);
 		SavingsGoal toGoal = new SavingsGoal();
 		BeanUtils.copyProperties(this.sg2, toGoal);
-		this.savingsGoalsService.decorateSavingsGoal(toGoal);
 		
 		Transaction testTransaction = new Transaction();
 		BeanUtils.copyProperties(this.t1, testTransaction);
@@ -79,17 +136,22 @@ public class TransactionBusinessServiceTests {
 
 		
 		Mockito.when(this.repo.save(testTransaction)).thenReturn(testTransaction);
-		Mockito.when(this.savingsGoalRepo.save(fromGoal)).thenReturn(fromGoal);
-		Mockito.when(this.savingsGoalRepo.save(toGoal)).thenReturn(toGoal);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg2.getSavingsGoalId())).thenReturn(this.sg2);
 		
 		Transaction t = this.service.saveTransaction(testTransaction);
 		
 		assertNotNull(t);
-		assertNotNull(fromGoal.getDaysTillPayment());
-		
-		assertEquals(sg1.getCurrentBalance().subtract(t1.getAmount()), fromGoal.getCurrentBalance());
-		assertEquals(sg2.getCurrentBalance().add(t1.getAmount()), toGoal.getCurrentBalance());
-		
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), this.t1.getAmount().negate(),
+				this.sg2.getSavingsGoalId(), this.t1.getAmount()), GoalLedgerSource.TRANSFER);
+		assertSame(this.sg1, t.getFromGoal());
+		assertSame(this.sg2, t.getToGoal());
+		assertTrue(t.getApplied());
+		
+		// balances supplied with the transaction are not trusted
+		assertEquals(this.sg1.getCurrentBalance(), fromGoal.getCurrentBalance());
+		assertEquals(this.sg2.getCurrentBalance(), toGoal.getCurrentBalance());
 	}
 	
 	@Test
@@ -97,7 +159,6 @@ public class TransactionBusinessServiceTests {
 		
 		SavingsGoal fromGoal = new SavingsGoal();
 		BeanUtils.copyProperties(this.sg1, fromGoal);
-		this.savingsGoalsService.decorateSavingsGoal(fromGoal);
 		
 		Transaction testTransaction = new Transaction();
 		BeanUtils.copyProperties(this.t1, testTransaction);
@@ -106,15 +167,156 @@ public class TransactionBusinessServiceTests {
 
 		
 		Mockito.when(this.repo.save(testTransaction)).thenReturn(testTransaction);
-		Mockito.when(this.savingsGoalRepo.save(fromGoal)).thenReturn(fromGoal);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
 		
 		Transaction t = this.service.saveTransaction(testTransaction);
 		
 		assertNotNull(t);
-		assertNotNull(fromGoal.getDaysTillPayment());
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), this.t1.getAmount().negate()), GoalLedgerSource.TRANSFER);
+		assertNull(t.getToGoal());
 		
-		assertEquals(sg1.getCurrentBalance().subtract(t1.getAmount()), fromGoal.getCurrentBalance());
+	}
+	
+	@Test
+	public void testSaveTransactionBatchNetsDeltas_Success() throws Exception {
+		
+		List<Transaction> batch = Arrays.asList(
+				new Transaction(null, this.t1.getDate(), this.sg1, this.sg2, BigDecimal.valueOf(100)),
+				new Transaction(null, this.t2.getDate(), this.sg2, this.sg1, BigDecimal.valueOf(1)),
+				new Transaction(null, this.t3.getDate(), this.sg1, this.sg2, BigDecimal.valueOf(99)));
+		Mockito.when(this.repo.saveAll(batch)).thenReturn(batch);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg2.getSavingsGoalId())).thenReturn(this.sg2);
+		
+		List<Transaction> saved = this.service.saveTransactions(batch);
+		
+		assertEquals(3, saved.size());
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-198),
+				this.sg2.getSavingsGoalId(), BigDecimal.valueOf(198)), GoalLedgerSource.TRANSFER);
+		Mockito.verify(this.savingsGoalRepo, Mockito.times(1)).findAllByIdWithCurrentBalance(Mockito.anyCollection());
+		Mockito.verify(this.repo).saveAll(batch);
+	}
+	
+	@Test
+	public void testSaveTransactionBatchInvalid_Fail() throws Exception {
+		
+		List<Transaction> batch = Arrays.asList(
+				new Transaction(null, this.t1.getDate(), this.sg1, this.sg2, BigDecimal.valueOf(100)),
+				this.t2);
 		
+		Exception e = assertThrows(InvalidRequestException.class, () -> {
+			this.service.saveTransactions(batch);
+		});
+		
+		assertEquals("Transaction 1 of the batch must be new.", e.getMessage());
+		assertThrows(InvalidRequestException.class, () -> {
+			this.service.saveTransactions(new ArrayList<>());
+		});
+		Mockito.verifyNoInteractions(this.goalLedger);
+		Mockito.verify(this.repo, Mockito.never()).saveAll(Mockito.anyIterable());
+	}
+	
+	@Test
+	public void testSaveTransactionDeferred_Success() throws Exception {
+		
+		List<Transaction> batch = Arrays.asList(
+				new Transaction(null, this.t1.getDate(), this.sg1, this.sg2, BigDecimal.valueOf(100)),
+				new Transaction(null, this.t2.getDate(), this.sg2, null, BigDecimal.valueOf(1)));
+		Mockito.when(this.repo.saveAll(batch)).thenReturn(batch);
+		Mockito.when(this.savingsGoalRepo.findAll(Mockito.any(Sort.class))).thenReturn(Arrays.asList(this.sg1, this.sg2));
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg2.getSavingsGoalId())).thenReturn(this.sg2);
+		
+		List<Transaction> saved;
+		this.service.deferred = true;
+		try {
+			saved = this.service.saveTransactions(batch);
+		}
+		finally {
+			this.service.deferred = false;
+		}
+		
+		assertEquals(2, saved.size());
+		assertFalse(saved.get(0).getApplied());
+		assertFalse(saved.get(1).getApplied());
+		Mockito.verifyNoInteractions(this.goalLedger);
+		Mockito.verify(this.savingsGoalRepo, Mockito.never()).findAllByIdWithCurrentBalance(Mockito.anyCollection());
+		assertEquals(Map.of(
+				this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-100),
+				this.sg2.getSavingsGoalId(), BigDecimal.valueOf(99)), TransactionBusinessService.netDeltas(saved));
+	}
+	
+	@Test
+	public void testSaveTransactionDeferredUpdateOfPending_Success() throws Exception {
+		
+		Transaction pending = new Transaction(this.t1.getTransactionId(), this.t1.getDate(), this.sg1, this.sg2,
+				BigDecimal.valueOf(150));
+		List<Transaction> saving = Collections.singletonList(pending);
+		Mockito.when(this.repo.findAppliedById(pending.getTransactionId())).thenReturn(Optional.of(false));
+		Mockito.when(this.repo.saveAll(saving)).thenReturn(saving);
+		Mockito.when(this.savingsGoalRepo.findAll(Mockito.any(Sort.class))).thenReturn(Arrays.asList(this.sg1, this.sg2));
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg2.getSavingsGoalId())).thenReturn(this.sg2);
+		
+		Transaction saved;
+		this.service.deferred = true;
+		try {
+			saved = this.service.saveTransaction(pending);
+		}
+		finally {
+			this.service.deferred = false;
+		}
+		
+		assertFalse(saved.getApplied());
+		assertEquals(this.t1.getTransactionId(), saved.getTransactionId());
+		Mockito.verifyNoInteractions(this.goalLedger);
+		Mockito.verify(this.repo, Mockito.never()).save(Mockito.any());
+	}
+	
+	@Test
+	public void testSaveTransactionDeferredUpdateOfApplied_Success() throws Exception {
+		
+		Transaction applied = new Transaction(this.t1.getTransactionId(), this.t1.getDate(), this.sg1, null,
+				BigDecimal.valueOf(150));
+		Mockito.when(this.repo.findAppliedById(applied.getTransactionId())).thenReturn(Optional.of(true));
+		Mockito.when(this.repo.save(applied)).thenReturn(applied);
+		Mockito.when(this.savingsGoalRepo.getReferenceById(this.sg1.getSavingsGoalId())).thenReturn(this.sg1);
+		
+		Transaction saved;
+		this.service.deferred = true;
+		try {
+			saved = this.service.saveTransaction(applied);
+		}
+		finally {
+			this.service.deferred = false;
+		}
+		
+		assertTrue(saved.getApplied());
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), BigDecimal.valueOf(-150)), GoalLedgerSource.TRANSFER);
+	}
+	
+	@Test
+	public void testSaveTransactionDeferredUnknownGoal_Fail() throws Exception {
+		
+		SavingsGoal unknownGoal = new SavingsGoal();
+		unknownGoal.setSavingsGoalId(99);
+		Transaction transaction = new Transaction(null, this.t1.getDate(), this.sg1, unknownGoal, BigDecimal.valueOf(100));
+		Mockito.when(this.savingsGoalRepo.findAll(Mockito.any(Sort.class))).thenReturn(Arrays.asList(this.sg1, this.sg2));
+		
+		Exception e;
+		this.service.deferred = true;
+		try {
+			e = assertThrows(NotFoundException.class, () -> this.service.saveTransaction(transaction));
+		}
+		finally {
+			this.service.deferred = false;
+		}
+		
+		assertEquals("Savings goals with ids [99] do not exist.", e.getMessage());
+		Mockito.verify(this.repo, Mockito.never()).saveAll(Mockito.anyIterable());
 	}
 	
 	@Test
@@ -156,48 +358,46 @@ public class TransactionBusinessServiceTests {
 	@Test
 	public void testDeleteTransactionFromAndToGoals_Success() throws Exception {
 		
-		SavingsGoal fromGoal = new SavingsGoal();
-		BeanUtils.copyProperties(this.sg1, fromGoal);
-		this.savingsGoalsService.decorateSavingsGoal(fromGoal);
-		SavingsGoal toGoal = new SavingsGoal();
-		BeanUtils.copyProperties(this.sg2, toGoal);
-		this.savingsGoalsService.decorateSavingsGoal(toGoal);
-		
 		Transaction testTransaction = new Transaction();
 		BeanUtils.copyProperties(this.t1, testTransaction);
-		testTransaction.setFromGoal(fromGoal);
-		testTransaction.setToGoal(toGoal);
-
-		
-		//Mockito.when(this.repo.delete(testTransaction)).thenReturn(testTransaction);
-		Mockito.when(this.savingsGoalRepo.save(fromGoal)).thenReturn(fromGoal);
-		Mockito.when(this.savingsGoalRepo.save(toGoal)).thenReturn(toGoal);
+		testTransaction.setApplied(true);
 		
 		this.service.deleteTransaction(testTransaction);
 		
-		assertEquals(sg1.getCurrentBalance().add(t1.getAmount()), fromGoal.getCurrentBalance());
-		assertEquals(sg2.getCurrentBalance().subtract(t1.getAmount()), toGoal.getCurrentBalance());
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), this.t1.getAmount(),
+				this.sg2.getSavingsGoalId(), this.t1.getAmount().negate()), GoalLedgerSource.TRANSFER);
+		Mockito.verify(this.repo).delete(testTransaction);
 		
 	}
 	
 	@Test
 	public void testDeleteTransactionFromGoalOnly_Success() throws Exception {
 		
-		SavingsGoal fromGoal = new SavingsGoal();
-		BeanUtils.copyProperties(this.sg1, fromGoal);
-		this.savingsGoalsService.decorateSavingsGoal(fromGoal);
-		
 		Transaction testTransaction = new Transaction();
 		BeanUtils.copyProperties(this.t1, testTransaction);
-		testTransaction.setFromGoal(fromGoal);
-
+		testTransaction.setApplied(true);
+		testTransaction.setToGoal(null);
+		
+		this.service.deleteTransaction(testTransaction);
 		
-		//Mockito.when(this.repo.delete(testTransaction)).thenReturn(testTransaction);
-		Mockito.when(this.savingsGoalRepo.save(fromGoal)).thenReturn(fromGoal);
+		Mockito.verify(this.goalLedger).append(Map.of(
+				this.sg1.getSavingsGoalId(), this.t1.getAmount()), GoalLedgerSource.TRANSFER);
+		Mockito.verify(this.repo).delete(testTransaction);
+		
+	}
+	
+	@Test
+	public void testDeleteTransactionNotApplied_Success() throws Exception {
+		
+		Transaction testTransaction = new Transaction();
+		BeanUtils.copyProperties(this.t1, testTransaction);
+		testTransaction.setApplied(false);
 		
 		this.service.deleteTransaction(testTransaction);
 		
-		assertEquals(sg1.getCurrentBalance().add(t1.getAmount()), fromGoal.getCurrentBalance());
+		Mockito.verifyNoInteractions(this.goalLedger);
+		Mockito.verify(this.repo).delete(testTransaction);
 		
 	}
 	
@@ -237,6 +437,63 @@ public class TransactionBusinessServiceTests {
 		
 	}
 	
+	@Test
+	public void testGetTransactionPage_Success() throws Exception {
+		
+		TransactionSummary s1 = summary(this.t1);
+		TransactionSummary s2 = summary(this.t2);
+		TransactionSummary s3 = summary(this.t3);
+		Mockito.when(this.repo.findPageAfter(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any(),
+				Mockito.eq(PageRequest.of(0, 3)))).thenReturn(new ArrayList<>(Arrays.asList(s3, s2, s1)));
+		
+		TransactionPage page = this.service.getTransactionPage(null, null, null, null, 2);
+		
+		assertEquals(Arrays.asList(s3, s2), page.getTransactions());
+		assertEquals(this.t2.getDate(), page.getNextCursor().getDate());
+		assertEquals(this.t2.getTransactionId(), page.getNextCursor().getTransactionId());
+	}
+	
+	@Test
+	public void testGetLastTransactionPageByGoal_Success() throws Exception {
+		
+		TransactionCursor cursor = TransactionCursor.of(summary(this.t3));
+		List<TransactionSummary> summaries = Arrays.asList(summary(this.t2), summary(this.t1));
+		Date from = convertStringToDate("01/01/2020");
+		Date to = convertStringToDate("12/31/2021");
+		Mockito.when(this.repo.findGoalPageAfter(Mockito.eq(1), Mockito.eq(from), Mockito.eq(convertStringToDate("01/01/2022")),
+				Mockito.eq(this.t3.getDate()), Mockito.eq(this.t3.getTransactionId()), Mockito.any()))
+				.thenReturn(summaries);
+		
+		TransactionPage page = this.service.getTransactionPage(cursor, from, to, 1, 5);
+		
+		assertEquals(summaries, page.getTransactions());
+		assertNull(page.getNextCursor());
+	}
+	
+	@Test
+	public void testGetTransactionPageSizeIsCapped_Success() throws Exception {
+		
+		this.service.getTransactionPage(null, null, null, null, 100000);
+		
+		Mockito.verify(this.repo, Mockito.times(1)).findPageAfter(Mockito.any(), Mockito.any(), Mockito.any(),
+				Mockito.eq(Long.MAX_VALUE), Mockito.eq(PageRequest.of(0, 201)));
+	}
+	
+	@Test
+	public void testGetTransactionPageInvalidSize_Fail() throws Exception {
+		
+		Exception e = assertThrows(InvalidRequestException.class, () -> {
+			this.service.getTransactionPage(null, null, null, null, 0);
+		});
+		
+		assertEquals("Page size must be at least 1.", e.getMessage());
+	}
+	
+	private TransactionSummary summary(Transaction t) {
+		return new TransactionSummary(t.getTransactionId(), t.getDate(), t.getAmount(), t.getNotes(), t.getApplied(),
+				t.getFromGoal().getSavingsGoalId(), t.getFromGoal().getGoalName(),
+				t.getToGoal().getSavingsGoalId(), t.getToGoal().getGoalName());
+	}
 	
 	private Date convertStringToDate(String dateStr) {
 		try {
@@ -3,6 +3,7 @@
  */
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
 import com.brenner.budgetmanager.deposit.DepositRepository;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
@@ -19,6 +20,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -34,6 +36,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SpringBootTest(classes = {
 		TransactionBusinessService.class,
 		TransactionController.class,
+		IdempotencyStore.class,
 		SavingsGoalsBusinessService.class,
 		SavingsGoalRepository.class,
 		DepositRepository.class,
@@ -54,6 +57,9 @@ public class TransactionControllerTests {
 	@MockBean
 	SavingsGoalsBusinessService savingsGoalsBusinessService;
 	
+	@MockBean
+	Clock clock;
+	
 	SavingsGoal sg1 = new SavingsGoal(1, "Goal 1", new Date(), new Date(),
 			BigDecimal.valueOf(100), BigDecimal.valueOf(50), BigDecimal.valueOf(25), false);
 	SavingsGoal sg2 = new SavingsGoal(2, "Goal 2", new Date(), new Date(),
@@ -67,11 +73,13 @@ public class TransactionControllerTests {
 
 	@Test
 	public void testManageTransactions_Success() throws Exception {
-		List<Transaction> transactions = Arrays.asList(t1, t2, t3);
+		List<TransactionSummary> transactions = Arrays.asList(
+				new TransactionSummary(1L, new Date(), BigDecimal.valueOf(100), null, false, 1, "Goal 1", 1, "Goal 1"),
+				new TransactionSummary(2L, new Date(), BigDecimal.valueOf(100), null, false, 2, "Goal 2", 2, "Goal 2"));
 		List<SavingsGoal> savingsGoals = Arrays.asList(sg1, sg2, sg3);
 		
 		Mockito.when(this.service.getAllSavingsGoals()).thenReturn(savingsGoals);
-		Mockito.when(this.service.getAllTransactions()).thenReturn(transactions);
+		Mockito.when(this.service.getAllTransactionSummaries()).thenReturn(transactions);
 		
 		this.mockMvc.perform(MockMvcRequestBuilders
 				.get("/manageTransactions"))
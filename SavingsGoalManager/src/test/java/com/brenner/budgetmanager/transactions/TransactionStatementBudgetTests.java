@@ -0,0 +1,130 @@
+package com.brenner.budgetmanager.transactions;
+
+import com.brenner.budgetmanager.SavingsGoalsApplication;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalsBusinessService;
+import com.brenner.budgetmanager.sql.SqlStatementCounter;
+import com.brenner.budgetmanager.sql.SqlStatementCounterConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.brenner.budgetmanager.sql.SqlStatementCounter.Kind.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs the transaction service and API against the embedded database and holds them to statement budgets; the goals
+ * of listed transactions in particular must not be loaded one by one.
+ */
+@SpringBootTest(classes = SavingsGoalsApplication.class)
+@ActiveProfiles("integration")
+@Import(SqlStatementCounterConfiguration.class)
+@AutoConfigureMockMvc
+public class TransactionStatementBudgetTests {
+
+	@Autowired
+	TransactionBusinessService service;
+
+	@Autowired
+	SavingsGoalsBusinessService goalService;
+
+	@Autowired
+	SqlStatementCounter statements;
+
+	@Autowired
+	MockMvc mockMvc;
+
+	List<Integer> goalIds;
+
+	@BeforeEach
+	public void createGoals() {
+		this.goalIds = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			this.goalIds.add(this.goalService.addSavingsGoal(new SavingsGoal(null, "Goal " + i, date(0), date(365),
+					BigDecimal.valueOf(100_000), BigDecimal.ZERO, BigDecimal.valueOf(1_000), false)).getSavingsGoalId());
+		}
+	}
+
+	@Test
+	public void testSaveTransactionWithinBudget_Success() throws Exception {
+
+		this.statements.reset();
+		this.service.saveTransaction(transfer(0, 1, BigDecimal.ONE));
+
+		// the changed goals with their balances; the ledger entries (one batch) and the transaction; the plans do not
+		// change, the goals being far from their targets. Ids come from the sequences in blocks, at most one call each.
+		this.statements.assertAtMost(SELECT, 1);
+		this.statements.assertAtMost(UPDATE, 0);
+		this.statements.assertAtMost(INSERT, 2);
+		this.statements.assertAtMost(DELETE, 0);
+		this.statements.assertAtMost(OTHER, 2);
+	}
+
+	@Test
+	public void testSaveTransactionBatchWithinBudget_Success() throws Exception {
+
+		List<Transaction> batch = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			batch.add(transfer(i % 10, (i + 3) % 10, BigDecimal.valueOf(i + 1)));
+		}
+
+		this.statements.reset();
+		this.service.saveTransactions(batch);
+
+		// as for one transaction: the goals once, their netted ledger entries in one batch; the 200 transactions in
+		// JDBC batches of 50, their ids taken from the sequence in 4 blocks of 50 (and at most one for the entries)
+		this.statements.assertAtMost(SELECT, 1);
+		this.statements.assertAtMost(UPDATE, 0);
+		this.statements.assertAtMost(INSERT, 1 + 4);
+		this.statements.assertAtMost(DELETE, 0);
+		this.statements.assertAtMost(OTHER, 4 + 1);
+	}
+
+	@Test
+	public void testListTransactionsWithinBudget_Success() throws Exception {
+
+		for (int i = 0; i < 30; i++) {
+			this.service.saveTransaction(transfer(i % 10, (i + 1) % 10, BigDecimal.ONE));
+		}
+
+		this.statements.reset();
+		this.mockMvc.perform(MockMvcRequestBuilders.get("/api/transactions"))
+				.andExpect(status().isOk());
+
+		this.statements.assertAtMost(SELECT, 1);
+
+		this.statements.reset();
+		this.mockMvc.perform(MockMvcRequestBuilders.get("/api/transactions").param("goalId", this.goalIds.get(0).toString()))
+				.andExpect(status().isOk());
+
+		this.statements.assertAtMost(SELECT, 1);
+	}
+
+	private Transaction transfer(int from, int to, BigDecimal amount) {
+		return new Transaction(null, new Date(), goalWithId(this.goalIds.get(from)), goalWithId(this.goalIds.get(to)),
+				amount);
+	}
+
+	private static SavingsGoal goalWithId(Integer savingsGoalId) {
+		SavingsGoal goal = new SavingsGoal();
+		goal.setSavingsGoalId(savingsGoalId);
+		return goal;
+	}
+
+	private static Date date(int daysFromToday) {
+		return Date.from(LocalDate.now().plusDays(daysFromToday).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
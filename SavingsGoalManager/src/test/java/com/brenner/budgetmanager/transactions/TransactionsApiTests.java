@@ -1,7 +1,10 @@
 package com.brenner.budgetmanager.transactions;
 
+import com.brenner.budgetmanager.concurrency.IdempotencyStore;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
 import com.brenner.budgetmanager.savingsgoals.SavingsGoalRepository;
+import com.brenner.budgetmanager.util.JsonStreamWriter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
@@ -11,29 +14,49 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 
+import javax.persistence.EntityManager;
+
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest(classes = {
         TransactionBusinessService.class,
         TransactionsApi.class,
+        IdempotencyStore.class,
         SavingsGoalRepository.class,
-        ObjectMapper.class
+        ObjectMapper.class,
+        JsonStreamWriter.class
 })
 @AutoConfigureMockMvc
 @EnableWebMvc
 public class TransactionsApiTests {
     
+    @MockBean
+    PlatformTransactionManager transactionManager;
+    
+    @MockBean
+    Clock clock;
+    
+    @MockBean
+    EntityManager entityManager;
+    
     @Autowired
     MockMvc mockMvc;
     
@@ -43,6 +66,9 @@ public class TransactionsApiTests {
     @MockBean
     TransactionBusinessService service;
     
+    @MockBean
+    TransactionApplier transactionApplier;
+    
     SavingsGoal sg1 = new SavingsGoal(1, "Goal 1", new Date(), new Date(),
             BigDecimal.valueOf(100), BigDecimal.valueOf(50), BigDecimal.valueOf(25), false);
     SavingsGoal sg2 = new SavingsGoal(2, "Goal 2", new Date(), new Date(),
@@ -54,17 +80,56 @@ public class TransactionsApiTests {
     Transaction t2 = new Transaction(2L, new Date(), sg2, sg2, BigDecimal.valueOf(100));
     Transaction t3 = new Transaction(3L, new Date(), sg3, sg3, BigDecimal.valueOf(100));
     
+    TransactionSummary s1 = new TransactionSummary(1L, new Date(), BigDecimal.valueOf(100), null, false, 1, "Goal 1", 1, "Goal 1");
+    TransactionSummary s2 = new TransactionSummary(2L, new Date(), BigDecimal.valueOf(100), null, false, 2, "Goal 2", 2, "Goal 2");
+    TransactionSummary s3 = new TransactionSummary(3L, new Date(), BigDecimal.valueOf(100), null, false, 3, "Goal 3", 3, "Goal 3");
+    
     @Test
     public void testGetAllTransactions_Success() throws Exception {
-        List<Transaction> transactions = Arrays.asList(t1, t2, t3);
-        Mockito.when(this.service.getAllTransactions()).thenReturn(transactions);
+        List<TransactionSummary> transactions = Arrays.asList(s1, s2, s3);
+        Mockito.when(this.service.getTransactionPage(null, null, null, null, null))
+                .thenReturn(new TransactionPage(transactions, null));
         
         this.mockMvc.perform(MockMvcRequestBuilders
                 .get("/api/transactions"))
                 .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$", notNullValue()))
                 .andExpect(jsonPath("$", hasSize(3)))
-                .andExpect(jsonPath("$[1].transactionId", is(t2.getTransactionId().intValue())));
+                .andExpect(jsonPath("$[1].transactionId", is(s2.getTransactionId().intValue())))
+                .andExpect(jsonPath("$[1].fromGoalName", is("Goal 2")))
+                .andExpect(jsonPath("$[1].fromGoal").doesNotExist());
+    }
+    
+    @Test
+    public void testGetTransactionPage_Success() throws Exception {
+        TransactionCursor next = new TransactionCursor(new Date(1650000000000L), 2L);
+        Mockito.when(this.service.getTransactionPage(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.eq(2),
+                Mockito.eq(2))).thenReturn(new TransactionPage(Arrays.asList(s3, s2), next));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/transactions")
+                .param("cursor", "1660000000000_9")
+                .param("size", "2")
+                .param("from", "2022-01-01")
+                .param("to", "2022-12-31")
+                .param("goalId", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Next-Cursor", "1650000000000_2"))
+                .andExpect(jsonPath("$", hasSize(2)));
+        
+        Mockito.verify(this.service).getTransactionPage(
+                Mockito.argThat(c -> c.getTransactionId() == 9L && c.getDate().getTime() == 1660000000000L),
+                Mockito.notNull(), Mockito.notNull(), Mockito.eq(2), Mockito.eq(2));
+    }
+    
+    @Test
+    public void testGetTransactionPageInvalidCursor_Fail() throws Exception {
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/transactions")
+                .param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
     }
     
     @Test
@@ -100,8 +165,92 @@ public class TransactionsApiTests {
                 .andExpect(jsonPath("$.transactionId", is(t1.getTransactionId().intValue())));
     }
     
+    @Test
+    public void testSaveTransactionBatch_Success() throws Exception {
+        Mockito.when(this.service.saveTransactions(Mockito.anyList())).thenReturn(Arrays.asList(t1, t2));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/transactions/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Arrays.asList(t1, t2))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].transactionId", is(t2.getTransactionId().intValue())));
+    }
+    
+    @Test
+    public void testSaveTransactionBatchInvalid_Fail() throws Exception {
+        Mockito.when(this.service.saveTransactions(Mockito.anyList()))
+                .thenThrow(new InvalidRequestException("A batch must contain at least one transaction."));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/transactions/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[]"))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    public void testSaveTransactionRetriedWithIdempotencyKey_Success() throws Exception {
+        Mockito.when(this.service.saveTransaction(Mockito.any(Transaction.class))).thenReturn(t2);
+        
+        for (int attempt = 0; attempt < 2; attempt++) {
+            this.mockMvc.perform(MockMvcRequestBuilders
+                    .post("/api/transactions")
+                    .header(IdempotencyStore.HEADER, "transfer-retried")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(mapper.writeValueAsString(t2)))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.transactionId", is(t2.getTransactionId().intValue())));
+        }
+        
+        Mockito.verify(this.service, Mockito.times(1)).saveTransaction(Mockito.any(Transaction.class));
+    }
+    
+    @Test
+    public void testSaveTransactionIdempotencyKeyReused_Fail() throws Exception {
+        Mockito.when(this.service.saveTransaction(Mockito.any(Transaction.class))).thenReturn(t2);
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/transactions")
+                .header(IdempotencyStore.HEADER, "transfer-reused")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(t2)))
+                .andExpect(status().isOk());
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/transactions")
+                .header(IdempotencyStore.HEADER, "transfer-reused")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(t3)))
+                .andExpect(status().isBadRequest());
+        
+        Mockito.verify(this.service, Mockito.times(1)).saveTransaction(Mockito.any(Transaction.class));
+    }
+    
+    @Test
+    public void testGetApplierStatus_Success() throws Exception {
+        Mockito.when(this.transactionApplier.getStatus()).thenReturn(new TransactionApplierStatus(12, null, 0, 0));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .get("/api/transactions/applier"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pending", is(12)));
+    }
+    
+    @Test
+    public void testApplyPendingTransactions_Success() throws Exception {
+        Mockito.when(this.transactionApplier.applyPending()).thenReturn(new TransactionApplierStatus(0, new Date(), 12, 5));
+        
+        this.mockMvc.perform(MockMvcRequestBuilders
+                .post("/api/transactions/applier"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pending", is(0)))
+                .andExpect(jsonPath("$.lastRunApplied", is(12)));
+    }
+    
     @Test
     public void testUpdateTransaction_Success() throws Exception {
+        t3.setVersion(1L);
         Mockito.when(this.service.getTransaction(t3.getTransactionId())).thenReturn(Optional.of(t3));
         Mockito.when(this.service.saveTransaction(t3)).thenReturn(t3);
         
@@ -116,6 +265,7 @@ public class TransactionsApiTests {
     
     @Test
     public void testUpdateTransactionNotFound_Fail() throws Exception {
+        t3.setVersion(1L);
         Mockito.when(this.service.getTransaction(Mockito.anyLong())).thenReturn(Optional.empty());
     
         this.mockMvc.perform(MockMvcRequestBuilders
@@ -125,6 +275,36 @@ public class TransactionsApiTests {
                 .andExpect(status().isNotFound());
     }
     
+    @Test
+    public void testUpdateTransactionWithoutVersion_Fail() throws Exception {
+        Mockito.when(this.service.getTransaction(t3.getTransactionId())).thenReturn(Optional.of(t3));
+    
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/transactions/" + t3.getTransactionId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(t3)))
+                .andExpect(status().isBadRequest());
+        
+        Mockito.verify(this.service, Mockito.never()).saveTransaction(Mockito.any());
+    }
+    
+    @Test
+    public void testUpdateTransactionIdFromPath_Success() throws Exception {
+        Transaction body = new Transaction(null, new Date(), sg3, sg3, BigDecimal.valueOf(100));
+        body.setVersion(1L);
+        Mockito.when(this.service.getTransaction(t3.getTransactionId())).thenReturn(Optional.of(t3));
+        Mockito.when(this.service.saveTransaction(Mockito.any())).thenReturn(t3);
+    
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .put("/api/transactions/" + t3.getTransactionId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapper.writeValueAsString(body)))
+                .andExpect(status().isOk());
+        
+        Mockito.verify(this.service).saveTransaction(
+                Mockito.argThat(transaction -> t3.getTransactionId().equals(transaction.getTransactionId())));
+    }
+    
     @Test
     public void testDeleteTransaction_Success() throws Exception {
         Mockito.when(this.service.getTransaction(t3.getTransactionId())).thenReturn(Optional.of(t3));
@@ -142,4 +322,21 @@ public class TransactionsApiTests {
                         .delete("/api/transactions/" + t3.getTransactionId()))
                 .andExpect(status().isNotFound());
     }
+    
+    @Test
+    public void testStreamTransactions_Success() throws Exception {
+        Mockito.when(this.service.streamAllTransactions()).thenReturn(Stream.of(s1, s2, s3));
+        
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders
+                    .get("/api/transactions/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        
+        this.mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[1].transactionId", is(s2.getTransactionId().intValue())))
+                .andExpect(jsonPath("$[1].toGoalName", is("Goal 2")));
+        Mockito.verify(this.entityManager, Mockito.never()).detach(Mockito.any());
+    }
 }
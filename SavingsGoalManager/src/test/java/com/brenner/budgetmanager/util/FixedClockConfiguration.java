@@ -0,0 +1,23 @@
+package com.brenner.budgetmanager.util;
+
+import org.springframework.context.annotation.Bean;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Provides a clock fixed at {@link #NOW}, for tests whose beans read the clock while the context starts, before a
+ * mocked clock could be stubbed. Add it to the test's classes. It is deliberately not annotated, so the benchmark
+ * profile, whose contexts scan the test classes, keeps the application's clock.
+ */
+public class FixedClockConfiguration {
+
+    /** Has a fraction of a second, so code that must keep whole seconds is tested */
+    public static final Instant NOW = Instant.parse("2022-06-15T10:30:00.250Z");
+
+    @Bean
+    public Clock clock() {
+        return Clock.fixed(NOW, ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,44 @@
+package com.brenner.budgetmanager.reactive;
+
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * Conversions shared by the repositories. The blocking application stores the java.util.Date fields in timestamp
+ * columns in the JVM's default time zone, which R2DBC reads and writes as LocalDateTime.
+ */
+public final class R2dbcSupport {
+
+	private R2dbcSupport() {}
+
+	/**
+	 * Binds a parameter that may be null; R2DBC needs the type of a null value.
+	 *
+	 * @param spec The statement
+	 * @param name Parameter name
+	 * @param value The value or null
+	 * @param type The column's Java type
+	 * @return The statement with the parameter bound
+	 */
+	public static GenericExecuteSpec bind(GenericExecuteSpec spec, String name, Object value, Class<?> type) {
+		return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+	}
+
+	/**
+	 * Binds a date parameter that may be null.
+	 */
+	public static GenericExecuteSpec bindDate(GenericExecuteSpec spec, String name, Date value) {
+		return bind(spec, name, toLocalDateTime(value), LocalDateTime.class);
+	}
+
+	public static LocalDateTime toLocalDateTime(Date date) {
+		return date == null ? null : LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
+	}
+
+	public static Date toDate(LocalDateTime dateTime) {
+		return dateTime == null ? null : Date.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+	}
+}
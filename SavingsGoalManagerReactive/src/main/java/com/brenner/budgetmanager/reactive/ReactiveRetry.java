@@ -0,0 +1,45 @@
+package com.brenner.budgetmanager.reactive;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Reactive counterpart of the blocking OptimisticRetryExecutor: a write that loses an optimistic locking race (a
+ * {@link ConflictException} from a version checked update) is run again from the start after a jittered exponential
+ * backoff. The backoff is a timer, not a sleeping thread. Once the attempts are used up the last ConflictException
+ * reaches the caller as a 409.
+ */
+@Component
+@Slf4j
+public class ReactiveRetry {
+
+	@Value("${budgetmanager.retry.max-attempts:3}")
+	int maxAttempts;
+
+	@Value("${budgetmanager.retry.initial-backoff-millis:10}")
+	long initialBackoffMillis;
+
+	@Value("${budgetmanager.retry.max-backoff-millis:200}")
+	long maxBackoffMillis;
+
+	/**
+	 * @param work Creates the write; called again for each attempt so every attempt reads current data
+	 * @return The result of the first attempt that did not conflict
+	 */
+	public <T> Mono<T> withRetry(Supplier<Mono<T>> work) {
+
+		return Mono.defer(work)
+				.retryWhen(Retry.backoff(Math.max(0, this.maxAttempts - 1), Duration.ofMillis(this.initialBackoffMillis))
+						.maxBackoff(Duration.ofMillis(this.maxBackoffMillis))
+						.filter(ConflictException.class::isInstance)
+						.doBeforeRetry(signal -> log.debug("Retrying conflicting update, attempt {}", signal.totalRetries() + 2))
+						.onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+	}
+}
@@ -0,0 +1,34 @@
+package com.brenner.budgetmanager.reactive;
+
+import com.brenner.budgetmanager.savingsgoals.SavingsPlanCalculator;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Clock;
+
+/**
+ * Non-blocking variant of the /api endpoints: WebFlux on Netty over R2DBC, so a request waiting for the database or a
+ * slow client does not hold a thread. It shares the model and the business rules ({@link SavingsPlanCalculator},
+ * {@link com.brenner.budgetmanager.savingsgoals.BalanceDeltas}) with the blocking application and works on its
+ * database.
+ */
+@SpringBootApplication
+public class ReactiveSavingsGoalsApplication {
+
+	public static void main(String[] args) {
+		SpringApplication.run(ReactiveSavingsGoalsApplication.class, args);
+	}
+
+	/** Source of the current date for date dependent goal fields; replaced by a fixed clock in tests */
+	@Bean
+	public Clock clock() {
+		return Clock.systemDefaultZone();
+	}
+
+	/** The plan calculation of the blocking application, which is not component scanned here */
+	@Bean
+	public SavingsPlanCalculator savingsPlanCalculator() {
+		return new SavingsPlanCalculator();
+	}
+}
@@ -0,0 +1,91 @@
+package com.brenner.budgetmanager.reactive.deposit;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking API to the deposits, mirroring DepositApi.
+ */
+@RestController
+@RequestMapping(path = "/api")
+public class ReactiveDepositApi {
+
+	@Autowired
+	ReactiveDepositService service;
+
+	/**
+	 * API interface to retrieve all unallocated deposits. The deposits are written as they are read and only as fast as
+	 * the client takes them; with Accept: application/x-ndjson one deposit is sent per line.
+	 *
+	 * @return The deposits that have not been allocated.
+	 */
+	@GetMapping(path = "/deposits", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public Flux<Deposit> getAllDeposits() {
+		return this.service.getUnallocatedDeposits();
+	}
+
+	/**
+	 * API interface to retrieve a specific deposit instance. Throws a 404 if the instance does not exist.
+	 *
+	 * @param depositId Unique identifier for the Deposit instance.
+	 * @return The Deposit object associated with the indentifier.
+	 */
+	@GetMapping(path = "/deposits/{depositId}")
+	public Mono<Deposit> getDepositById(@PathVariable(name = "depositId", required = true) Long depositId) {
+		return this.service.getDeposit(depositId)
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Deposit with id " + depositId + " was not found.")));
+	}
+
+	/**
+	 * API interface to persist a new Deposit instance.
+	 *
+	 * @param deposit Data object to persist
+	 * @return The persisted object including its unique identifier.
+	 */
+	@PostMapping(path = "/deposits")
+	public Mono<Deposit> addNewDeposit(@RequestBody Deposit deposit) {
+		return this.service.saveDeposit(deposit);
+	}
+
+	/**
+	 * API interface to update a deposit instance. Returns a 404 if the instance cannot be found and a 409 if it was
+	 * changed since the supplied version.
+	 *
+	 * @param depositId Deposit instance unique identifier.
+	 * @param deposit The Deposit data to persist
+	 * @return The deposit after persistence.
+	 */
+	@PutMapping(path = "/deposits/{depositId}")
+	public Mono<Deposit> updateDeposit(@PathVariable(name = "depositId", required = true) Long depositId,
+			@RequestBody Deposit deposit) {
+
+		return this.service.getDeposit(depositId)
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Deposit with id " + depositId + " was not found.")))
+				.flatMap(existingDeposit -> {
+					deposit.setDepositId(depositId);
+					if (deposit.getVersion() == null) {
+						deposit.setVersion(existingDeposit.getVersion());
+					}
+					return this.service.saveDeposit(deposit);
+				});
+	}
+
+	/**
+	 * API interface to delete a Deposit instance. Returns a 404 if the instance cannot be found.
+	 *
+	 * @param depositId Unique identifier for the Deposit instance.
+	 * @return Completes when the deposit is deleted
+	 */
+	@DeleteMapping(path = "/deposits/{depositId}")
+	public Mono<Void> deleteDeposit(@PathVariable(name = "depositId") Long depositId) {
+
+		return this.service.getDeposit(depositId)
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Deposit with id " + depositId + " was not found.")))
+				.flatMap(existingDeposit -> this.service.deleteDeposit(depositId));
+	}
+}
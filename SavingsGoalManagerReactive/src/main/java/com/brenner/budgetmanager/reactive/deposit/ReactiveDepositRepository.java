@@ -0,0 +1,109 @@
+package com.brenner.budgetmanager.reactive.deposit;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bind;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bindDate;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.toDate;
+
+/**
+ * Non-blocking access to the deposits table the blocking application maps {@link Deposit} to. Every change increments
+ * the version column the way Hibernate's optimistic locking does.
+ */
+@Repository
+public class ReactiveDepositRepository {
+
+	private static final String SELECT = "select deposit_id, amount, date, allocated, version from deposits ";
+
+	@Autowired
+	DatabaseClient databaseClient;
+
+	/**
+	 * @return The deposits with the given allocated flag, read as the subscriber requests them
+	 */
+	public Flux<Deposit> findByAllocated(boolean allocated) {
+		return this.databaseClient.sql(SELECT + "where allocated = :allocated order by deposit_id")
+				.bind("allocated", allocated)
+				.map((row, metadata) -> toDeposit(row))
+				.all();
+	}
+
+	public Mono<Deposit> findById(Long depositId) {
+		return this.databaseClient.sql(SELECT + "where deposit_id = :depositId")
+				.bind("depositId", depositId)
+				.map((row, metadata) -> toDeposit(row))
+				.one();
+	}
+
+	public Flux<Deposit> findAllById(Collection<Long> depositIds) {
+		return this.databaseClient.sql(SELECT + "where deposit_id = any(:depositIds)")
+				.bind("depositIds", depositIds.toArray(new Long[0]))
+				.map((row, metadata) -> toDeposit(row))
+				.all();
+	}
+
+	/**
+	 * @param deposit A deposit without id or version
+	 * @return The deposit with the id assigned and version 0
+	 * @see com.brenner.budgetmanager.reactive.savingsgoals.ReactiveSavingsGoalRepository#insert for the ids
+	 */
+	public Mono<Deposit> insert(Deposit deposit) {
+		return bindDate(bind(this.databaseClient.sql("insert into deposits (deposit_id, amount, date, allocated, version) "
+						+ "values (nextval('deposits_seq'), :amount, :date, :allocated, 0) returning deposit_id"),
+						"amount", deposit.getAmount(), BigDecimal.class), "date", deposit.getDate())
+				.bind("allocated", deposit.getAllocated())
+				.map((row, metadata) -> row.get("deposit_id", Long.class))
+				.one()
+				.map(depositId -> {
+					deposit.setDepositId(depositId);
+					deposit.setVersion(0L);
+					return deposit;
+				});
+	}
+
+	/**
+	 * Writes a deposit if it still has the version it was read with.
+	 *
+	 * @return The number of deposits updated; 0 if the deposit was changed or deleted since it was read
+	 */
+	public Mono<Integer> update(Deposit deposit) {
+		return bindDate(bind(this.databaseClient.sql("update deposits set amount = :amount, date = :date, "
+						+ "allocated = :allocated, version = version + 1 where deposit_id = :depositId and version = :version"),
+						"amount", deposit.getAmount(), BigDecimal.class), "date", deposit.getDate())
+				.bind("allocated", deposit.getAllocated())
+				.bind("depositId", deposit.getDepositId())
+				.bind("version", deposit.getVersion())
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * @return The number of deposits deleted
+	 */
+	public Mono<Integer> deleteById(Long depositId) {
+		return this.databaseClient.sql("delete from deposits where deposit_id = :depositId")
+				.bind("depositId", depositId)
+				.fetch()
+				.rowsUpdated();
+	}
+
+	static Deposit toDeposit(Row row) {
+		Deposit deposit = new Deposit();
+		deposit.setDepositId(row.get("deposit_id", Long.class));
+		deposit.setAmount(row.get("amount", BigDecimal.class));
+		deposit.setDate(toDate(row.get("date", LocalDateTime.class)));
+		deposit.setAllocated(Boolean.TRUE.equals(row.get("allocated", Boolean.class)));
+		deposit.setVersion(row.get("version", Long.class));
+		return deposit;
+	}
+}
@@ -0,0 +1,86 @@
+package com.brenner.budgetmanager.reactive.deposit;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of DepositBusinessService.
+ */
+@Service
+@Slf4j
+public class ReactiveDepositService {
+
+	@Autowired
+	ReactiveDepositRepository depositRepo;
+
+	/**
+	 * Inserts a new deposit or writes an existing one. A ConflictException is produced if an existing deposit was
+	 * changed since its version was read.
+	 *
+	 * @param deposit Deposit data to save
+	 * @return The saved deposit with unique identifier
+	 */
+	public Mono<Deposit> saveDeposit(Deposit deposit) {
+
+		if (deposit == null) {
+			return Mono.error(new InvalidRequestException("Deposit is a required parameter."));
+		}
+
+		log.debug("Saving Deposit: " + deposit);
+
+		if (deposit.getDepositId() == null) {
+			return this.depositRepo.insert(deposit);
+		}
+
+		return this.depositRepo.update(deposit)
+				.flatMap(updated -> {
+					if (updated == 0) {
+						return Mono.error(new ConflictException("Deposit with id " + deposit.getDepositId()
+								+ " was changed by another request."));
+					}
+					deposit.setVersion(deposit.getVersion() + 1);
+					return Mono.just(deposit);
+				});
+	}
+
+	/**
+	 * @return The deposits that have not been allocated towards goals, read as the subscriber requests them
+	 */
+	public Flux<Deposit> getUnallocatedDeposits() {
+		return this.depositRepo.findByAllocated(false);
+	}
+
+	/**
+	 * @param depositId The Deposit unique identifier
+	 * @return The deposit or empty if it does not exist
+	 */
+	public Mono<Deposit> getDeposit(Long depositId) {
+
+		if (depositId == null) {
+			return Mono.error(new InvalidRequestException("Deposit id is required."));
+		}
+
+		return this.depositRepo.findById(depositId);
+	}
+
+	/**
+	 * Deletes a deposit if it exists.
+	 *
+	 * @param depositId Deposit unique identifier
+	 * @return Completes when the deposit is deleted
+	 */
+	public Mono<Void> deleteDeposit(Long depositId) {
+
+		if (depositId == null) {
+			return Mono.error(new InvalidRequestException("Deposit id is required."));
+		}
+
+		return this.depositRepo.deleteById(depositId).then();
+	}
+}
@@ -0,0 +1,209 @@
+package com.brenner.budgetmanager.reactive.savingsgoals;
+
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
+
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bind;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bindDate;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.toDate;
+
+/**
+ * Non-blocking access to the savings_goals table the blocking application maps {@link SavingsGoal} to. Every change
+ * increments the version column the way Hibernate's optimistic locking does, so both applications can write the same
+ * goals.
+ *
+ * Balances live in the goal ledger: they are read as the goal's snapshot plus its uncompacted entries and changed by
+ * appending entries, never by writing the goal.
+ */
+@Repository
+public class ReactiveSavingsGoalRepository {
+
+	/** The balance derivation of the blocking application's SavingsGoal mapping, qualified for this query */
+	private static final String CURRENT_BALANCE = "coalesce((select s.balance from goal_balance_snapshots s "
+			+ "where s.savings_goal_id = g.savings_goal_id), 0) + coalesce((select sum(e.delta) from goal_ledger e "
+			+ "where e.savings_goal_id = g.savings_goal_id and not e.compacted), 0)";
+
+	private static final String SELECT = "select savings_goal_id, goal_name, savings_start_date, savings_end_date, "
+			+ "target_amount, months_till_payment, weeks_till_payment, days_till_payment, savings_per_month, "
+			+ "savings_per_week, savings_per_day, initial_balance, " + CURRENT_BALANCE + " as current_balance, "
+			+ "is_default, notes, version from savings_goals g ";
+
+	/**
+	 * The id is taken straight from the sequence. The blocking application takes blocks of ids that end at the
+	 * sequence values it reads, so a value read here is never in one of its blocks.
+	 */
+	private static final String INSERT = "insert into savings_goals (savings_goal_id, goal_name, savings_start_date, "
+			+ "savings_end_date, target_amount, months_till_payment, weeks_till_payment, days_till_payment, "
+			+ "savings_per_month, savings_per_week, savings_per_day, initial_balance, is_default, notes, version) "
+			+ "values (nextval('savings_goals_seq'), :goalName, :savingsStartDate, :savingsEndDate, :targetAmount, "
+			+ ":monthsTillPayment, :weeksTillPayment, :daysTillPayment, :savingsPerMonth, :savingsPerWeek, "
+			+ ":savingsPerDay, :initialBalance, :isDefault, :notes, 0) returning savings_goal_id";
+
+	private static final String UPDATE = "update savings_goals set goal_name = :goalName, "
+			+ "savings_start_date = :savingsStartDate, savings_end_date = :savingsEndDate, target_amount = :targetAmount, "
+			+ "months_till_payment = :monthsTillPayment, weeks_till_payment = :weeksTillPayment, "
+			+ "days_till_payment = :daysTillPayment, savings_per_month = :savingsPerMonth, "
+			+ "savings_per_week = :savingsPerWeek, savings_per_day = :savingsPerDay, initial_balance = :initialBalance, "
+			+ "is_default = :isDefault, notes = :notes, version = version + 1 "
+			+ "where savings_goal_id = :savingsGoalId and version = :version";
+
+	/**
+	 * Appends an entry for each goal the appended where clause selects, so an entry is only written for an existing
+	 * goal. Entry ids are taken straight from the sequence like goal ids.
+	 */
+	private static final String APPEND_ENTRY = "insert into goal_ledger (entry_id, savings_goal_id, delta, source, "
+			+ "created_at, compacted) select nextval('goal_ledger_seq'), g.savings_goal_id, :delta, :source, :createdAt, "
+			+ "false from savings_goals g ";
+
+	@Autowired
+	DatabaseClient databaseClient;
+
+	/**
+	 * @return All goals sorted by goal name, read as the subscriber requests them
+	 */
+	public Flux<SavingsGoal> findAll() {
+		return this.databaseClient.sql(SELECT + "order by goal_name")
+				.map((row, metadata) -> toSavingsGoal(row))
+				.all();
+	}
+
+	public Mono<SavingsGoal> findById(Integer savingsGoalId) {
+		return this.databaseClient.sql(SELECT + "where savings_goal_id = :savingsGoalId")
+				.bind("savingsGoalId", savingsGoalId)
+				.map((row, metadata) -> toSavingsGoal(row))
+				.one();
+	}
+
+	public Flux<SavingsGoal> findAllById(Collection<Integer> savingsGoalIds) {
+		return this.databaseClient.sql(SELECT + "where savings_goal_id = any(:savingsGoalIds)")
+				.bind("savingsGoalIds", savingsGoalIds.toArray(new Integer[0]))
+				.map((row, metadata) -> toSavingsGoal(row))
+				.all();
+	}
+
+	public Mono<SavingsGoal> findDefaultGoal() {
+		return this.databaseClient.sql(SELECT + "where is_default = true order by savings_goal_id limit 1")
+				.map((row, metadata) -> toSavingsGoal(row))
+				.one();
+	}
+
+	/**
+	 * @param goal A goal without id or version
+	 * @return The goal with the id assigned and version 0
+	 */
+	public Mono<SavingsGoal> insert(SavingsGoal goal) {
+		return bindColumns(this.databaseClient.sql(INSERT), goal)
+				.map((row, metadata) -> row.get("savings_goal_id", Integer.class))
+				.one()
+				.map(savingsGoalId -> {
+					goal.setSavingsGoalId(savingsGoalId);
+					goal.setVersion(0L);
+					return goal;
+				});
+	}
+
+	/**
+	 * Writes a goal if it still has the version it was read with.
+	 *
+	 * @param goal The goal with its id and the version it was read with
+	 * @return The number of goals updated; 0 if the goal was changed or deleted since it was read
+	 */
+	public Mono<Integer> update(SavingsGoal goal) {
+		return bindColumns(this.databaseClient.sql(UPDATE), goal)
+				.bind("savingsGoalId", goal.getSavingsGoalId())
+				.bind("version", goal.getVersion())
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * Appends a balance change of a goal to the goal ledger.
+	 *
+	 * @return The number of entries appended; 0 if the goal does not exist
+	 */
+	public Mono<Integer> appendLedgerEntry(Integer savingsGoalId, BigDecimal delta, GoalLedgerSource source,
+			Date createdAt) {
+		return bindEntry(this.databaseClient.sql(APPEND_ENTRY + "where g.savings_goal_id = :savingsGoalId"), delta,
+				source, createdAt)
+				.bind("savingsGoalId", savingsGoalId)
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * Appends a balance change of the default goal to the goal ledger.
+	 *
+	 * @return The number of entries appended; 0 if there is no default goal
+	 */
+	public Mono<Integer> appendDefaultGoalLedgerEntry(BigDecimal delta, GoalLedgerSource source, Date createdAt) {
+		return bindEntry(this.databaseClient.sql(APPEND_ENTRY
+				+ "where g.is_default = true order by g.savings_goal_id limit 1"), delta, source, createdAt)
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * @return The number of goals deleted
+	 */
+	public Mono<Integer> deleteById(Integer savingsGoalId) {
+		return this.databaseClient.sql("delete from savings_goals where savings_goal_id = :savingsGoalId")
+				.bind("savingsGoalId", savingsGoalId)
+				.fetch()
+				.rowsUpdated();
+	}
+
+	private static GenericExecuteSpec bindColumns(GenericExecuteSpec spec, SavingsGoal goal) {
+		spec = bind(spec, "goalName", goal.getGoalName(), String.class);
+		spec = bindDate(spec, "savingsStartDate", goal.getSavingsStartDate());
+		spec = bindDate(spec, "savingsEndDate", goal.getSavingsEndDate());
+		spec = bind(spec, "targetAmount", goal.getTargetAmount(), BigDecimal.class);
+		spec = bind(spec, "monthsTillPayment", goal.getMonthsTillPayment(), Integer.class);
+		spec = bind(spec, "weeksTillPayment", goal.getWeeksTillPayment(), Integer.class);
+		spec = bind(spec, "daysTillPayment", goal.getDaysTillPayment(), Integer.class);
+		spec = bind(spec, "savingsPerMonth", goal.getSavingsPerMonth(), BigDecimal.class);
+		spec = bind(spec, "savingsPerWeek", goal.getSavingsPerWeek(), BigDecimal.class);
+		spec = bind(spec, "savingsPerDay", goal.getSavingsPerDay(), BigDecimal.class);
+		spec = bind(spec, "initialBalance", goal.getInitialBalance(), BigDecimal.class);
+		spec = spec.bind("isDefault", goal.isDefault());
+		return bind(spec, "notes", goal.getNotes(), String.class);
+	}
+
+	private static GenericExecuteSpec bindEntry(GenericExecuteSpec spec, BigDecimal delta, GoalLedgerSource source,
+			Date createdAt) {
+		spec = spec.bind("delta", delta).bind("source", source.name());
+		return bindDate(spec, "createdAt", createdAt);
+	}
+
+	static SavingsGoal toSavingsGoal(Row row) {
+		SavingsGoal goal = new SavingsGoal();
+		goal.setSavingsGoalId(row.get("savings_goal_id", Integer.class));
+		goal.setGoalName(row.get("goal_name", String.class));
+		goal.setSavingsStartDate(toDate(row.get("savings_start_date", LocalDateTime.class)));
+		goal.setSavingsEndDate(toDate(row.get("savings_end_date", LocalDateTime.class)));
+		goal.setTargetAmount(row.get("target_amount", BigDecimal.class));
+		goal.setMonthsTillPayment(row.get("months_till_payment", Integer.class));
+		goal.setWeeksTillPayment(row.get("weeks_till_payment", Integer.class));
+		goal.setDaysTillPayment(row.get("days_till_payment", Integer.class));
+		goal.setSavingsPerMonth(row.get("savings_per_month", BigDecimal.class));
+		goal.setSavingsPerWeek(row.get("savings_per_week", BigDecimal.class));
+		goal.setSavingsPerDay(row.get("savings_per_day", BigDecimal.class));
+		goal.setInitialBalance(row.get("initial_balance", BigDecimal.class));
+		goal.setCurrentBalance(row.get("current_balance", BigDecimal.class));
+		goal.setDefault(Boolean.TRUE.equals(row.get("is_default", Boolean.class)));
+		goal.setNotes(row.get("notes", String.class));
+		goal.setVersion(row.get("version", Long.class));
+		return goal;
+	}
+}
@@ -0,0 +1,131 @@
+package com.brenner.budgetmanager.reactive.savingsgoals;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.savingsgoals.BalanceAdjustment;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalDepositAllocation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+/**
+ * Non-blocking API to the savings goals, mirroring SavingsGoalsApi.
+ */
+@RestController
+@RequestMapping(path = "/api")
+@Slf4j
+public class ReactiveSavingsGoalsApi {
+
+	@Autowired
+	ReactiveSavingsGoalsService service;
+
+	/**
+	 * Access to the list of savings goals, sorted by name. The goals are written as they are read and only as fast as
+	 * the client takes them; with Accept: application/x-ndjson one goal is sent per line.
+	 *
+	 * @return All savings goals
+	 */
+	@GetMapping(path = "/savingsgoals", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public Flux<SavingsGoal> getAllSavingsGoals() {
+		return this.service.getAllSavingsGoals();
+	}
+
+	/**
+	 * Access to retrieve the specific default goal. A 404 is generated if there is no default goal.
+	 *
+	 * @return The goal marked as a default.
+	 */
+	@GetMapping(path = "/savingsgoals/defaultgoal")
+	public Mono<SavingsGoal> getDefaultGoal() {
+		return this.service.findDefaultGoal()
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Default goal does not exist.")));
+	}
+
+	/**
+	 * Access to save a new goal
+	 *
+	 * @param savingsGoal The goal data to persist
+	 * @return The persisted object including unique identifier
+	 */
+	@PostMapping(path = "/savingsgoals")
+	public Mono<SavingsGoal> addSavingsGoal(@RequestBody SavingsGoal savingsGoal) {
+		if (savingsGoal.getCurrentBalance() == null) {
+			savingsGoal.setCurrentBalance(BigDecimal.valueOf(0));
+		}
+		return this.service.addSavingsGoal(savingsGoal);
+	}
+
+	/**
+	 * Access to allocate amounts to goals associated with specific deposits.
+	 *
+	 * @param savingsGoalDepositAllocations The list of allocations
+	 * @return Completes when the allocation is committed
+	 */
+	@PutMapping(path = "/savingsgoals/allocateDeposit")
+	public Mono<Void> allocateDepositToGoals(@RequestBody SavingsGoalDepositAllocation savingsGoalDepositAllocations) {
+		return this.service.allocateDepositToGoals(savingsGoalDepositAllocations);
+	}
+
+	/**
+	 * Access to update a goal. The version the client read is required and a 400 will be generated without one. If the
+	 * goal to update doesn't exist a 404 will be generated, and if it has been changed since that version a 409. The
+	 * current balance is not updated; it is changed with an adjustment.
+	 *
+	 * @param id The goal's unique identifier
+	 * @param savingsGoal The goal data to persist
+	 * @return The goal after persistence
+	 */
+	@PutMapping(path = "/savingsgoals/{id}")
+	public Mono<SavingsGoal> updateSavingsGoal(@PathVariable Integer id, @RequestBody SavingsGoal savingsGoal) {
+
+		log.debug("Call to update SavingsGoal: " + savingsGoal);
+
+		if (savingsGoal.getVersion() == null) {
+			return Mono.error(new InvalidRequestException("Savings goal version is required to update goal " + id + "."));
+		}
+		return this.service.getSavingsGoalById(id)
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Savings goal with id " + id + " does not exist.")))
+				.flatMap(sg -> {
+					if (! savingsGoal.getVersion().equals(sg.getVersion())) {
+						return Mono.error(new ConflictException("Savings goal with id " + id + " was changed by another request."));
+					}
+					sg.setGoalName(savingsGoal.getGoalName());
+					sg.setInitialBalance(savingsGoal.getInitialBalance());
+					sg.setTargetAmount(savingsGoal.getTargetAmount());
+					sg.setSavingsStartDate(savingsGoal.getSavingsStartDate());
+					sg.setSavingsEndDate(savingsGoal.getSavingsEndDate());
+					return this.service.updateSavingsGoal(sg);
+				});
+	}
+
+	/**
+	 * Access to add an amount to a goal's balance, or subtract it when negative. A 404 is generated if the goal doesn't
+	 * exist and a 400 if no amount is given.
+	 *
+	 * @param id The goal's unique identifier
+	 * @param adjustment The amount to add
+	 * @return The goal with its adjusted balance
+	 */
+	@PostMapping(path = "/savingsgoals/{id}/adjustments")
+	public Mono<SavingsGoal> adjustBalance(@PathVariable Integer id, @RequestBody BalanceAdjustment adjustment) {
+		return this.service.adjustBalance(id, adjustment.getAmount());
+	}
+
+	/**
+	 * Access to delete a specific goal. A 404 will be generated if the goal is not found.
+	 *
+	 * @param id The goal's unique identifier.
+	 * @return Completes when the goal is deleted
+	 */
+	@DeleteMapping(path = "/savingsgoals/{id}")
+	public Mono<Void> deleteSavingsGoal(@PathVariable Integer id) {
+		return this.service.deleteSavingsGoal(id);
+	}
+}
@@ -0,0 +1,293 @@
+package com.brenner.budgetmanager.reactive.savingsgoals;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.reactive.ReactiveRetry;
+import com.brenner.budgetmanager.reactive.deposit.ReactiveDepositRepository;
+import com.brenner.budgetmanager.savingsgoals.BalanceDeltas;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalDepositAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsPlanCalculator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of SavingsGoalsBusinessService with the same rules: goals are decorated by
+ * {@link SavingsPlanCalculator#decorate} before they are written, and allocations and transactions change balances by
+ * appending the deltas built by {@link BalanceDeltas} to the goal ledger, the unallocated remainder going to the
+ * default goal.
+ *
+ * Balance changes are appends, so no in-process goal locks are needed; writes that lose an optimistic locking race are
+ * retried by {@link ReactiveRetry}, each attempt in a transaction of its own.
+ */
+@Service
+@Slf4j
+public class ReactiveSavingsGoalsService {
+
+	@Autowired
+	ReactiveSavingsGoalRepository savingsGoalRepo;
+
+	@Autowired
+	ReactiveDepositRepository depositRepo;
+
+	@Autowired
+	SavingsPlanCalculator savingsPlanCalculator;
+
+	@Autowired
+	TransactionalOperator transactionalOperator;
+
+	@Autowired
+	ReactiveRetry retry;
+
+	@Autowired
+	Clock clock;
+
+	/**
+	 * @return All goals sorted by goal name, read as the subscriber requests them
+	 */
+	public Flux<SavingsGoal> getAllSavingsGoals() {
+		return this.savingsGoalRepo.findAll();
+	}
+
+	/**
+	 * @return The goal flagged as default or empty if there is none
+	 */
+	public Mono<SavingsGoal> findDefaultGoal() {
+		return this.savingsGoalRepo.findDefaultGoal();
+	}
+
+	/**
+	 * @param goalId The goal's unique identifier
+	 * @return The goal or empty if it does not exist
+	 */
+	public Mono<SavingsGoal> getSavingsGoalById(Integer goalId) {
+
+		if (goalId == null) {
+			return Mono.error(new InvalidRequestException("Goal id must be non-null."));
+		}
+
+		return this.savingsGoalRepo.findById(goalId);
+	}
+
+	/**
+	 * Decorates and persists a new goal. A non-zero current balance is appended to the goal ledger as the goal's opening
+	 * balance in the same transaction.
+	 *
+	 * @param goal The goal data to persist
+	 * @return The persisted goal including its unique identifier
+	 */
+	public Mono<SavingsGoal> addSavingsGoal(SavingsGoal goal) {
+
+		if (goal == null) {
+			return Mono.error(new InvalidRequestException("Savings Goal must not be null."));
+		}
+
+		return Mono.fromCallable(() -> decorateSavingsGoal(goal))
+				.flatMap(decoratedGoal -> this.savingsGoalRepo.insert(decoratedGoal)
+						.flatMap(savedGoal -> appendManualAdjustment(savedGoal.getSavingsGoalId(),
+								savedGoal.getCurrentBalance())
+								.thenReturn(savedGoal)))
+				.as(this.transactionalOperator::transactional)
+				.doOnNext(savedGoal -> log.debug("Saved goal: {}", savedGoal));
+	}
+
+	/**
+	 * Decorates and writes a goal. A ConflictException is produced if the goal was changed since its version was read.
+	 * The balance is not written, as ledger appends do not move the goal's version: a supplied current balance is
+	 * ignored and the goal is decorated and returned with the balance from the goal ledger. The balance is changed with
+	 * {@link #adjustBalance}.
+	 *
+	 * @param goal The goal data to persist, with the version it was read with
+	 * @return The goal after persistence
+	 */
+	public Mono<SavingsGoal> updateSavingsGoal(SavingsGoal goal) {
+
+		return this.savingsGoalRepo.findById(goal.getSavingsGoalId())
+				.switchIfEmpty(Mono.error(() -> new NotFoundException("Savings goal with id " + goal.getSavingsGoalId()
+						+ " does not exist.")))
+				.flatMap(current -> {
+					goal.setCurrentBalance(current.getCurrentBalance());
+					SavingsGoal decoratedGoal = decorateSavingsGoal(goal);
+					return this.savingsGoalRepo.update(decoratedGoal)
+							.flatMap(updated -> {
+								if (updated == 0) {
+									return Mono.error(new ConflictException("Savings goal with id "
+											+ decoratedGoal.getSavingsGoalId() + " was changed by another request."));
+								}
+								decoratedGoal.setVersion(decoratedGoal.getVersion() + 1);
+								return Mono.just(decoratedGoal);
+							});
+				})
+				.as(this.transactionalOperator::transactional);
+	}
+
+	/**
+	 * Adds an amount to a goal's balance, or subtracts it when negative, appending it to the goal ledger as a manual
+	 * adjustment. Taking an amount rather than the new balance keeps allocations and transfers made since the client
+	 * read the balance. The goal is re-decorated as for any balance change, in a transaction retried on conflicts. A
+	 * NotFoundException is produced if the goal does not exist.
+	 *
+	 * @param savingsGoalId The goal's unique identifier
+	 * @param amount The amount to add to the balance
+	 * @return The goal with its adjusted balance
+	 */
+	public Mono<SavingsGoal> adjustBalance(Integer savingsGoalId, BigDecimal amount) {
+
+		if (savingsGoalId == null || amount == null) {
+			return Mono.error(new InvalidRequestException("Goal id and amount must be non-null."));
+		}
+
+		return this.retry.withRetry(() -> applyBalanceDeltas(Collections.singletonMap(savingsGoalId, amount), null,
+						GoalLedgerSource.MANUAL_ADJUSTMENT)
+				.then(Mono.defer(() -> this.savingsGoalRepo.findById(savingsGoalId)))
+				.as(this.transactionalOperator::transactional));
+	}
+
+	private Mono<Void> appendManualAdjustment(Integer savingsGoalId, BigDecimal delta) {
+
+		if (delta == null || delta.signum() == 0) {
+			return Mono.empty();
+		}
+		return this.savingsGoalRepo.appendLedgerEntry(savingsGoalId, delta, GoalLedgerSource.MANUAL_ADJUSTMENT,
+				new Date(this.clock.millis())).then();
+	}
+
+	/**
+	 * Deletes a goal. A NotFoundException is produced if the goal does not exist.
+	 *
+	 * @param savingsGoalId Goal unique identifier
+	 * @return Completes when the goal is deleted
+	 */
+	public Mono<Void> deleteSavingsGoal(Integer savingsGoalId) {
+
+		return this.savingsGoalRepo.deleteById(savingsGoalId)
+				.flatMap(deleted -> deleted == 0
+						? Mono.error(new NotFoundException("Savings goal with id " + savingsGoalId + " does not exist."))
+						: Mono.empty());
+	}
+
+	/**
+	 * Allocates deposits towards goals; whatever is not allocated goes to the default goal. The deposits are re-read,
+	 * marked as allocated (a ConflictException if one was changed since) and the balances changed in one transaction,
+	 * which is retried on conflicts.
+	 *
+	 * @param savingsGoalDepositAllocation The deposits and the amounts to allocate to each goal
+	 * @return Completes when the allocation is committed
+	 */
+	public Mono<Void> allocateDepositToGoals(SavingsGoalDepositAllocation savingsGoalDepositAllocation) {
+
+		List<Long> depositIds = savingsGoalDepositAllocation.getDeposits().stream()
+				.map(Deposit::getDepositId)
+				.collect(Collectors.toList());
+		List<SavingsGoalAllocation> goalAllocations = savingsGoalDepositAllocation.getSavingsGoalAllocations();
+		List<Integer> savingsGoalIds = goalAllocations.stream()
+				.map(SavingsGoalAllocation::getSavingsGoalId)
+				.collect(Collectors.toList());
+		List<BigDecimal> amounts = goalAllocations.stream()
+				.map(SavingsGoalAllocation::getAllocationAmount)
+				.collect(Collectors.toList());
+
+		return this.retry.withRetry(() -> this.depositRepo.findAllById(depositIds)
+				.collectList()
+				.flatMap(deposits -> {
+					BigDecimal depositAmount = deposits.stream()
+							.filter(d -> d.getAmount() != null)
+							.map(Deposit::getAmount)
+							.reduce(BigDecimal.ZERO, BigDecimal::add);
+					BalanceDeltas allocations = BalanceDeltas.forAllocation(depositAmount, savingsGoalIds, amounts);
+					log.debug("Remaining deposit: " + allocations.getDefaultGoalDelta());
+
+					return Flux.fromIterable(deposits)
+							.concatMap(this::markAllocated)
+							.then(applyBalanceDeltas(allocations.getGoalDeltas(), allocations.getDefaultGoalDelta(),
+									GoalLedgerSource.DEPOSIT_ALLOCATION));
+				})
+				.as(this.transactionalOperator::transactional));
+	}
+
+	private Mono<Integer> markAllocated(Deposit deposit) {
+
+		deposit.setAllocated(true);
+		return this.depositRepo.update(deposit)
+				.flatMap(updated -> updated == 0
+						? Mono.error(new ConflictException("Deposit with id " + deposit.getDepositId()
+								+ " was changed by another request."))
+						: Mono.just(updated));
+	}
+
+	/**
+	 * Appends the deltas of the goals and the default goal delta of the default goal to the goal ledger. The changed
+	 * goals are then re-read with their new balances and decorated, since their plans depend on whether they have met
+	 * their target; only goals whose plan changed are written. Must be part of the caller's transaction.
+	 *
+	 * @param deltas Amount to add (or subtract when negative) keyed by the goal's unique identifier
+	 * @param defaultGoalDelta Amount to add to the default goal, or null to leave it untouched
+	 * @param source What caused the changes
+	 * @return Completes when the balances are changed
+	 */
+	public Mono<Void> applyBalanceDeltas(Map<Integer, BigDecimal> deltas, BigDecimal defaultGoalDelta,
+			GoalLedgerSource source) {
+		log.debug("Applying balance deltas: {}, default goal delta: {}, source: {}", deltas, defaultGoalDelta, source);
+
+		Date now = new Date(this.clock.millis());
+		Mono<Void> goalDeltas = Flux.fromIterable(deltas.entrySet())
+				.concatMap(delta -> this.savingsGoalRepo.appendLedgerEntry(delta.getKey(), delta.getValue(), source, now)
+						.filter(appended -> appended == 0)
+						.map(appended -> delta.getKey()))
+				.collectList()
+				.flatMap(missingGoalIds -> missingGoalIds.isEmpty() ? Mono.empty()
+						: Mono.error(new NotFoundException("Savings goals with ids " + missingGoalIds + " do not exist.")));
+
+		// deferred, so the repositories are only called once the steps before have succeeded
+		Mono<Void> defaultGoal = defaultGoalDelta == null || defaultGoalDelta.signum() == 0 ? Mono.empty()
+				: Mono.defer(() -> this.savingsGoalRepo.appendDefaultGoalLedgerEntry(defaultGoalDelta, source, now))
+						.flatMap(appended -> appended == 0
+								? Mono.error(new NotFoundException("A default goal could not be identified."))
+								: Mono.empty());
+
+		Mono<Void> redecorate = deltas.isEmpty() ? Mono.empty()
+				: Flux.defer(() -> this.savingsGoalRepo.findAllById(deltas.keySet()))
+						.filter(this::redecorate)
+						.concatMap(this.savingsGoalRepo::update)
+						.then();
+
+		return goalDeltas.then(defaultGoal).then(redecorate);
+	}
+
+	/**
+	 * Decorates a goal read with its new balance.
+	 *
+	 * @return True if its plan changed and it needs to be written
+	 */
+	private boolean redecorate(SavingsGoal goal) {
+
+		SavingsGoal before = new SavingsGoal();
+		BeanUtils.copyProperties(goal, before);
+		decorateSavingsGoal(goal);
+		return SavingsPlanCalculator.planChanged(before, goal);
+	}
+
+	/**
+	 * @see SavingsPlanCalculator#decorate
+	 */
+	public SavingsGoal decorateSavingsGoal(SavingsGoal goal) {
+		return this.savingsPlanCalculator.decorate(goal, this.clock.millis());
+	}
+}
@@ -0,0 +1,145 @@
+package com.brenner.budgetmanager.reactive.transactions;
+
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.transactions.Transaction;
+import com.brenner.budgetmanager.transactions.TransactionSummary;
+import io.r2dbc.spi.Row;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bind;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.bindDate;
+import static com.brenner.budgetmanager.reactive.R2dbcSupport.toDate;
+
+/**
+ * Non-blocking access to the transaction table the blocking application maps {@link Transaction} to. The goals of a
+ * transaction are read as goals holding only their id. Every change increments the version column the way Hibernate's
+ * optimistic locking does.
+ */
+@Repository
+public class ReactiveTransactionRepository {
+
+	private static final String SELECT = "select transaction_id, date, from_goal_savings_goal_id, "
+			+ "to_goal_savings_goal_id, amount, notes, applied, version from transaction ";
+
+	/** Summaries newest first, with the goals contributing only their ids and names */
+	private static final String SELECT_SUMMARIES = "select t.transaction_id, t.date, t.amount, t.notes, t.applied, "
+			+ "t.from_goal_savings_goal_id, f.goal_name as from_goal_name, t.to_goal_savings_goal_id, "
+			+ "g.goal_name as to_goal_name from transaction t "
+			+ "left join savings_goals f on f.savings_goal_id = t.from_goal_savings_goal_id "
+			+ "left join savings_goals g on g.savings_goal_id = t.to_goal_savings_goal_id "
+			+ "order by t.date desc, t.transaction_id desc";
+
+	@Autowired
+	DatabaseClient databaseClient;
+
+	/**
+	 * @return Summaries of all transactions, newest first, read as the subscriber requests them
+	 */
+	public Flux<TransactionSummary> findAllSummaries() {
+		return this.databaseClient.sql(SELECT_SUMMARIES)
+				.map((row, metadata) -> new TransactionSummary(row.get("transaction_id", Long.class),
+						toDate(row.get("date", LocalDateTime.class)), row.get("amount", BigDecimal.class),
+						row.get("notes", String.class), Boolean.TRUE.equals(row.get("applied", Boolean.class)),
+						row.get("from_goal_savings_goal_id", Integer.class), row.get("from_goal_name", String.class),
+						row.get("to_goal_savings_goal_id", Integer.class), row.get("to_goal_name", String.class)))
+				.all();
+	}
+
+	public Mono<Transaction> findById(Long transactionId) {
+		return this.databaseClient.sql(SELECT + "where transaction_id = :transactionId")
+				.bind("transactionId", transactionId)
+				.map((row, metadata) -> toTransaction(row))
+				.one();
+	}
+
+	/**
+	 * @param transaction A transaction without id or version
+	 * @return The transaction with the id assigned and version 0
+	 * @see com.brenner.budgetmanager.reactive.savingsgoals.ReactiveSavingsGoalRepository#insert for the ids
+	 */
+	public Mono<Transaction> insert(Transaction transaction) {
+		return bindColumns(this.databaseClient.sql("insert into transaction (transaction_id, date, "
+						+ "from_goal_savings_goal_id, to_goal_savings_goal_id, amount, notes, applied, version) values "
+						+ "(nextval('transaction_seq'), :date, :fromGoalId, :toGoalId, :amount, :notes, :applied, 0) "
+						+ "returning transaction_id"), transaction)
+				.map((row, metadata) -> row.get("transaction_id", Long.class))
+				.one()
+				.map(transactionId -> {
+					transaction.setTransactionId(transactionId);
+					transaction.setVersion(0L);
+					return transaction;
+				});
+	}
+
+	/**
+	 * Writes a transaction if it still has the version it was read with.
+	 *
+	 * @return The number of transactions updated; 0 if the transaction was changed or deleted since it was read
+	 */
+	public Mono<Integer> update(Transaction transaction) {
+		return bindColumns(this.databaseClient.sql("update transaction set date = :date, "
+						+ "from_goal_savings_goal_id = :fromGoalId, to_goal_savings_goal_id = :toGoalId, amount = :amount, "
+						+ "notes = :notes, applied = :applied, version = version + 1 "
+						+ "where transaction_id = :transactionId and version = :version"), transaction)
+				.bind("transactionId", transaction.getTransactionId())
+				.bind("version", transaction.getVersion())
+				.fetch()
+				.rowsUpdated();
+	}
+
+	/**
+	 * Deletes a transaction if it still has the version it was read with.
+	 *
+	 * @return The number of transactions deleted; 0 if the transaction was changed or deleted since it was read
+	 */
+	public Mono<Integer> delete(Transaction transaction) {
+		return this.databaseClient.sql("delete from transaction where transaction_id = :transactionId and version = :version")
+				.bind("transactionId", transaction.getTransactionId())
+				.bind("version", transaction.getVersion())
+				.fetch()
+				.rowsUpdated();
+	}
+
+	private static GenericExecuteSpec bindColumns(GenericExecuteSpec spec, Transaction transaction) {
+		spec = bindDate(spec, "date", transaction.getDate());
+		spec = bind(spec, "fromGoalId", goalId(transaction.getFromGoal()), Integer.class);
+		spec = bind(spec, "toGoalId", goalId(transaction.getToGoal()), Integer.class);
+		spec = bind(spec, "amount", transaction.getAmount(), BigDecimal.class);
+		spec = bind(spec, "notes", transaction.getNotes(), String.class);
+		return spec.bind("applied", transaction.getApplied());
+	}
+
+	private static Integer goalId(SavingsGoal goal) {
+		return goal == null ? null : goal.getSavingsGoalId();
+	}
+
+	static Transaction toTransaction(Row row) {
+		Transaction transaction = new Transaction();
+		transaction.setTransactionId(row.get("transaction_id", Long.class));
+		transaction.setDate(toDate(row.get("date", LocalDateTime.class)));
+		transaction.setFromGoal(goalReference(row.get("from_goal_savings_goal_id", Integer.class)));
+		transaction.setToGoal(goalReference(row.get("to_goal_savings_goal_id", Integer.class)));
+		transaction.setAmount(row.get("amount", BigDecimal.class));
+		transaction.setNotes(row.get("notes", String.class));
+		transaction.setApplied(Boolean.TRUE.equals(row.get("applied", Boolean.class)));
+		transaction.setVersion(row.get("version", Long.class));
+		return transaction;
+	}
+
+	private static SavingsGoal goalReference(Integer savingsGoalId) {
+		if (savingsGoalId == null) {
+			return null;
+		}
+		SavingsGoal goal = new SavingsGoal();
+		goal.setSavingsGoalId(savingsGoalId);
+		return goal;
+	}
+}
@@ -0,0 +1,141 @@
+package com.brenner.budgetmanager.reactive.transactions;
+
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.reactive.ReactiveRetry;
+import com.brenner.budgetmanager.reactive.savingsgoals.ReactiveSavingsGoalRepository;
+import com.brenner.budgetmanager.reactive.savingsgoals.ReactiveSavingsGoalsService;
+import com.brenner.budgetmanager.savingsgoals.BalanceDeltas;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.transactions.Transaction;
+import com.brenner.budgetmanager.transactions.TransactionSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+/**
+ * Non-blocking counterpart of TransactionBusinessService. The deltas of {@link BalanceDeltas#forTransaction} are
+ * appended to the goal ledger in the same transaction that writes the transaction row; any balances on the goals
+ * supplied with the transaction are ignored. Transactions are always applied as they are saved, and marked so, so the
+ * deferred transaction applier of the servlet application leaves them alone.
+ */
+@Service
+@Slf4j
+public class ReactiveTransactionService {
+
+	@Autowired
+	ReactiveTransactionRepository transactionRepo;
+
+	@Autowired
+	ReactiveSavingsGoalRepository savingsGoalRepo;
+
+	@Autowired
+	ReactiveSavingsGoalsService savingsGoalService;
+
+	@Autowired
+	TransactionalOperator transactionalOperator;
+
+	@Autowired
+	ReactiveRetry retry;
+
+	/**
+	 * Applies a transaction to its goals and inserts it, or writes it if it already has an id. A ConflictException is
+	 * produced if an existing transaction was changed since its version was read.
+	 *
+	 * @param transaction The transaction to save
+	 * @return The transaction after persistence including the assigned unique identifier
+	 */
+	public Mono<Transaction> saveTransaction(Transaction transaction) {
+
+		if (transaction == null || transaction.getAmount() == null || transaction.getFromGoal() == null) {
+			return Mono.error(new InvalidRequestException("Transaction must have non-null properties (amount, from goal)."));
+		}
+
+		log.debug("Saving transaction: " + transaction);
+
+		transaction.setApplied(true);
+		return this.retry.withRetry(() -> applyBalanceDeltas(transaction, transaction.getAmount().negate())
+				.then(transaction.getTransactionId() == null ? this.transactionRepo.insert(transaction) : update(transaction))
+				.as(this.transactionalOperator::transactional));
+	}
+
+	private Mono<Transaction> update(Transaction transaction) {
+
+		return this.transactionRepo.update(transaction)
+				.flatMap(updated -> {
+					if (updated == 0) {
+						return Mono.error(conflict(transaction));
+					}
+					transaction.setVersion(transaction.getVersion() + 1);
+					return Mono.just(transaction);
+				});
+	}
+
+	/**
+	 * Reverses the balance changes of a transaction and deletes it; a transaction not applied yet is simply deleted. A
+	 * ConflictException is produced if the transaction was changed, or applied, since it was read.
+	 *
+	 * @param transaction The transaction to delete
+	 * @return Completes when the transaction is deleted
+	 */
+	public Mono<Void> deleteTransaction(Transaction transaction) {
+
+		if (transaction == null || transaction.getAmount() == null || transaction.getFromGoal() == null) {
+			return Mono.error(new InvalidRequestException("Transaction must have non-null properties (amount, from goal)."));
+		}
+
+		Mono<Void> reversal = transaction.getApplied()
+				? applyBalanceDeltas(transaction, transaction.getAmount()) : Mono.empty();
+		return reversal
+				.then(Mono.defer(() -> this.transactionRepo.delete(transaction)))
+				.flatMap(deleted -> deleted == 0 ? Mono.<Void>error(conflict(transaction)) : Mono.<Void>empty())
+				.as(this.transactionalOperator::transactional);
+	}
+
+	private Mono<Void> applyBalanceDeltas(Transaction transaction, BigDecimal fromGoalDelta) {
+
+		SavingsGoal toGoal = transaction.getToGoal();
+		BalanceDeltas deltas = BalanceDeltas.forTransaction(transaction.getFromGoal().getSavingsGoalId(),
+				toGoal == null ? null : toGoal.getSavingsGoalId(), fromGoalDelta);
+
+		return Mono.defer(() -> this.savingsGoalService.applyBalanceDeltas(deltas.getGoalDeltas(), null,
+				GoalLedgerSource.TRANSFER));
+	}
+
+	private static ConflictException conflict(Transaction transaction) {
+		return new ConflictException("Transaction with id " + transaction.getTransactionId()
+				+ " was changed by another request.");
+	}
+
+	/**
+	 * @return Summaries of all transactions, newest first, read as the subscriber requests them
+	 */
+	public Flux<TransactionSummary> getAllTransactionSummaries() {
+		return this.transactionRepo.findAllSummaries();
+	}
+
+	/**
+	 * Retrieves a transaction with its goals.
+	 *
+	 * @param transactionId The unique identifier for the transaction to retrieve
+	 * @return The transaction or empty if it does not exist
+	 */
+	public Mono<Transaction> getTransaction(Long transactionId) {
+
+		return this.transactionRepo.findById(transactionId)
+				.flatMap(transaction -> loadGoal(transaction.getFromGoal())
+						.doOnNext(transaction::setFromGoal)
+						.then(loadGoal(transaction.getToGoal()).doOnNext(transaction::setToGoal))
+						.thenReturn(transaction));
+	}
+
+	private Mono<SavingsGoal> loadGoal(SavingsGoal goalReference) {
+		return goalReference == null ? Mono.empty() : this.savingsGoalRepo.findById(goalReference.getSavingsGoalId());
+	}
+}
@@ -0,0 +1,100 @@
+package com.brenner.budgetmanager.reactive.transactions;
+
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.transactions.Transaction;
+import com.brenner.budgetmanager.transactions.TransactionSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking API to the transactions, mirroring TransactionsApi.
+ */
+@RestController
+@RequestMapping(path = "/api")
+public class ReactiveTransactionsApi {
+
+	@Autowired
+	ReactiveTransactionService service;
+
+	/**
+	 * Access point to retrieve summaries of all transactions, newest first. Instead of the pages of the blocking API the
+	 * summaries are written as they are read and only as fast as the client takes them; with Accept:
+	 * application/x-ndjson one summary is sent per line.
+	 *
+	 * @return The transaction summaries
+	 */
+	@GetMapping(path = "/transactions", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+	public Flux<TransactionSummary> getTransactions() {
+		return this.service.getAllTransactionSummaries();
+	}
+
+	/**
+	 * Access point to retrieve a single transaction. If the transaction is not found a 404 is emitted.
+	 *
+	 * @param transactionId Transaction unique identifier
+	 * @return The transaction associated with the transactionId.
+	 */
+	@GetMapping(path = "/transactions/{id}")
+	public Mono<Transaction> getTransaction(@PathVariable(name = "id") Long transactionId) {
+		return this.service.getTransaction(transactionId)
+				.switchIfEmpty(Mono.error(() -> notFound(transactionId)));
+	}
+
+	/**
+	 * Access point to save a new transaction.
+	 *
+	 * @param transaction Transaction data to save
+	 * @return The transaction returned from the business layer
+	 */
+	@PostMapping(path = "/transactions")
+	public Mono<Transaction> saveNewTransaction(@RequestBody Transaction transaction) {
+		return this.service.saveTransaction(transaction);
+	}
+
+	/**
+	 * Access point to update a transaction. The version the client read is required, so a client that did not read
+	 * the transaction cannot overwrite it; a 400 is emitted without one. A 404 will be emitted if the transaction
+	 * doesn't already exist and a 409 if it was changed since the supplied version.
+	 *
+	 * @param transactionId Unique identifier for the transaction
+	 * @param transaction The data to update
+	 * @return The object returned from the business layer.
+	 */
+	@PutMapping(path = "/transactions/{id}")
+	public Mono<Transaction> updateTransaction(@PathVariable(name = "id") Long transactionId,
+			@RequestBody Transaction transaction) {
+
+		if (transaction.getVersion() == null) {
+			return Mono.error(new InvalidRequestException(
+					"Transaction version is required to update transaction " + transactionId + "."));
+		}
+		return this.service.getTransaction(transactionId)
+				.switchIfEmpty(Mono.error(() -> notFound(transactionId)))
+				.flatMap(existingTransaction -> {
+					transaction.setTransactionId(transactionId);
+					return this.service.saveTransaction(transaction);
+				});
+	}
+
+	/**
+	 * Access point for deleting a transaction. A 404 is emitted if the transaction doesn't already exist.
+	 *
+	 * @param transactionId The unique identifier of the transaction to delete.
+	 * @return Completes when the transaction is deleted
+	 */
+	@DeleteMapping(path = "/transactions/{id}")
+	public Mono<Void> deleteTransaction(@PathVariable(name = "id") Long transactionId) {
+
+		return this.service.getTransaction(transactionId)
+				.switchIfEmpty(Mono.error(() -> notFound(transactionId)))
+				.flatMap(this.service::deleteTransaction);
+	}
+
+	private static NotFoundException notFound(Long transactionId) {
+		return new NotFoundException("Transaction with id " + transactionId + " does not exist.");
+	}
+}
@@ -0,0 +1,238 @@
+package com.brenner.budgetmanager.reactive.savingsgoals;
+
+import com.brenner.budgetmanager.deposit.Deposit;
+import com.brenner.budgetmanager.exception.ConflictException;
+import com.brenner.budgetmanager.exception.InvalidRequestException;
+import com.brenner.budgetmanager.exception.NotFoundException;
+import com.brenner.budgetmanager.ledger.GoalLedgerSource;
+import com.brenner.budgetmanager.reactive.ReactiveRetry;
+import com.brenner.budgetmanager.reactive.deposit.ReactiveDepositRepository;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoal;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsGoalDepositAllocation;
+import com.brenner.budgetmanager.savingsgoals.SavingsPlanCalculator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+@SpringBootTest(classes = {
+		ReactiveSavingsGoalsService.class,
+		ReactiveRetry.class,
+		SavingsPlanCalculator.class
+})
+public class ReactiveSavingsGoalsServiceTests {
+
+	@MockBean
+	ReactiveSavingsGoalRepository savingsGoalRepo;
+
+	@MockBean
+	ReactiveDepositRepository depositRepo;
+
+	@MockBean
+	TransactionalOperator transactionalOperator;
+
+	@MockBean
+	Clock clock;
+
+	@Autowired
+	ReactiveSavingsGoalsService service;
+
+	SavingsGoal sg1 = new SavingsGoal(1, "Goal One", date("2021-01-01"), date("2021-01-31"),
+			BigDecimal.valueOf(100), BigDecimal.valueOf(0), BigDecimal.valueOf(10), false);
+
+	Deposit d1 = new Deposit(1L, BigDecimal.valueOf(100), new Date(), false);
+
+	@BeforeEach
+	public void setUp() {
+		Mockito.when(this.clock.millis()).thenReturn(date("2000-01-01").getTime());
+		Mockito.when(this.transactionalOperator.transactional(ArgumentMatchers.<Mono<Object>>any()))
+				.thenAnswer(invocation -> invocation.getArgument(0));
+		this.sg1.setVersion(0L);
+		this.d1.setVersion(0L);
+	}
+
+	@Test
+	public void testAllocateDepositRemainderToDefaultGoal_Success() throws Exception {
+
+		Mockito.when(this.depositRepo.findAllById(Collections.singletonList(1L))).thenReturn(Flux.just(this.d1));
+		Mockito.when(this.depositRepo.update(this.d1)).thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(1), ArgumentMatchers.eq(BigDecimal.valueOf(70)),
+				ArgumentMatchers.eq(GoalLedgerSource.DEPOSIT_ALLOCATION), ArgumentMatchers.any(Date.class)))
+				.thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.appendDefaultGoalLedgerEntry(ArgumentMatchers.eq(BigDecimal.valueOf(30)),
+				ArgumentMatchers.eq(GoalLedgerSource.DEPOSIT_ALLOCATION), ArgumentMatchers.any(Date.class)))
+				.thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.findAllById(Collections.singleton(1))).thenReturn(Flux.just(this.sg1));
+		Mockito.when(this.savingsGoalRepo.update(this.sg1)).thenReturn(Mono.just(1));
+
+		StepVerifier.create(this.service.allocateDepositToGoals(allocation(
+						new SavingsGoalAllocation(1, BigDecimal.valueOf(50)), new SavingsGoalAllocation(1, BigDecimal.valueOf(20)))))
+				.verifyComplete();
+
+		Mockito.verify(this.savingsGoalRepo).appendLedgerEntry(ArgumentMatchers.eq(1),
+				ArgumentMatchers.eq(BigDecimal.valueOf(70)), ArgumentMatchers.any(), ArgumentMatchers.any());
+		Mockito.verify(this.savingsGoalRepo).appendDefaultGoalLedgerEntry(ArgumentMatchers.eq(BigDecimal.valueOf(30)),
+				ArgumentMatchers.any(), ArgumentMatchers.any());
+		Mockito.verify(this.savingsGoalRepo).update(this.sg1);
+		Mockito.verify(this.depositRepo).update(this.d1);
+	}
+
+	@Test
+	public void testAllocateDepositUnchangedPlanNotWritten_Success() throws Exception {
+
+		this.service.decorateSavingsGoal(this.sg1);
+		Mockito.when(this.depositRepo.findAllById(Collections.singletonList(1L))).thenReturn(Flux.just(this.d1));
+		Mockito.when(this.depositRepo.update(this.d1)).thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(1), ArgumentMatchers.any(),
+				ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.findAllById(Collections.singleton(1))).thenReturn(Flux.just(this.sg1));
+
+		StepVerifier.create(this.service.allocateDepositToGoals(allocation(new SavingsGoalAllocation(1, BigDecimal.valueOf(100)))))
+				.verifyComplete();
+
+		Mockito.verify(this.savingsGoalRepo, Mockito.never()).update(ArgumentMatchers.any(SavingsGoal.class));
+	}
+
+	@Test
+	public void testAllocateDepositMissingGoal_Fail() throws Exception {
+
+		Mockito.when(this.depositRepo.findAllById(Collections.singletonList(1L))).thenReturn(Flux.just(this.d1));
+		Mockito.when(this.depositRepo.update(this.d1)).thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(7), ArgumentMatchers.eq(BigDecimal.valueOf(100)),
+				ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(Mono.just(0));
+
+		StepVerifier.create(this.service.allocateDepositToGoals(allocation(new SavingsGoalAllocation(7, BigDecimal.valueOf(100)))))
+				.verifyError(NotFoundException.class);
+	}
+
+	@Test
+	public void testAllocateChangedDepositRetried_Fail() throws Exception {
+
+		Mockito.when(this.depositRepo.findAllById(Collections.singletonList(1L)))
+				.thenAnswer(invocation -> Flux.just(new Deposit(1L, BigDecimal.valueOf(100), new Date(), false)));
+		Mockito.when(this.depositRepo.update(ArgumentMatchers.any(Deposit.class))).thenReturn(Mono.just(0));
+
+		StepVerifier.create(this.service.allocateDepositToGoals(allocation(new SavingsGoalAllocation(1, BigDecimal.valueOf(100)))))
+				.verifyError(ConflictException.class);
+
+		Mockito.verify(this.depositRepo, Mockito.times(3)).findAllById(Collections.singletonList(1L));
+	}
+
+	@Test
+	public void testAddSavingsGoalDecorated_Success() throws Exception {
+
+		Mockito.when(this.savingsGoalRepo.insert(this.sg1)).thenReturn(Mono.just(this.sg1));
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(1), ArgumentMatchers.any(),
+				ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(Mono.just(1));
+
+		StepVerifier.create(this.service.addSavingsGoal(this.sg1))
+				.expectNextMatches(goal -> goal.getDaysTillPayment() == 30
+						&& goal.getSavingsPerDay().compareTo(new BigDecimal("3.33")) == 0)
+				.verifyComplete();
+
+		Mockito.verify(this.savingsGoalRepo).appendLedgerEntry(ArgumentMatchers.eq(1),
+				ArgumentMatchers.eq(BigDecimal.valueOf(10)), ArgumentMatchers.eq(GoalLedgerSource.MANUAL_ADJUSTMENT),
+				ArgumentMatchers.any());
+	}
+
+	@Test
+	public void testAddSavingsGoalMissingDates_Fail() throws Exception {
+
+		this.sg1.setSavingsEndDate(null);
+
+		StepVerifier.create(this.service.addSavingsGoal(this.sg1))
+				.verifyError(InvalidRequestException.class);
+	}
+
+	@Test
+	public void testUpdateSavingsGoalStaleBalanceIgnored_Success() throws Exception {
+
+		// an allocation of 50 lands after the client read the goal with a balance of 10
+		Mockito.when(this.savingsGoalRepo.findById(1)).thenReturn(Mono.just(new SavingsGoal(1, "Goal One",
+				date("2021-01-01"), date("2021-01-31"), BigDecimal.valueOf(100), BigDecimal.valueOf(0),
+				BigDecimal.valueOf(60), false)));
+		Mockito.when(this.savingsGoalRepo.update(this.sg1)).thenReturn(Mono.just(1));
+
+		StepVerifier.create(this.service.updateSavingsGoal(this.sg1))
+				.expectNextMatches(goal -> goal.getCurrentBalance().compareTo(BigDecimal.valueOf(60)) == 0
+						&& goal.getVersion() == 1L)
+				.verifyComplete();
+
+		Mockito.verify(this.savingsGoalRepo, Mockito.never()).appendLedgerEntry(ArgumentMatchers.any(),
+				ArgumentMatchers.any(), ArgumentMatchers.any(), ArgumentMatchers.any());
+	}
+
+	@Test
+	public void testUpdateSavingsGoalChanged_Fail() throws Exception {
+
+		Mockito.when(this.savingsGoalRepo.findById(1)).thenReturn(Mono.just(this.sg1));
+		Mockito.when(this.savingsGoalRepo.update(this.sg1)).thenReturn(Mono.just(0));
+
+		StepVerifier.create(this.service.updateSavingsGoal(this.sg1))
+				.verifyError(ConflictException.class);
+	}
+
+	@Test
+	public void testAdjustBalance_Success() throws Exception {
+
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(1), ArgumentMatchers.eq(BigDecimal.valueOf(-5)),
+				ArgumentMatchers.eq(GoalLedgerSource.MANUAL_ADJUSTMENT), ArgumentMatchers.any(Date.class)))
+				.thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.findAllById(Collections.singleton(1))).thenReturn(Flux.just(this.sg1));
+		Mockito.when(this.savingsGoalRepo.update(this.sg1)).thenReturn(Mono.just(1));
+		Mockito.when(this.savingsGoalRepo.findById(1)).thenReturn(Mono.just(this.sg1));
+
+		StepVerifier.create(this.service.adjustBalance(1, BigDecimal.valueOf(-5)))
+				.expectNext(this.sg1)
+				.verifyComplete();
+
+		Mockito.verify(this.savingsGoalRepo).appendLedgerEntry(ArgumentMatchers.eq(1),
+				ArgumentMatchers.eq(BigDecimal.valueOf(-5)), ArgumentMatchers.eq(GoalLedgerSource.MANUAL_ADJUSTMENT),
+				ArgumentMatchers.any());
+	}
+
+	@Test
+	public void testAdjustBalanceMissingGoal_Fail() throws Exception {
+
+		Mockito.when(this.savingsGoalRepo.appendLedgerEntry(ArgumentMatchers.eq(7), ArgumentMatchers.any(),
+				ArgumentMatchers.any(), ArgumentMatchers.any())).thenReturn(Mono.just(0));
+
+		StepVerifier.create(this.service.adjustBalance(7, BigDecimal.ONE))
+				.verifyError(NotFoundException.class);
+
+		Mockito.verify(this.savingsGoalRepo, Mockito.never()).findById(7);
+	}
+
+	@Test
+	public void testDeleteSavingsGoalMissing_Fail() throws Exception {
+
+		Mockito.when(this.savingsGoalRepo.deleteById(7)).thenReturn(Mono.just(0));
+
+		StepVerifier.create(this.service.deleteSavingsGoal(7))
+				.verifyError(NotFoundException.class);
+	}
+
+	private SavingsGoalDepositAllocation allocation(SavingsGoalAllocation... allocations) {
+		return new SavingsGoalDepositAllocation(Collections.singletonList(this.d1), Arrays.asList(allocations));
+	}
+
+	private static Date date(String date) {
+		return Date.from(LocalDate.parse(date).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}